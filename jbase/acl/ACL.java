@@ -67,8 +67,13 @@ public class ACL implements Serializable {
 	 * @param field The field trying to do this action
 	 * @param action The action to test
 	 * @return True if the user can perform the action, false otherwise
+	 *
+	 * @throws JBaseFieldReleased The field's storage was released when its database was dropped
 	 */
-	public boolean canDo(Field field, FieldAction action) {
+	public boolean canDo(Field field, FieldAction action) throws JBaseFieldReleased {
+
+		//Nobody can use a field after its storage is gone
+		if (field.isReleased()) {throw new JBaseFieldReleased(field);}
 
 		//Root can do anything
 		if (this.user.isRoot()) {return true;}
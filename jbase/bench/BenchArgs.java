@@ -0,0 +1,96 @@
+package jbase.bench;
+
+import java.util.HashMap;
+
+
+/**
+ * Command line arguments for a benchmark, in the form name=value or name=value1,value2,...
+ *  Parameters with several values are run once for each value.
+ *
+ * @author Bryan McClain
+ */
+public class BenchArgs {
+
+	private final HashMap<String,String[]> args;
+
+
+	/**
+	 * Parse the command line arguments
+	 * @param argv Arguments from main()
+	 * @throws IllegalArgumentException An argument isn't in the form name=value
+	 */
+	public BenchArgs(String[] argv) {
+		this.args = new HashMap<String,String[]>();
+		for (String arg : argv) {
+			int eq = arg.indexOf('=');
+			if (eq <= 0) {throw new IllegalArgumentException("Expected name=value, got '"+arg+"'");}
+			this.args.put(arg.substring(0,eq),arg.substring(eq+1).split(","));
+		}
+	}
+
+
+	/**
+	 * Get every value of a parameter
+	 * @param name The parameter name
+	 * @param defaults Values to use if the parameter wasn't given
+	 * @return Values
+	 */
+	public String[] get(String name, String... defaults) {
+		String[] vals = this.args.get(name);
+		return (vals == null) ? defaults : vals;
+	}
+
+
+	/**
+	 * Get a single string parameter
+	 * @param name The parameter name
+	 * @param def Value to use if the parameter wasn't given
+	 * @return Value
+	 */
+	public String getString(String name, String def) {
+		return get(name,def)[0];
+	}
+
+
+	/**
+	 * Get every value of an integer parameter
+	 * @param name The parameter name
+	 * @param defaults Values to use if the parameter wasn't given
+	 * @return Values
+	 */
+	public int[] getInts(String name, int... defaults) {
+		String[] vals = this.args.get(name);
+		if (vals == null) {return defaults;}
+
+		int[] ints = new int[vals.length];
+		for (int i = 0; i < vals.length; ++i) {ints[i] = Integer.parseInt(vals[i].trim());}
+		return ints;
+	}
+
+
+	/**
+	 * Get a single integer parameter
+	 * @param name The parameter name
+	 * @param def Value to use if the parameter wasn't given
+	 * @return Value
+	 */
+	public int getInt(String name, int def) {
+		return getInts(name,def)[0];
+	}
+
+
+	/**
+	 * Get every value of a floating point parameter
+	 * @param name The parameter name
+	 * @param defaults Values to use if the parameter wasn't given
+	 * @return Values
+	 */
+	public double[] getDoubles(String name, double... defaults) {
+		String[] vals = this.args.get(name);
+		if (vals == null) {return defaults;}
+
+		double[] doubles = new double[vals.length];
+		for (int i = 0; i < vals.length; ++i) {doubles[i] = Double.parseDouble(vals[i].trim());}
+		return doubles;
+	}
+}
@@ -0,0 +1,53 @@
+package jbase.bench;
+
+import java.util.function.IntFunction;
+
+
+/**
+ * A single benchmark: an operation timed over a number of calls, after an untimed setup
+ * @author Bryan McClain
+ */
+public final class BenchCase {
+
+	final String name;				// What is being measured (for example "KeyField.find")
+	final String params;			// Parameters used for this run
+	final int ops;					// Calls to the operation in each iteration
+	final Runnable setup;			// Untimed work before each iteration
+	final IntFunction<Object> op;	// The timed operation (given the call number)
+
+
+	/**
+	 * Construct a new benchmark case
+	 *
+	 * @param name What is being measured
+	 * @param params Parameters used for this run
+	 * @param ops Calls to the operation in each iteration
+	 * @param setup Untimed work before each iteration
+	 * @param op The timed operation, given the call number (0 to ops-1)
+	 */
+	public BenchCase(String name, String params, int ops, Runnable setup, IntFunction<Object> op) {
+		this.name = name;
+		this.params = params;
+		this.ops = Math.max(1,ops);
+		this.setup = setup;
+		this.op = op;
+	}
+
+
+	/**
+	 * Get what is being measured
+	 * @return Name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Get the parameters used for this run
+	 * @return Parameters
+	 */
+	public String getParams() {
+		return this.params;
+	}
+}
@@ -0,0 +1,102 @@
+package jbase.bench;
+
+
+/**
+ * Timings from every measured iteration of a benchmark case
+ * @author Bryan McClain
+ */
+public class BenchResult {
+
+	private final String name;
+	private final String params;
+	private final int ops;				// Calls in each iteration
+	private final double[] samples;		// Nanoseconds per call for each iteration
+
+
+	/**
+	 * Construct a new benchmark result
+	 *
+	 * @param name What was measured
+	 * @param params Parameters used for the run
+	 * @param ops Calls in each iteration
+	 * @param samples Nanoseconds per call for each iteration
+	 */
+	public BenchResult(String name, String params, int ops, double[] samples) {
+		this.name = name;
+		this.params = params;
+		this.ops = ops;
+		this.samples = samples.clone();
+	}
+
+
+	/**
+	 * Get what was measured
+	 * @return Name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Get the parameters used for the run
+	 * @return Parameters
+	 */
+	public String getParams() {
+		return this.params;
+	}
+
+
+	/**
+	 * Get the number of calls in each iteration
+	 * @return Calls
+	 */
+	public int getOps() {
+		return this.ops;
+	}
+
+
+	/**
+	 * Get the average time per call
+	 * @return Nanoseconds
+	 */
+	public double getMean() {
+		double sum = 0;
+		for (double s : this.samples) {sum += s;}
+		return sum / this.samples.length;
+	}
+
+
+	/**
+	 * Get the standard deviation of the time per call across iterations
+	 * @return Nanoseconds
+	 */
+	public double getStdDev() {
+		if (this.samples.length < 2) {return 0;}
+		double mean = getMean(), sum = 0;
+		for (double s : this.samples) {sum += (s - mean) * (s - mean);}
+		return Math.sqrt(sum / (this.samples.length - 1));
+	}
+
+
+	/**
+	 * Get the fastest time per call of any iteration
+	 * @return Nanoseconds
+	 */
+	public double getMin() {
+		double min = Double.POSITIVE_INFINITY;
+		for (double s : this.samples) {min = Math.min(min,s);}
+		return min;
+	}
+
+
+	/**
+	 * Convert this result to a line of a table
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return String.format("%-30s %-36s %12.1f ns/op  +- %8.1f  %,14.0f ops/s",
+							 this.name,this.params,getMean(),getStdDev(),1e9 / getMean());
+	}
+}
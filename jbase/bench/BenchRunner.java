@@ -0,0 +1,85 @@
+package jbase.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Runs benchmark cases: a few untimed warmup iterations (so the JIT compiler can do its job),
+ *  then the timed iterations. Each iteration runs the case's setup first, outside the timer.
+ *
+ * @author Bryan McClain
+ */
+public class BenchRunner {
+
+	private final int warmup;			// Untimed iterations
+	private final int iterations;		// Timed iterations
+	private final String filter;		// Only run cases whose name contains this (null = all)
+	private final PrintStream out;		// Where to print each result
+	private final ArrayList<BenchResult> results;
+
+
+	/**
+	 * Construct a new benchmark runner from the command line arguments
+	 *  (warmup=N, iterations=N, filter=text)
+	 *
+	 * @param args Command line arguments
+	 * @param out Where to print each result
+	 */
+	public BenchRunner(BenchArgs args, PrintStream out) {
+		this.warmup = args.getInt("warmup",3);
+		this.iterations = Math.max(1,args.getInt("iterations",5));
+		String f = args.getString("filter","");
+		this.filter = f.isEmpty() ? null : f;
+		this.out = out;
+		this.results = new ArrayList<BenchResult>();
+	}
+
+
+	/**
+	 * Run a benchmark case, print the result, and keep it
+	 * @param c The case to run
+	 * @return The result, or null if the case was filtered out
+	 */
+	public BenchResult run(BenchCase c) {
+		if (this.filter != null && !c.name.contains(this.filter)) {return null;}
+
+		for (int i = 0; i < this.warmup; ++i) {
+			c.setup.run();
+			loop(c);
+		}
+
+		double[] samples = new double[this.iterations];
+		for (int i = 0; i < this.iterations; ++i) {
+			c.setup.run();
+			long start = System.nanoTime();
+			loop(c);
+			samples[i] = (double) (System.nanoTime() - start) / c.ops;
+		}
+
+		BenchResult result = new BenchResult(c.name,c.params,c.ops,samples);
+		this.results.add(result);
+		this.out.println(result);
+		return result;
+	}
+
+
+	/**
+	 * Get every result so far
+	 * @return Results, in the order they were run
+	 */
+	public List<BenchResult> getResults() {
+		return new ArrayList<BenchResult>(this.results);
+	}
+
+
+	/**
+	 * Call the operation once for each op in the case
+	 */
+	private static void loop(BenchCase c) {
+		for (int i = 0; i < c.ops; ++i) {
+			Blackhole.consume(c.op.apply(i));
+		}
+	}
+}
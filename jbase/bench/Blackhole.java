@@ -0,0 +1,35 @@
+package jbase.bench;
+
+
+/**
+ * Consumes benchmark results so the JIT compiler can't remove the work that produced them
+ * @author Bryan McClain
+ */
+public final class Blackhole {
+
+	private static volatile int sink;	// Written only when a value would be lost
+
+
+	/**
+	 * Prevent construction (static methods only)
+	 */
+	private Blackhole() {}
+
+
+	/**
+	 * Consume an object
+	 * @param val The value to consume
+	 */
+	public static void consume(Object val) {
+		if (val != null && System.identityHashCode(val) == sink) {sink++;}
+	}
+
+
+	/**
+	 * Consume a long
+	 * @param val The value to consume
+	 */
+	public static void consume(long val) {
+		if (val == sink) {sink++;}
+	}
+}
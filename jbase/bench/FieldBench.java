@@ -0,0 +1,220 @@
+package jbase.bench;
+
+import jbase.acl.*;
+import jbase.database.*;
+import jbase.exception.JBaseDataNotFound;
+import jbase.field.*;
+import jbase.storage.*;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Random;
+
+
+/**
+ * Benchmarks for the hot paths of the fields: key insert, delete, find, get, next, pre and resize,
+ *  item get and put, foreign key put, ACL checks (root and non-root, global and field-specific)
+ *  and password validation.
+ *
+ *  Run with: java jbase.bench.FieldBench [depth=1000,100000] [type=int,string] [fill=0.5,0.9]
+ *   [index=tree,btree,hash] [warmup=3] [iterations=5] [filter=KeyField]
+ *
+ * @author Bryan McClain
+ */
+@SuppressWarnings({"unchecked","rawtypes"})
+public class FieldBench {
+
+	private static int databases = 0;		// Used to give each database a unique name
+
+	private final int depth;				// Rows in each key
+	private final int filled;				// Rows in use before each benchmark
+	private final KeyIndexType index;		// Index used by the key
+	private final String params;			// Parameters, for printing
+	private final Comparable[] values;		// Distinct key values (the first "filled" are inserted)
+	private final int[] probe;				// Random order to visit the inserted values
+
+	private Database db;
+	private KeyField key;
+	private ItemField item;
+	private KeyField target;
+	private ForeignKeyField fk;
+	private ACL rootACL;
+	private ACL globalACL;					// Non-root user allowed through the global permissions
+	private ACL fieldACL;					// Non-root user allowed through a field permission
+	private User user;
+	private int[] rows;						// Row holding each inserted value
+	private int cursor;						// Current row for next() and pre()
+	private boolean dirty;					// The last benchmark changed the database
+
+
+	/**
+	 * Construct a new set of field benchmarks
+	 *
+	 * @param depth Rows in each key
+	 * @param strings True for String keys, false for Integer keys
+	 * @param fill Fraction of the rows in use before each benchmark
+	 * @param index Index used by the key
+	 * @param seed Seed for the random values
+	 */
+	public FieldBench(int depth, boolean strings, double fill, KeyIndexType index, long seed) {
+		this.depth = depth;
+		this.filled = Math.max(1,Math.min(depth,(int) (depth * fill)));
+		this.index = index;
+		this.params = "depth="+depth+" type="+(strings ? "string" : "int")+" fill="+fill+" index="+index.name().toLowerCase();
+
+		//Distinct random values
+		Random r = new Random(seed);
+		HashSet<Object> seen = new HashSet<Object>();
+		this.values = new Comparable[depth];
+		for (int i = 0; i < depth; ++i) {
+			Comparable v;
+			do {
+				int n = r.nextInt();
+				v = strings ? (Comparable) ("key-"+Integer.toHexString(n)) : (Comparable) Integer.valueOf(n);
+			} while (!seen.add(v));
+			this.values[i] = v;
+		}
+
+		this.probe = new int[this.filled];
+		for (int i = 0; i < this.filled; ++i) {this.probe[i] = i;}
+		for (int i = this.filled-1; i > 0; --i) {
+			int j = r.nextInt(i+1);
+			int t = this.probe[i]; this.probe[i] = this.probe[j]; this.probe[j] = t;
+		}
+	}
+
+
+	/**
+	 * Run every benchmark
+	 * @param runner Runner used to time the benchmarks
+	 */
+	public void runAll(BenchRunner runner) {
+		final int n = this.filled;
+
+		//Benchmarks that change the key get a fresh database every iteration
+		runner.run(new BenchCase("KeyField.insert",this.params,this.depth - n,this::fresh,
+								 i -> this.key.insert(this.values[n + i])));
+		runner.run(new BenchCase("KeyField.delete",this.params,n,this::fresh,
+								 i -> {this.key.delete(this.values[this.probe[i]]); return null;}));
+		runner.run(new BenchCase("KeyField.resize",this.params,100,this::fresh,
+								 i -> {this.key.resize(1); return null;}));
+
+		//Read-only benchmarks share one database
+		runner.run(new BenchCase("KeyField.find",this.params,n,this::ready,
+								 i -> this.key.find(this.values[this.probe[i]])));
+		if (this.depth > n) {
+			runner.run(new BenchCase("KeyField.find miss",this.params,this.depth - n,this::ready,i -> {
+				try {return this.key.find(this.values[n + i]);}
+				catch (JBaseDataNotFound ex) {return -1;}
+			}));
+			runner.run(new BenchCase("KeyField.findOrMinusOne miss",this.params,this.depth - n,this::ready,
+									 i -> this.key.findOrMinusOne(this.values[n + i])));
+		}
+		runner.run(new BenchCase("KeyField.get",this.params,n,this::ready,
+								 i -> this.key.get(this.rows[this.probe[i]])));
+		runner.run(new BenchCase("KeyField.next",this.params,n,this::ready,
+								 i -> {this.cursor = this.key.next((i == 0) ? -1 : this.cursor); return null;}));
+		runner.run(new BenchCase("KeyField.pre",this.params,n,this::ready,
+								 i -> {this.cursor = this.key.pre((i == 0) ? -1 : this.cursor); return null;}));
+
+		runner.run(new BenchCase("ItemField.get",this.params,n,this::ready,
+								 i -> this.item.get(this.rows[this.probe[i]])));
+		runner.run(new BenchCase("ItemField.put",this.params,n,this::ready,
+								 i -> {this.item.put(this.rows[this.probe[i]],(Serializable) this.values[i]); return null;}));
+		runner.run(new BenchCase("ForeignKeyField.put",this.params,n,this::ready,
+								 i -> {this.fk.put(this.rows[this.probe[i]],this.rows[i]); return null;}));
+
+		runner.run(new BenchCase("ACL.canDo root",this.params,n,this::ready,
+								 i -> this.rootACL.canDo(this.item,FieldAction.GET)));
+		runner.run(new BenchCase("ACL.canDo global",this.params,n,this::ready,
+								 i -> this.globalACL.canDo(this.item,FieldAction.GET)));
+		runner.run(new BenchCase("ACL.canDo field",this.params,n,this::ready,
+								 i -> this.fieldACL.canDo(this.item,FieldAction.GET)));
+		runner.run(new BenchCase("User.validatePassword",this.params,1000,this::ready,
+								 i -> this.user.validatePassword(((i & 1) == 0) ? "secret" : "wrong")));
+
+		drop();
+	}
+
+
+	/**
+	 * Make sure an unchanged database exists
+	 */
+	private void ready() {
+		if (this.db == null || this.dirty) {rebuild();}
+	}
+
+
+	/**
+	 * Build a new database with the key filled
+	 */
+	private void rebuild() {
+		drop();
+		this.db = Database.newDatabase("bench-"+(++databases),"root","root");
+		this.key = this.db.newKey("key",this.depth,StorageType.HEAP,this.index);
+		this.item = this.db.newItem("item",this.key);
+		this.target = this.db.newKey("target",this.depth);
+		this.fk = this.db.newForeignKey("fk",this.key,this.target);
+
+		this.rows = new int[this.filled];
+		for (int i = 0; i < this.filled; ++i) {
+			this.rows[i] = this.key.insert(this.values[i]);
+			this.target.insert(this.values[i]);
+			this.item.put(this.rows[i],(Serializable) this.values[i]);
+		}
+
+		//Non-root users: one allowed globally, one allowed only on the item field
+		this.db.newUser("global","pw");
+		this.globalACL = this.db.getUserACL("global");
+		this.globalACL.setPermission(FieldAction.GET,PermissionType.ALLOW);
+
+		this.db.newUser("field","pw");
+		this.fieldACL = this.db.getUserACL("field");
+		this.fieldACL.setPermission(FieldAction.GET,PermissionType.DENY);
+		this.fieldACL.setPermission(this.item,FieldAction.GET,PermissionType.ALLOW);
+
+		this.rootACL = this.db.getACL();
+		this.user = new User(this.db,"bench","secret",null);
+		this.dirty = false;
+	}
+
+
+	/**
+	 * Build a fresh database for a benchmark that changes it
+	 */
+	private void fresh() {
+		rebuild();
+		this.dirty = true;
+	}
+
+
+	/**
+	 * Drop the current database (if any)
+	 */
+	private void drop() {
+		if (this.db != null) {this.db.dropDatabase();}
+		this.db = null;
+	}
+
+
+
+	/**
+	 * Run the field benchmarks
+	 * @param argv Command line arguments (see the class description)
+	 */
+	public static void main(String[] argv) {
+		BenchArgs args = new BenchArgs(argv);
+		BenchRunner runner = new BenchRunner(args,System.out);
+
+		for (int depth : args.getInts("depth",1000,100000)) {
+			for (String type : args.get("type","int","string")) {
+				for (double fill : args.getDoubles("fill",0.5,0.9)) {
+					for (String index : args.get("index","tree")) {
+						KeyIndexType indexType = KeyIndexType.valueOf(index.toUpperCase());
+						new FieldBench(depth,type.equals("string"),fill,indexType,42).runAll(runner);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package jbase.bench;
+
+import java.util.Random;
+
+
+/**
+ * Chooses which record a workload operation uses
+ * @author Bryan McClain
+ */
+public interface KeyChooser {
+
+	/**
+	 * Choose a record
+	 * @param r Random number generator of the calling thread
+	 * @param count Number of records inserted so far
+	 * @return Record number, from 0 to count-1
+	 */
+	public long next(Random r, long count);
+}
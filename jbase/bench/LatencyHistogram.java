@@ -0,0 +1,124 @@
+package jbase.bench;
+
+import jbase.metrics.HistogramBuckets;
+
+import java.util.Arrays;
+
+
+/**
+ * Histogram of latencies with log-linear buckets (in the style of HdrHistogram).
+ *  Values below 128 get a bucket each; above that, every power of two is split into
+ *   64 equal buckets, so any value is recorded with less than 1% relative error
+ *   in a fixed 30KB of memory, no matter how large the values are.
+ *
+ *  Histograms are not thread-safe: give each thread its own, then merge them.
+ *
+ * @author Bryan McClain
+ */
+public class LatencyHistogram {
+
+	private static final HistogramBuckets BUCKETS = new HistogramBuckets(7);
+
+	private final long[] counts;
+	private long total;
+	private long sum;
+	private long min;
+	private long max;
+
+
+	/**
+	 * Construct a new empty histogram
+	 */
+	public LatencyHistogram() {
+		this.counts = new long[BUCKETS.size()];
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+
+
+	/**
+	 * Record a single value
+	 * @param value The value to record (negative values are recorded as 0)
+	 */
+	public void record(long value) {
+		if (value < 0) {value = 0;}
+		++this.counts[BUCKETS.indexOf(value)];
+		++this.total;
+		this.sum += value;
+		if (value < this.min) {this.min = value;}
+		if (value > this.max) {this.max = value;}
+	}
+
+
+	/**
+	 * Add every value recorded by another histogram to this one
+	 * @param other The histogram to merge
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < this.counts.length; ++i) {this.counts[i] += other.counts[i];}
+		this.total += other.total;
+		this.sum += other.sum;
+		this.min = Math.min(this.min,other.min);
+		this.max = Math.max(this.max,other.max);
+	}
+
+
+	/**
+	 * Get the number of values recorded
+	 * @return Count
+	 */
+	public long getCount() {
+		return this.total;
+	}
+
+
+	/**
+	 * Get the smallest value recorded
+	 * @return Smallest value, or 0 if nothing was recorded
+	 */
+	public long getMin() {
+		return (this.total == 0) ? 0 : this.min;
+	}
+
+
+	/**
+	 * Get the largest value recorded
+	 * @return Largest value, or 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+
+	/**
+	 * Get the average of the values recorded
+	 * @return Mean, or 0 if nothing was recorded
+	 */
+	public double getMean() {
+		return (this.total == 0) ? 0 : (double) this.sum / this.total;
+	}
+
+
+	/**
+	 * Get the value at a given percentile: at least this percent of the values are
+	 *  less than or equal to the result (within the precision of the buckets)
+	 *
+	 * @param percentile Percentile from 0 to 100
+	 * @return Value, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		return BUCKETS.percentile(this.counts,this.total,this.max,percentile);
+	}
+
+
+	/**
+	 * Remove every recorded value
+	 */
+	public void reset() {
+		Arrays.fill(this.counts,0);
+		this.total = 0;
+		this.sum = 0;
+		this.min = Long.MAX_VALUE;
+		this.max = 0;
+	}
+}
@@ -0,0 +1,231 @@
+package jbase.bench;
+
+import jbase.database.*;
+import jbase.field.*;
+import jbase.io.SnapshotCodec;
+import jbase.storage.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+
+/**
+ * Single-shot benchmarks for saving, restoring and loading a whole database.
+ *  A synthetic database is built for every combination of the shape parameters,
+ *   then each phase is timed separately, along with the bytes allocated by the thread.
+ *  Results are printed as CSV (with a header) or as one JSON object per line.
+ *
+ *  Run with: java jbase.bench.SnapshotBench [keys=4] [depth=100000] [children=4] [fanout=1]
+ *   [size=16] [storage=heap,off_heap] [codec=none,lz,deflate] [warmup=1] [iterations=5]
+ *   [format=csv|json] [dir=/tmp]
+ *
+ *  keys:     Number of key fields
+ *  depth:    Rows in each key (every row is filled)
+ *  children: String item fields under each key
+ *  fanout:   Foreign keys under each key (pointing at the next key)
+ *  size:     Length of each item string
+ *  storage:  Storage used by the foreign keys (keys and items are always kept on the heap)
+ *
+ * @author Bryan McClain
+ */
+@SuppressWarnings({"unchecked","rawtypes"})
+public class SnapshotBench {
+
+	private static final String DBNAME = "bench-snapshot";
+	private static final String ROOT = "root";
+
+	private final int keys;
+	private final int depth;
+	private final int children;
+	private final int fanout;
+	private final int size;
+	private final StorageType storage;
+	private final SnapshotCodec codec;
+	private final String params;			// Shape of the database, for printing
+	private final long seed;
+
+
+	/**
+	 * Construct a new set of snapshot benchmarks for one database shape
+	 *
+	 * @param keys Number of key fields
+	 * @param depth Rows in each key
+	 * @param children String item fields under each key
+	 * @param fanout Foreign keys under each key
+	 * @param size Length of each item string
+	 * @param storage Storage used by the foreign keys
+	 * @param codec Compression codec used when saving
+	 * @param seed Seed for the random values
+	 */
+	public SnapshotBench(int keys, int depth, int children, int fanout, int size,
+						 StorageType storage, SnapshotCodec codec, long seed) {
+		this.keys = Math.max(1,keys);
+		this.depth = Math.max(1,depth);
+		this.children = children;
+		this.fanout = fanout;
+		this.size = size;
+		this.storage = storage;
+		this.codec = codec;
+		this.seed = seed;
+		this.params = "keys="+this.keys+" depth="+this.depth+" children="+children+" fanout="+fanout
+					+ " size="+size+" storage="+storage.name().toLowerCase()+" codec="+codec.name().toLowerCase();
+	}
+
+
+	/**
+	 * Build the database, then time the save, restore and load phases
+	 *
+	 * @param dir Directory for the snapshot file
+	 * @param warmup Untimed iterations
+	 * @param iterations Timed iterations
+	 * @return Results for each phase (save, restore, load)
+	 */
+	public SnapshotResult[] run(File dir, int warmup, int iterations) {
+		File file = new File(dir,DBNAME+".jbs");
+		Database db = build();
+
+		int total = warmup + iterations;
+		long[][] nanos = new long[3][iterations];
+		long[][] alloc = new long[3][iterations];
+
+		try {
+			for (int i = 0; i < total; ++i) {
+				int slot = i - warmup;
+
+				//Save
+				long a = allocated(), t = System.nanoTime();
+				db.saveDatabase(file.getPath());
+				record(nanos[0],alloc[0],slot,t,a);
+
+				//Restore over the existing database
+				a = allocated(); t = System.nanoTime();
+				db.restoreDatabase(file.getPath());
+				record(nanos[1],alloc[1],slot,t,a);
+				db = Database.getDatabase(DBNAME,ROOT,ROOT);
+
+				//Load after dropping the database
+				db.dropDatabase();
+				a = allocated(); t = System.nanoTime();
+				Database.loadDatabase(file.getPath());
+				record(nanos[2],alloc[2],slot,t,a);
+				db = Database.getDatabase(DBNAME,ROOT,ROOT);
+			}
+		} finally {
+			if (!db.isDropped()) {db.dropDatabase();}
+		}
+
+		long bytes = file.length();
+		file.delete();
+
+		return new SnapshotResult[] {
+			new SnapshotResult("save",this.params,bytes,nanos[0],alloc[0]),
+			new SnapshotResult("restore",this.params,bytes,nanos[1],alloc[1]),
+			new SnapshotResult("load",this.params,bytes,nanos[2],alloc[2])
+		};
+	}
+
+
+	/**
+	 * Build a database with the configured shape
+	 * @return The new database
+	 */
+	private Database build() {
+		Random r = new Random(this.seed);
+		Database db = Database.newDatabase(DBNAME,ROOT,ROOT);
+		db.setSnapshotCodec(this.codec);
+
+		KeyField[] all = new KeyField[this.keys];
+		for (int k = 0; k < this.keys; ++k) {
+			KeyField<Integer> key = db.newKey("key"+k,this.depth);
+			for (int i = 0; i < this.depth; ++i) {key.insert(i);}
+			all[k] = key;
+		}
+
+		char[] buf = new char[this.size];
+		for (int k = 0; k < this.keys; ++k) {
+			for (int c = 0; c < this.children; ++c) {
+				ItemField<String> item = db.newItem("item"+k+"_"+c,all[k]);
+				for (int row = 0; row < this.depth; ++row) {
+					for (int j = 0; j < buf.length; ++j) {buf[j] = (char) ('a' + r.nextInt(26));}
+					item.put(row,new String(buf));
+				}
+			}
+
+			KeyField point = all[(k + 1) % this.keys];
+			for (int f = 0; f < this.fanout; ++f) {
+				ForeignKeyField fk = db.newForeignKey("fk"+k+"_"+f,all[k],point,this.storage);
+				for (int row = 0; row < this.depth; ++row) {fk.put(row,r.nextInt(this.depth));}
+			}
+		}
+		return db;
+	}
+
+
+	/**
+	 * Store the time and allocation of one iteration (skipped during warmup)
+	 */
+	private static void record(long[] nanos, long[] alloc, int slot, long start, long startAlloc) {
+		long end = System.nanoTime();
+		long endAlloc = allocated();
+		if (slot < 0) {return;}
+		nanos[slot] = end - start;
+		alloc[slot] = (startAlloc < 0) ? -1 : endAlloc - startAlloc;
+	}
+
+
+	/**
+	 * Get the number of bytes allocated by the current thread so far
+	 * @return Bytes, or -1 if the JVM can't measure allocations
+	 */
+	private static long allocated() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {return -1;}
+
+		com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+		if (!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) {return -1;}
+		return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+
+
+	/**
+	 * Run the snapshot benchmarks
+	 * @param argv Command line arguments (see the class description)
+	 * @throws IOException Unable to find the directory for the snapshot files
+	 */
+	public static void main(String[] argv) throws IOException {
+		BenchArgs args = new BenchArgs(argv);
+		int warmup = args.getInt("warmup",1);
+		int iterations = Math.max(1,args.getInt("iterations",5));
+		boolean json = args.getString("format","csv").equalsIgnoreCase("json");
+		File dir = new File(args.getString("dir",System.getProperty("java.io.tmpdir")));
+		if (!dir.isDirectory()) {throw new IOException(dir+" is not a directory");}
+
+		PrintStream out = System.out;
+		if (!json) {out.println(SnapshotResult.CSV_HEADER);}
+
+		for (int keys : args.getInts("keys",4)) {
+			for (int depth : args.getInts("depth",100000)) {
+				for (int children : args.getInts("children",4)) {
+					for (int fanout : args.getInts("fanout",1)) {
+						for (int size : args.getInts("size",16)) {
+							for (String storage : args.get("storage","heap","off_heap")) {
+								for (String codec : args.get("codec","none","lz","deflate")) {
+									SnapshotBench bench = new SnapshotBench(keys,depth,children,fanout,size,
+																			StorageType.valueOf(storage.toUpperCase()),
+																			SnapshotCodec.valueOf(codec.toUpperCase()),42);
+									for (SnapshotResult res : bench.run(dir,warmup,iterations)) {
+										out.println(json ? res.toJSON() : res.toCSV());
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+}
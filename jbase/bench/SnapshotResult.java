@@ -0,0 +1,170 @@
+package jbase.bench;
+
+import java.util.Locale;
+
+
+/**
+ * Timings from every measured iteration of one snapshot phase (save, restore or load),
+ *  printed as a machine-readable CSV or JSON line so results can be compared across builds
+ *
+ * @author Bryan McClain
+ */
+public class SnapshotResult {
+
+	/** Column names for the CSV format, in the same order as toCSV() */
+	public static final String CSV_HEADER =
+		"phase,params,bytes,iterations,mean_ms,min_ms,stddev_ms,mb_per_s,alloc_bytes,alloc_mb_per_s";
+
+	private final String phase;
+	private final String params;
+	private final long bytes;			// Size of the snapshot on disk
+	private final long[] nanos;			// Time taken by each iteration
+	private final long[] allocated;		// Bytes allocated by each iteration (-1 = unknown)
+
+
+	/**
+	 * Construct a new snapshot result
+	 *
+	 * @param phase What was measured (save, restore or load)
+	 * @param params Shape of the database used for the run
+	 * @param bytes Size of the snapshot on disk
+	 * @param nanos Time taken by each iteration
+	 * @param allocated Bytes allocated by each iteration (-1 = unknown)
+	 */
+	public SnapshotResult(String phase, String params, long bytes, long[] nanos, long[] allocated) {
+		this.phase = phase;
+		this.params = params;
+		this.bytes = bytes;
+		this.nanos = nanos.clone();
+		this.allocated = allocated.clone();
+	}
+
+
+	/**
+	 * Get what was measured
+	 * @return Phase
+	 */
+	public String getPhase() {
+		return this.phase;
+	}
+
+
+	/**
+	 * Get the shape of the database used for the run
+	 * @return Parameters
+	 */
+	public String getParams() {
+		return this.params;
+	}
+
+
+	/**
+	 * Get the size of the snapshot on disk
+	 * @return Bytes
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+
+	/**
+	 * Get the average time taken by an iteration
+	 * @return Milliseconds
+	 */
+	public double getMeanMillis() {
+		double sum = 0;
+		for (long n : this.nanos) {sum += n;}
+		return sum / this.nanos.length / 1e6;
+	}
+
+
+	/**
+	 * Get the fastest time taken by an iteration
+	 * @return Milliseconds
+	 */
+	public double getMinMillis() {
+		long min = Long.MAX_VALUE;
+		for (long n : this.nanos) {min = Math.min(min,n);}
+		return min / 1e6;
+	}
+
+
+	/**
+	 * Get the standard deviation of the time taken across iterations
+	 * @return Milliseconds
+	 */
+	public double getStdDevMillis() {
+		if (this.nanos.length < 2) {return 0;}
+		double mean = getMeanMillis(), sum = 0;
+		for (long n : this.nanos) {sum += (n / 1e6 - mean) * (n / 1e6 - mean);}
+		return Math.sqrt(sum / (this.nanos.length - 1));
+	}
+
+
+	/**
+	 * Get the snapshot size divided by the average time
+	 * @return Megabytes (2^20 bytes) per second
+	 */
+	public double getThroughput() {
+		return (this.bytes / 1048576.0) / (getMeanMillis() / 1000);
+	}
+
+
+	/**
+	 * Get the average number of bytes allocated by an iteration
+	 * @return Bytes, or -1 if the JVM can't measure allocations
+	 */
+	public long getAllocatedBytes() {
+		long sum = 0;
+		for (long a : this.allocated) {
+			if (a < 0) {return -1;}
+			sum += a;
+		}
+		return sum / this.allocated.length;
+	}
+
+
+	/**
+	 * Get the allocation rate while the phase was running
+	 * @return Megabytes (2^20 bytes) per second, or -1 if the JVM can't measure allocations
+	 */
+	public double getAllocationRate() {
+		long alloc = getAllocatedBytes();
+		if (alloc < 0) {return -1;}
+		return (alloc / 1048576.0) / (getMeanMillis() / 1000);
+	}
+
+
+	/**
+	 * Convert this result to a CSV line (see CSV_HEADER)
+	 * @return String
+	 */
+	public String toCSV() {
+		return String.format(Locale.ROOT,"%s,\"%s\",%d,%d,%.3f,%.3f,%.3f,%.1f,%d,%.1f",
+							 this.phase,this.params,this.bytes,this.nanos.length,getMeanMillis(),getMinMillis(),
+							 getStdDevMillis(),getThroughput(),getAllocatedBytes(),getAllocationRate());
+	}
+
+
+	/**
+	 * Convert this result to a single line JSON object
+	 * @return String
+	 */
+	public String toJSON() {
+		return String.format(Locale.ROOT,"{\"phase\":\"%s\",\"params\":\"%s\",\"bytes\":%d,\"iterations\":%d,"
+							 + "\"mean_ms\":%.3f,\"min_ms\":%.3f,\"stddev_ms\":%.3f,\"mb_per_s\":%.1f,"
+							 + "\"alloc_bytes\":%d,\"alloc_mb_per_s\":%.1f}",
+							 this.phase,this.params,this.bytes,this.nanos.length,getMeanMillis(),getMinMillis(),
+							 getStdDevMillis(),getThroughput(),getAllocatedBytes(),getAllocationRate());
+	}
+
+
+	/**
+	 * Convert this result to a CSV line
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return toCSV();
+	}
+}
@@ -0,0 +1,21 @@
+package jbase.bench;
+
+import java.util.Random;
+
+
+/**
+ * Chooses every record with the same probability, including records inserted during the run
+ * @author Bryan McClain
+ */
+public class UniformKeys implements KeyChooser {
+
+	/**
+	 * Choose a record
+	 * @param r Random number generator of the calling thread
+	 * @param count Number of records inserted so far
+	 * @return Record number, from 0 to count-1
+	 */
+	public long next(Random r, long count) {
+		return (long) (r.nextDouble() * count);
+	}
+}
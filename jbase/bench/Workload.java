@@ -0,0 +1,108 @@
+package jbase.bench;
+
+import java.util.Random;
+
+
+/**
+ * Mix of operations run by the workload driver, as the proportion of each operation.
+ *  The standard YCSB core workloads that JBase can run are available as presets.
+ *
+ * @author Bryan McClain
+ */
+public class Workload {
+
+	private final String name;
+	private final double[] mix;			// Proportion of each operation, adding up to 1 (indexed by ordinal)
+	private final double[] cumulative;	// Running total of the proportions, from 0 to 1
+
+
+	/**
+	 * Construct a new workload
+	 *
+	 * @param name Name of the workload, for printing
+	 * @param read Proportion of reads
+	 * @param update Proportion of updates
+	 * @param insert Proportion of inserts
+	 * @param scan Proportion of scans
+	 * @param delete Proportion of deletes
+	 * @throws IllegalArgumentException No proportion is greater than 0, or one is negative
+	 */
+	public Workload(String name, double read, double update, double insert, double scan, double delete) {
+		this.name = name;
+		this.mix = new double[] {read,update,insert,scan,delete};
+
+		double total = 0;
+		for (double m : this.mix) {
+			if (m < 0) {throw new IllegalArgumentException("Proportions cannot be negative");}
+			total += m;
+		}
+		if (total <= 0) {throw new IllegalArgumentException("At least one proportion must be greater than 0");}
+
+		//Scale the proportions so they add up to 1
+		this.cumulative = new double[this.mix.length];
+		double sum = 0;
+		for (int i = 0; i < this.mix.length; ++i) {
+			this.mix[i] /= total;
+			sum += this.mix[i];
+			this.cumulative[i] = sum;
+		}
+	}
+
+
+	/**
+	 * Get one of the YCSB core workloads:
+	 *  A (50% read, 50% update), B (95% read, 5% update), C (100% read),
+	 *  and E (95% scan, 5% insert). Workload D (read latest) is replaced by
+	 *  "churn" (50% read, 25% insert, 25% delete), which keeps the data set changing.
+	 *
+	 * @param name Name of the workload (a, b, c, e or churn)
+	 * @return The workload
+	 * @throws IllegalArgumentException Unknown workload
+	 */
+	public static Workload preset(String name) {
+		String n = name.toLowerCase();
+		if (n.equals("a")) {return new Workload("a",0.5,0.5,0,0,0);}
+		if (n.equals("b")) {return new Workload("b",0.95,0.05,0,0,0);}
+		if (n.equals("c")) {return new Workload("c",1,0,0,0,0);}
+		if (n.equals("e")) {return new Workload("e",0,0,0.05,0.95,0);}
+		if (n.equals("churn")) {return new Workload("churn",0.5,0,0.25,0,0.25);}
+		throw new IllegalArgumentException("Unknown workload '"+name+"'");
+	}
+
+
+	/**
+	 * Get the name of the workload
+	 * @return Name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Get the proportion of an operation
+	 * @param op The operation
+	 * @return Proportion (all operations add up to 1)
+	 */
+	public double getProportion(WorkloadOp op) {
+		return this.mix[op.ordinal()];
+	}
+
+
+	/**
+	 * Choose the next operation to run
+	 * @param r Random number generator of the calling thread
+	 * @return Operation
+	 */
+	public WorkloadOp choose(Random r) {
+		double u = r.nextDouble();
+		WorkloadOp[] ops = WorkloadOp.values();
+		int last = 0;
+		for (int i = 0; i < ops.length; ++i) {
+			if (this.mix[i] == 0) {continue;}
+			if (u < this.cumulative[i]) {return ops[i];}
+			last = i;
+		}
+		return ops[last];	// Rounding error at the top of the range
+	}
+}
@@ -0,0 +1,364 @@
+package jbase.bench;
+
+import jbase.database.*;
+import jbase.exception.*;
+import jbase.field.*;
+import jbase.storage.*;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * YCSB-style workload driver: loads a table of records, then runs a mix of reads, updates,
+ *  inserts, scans and deletes from several threads, and reports the throughput and the
+ *  latency percentiles of each operation (in the same format as YCSB, so existing tools can read it;
+ *  latencies are printed with fractions of a microsecond).
+ *
+ *  The schema is a key "user" (Long record ids) with String item fields "field0" to "fieldN",
+ *   and a foreign key "group" pointing at a second key "groups" with a String item "name".
+ *  Reads fetch every field and follow the foreign key; scans read field0 from a range of keys.
+ *
+ *  JBase fields are not thread-safe, so the driver holds a read-write lock around each operation:
+ *   reads and scans run in parallel, while updates, inserts and deletes run alone.
+ *   Latencies include any time spent waiting for the lock.
+ *
+ *  Run with: java jbase.bench.WorkloadDriver [workload=a,b,c,e,churn] [read=..] [update=..]
+ *   [insert=..] [scan=..] [delete=..] [distribution=zipfian,uniform] [threads=1,4]
+ *   [records=100000] [operations=1000000] [fields=10] [length=100] [scanlength=100]
+ *   [groups=100] [storage=heap|paged] [seed=42]
+ *
+ *  Giving any of read, update, insert, scan or delete replaces the preset workloads with a custom mix.
+ *
+ * @author Bryan McClain
+ */
+public class WorkloadDriver {
+
+	private static final String ROOT = "root";
+	private static final int OK = 0, NOT_FOUND = 1, ERROR = 2;		// Result of an operation
+	private static int databases = 0;								// Used to give each database a unique name
+
+	private final Workload workload;
+	private final KeyChooser chooser;
+	private final int records;
+	private final int fieldLength;
+	private final int scanLength;
+	private final long seed;
+	private final String params;			// Run parameters, for printing
+
+	private final Database db;
+	private final KeyField<Long> key;
+	private final ItemField<String>[] fields;
+	private final ForeignKeyField group;
+	private final ItemField<String> groupName;
+	private final int[] groupRows;
+	private final AtomicLong inserted;		// Next record id to insert
+	private final ReentrantReadWriteLock lock;
+	private final long loadNanos;
+
+
+	/**
+	 * Construct a new workload driver, and load the initial records
+	 *
+	 * @param workload Mix of operations to run
+	 * @param zipfian True to choose records with a Zipfian distribution, false for uniform
+	 * @param records Number of records to load
+	 * @param operations Number of operations that will be run (used to size the key)
+	 * @param fields String fields in each record
+	 * @param fieldLength Length of each string field
+	 * @param scanLength Maximum number of records read by a scan
+	 * @param groups Number of rows the foreign key can point to
+	 * @param storage Storage used by the string fields
+	 * @param seed Seed for the random values
+	 */
+	@SuppressWarnings("unchecked")
+	public WorkloadDriver(Workload workload, boolean zipfian, int records, long operations, int fields,
+						  int fieldLength, int scanLength, int groups, StorageType storage, long seed) {
+		this.workload = workload;
+		this.chooser = zipfian ? new ZipfianKeys(records,ZipfianKeys.DEFAULT_THETA) : new UniformKeys();
+		this.records = Math.max(1,records);
+		this.fieldLength = fieldLength;
+		this.scanLength = Math.max(1,scanLength);
+		this.seed = seed;
+		this.params = "workload="+workload.getName()+" distribution="+(zipfian ? "zipfian" : "uniform")
+					+ " records="+this.records+" operations="+operations+" fields="+fields
+					+ " length="+fieldLength+" storage="+storage.name().toLowerCase();
+
+		//Leave room for every insert the workload might do
+		long depth = this.records + (long) Math.ceil(operations * workload.getProportion(WorkloadOp.INSERT) * 1.1) + 1000;
+		if (depth > Integer.MAX_VALUE) {throw new IllegalArgumentException("Too many records for a single key");}
+
+		//Schema
+		this.db = Database.newDatabase("bench-workload-"+(++databases),ROOT,ROOT);
+		this.key = this.db.newKey("user",(int) depth);
+		this.fields = (ItemField<String>[]) new ItemField<?>[fields];
+		for (int i = 0; i < fields; ++i) {
+			this.fields[i] = this.db.newItem("field"+i,this.key,storage,String.class);
+		}
+
+		KeyField<Integer> groupKey = this.db.newKey("groups",Math.max(1,groups));
+		this.groupName = this.db.newItem("name",groupKey,StorageType.HEAP,String.class);
+		this.group = this.db.newForeignKey("group",this.key,groupKey);
+
+		this.inserted = new AtomicLong(0);
+		this.lock = new ReentrantReadWriteLock();
+
+		//Load phase
+		long start = System.nanoTime();
+		Random r = new Random(seed);
+		this.groupRows = new int[Math.max(1,groups)];
+		for (int i = 0; i < this.groupRows.length; ++i) {
+			this.groupRows[i] = groupKey.insert(i);
+			this.groupName.put(this.groupRows[i],randomString(r));
+		}
+		for (int i = 0; i < this.records; ++i) {insert(r,this.inserted.getAndIncrement(),newValues(r));}
+		this.loadNanos = System.nanoTime() - start;
+	}
+
+
+	/**
+	 * Run the workload from several threads, then print the report
+	 *
+	 * @param threads Number of threads
+	 * @param operations Total number of operations (split between the threads)
+	 * @param out Where to print the report
+	 * @throws InterruptedException Interrupted while waiting for the threads
+	 */
+	public void run(int threads, long operations, PrintStream out) throws InterruptedException {
+		int ops = WorkloadOp.values().length;
+		LatencyHistogram[][] hist = new LatencyHistogram[threads][ops];
+		long[][][] results = new long[threads][ops][3];
+		Thread[] workers = new Thread[threads];
+
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; ++t) {
+			final int id = t;
+			final long count = operations / threads + ((t < operations % threads) ? 1 : 0);
+			for (int op = 0; op < ops; ++op) {hist[t][op] = new LatencyHistogram();}
+			workers[t] = new Thread(() -> work(new Random(this.seed + 1 + id),count,hist[id],results[id]),
+									"workload-"+t);
+			workers[t].start();
+		}
+		for (Thread w : workers) {w.join();}
+		long elapsed = System.nanoTime() - start;
+
+		//Merge the results from every thread
+		LatencyHistogram[] total = new LatencyHistogram[ops];
+		long[][] returns = new long[ops][3];
+		for (int op = 0; op < ops; ++op) {
+			total[op] = new LatencyHistogram();
+			for (int t = 0; t < threads; ++t) {
+				total[op].merge(hist[t][op]);
+				for (int k = 0; k < 3; ++k) {returns[op][k] += results[t][op][k];}
+			}
+		}
+
+		report(out,threads,operations,elapsed,total,returns);
+	}
+
+
+	/**
+	 * Drop the database used by the driver
+	 */
+	public void close() {
+		this.db.dropDatabase();
+	}
+
+
+
+	/**
+	 * Run operations from a single thread
+	 */
+	private void work(Random r, long count, LatencyHistogram[] hist, long[][] results) {
+		for (long i = 0; i < count; ++i) {
+			WorkloadOp op = this.workload.choose(r);
+			int o = op.ordinal();
+
+			//Values are made before the timer starts
+			long id;
+			String[] values = null;
+			String value = null;
+			int scan = 0;
+			if (op == WorkloadOp.INSERT) {
+				id = this.inserted.getAndIncrement();
+				values = newValues(r);
+			} else {
+				id = this.chooser.next(r,this.inserted.get());
+				if (op == WorkloadOp.UPDATE) {value = randomString(r);}
+				if (op == WorkloadOp.SCAN) {scan = 1 + r.nextInt(this.scanLength);}
+			}
+
+			long start = System.nanoTime();
+			int result = runOp(op,r,id,values,value,scan);
+			hist[o].record(System.nanoTime() - start);
+			++results[o][result];
+		}
+	}
+
+
+	/**
+	 * Run a single operation, holding the lock
+	 * @return OK, NOT_FOUND or ERROR
+	 */
+	private int runOp(WorkloadOp op, Random r, long id, String[] values, String value, int scan) {
+		boolean write = (op == WorkloadOp.UPDATE || op == WorkloadOp.INSERT || op == WorkloadOp.DELETE);
+		if (write) {this.lock.writeLock().lock();}
+		else {this.lock.readLock().lock();}
+
+		try {
+			if (op == WorkloadOp.READ) {read(id);}
+			else if (op == WorkloadOp.UPDATE) {this.fields[r.nextInt(this.fields.length)].put(this.key.find(id),value);}
+			else if (op == WorkloadOp.INSERT) {insert(r,id,values);}
+			else if (op == WorkloadOp.SCAN) {scan(id,scan);}
+			else {this.key.delete(id);}
+			return OK;
+		} catch (JBaseDataNotFound ex) {
+			return NOT_FOUND;
+		} catch (JBaseException ex) {
+			return ERROR;
+		} finally {
+			if (write) {this.lock.writeLock().unlock();}
+			else {this.lock.readLock().unlock();}
+		}
+	}
+
+
+	/**
+	 * Read every field of a record, and follow its foreign key
+	 */
+	private void read(long id) {
+		int row = this.key.find(id);
+		for (ItemField<String> f : this.fields) {Blackhole.consume(f.get(row));}
+
+		Integer g = this.group.get(row);
+		if (g != null && g >= 0) {Blackhole.consume(this.groupName.get(g));}
+	}
+
+
+	/**
+	 * Insert a new record with every field filled
+	 */
+	private void insert(Random r, long id, String[] values) {
+		int row = this.key.insert(id);
+		for (int i = 0; i < this.fields.length; ++i) {this.fields[i].put(row,values[i]);}
+		this.group.put(row,this.groupRows[r.nextInt(this.groupRows.length)]);
+	}
+
+
+	/**
+	 * Read the first field from a range of records, in key order
+	 */
+	private void scan(long id, int count) {
+		int[] rows = this.key.page(id - 1,count);
+		ItemField<String> first = (this.fields.length > 0) ? this.fields[0] : null;
+		for (int row : rows) {
+			Blackhole.consume((first == null) ? this.key.get(row) : first.get(row));
+		}
+	}
+
+
+	/**
+	 * Make random values for every field of a new record
+	 */
+	private String[] newValues(Random r) {
+		String[] values = new String[this.fields.length];
+		for (int i = 0; i < values.length; ++i) {values[i] = randomString(r);}
+		return values;
+	}
+
+
+	/**
+	 * Make a random string of letters
+	 */
+	private String randomString(Random r) {
+		char[] buf = new char[this.fieldLength];
+		for (int i = 0; i < buf.length; ++i) {buf[i] = (char) ('a' + r.nextInt(26));}
+		return new String(buf);
+	}
+
+
+	/**
+	 * Print the report in the YCSB format: [SECTION], Metric, Value
+	 */
+	private void report(PrintStream out, int threads, long operations, long elapsed,
+						LatencyHistogram[] hist, long[][] returns) {
+		out.println("# "+this.params+" threads="+threads);
+		out.println("[LOAD], RunTime(ms), "+(this.loadNanos / 1000000));
+		out.println(String.format(Locale.ROOT,"[LOAD], Throughput(ops/sec), %.1f",this.records / (this.loadNanos / 1e9)));
+		out.println("[OVERALL], RunTime(ms), "+(elapsed / 1000000));
+		out.println(String.format(Locale.ROOT,"[OVERALL], Throughput(ops/sec), %.1f",operations / (elapsed / 1e9)));
+
+		for (WorkloadOp op : WorkloadOp.values()) {
+			LatencyHistogram h = hist[op.ordinal()];
+			if (h.getCount() == 0) {continue;}
+
+			String name = "["+op.name()+"], ";
+			out.println(name+"Operations, "+h.getCount());
+			out.println(String.format(Locale.ROOT,"%sAverageLatency(us), %.3f",name,h.getMean() / 1000));
+			out.println(String.format(Locale.ROOT,"%sMinLatency(us), %.3f",name,h.getMin() / 1000.0));
+			out.println(String.format(Locale.ROOT,"%sMaxLatency(us), %.3f",name,h.getMax() / 1000.0));
+			out.println(String.format(Locale.ROOT,"%s50thPercentileLatency(us), %.3f",name,h.getPercentile(50) / 1000.0));
+			out.println(String.format(Locale.ROOT,"%s95thPercentileLatency(us), %.3f",name,h.getPercentile(95) / 1000.0));
+			out.println(String.format(Locale.ROOT,"%s99thPercentileLatency(us), %.3f",name,h.getPercentile(99) / 1000.0));
+			out.println(String.format(Locale.ROOT,"%s99.9thPercentileLatency(us), %.3f",name,h.getPercentile(99.9) / 1000.0));
+
+			long[] ret = returns[op.ordinal()];
+			out.println(name+"Return=OK, "+ret[OK]);
+			if (ret[NOT_FOUND] > 0) {out.println(name+"Return=NOT_FOUND, "+ret[NOT_FOUND]);}
+			if (ret[ERROR] > 0) {out.println(name+"Return=ERROR, "+ret[ERROR]);}
+		}
+		out.println();
+	}
+
+
+
+	/**
+	 * Run the workload driver
+	 * @param argv Command line arguments (see the class description)
+	 * @throws InterruptedException Interrupted while waiting for the threads
+	 */
+	public static void main(String[] argv) throws InterruptedException {
+		BenchArgs args = new BenchArgs(argv);
+		int records = args.getInt("records",100000);
+		long operations = Long.parseLong(args.getString("operations","1000000"));
+		int fields = args.getInt("fields",10);
+		int length = args.getInt("length",100);
+		int scanLength = args.getInt("scanlength",100);
+		int groups = args.getInt("groups",100);
+		StorageType storage = StorageType.valueOf(args.getString("storage","heap").toUpperCase());
+		long seed = args.getInt("seed",42);
+
+		//A custom mix replaces the presets
+		Workload[] workloads;
+		String[] custom = {"read","update","insert","scan","delete"};
+		boolean isCustom = false;
+		for (String c : custom) {isCustom |= (args.get(c).length > 0);}
+
+		if (isCustom) {
+			double[] p = new double[custom.length];
+			for (int i = 0; i < custom.length; ++i) {p[i] = args.getDoubles(custom[i],0)[0];}
+			workloads = new Workload[] {new Workload("custom",p[0],p[1],p[2],p[3],p[4])};
+		} else {
+			String[] names = args.get("workload","a");
+			workloads = new Workload[names.length];
+			for (int i = 0; i < names.length; ++i) {workloads[i] = Workload.preset(names[i]);}
+		}
+
+		for (Workload w : workloads) {
+			for (String dist : args.get("distribution","zipfian")) {
+				for (int threads : args.getInts("threads",1)) {
+					WorkloadDriver driver = new WorkloadDriver(w,dist.equalsIgnoreCase("zipfian"),records,operations,
+															   fields,length,scanLength,groups,storage,seed);
+					try {
+						driver.run(Math.max(1,threads),operations,System.out);
+					} finally {
+						driver.close();
+					}
+				}
+			}
+		}
+	}
+}
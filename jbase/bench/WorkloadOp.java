@@ -0,0 +1,28 @@
+package jbase.bench;
+
+import jbase.JBaseAction;
+
+
+/**
+ * Operation run by the workload driver
+ * @author Bryan McClain
+ */
+public enum WorkloadOp implements JBaseAction {
+	READ,		/* Find a record, then read every field and follow its foreign key */
+	UPDATE,		/* Find a record, then replace one field */
+	INSERT,		/* Insert a new record with every field filled */
+	SCAN,		/* Read one field from a range of records, in key order */
+	DELETE;		/* Find a record, then delete it */
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
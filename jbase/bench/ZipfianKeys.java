@@ -0,0 +1,89 @@
+package jbase.bench;
+
+import java.util.Random;
+
+
+/**
+ * Chooses records with a Zipfian distribution (a few records are very popular, most are rarely used).
+ *  Uses the algorithm from "Quickly Generating Billion-Record Synthetic Databases" (Gray et al.),
+ *   the same one used by YCSB. The popular records are scattered across the whole key space
+ *   by hashing, rather than all being at the start.
+ *
+ *  The distribution covers the records that existed when it was created;
+ *   records inserted during the run are not chosen.
+ *
+ * @author Bryan McClain
+ */
+public class ZipfianKeys implements KeyChooser {
+
+	/** Skew used by YCSB */
+	public static final double DEFAULT_THETA = 0.99;
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final long items;
+	private final double alpha;
+	private final double zetan;
+	private final double eta;
+	private final double half;		// Probability bound for choosing the second item
+
+
+	/**
+	 * Construct a new Zipfian distribution
+	 * @param items Number of records to choose from
+	 * @param theta Skew of the distribution (from 0 to 1, excluding 1)
+	 */
+	public ZipfianKeys(long items, double theta) {
+		this.items = Math.max(1,items);
+		this.alpha = 1.0 / (1.0 - theta);
+		this.zetan = zeta(this.items,theta);
+
+		double zeta2 = zeta(2,theta);
+		this.eta = (1 - Math.pow(2.0 / this.items,1 - theta)) / (1 - zeta2 / this.zetan);
+		this.half = 1 + Math.pow(0.5,theta);
+	}
+
+
+	/**
+	 * Choose a record
+	 * @param r Random number generator of the calling thread
+	 * @param count Number of records inserted so far (ignored)
+	 * @return Record number, from 0 to items-1
+	 */
+	public long next(Random r, long count) {
+		double u = r.nextDouble();
+		double uz = u * this.zetan;
+
+		long rank;
+		if (uz < 1) {rank = 0;}
+		else if (uz < this.half) {rank = 1;}
+		else {rank = Math.min(this.items - 1,(long) (this.items * Math.pow(this.eta * u - this.eta + 1,this.alpha)));}
+
+		return Long.remainderUnsigned(fnv(rank),this.items);
+	}
+
+
+	/**
+	 * Compute the zeta constant: sum of 1/i^theta for i from 1 to n
+	 */
+	private static double zeta(long n, double theta) {
+		double sum = 0;
+		for (long i = 1; i <= n; ++i) {sum += 1 / Math.pow(i,theta);}
+		return sum;
+	}
+
+
+	/**
+	 * 64-bit FNV-1a hash of a number
+	 */
+	private static long fnv(long val) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < 8; ++i) {
+			hash ^= (val & 0xFF);
+			hash *= FNV_PRIME;
+			val >>>= 8;
+		}
+		return hash;
+	}
+}
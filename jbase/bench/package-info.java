@@ -0,0 +1,5 @@
+/**
+ * Benchmark harness and benchmark suites for JBase.
+ *  These classes are built by "make bench" and are not part of the JAR file.
+ */
+package jbase.bench;
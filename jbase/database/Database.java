@@ -4,9 +4,16 @@ package jbase.database;
 import jbase.field.*;
 import jbase.exception.*;
 import jbase.acl.*;
+import jbase.io.*;
+import jbase.storage.*;
+import jbase.index.*;
+import jbase.query.*;
+import jbase.metrics.*;
+import jbase.jfr.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
@@ -21,13 +28,24 @@ public class Database implements Serializable {
 
 	private final String dbname;				// Name of the database
 	private final UUID uuid;					// Unique UUID for this database
-	private HashMap<String,Field> fields;		// List of fields this database owns
-	private HashMap<String,User> users;			// List of users in the database
-	private User currentUser;					// Current user logged in to the database
+	private transient HashMap<String,Field> fields;	// List of fields this database owns (see writeObject())
+	private transient HashMap<String,User> users;	// List of users in the database
+	private transient User currentUser;				// Current user logged in to the database
+	private SnapshotCodec codec;				// Compression used when saving the database
+	private String storageDirectory;			// Directory holding the page files for paged fields
+	private int bufferPages;					// Number of pages held in memory by the buffer pool
+	private transient BufferPool bufferPool;	// Pages cached for all paged fields
+	private transient volatile RowCache rowCache;	// Rows read through foreign keys (null = off)
+	private transient volatile QueryCache queryCache;	// Results of queries and summaries (null = off)
+	private transient boolean dropped;			// Database has been dropped from memory
+	private transient MetricsRegistry metrics;	// Counters and latencies for every field
 
 	//Global list of all active databases
 	private static HashMap<String,Database> allDatabases = new HashMap<String,Database>(); 
 
+	//Database currently being read from a snapshot on each thread
+	private static final ThreadLocal<Database> reading = new ThreadLocal<Database>();
+
 
 	/**
 	 * Create a new Database object
@@ -41,6 +59,11 @@ public class Database implements Serializable {
 		this.uuid = UUID.randomUUID();
 		this.fields = new HashMap<String,Field>();
 		this.users = new HashMap<String,User>();
+		this.codec = SnapshotCodec.LZ;
+		this.storageDirectory = System.getProperty("java.io.tmpdir");
+		this.bufferPages = BufferPool.DEFAULT_CAPACITY;
+
+		this.metrics = new MetricsRegistry(dbname,this::loggedInUser);
 
 		//Create the root User
 		this.currentUser = new User(this,rootUser,rootPass,null);
@@ -72,6 +95,7 @@ public class Database implements Serializable {
 		//Create the database
 		Database db = new Database(dbname,rootUser,rootPass);
 		allDatabases.put(dbname,db);
+		db.getMetricsRegistry().registerMBean(db::snapshotMetrics);
 		return db;
 	}
 
@@ -133,6 +157,8 @@ public class Database implements Serializable {
 	 * Release the database from memory.
 	 *  The database object will continue to exist,
 	 *   but it won't be in the list of databases anymore.
+	 *  Page files and off-heap memory are released, so only fields stored
+	 *   on the heap can still be used (see Field.releaseStorage()).
 	 *
 	 * @throws JBaseDatabaseActionDenied User doesn't have permission to drop the database
 	 */
@@ -143,7 +169,35 @@ public class Database implements Serializable {
 		}
 
 		//Remove the database from the list
-		allDatabases.remove(this.dbname, this);
+		if (allDatabases.remove(this.dbname, this)) {
+			getMetricsRegistry().unregisterMBean();
+		}
+
+		releaseStorage();
+	}
+
+
+	/**
+	 * Mark the database as dropped, and release any files and native memory held by its fields.
+	 *  Also used for databases that are read from a snapshot and then thrown away.
+	 */
+	private void releaseStorage() {
+		this.dropped = true;
+		if (this.fields != null) {
+			for (Field f : this.fields.values()) {
+				f.releaseStorage();
+			}
+		}
+		if (this.bufferPool != null) {this.bufferPool.closeAll();}
+	}
+
+
+	/**
+	 * Test if this database has been dropped from memory
+	 * @return True if dropDatabase() was called
+	 */
+	public boolean isDropped() {
+		return this.dropped;
 	}
 
 
@@ -161,23 +215,81 @@ public class Database implements Serializable {
 		}
 
 		//Save it to a file (might throw an exception)
+		SnapshotEvent event = new SnapshotEvent();
+		event.begin();
+		long start = getMetricsRegistry().startTimer();
 		try {
-			FileOutputStream outFile = new FileOutputStream(filename);
-			ObjectOutputStream objOut = new ObjectOutputStream(outFile);
-
-			objOut.writeObject(this);
-
-			objOut.close();
-			outFile.close();
+			SnapshotFile.write(this,new File(filename),this.codec);
 		} catch (IOException ex) {
 			throw new JBaseIOException(filename,ex);
 		}
+		event.finish(this.dbname,"Save",filename);
+		getMetricsRegistry().logIfSlow(null,"Save",filename,start);
+	}
+
+
+	/**
+	 * Save the database as a new generation inside a directory.
+	 *  Generations are named "dbname.N.jbs", and only the newest few are kept.
+	 *
+	 * @param directory The directory holding all generations of this database
+	 * @param keep Number of generations to keep (including the new one)
+	 * @return The file that was written
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to save the database
+	 * @throws JBaseIOException Problem saving to the file
+	 */
+	public String saveGeneration(String directory, int keep)
+	 throws JBaseDatabaseActionDenied, JBaseIOException {
+		File dir = new File(directory);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new JBaseIOException(directory,new IOException("Unable to create directory"));
+		}
+
+		//The next generation is one past the newest on disk
+		File[] gens = SnapshotFile.allGenerations(dir,this.dbname);
+		long generation = (gens.length > 0) ? SnapshotFile.generationOf(gens[0],this.dbname) + 1 : 0;
+		File target = SnapshotFile.generationFile(dir,this.dbname,generation);
+		saveDatabase(target.getPath());
+
+		//Remove the oldest generations
+		for (int i = Math.max(keep-1,0); i < gens.length; ++i) {
+			gens[i].delete();
+		}
+		return target.getPath();
+	}
+
+
+	/**
+	 * Get the compression codec used when saving this database
+	 * @return Snapshot Codec
+	 */
+	public SnapshotCodec getSnapshotCodec() {
+		return this.codec;
+	}
+
+
+	/**
+	 * Set the compression codec used when saving this database.
+	 *  Snapshots record the codec for every block, so files written
+	 *   with any codec can always be loaded.
+	 *
+	 * @param codec The codec to use
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to save the database
+	 */
+	public void setSnapshotCodec(SnapshotCodec codec)
+	 throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.SAVE_DATABASE)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.SAVE_DATABASE);
+		}
+		this.codec = codec;
 	}
 
 
 	/**
 	 * Replace the data in an existing database.
-	 *  To use the updated database, you will need a new call to getDatabase()
+	 *  To use the updated database, you will need a new call to getDatabase().
+	 *  The storage held by this database object is released once it has been replaced.
 	 *
 	 * @param filename The file to load from
 	 *
@@ -187,73 +299,437 @@ public class Database implements Serializable {
 	 */
 	public void restoreDatabase(String filename)
 	 throws JBaseIOException, JBaseBadDatabase, JBaseWrongDatabase {
-		Database db;
-		try {
-			FileInputStream inFile = new FileInputStream(filename);
-			ObjectInputStream objIn = new ObjectInputStream(inFile);
-			
-			db = (Database) objIn.readObject();
-
-			objIn.close();
-			inFile.close();
-		} catch (ClassNotFoundException ex) {
-			throw new JBaseBadDatabase(filename);
-		} catch (InvalidClassException ex) {
-			throw new JBaseBadDatabase(filename);
-		} catch (IOException ex) {
-			throw new JBaseIOException(filename,ex);
-		}
+		SnapshotEvent event = new SnapshotEvent();
+		event.begin();
+		long start = getMetricsRegistry().startTimer();
+		Database db = readSnapshot(filename);
 
 		//Make sure the database uuid matches
 		if (!db.uuid.equals(this.uuid)) {
+			db.releaseStorage();
 			throw new JBaseWrongDatabase(this,this.uuid,db.uuid);
 		}
 		allDatabases.put(db.dbname,db);
+		releaseStorage();
+		getMetricsRegistry().unregisterMBean();
+		db.getMetricsRegistry().registerMBean(db::snapshotMetrics);
+		db.getMetricsRegistry().setSlowLog(getMetricsRegistry().getSlowLog());
+		event.finish(db.dbname,"Restore",filename);
+		getMetricsRegistry().logIfSlow(null,"Restore",filename,start);
 	}
 
 
 	/**
-	 * Load a database from a file, and add it to the list of databases
+	 * Load a database from a file, and add it to the list of databases.
+	 *  If given a directory of snapshot generations, the database is recovered
+	 *   from the newest intact generation (see recoverDatabase()).
+	 *
 	 * @param filename The file to load
+	 * @return Report of what was discarded if recovered from a directory, or null for a single file
 	 *
 	 * @throws JBaseIOException Problem reading from the file
 	 * @throws JBaseBadDatabase File does not contain a valid database
 	 * @throws JBaseDuplicateDatabase Cannot load a database that already exists
 	 */
-	public static void loadDatabase(String filename)
+	public static RecoveryReport loadDatabase(String filename)
 	 throws JBaseIOException, JBaseBadDatabase, JBaseDuplicateDatabase {
+		if (new File(filename).isDirectory()) {
+			return recoverDatabase(filename);
+		}
+
+		SnapshotEvent event = new SnapshotEvent();
+		event.begin();
+		long start = System.nanoTime();		// Logged to the default slow operation log, if there is one
+		Database db = readSnapshot(filename);
+		addLoaded(db);
+		event.finish(db.dbname,"Load",filename);
+		db.getMetricsRegistry().logIfSlow(null,"Load",filename,start);
+		return null;
+	}
 
-		Database db;
-		try {
-			FileInputStream inFile = new FileInputStream(filename);
-			ObjectInputStream objIn = new ObjectInputStream(inFile);
-			
-			db = (Database) objIn.readObject();
 
-			objIn.close();
-			inFile.close();
+	/**
+	 * Recover a database from a directory of snapshot generations (see saveGeneration()).
+	 *  The directory must only hold the generations of one database.
+	 *
+	 * @param directory The directory holding all generations of the database
+	 * @return Report of which generation was loaded, and what was discarded
+	 *
+	 * @throws JBaseIOException Problem reading the directory
+	 * @throws JBaseBadDatabase No intact snapshot exists in the directory, or it holds more than one database
+	 * @throws JBaseDuplicateDatabase Cannot load a database that already exists
+	 */
+	public static RecoveryReport recoverDatabase(String directory)
+	 throws JBaseIOException, JBaseBadDatabase, JBaseDuplicateDatabase {
+		File dir = new File(directory);
+		if (!dir.isDirectory()) {
+			throw new JBaseIOException(directory,new FileNotFoundException(directory+" is not a directory"));
+		}
+
+		String[] names = SnapshotFile.allNames(dir);
+		if (names.length != 1) {throw new JBaseBadDatabase(directory);}
+		return recoverDatabase(directory,names[0]);
+	}
+
+
+	/**
+	 * Recover a database from a directory of snapshot generations (see saveGeneration()).
+	 *  Generations of the database are tried from newest to oldest, and the first one that passes
+	 *   all block checksums is loaded. Leftover temporary files from interrupted saves of the
+	 *   database are deleted. Files belonging to other databases are left alone.
+	 *
+	 * @param directory The directory holding all generations of the database
+	 * @param dbname Name of the database to recover
+	 * @return Report of which generation was loaded, and what was discarded
+	 *
+	 * @throws JBaseIOException Problem reading the directory
+	 * @throws JBaseBadDatabase No intact snapshot of the database exists in the directory
+	 * @throws JBaseDuplicateDatabase Cannot load a database that already exists
+	 */
+	public static RecoveryReport recoverDatabase(String directory, String dbname)
+	 throws JBaseIOException, JBaseBadDatabase, JBaseDuplicateDatabase {
+		File dir = new File(directory);
+		if (!dir.isDirectory()) {
+			throw new JBaseIOException(directory,new FileNotFoundException(directory+" is not a directory"));
+		}
+
+		SnapshotEvent event = new SnapshotEvent();
+		event.begin();
+		long start = System.nanoTime();
+		LinkedHashMap<String,String> discarded = new LinkedHashMap<String,String>();
+
+		//Interrupted saves never replaced their target, so just clean them up
+		for (File temp : SnapshotFile.allTempFiles(dir,dbname)) {
+			discarded.put(temp.getPath(),"Incomplete save");
+			temp.delete();
+		}
+
+		int skipped = 0;
+		for (File gen : SnapshotFile.allGenerations(dir,dbname)) {
+			Database db;
+			try {
+				db = readSnapshot(gen.getPath());
+			} catch (JBaseException ex) {
+				discarded.put(gen.getPath(),ex.getMessage());
+				++skipped;
+				continue;
+			}
+			if (!db.dbname.equals(dbname)) {
+				discarded.put(gen.getPath(),"Snapshot of database '"+db.dbname+"'");
+				db.releaseStorage();
+				++skipped;
+				continue;
+			}
+
+			addLoaded(db);
+			event.finish(db.dbname,"Recover",gen.getPath());
+			db.getMetricsRegistry().logIfSlow(null,"Recover",gen.getPath(),start);
+			return new RecoveryReport(gen.getPath(),discarded,skipped);
+		}
+
+		throw new JBaseBadDatabase(directory);
+	}
+
+
+	/**
+	 * Add a newly loaded database to the list of databases.
+	 *  If it can't be added, its storage is released.
+	 *
+	 * @param db The database that was loaded
+	 * @throws JBaseDuplicateDatabase Cannot load a database that already exists
+	 */
+	private static void addLoaded(Database db) throws JBaseDuplicateDatabase {
+
+		//Make sure the database doesn't already exist
+		if (allDatabases.containsKey(db.dbname)) {
+			db.releaseStorage();
+			throw new JBaseDuplicateDatabase(allDatabases.get(db.dbname));
+		}
+		allDatabases.put(db.dbname,db);
+		db.getMetricsRegistry().registerMBean(db::snapshotMetrics);
+	}
+
+
+	/**
+	 * Read a database snapshot from a file.
+	 *  If reading fails partway through, any page files already created for the database are deleted.
+	 *
+	 * @param filename The file to read
+	 * @return The database stored in the file
+	 *
+	 * @throws JBaseIOException Problem reading from the file
+	 * @throws JBaseBadDatabase File does not contain a valid database
+	 */
+	private static Database readSnapshot(String filename)
+	 throws JBaseIOException, JBaseBadDatabase {
+		Database db = null;
+		try {
+			db = (Database) SnapshotFile.read(new File(filename));
 		} catch (ClassNotFoundException ex) {
 			throw new JBaseBadDatabase(filename);
-		} catch (InvalidClassException ex) {
+		} catch (ObjectStreamException ex) {
+			throw new JBaseBadDatabase(filename);
+		} catch (ClassCastException ex) {
 			throw new JBaseBadDatabase(filename);
 		} catch (IOException ex) {
 			throw new JBaseIOException(filename,ex);
+		} finally {
+			Database partial = reading.get();
+			reading.remove();
+			if (db == null && partial != null) {partial.releaseStorage();}
 		}
+		return db;
+	}
 
-		//Make sure the database doesn't already exist
-		if (allDatabases.containsKey(db.dbname)) {
-			throw new JBaseDuplicateDatabase(allDatabases.get(db.dbname));
+
+	//============Storage Settings==============
+
+	/**
+	 * Get the directory that holds the page files for paged fields
+	 * @return Storage Directory
+	 */
+	public String getStorageDirectory() {
+		return this.storageDirectory;
+	}
+
+
+	/**
+	 * Set the directory that holds the page files for new paged fields
+	 * @param directory The storage directory
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 */
+	public void setStorageDirectory(String directory)
+	  throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
 		}
-		allDatabases.put(db.dbname,db);
+		this.storageDirectory = directory;
+	}
+
+
+	/**
+	 * Get the buffer pool caching the pages of all paged fields.
+	 *  The pool is created the first time it is needed.
+	 *
+	 * @return Buffer Pool
+	 */
+	public synchronized BufferPool getBufferPool() {
+		if (this.bufferPool == null) {
+			this.bufferPool = new BufferPool((this.bufferPages > 0) ? this.bufferPages : BufferPool.DEFAULT_CAPACITY);
+		}
+		return this.bufferPool;
+	}
+
+
+	/**
+	 * Set the number of pages the buffer pool can hold in memory
+	 *
+	 * @param pages Number of pages
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 */
+	public void setBufferPoolSize(int pages)
+	  throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+		this.bufferPages = pages;
+		getBufferPool().setCapacity(pages);
+	}
+
+
+	/**
+	 * Get the cache of rows read through foreign keys (see ForeignKeyField.deref())
+	 * @return Row Cache, or null if rows aren't cached
+	 */
+	public RowCache getRowCache() {
+		return this.rowCache;
+	}
+
+
+	/**
+	 * Set the size of the cache of rows read through foreign keys.
+	 *  Any rows already cached are dropped. The cache isn't saved in snapshots,
+	 *   so it must be set again after restoring or loading the database.
+	 *
+	 * @param rows Maximum number of rows (0 = don't cache rows)
+	 * @param bytes Maximum estimated size of all rows
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 */
+	public void setRowCache(int rows, long bytes)
+	  throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+		this.rowCache = (rows > 0 && bytes > 0) ? new RowCache(rows,bytes) : null;
+	}
+
+
+	/**
+	 * Get the cache of query results and summaries (see Query.run() and Aggregate.summary())
+	 * @return Query Cache, or null if results aren't cached
+	 */
+	public QueryCache getQueryCache() {
+		return this.queryCache;
+	}
+
+
+	/**
+	 * Set the size of the cache of query results and summaries.
+	 *  Any results already cached are dropped. The cache isn't saved in snapshots,
+	 *   so it must be set again after restoring or loading the database.
+	 *
+	 * @param results Maximum number of results (0 = don't cache results)
+	 * @param bytes Maximum estimated size of all results
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 */
+	public void setQueryCache(int results, long bytes)
+	  throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+		this.queryCache = (results > 0 && bytes > 0) ? new QueryCache(results,bytes) : null;
+	}
+
+
+
+	/**
+	 * Write the database to a snapshot.
+	 *  The settings are written before the users and fields, so the buffer pool
+	 *   already has its configured size when paged fields are read back.
+	 *
+	 * @param out The stream to write to
+	 * @throws IOException Problem writing to the stream
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(this.users);
+		out.writeObject(this.currentUser);
+		out.writeObject(this.fields);
+	}
+
+
+	/**
+	 * Read the database from a snapshot
+	 *
+	 * @param in The stream to read from
+	 * @throws IOException Problem reading from the stream
+	 * @throws ClassNotFoundException Snapshot contains an unknown class
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		reading.set(this);		// So the storage can be released if the read fails
+		in.defaultReadObject();
+		getBufferPool();		// Sized before any paged field is read
+		this.users = (HashMap<String,User>) in.readObject();
+		this.currentUser = (User) in.readObject();
+		this.fields = (HashMap<String,Field>) in.readObject();
+	}
+
+
+
+	//============Metrics==============
+
+	/**
+	 * Get the registry holding the counters and latencies for every field.
+	 *  The registry is created the first time it is needed.
+	 *
+	 * @return Metrics Registry
+	 */
+	public synchronized MetricsRegistry getMetricsRegistry() {
+		if (this.metrics == null) {
+			this.metrics = new MetricsRegistry(this.dbname,this::loggedInUser);
+		}
+		return this.metrics;
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics for every field: calls and errors for each action,
+	 *  errors by exception type, latency percentiles (if tracked), depth and rows in use
+	 *
+	 * @return Metrics Snapshot
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to view the metrics
+	 */
+	public MetricsSnapshot metrics() throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.VIEW_METRICS)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.VIEW_METRICS);
+		}
+		return snapshotMetrics();
+	}
+
+
+	/**
+	 * Turn timing of every field operation on or off.
+	 *  Timing costs two reads of the system clock per operation, so it is off by default.
+	 *
+	 * @param on True to turn latency tracking on
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to view the metrics
+	 */
+	public void setLatencyTracking(boolean on) throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.VIEW_METRICS)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.VIEW_METRICS);
+		}
+		getMetricsRegistry().setLatencyTracking(on);
+	}
+
+
+	/**
+	 * Set every field counter and latency histogram back to zero
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to view the metrics
+	 */
+	public void resetMetrics() throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.VIEW_METRICS)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.VIEW_METRICS);
+		}
+		getMetricsRegistry().reset();
+	}
+
+
+	/**
+	 * Get the log that slow operations are written to
+	 * @return Slow operation log, or null if slow operations aren't logged
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to view the metrics
+	 */
+	public SlowOperationLog getSlowLog() throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.VIEW_METRICS)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.VIEW_METRICS);
+		}
+		return getMetricsRegistry().getSlowLog();
+	}
+
+
+	/**
+	 * Log every field operation, query, save and load that takes longer than the threshold of a log.
+	 *  The log is not closed when it is replaced, since it can be shared by several databases.
+	 *
+	 * @param log Slow operation log (null = stop logging slow operations)
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to view the metrics
+	 */
+	public void setSlowLog(SlowOperationLog log) throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.VIEW_METRICS)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.VIEW_METRICS);
+		}
+		getMetricsRegistry().setSlowLog(log);
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics without checking permissions (used by JMX)
+	 * @return Metrics Snapshot
+	 */
+	private MetricsSnapshot snapshotMetrics() {
+		return getMetricsRegistry().snapshot(allFields());
 	}
 
 
+
 	//============Field Actions==============
 
 
 
 	/**
-	 * Construct a new Key Field in the database
+	 * Construct a new Key Field in the database, stored on the heap
 	 *
 	 * @param name The name of the field
 	 * @param depth The depth of this field (number of rows)
@@ -264,6 +740,107 @@ public class Database implements Serializable {
 	 */
 	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth)
 	  throws JBaseDuplicateField {
+		return newKey(name,depth,StorageType.HEAP);
+	}
+
+
+	/**
+	 * Construct a new Key Field in the database with a known data type, stored on the heap
+	 *
+	 * @param name The name of the field
+	 * @param depth The depth of this field (number of rows)
+	 * @param type Type of data stored in the field
+	 * @return The new key field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 */
+	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth, Class<T> type)
+	  throws JBaseDuplicateField {
+		return newKey(name,depth,StorageType.HEAP,KeyIndexType.TREE,type);
+	}
+
+
+	/**
+	 * Construct a new Key Field in the database
+	 *
+	 * @param name The name of the field
+	 * @param depth The depth of this field (number of rows)
+	 * @param storage Storage engine used to hold the rows
+	 * @return The new key field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine cannot hold key fields
+	 */
+	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth, StorageType storage)
+	  throws JBaseDuplicateField {
+		return newKey(name,depth,storage,KeyIndexType.TREE);
+	}
+
+
+	/**
+	 * Construct a new Key Field in the database
+	 *
+	 * @param name The name of the field
+	 * @param depth The depth of this field (number of rows)
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 * @return The new key field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine cannot hold key fields
+	 */
+	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth, StorageType storage,
+																		 KeyIndexType indexType)
+	  throws JBaseDuplicateField {
+		return newKey(name,depth,storage,indexType,null);
+	}
+
+
+	/**
+	 * Construct a new Key Field in the database with a known data type.
+	 *  Knowing the type lets keys of fixed-width types (numbers, characters and booleans)
+	 *   be stored off the heap, and every insert is checked against the type.
+	 *
+	 * @param name The name of the field
+	 * @param depth The depth of this field (number of rows)
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 * @param type Type of data stored in the field (null = unknown)
+	 * @return The new key field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine cannot hold this type of data
+	 */
+	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth, StorageType storage,
+																		 KeyIndexType indexType, Class<T> type)
+	  throws JBaseDuplicateField, JBaseBadStorage {
+		return newKey(name,depth,storage,indexType,type,BTreeValueIndex.DEFAULT_FANOUT);
+	}
+
+
+	/**
+	 * Construct a new Key Field in the database with a known data type and B+tree fanout.
+	 *  The fanout is saved with the field, so the index keeps it when it is rebuilt on load.
+	 *
+	 * @param name The name of the field
+	 * @param depth The depth of this field (number of rows)
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 * @param type Type of data stored in the field (null = unknown)
+	 * @param fanout Maximum number of keys in a B+tree node (only used by KeyIndexType.BTREE, at least 3)
+	 * @return The new key field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine cannot hold this type of data
+	 */
+	public <T extends Serializable & Comparable<T>> KeyField<T> newKey(String name, int depth, StorageType storage,
+																		 KeyIndexType indexType, Class<T> type, int fanout)
+	  throws JBaseDuplicateField, JBaseBadStorage {
 		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
 			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
 		}
@@ -273,15 +850,21 @@ public class Database implements Serializable {
 			throw new JBaseDuplicateField(this,name);
 		}
 
-		KeyField<T> key = new KeyField<T>(this,name,depth);
+		type = Field.boxed(type);
+		if (!storage.supports(type)) {
+			throw new JBaseBadStorage(this,storage,type);
+		}
+
+		KeyField<T> key = new KeyField<T>(this,name,depth,storage,indexType,type,fanout);
 		this.fields.put(name,key);
+		FieldChangeEvent.record(key,FieldChangeEvent.CREATE);
 		return key;
 	}
 
 
 
 	/**
-	 * Construct a new Item Field in the database
+	 * Construct a new Item Field in the database, stored on the heap
 	 *
 	 * @param name The name of the item field
 	 * @param owner Field that owns this item field
@@ -292,6 +875,60 @@ public class Database implements Serializable {
 	 */
 	public <T extends Serializable> ItemField<T> newItem(String name, ParentField owner)
 	  throws JBaseDuplicateField {
+		return newItem(name,owner,StorageType.HEAP);
+	}
+
+
+	/**
+	 * Construct a new Item Field in the database with a known data type, stored on the heap
+	 *
+	 * @param name The name of the item field
+	 * @param owner Field that owns this item field
+	 * @param type Type of data stored in the field
+	 * @return The new item field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 */
+	public <T extends Serializable> ItemField<T> newItem(String name, ParentField owner, Class<T> type)
+	  throws JBaseDuplicateField {
+		return newItem(name,owner,StorageType.HEAP,type);
+	}
+
+
+	/**
+	 * Construct a new Item Field in the database
+	 *
+	 * @param name The name of the item field
+	 * @param owner Field that owns this item field
+	 * @param storage Storage engine used to hold the rows
+	 * @return The new item field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine needs to know the type of data
+	 */
+	public <T extends Serializable> ItemField<T> newItem(String name, ParentField owner, StorageType storage)
+	  throws JBaseDuplicateField, JBaseBadStorage {
+		return newItem(name,owner,storage,null);
+	}
+
+
+	/**
+	 * Construct a new Item Field in the database with a known data type
+	 *
+	 * @param name The name of the item field
+	 * @param owner Field that owns this item field
+	 * @param storage Storage engine used to hold the rows
+	 * @param type Type of data stored in the field (null = unknown)
+	 * @return The new item field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 * @throws JBaseBadStorage The storage engine cannot hold this type of data
+	 */
+	public <T extends Serializable> ItemField<T> newItem(String name, ParentField owner, StorageType storage, Class<T> type)
+	  throws JBaseDuplicateField, JBaseBadStorage {
 		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
 			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
 		}
@@ -301,8 +938,14 @@ public class Database implements Serializable {
 			throw new JBaseDuplicateField(this,name);
 		}
 
-		ItemField<T> item = new ItemField<T>(this,name,owner);
+		type = Field.boxed(type);
+		if (!storage.supports(type)) {
+			throw new JBaseBadStorage(this,storage,type);
+		}
+
+		ItemField<T> item = new ItemField<T>(this,name,owner,storage,type);
 		this.fields.put(name,item);
+		FieldChangeEvent.record(item,FieldChangeEvent.CREATE);
 		return item;
 	}
 
@@ -310,7 +953,7 @@ public class Database implements Serializable {
 
 
 	/**
-	 * Construct a new Foreign Key Field in the database
+	 * Construct a new Foreign Key Field in the database, stored on the heap
 	 *
 	 * @param name The name of the foreign key field
 	 * @param owner Field that owns this foreign key field
@@ -321,6 +964,44 @@ public class Database implements Serializable {
 	 * @throws JBaseDuplicateField This field already exists in the database
 	 */
 	public ForeignKeyField newForeignKey(String name, ParentField owner, PointableField point)
+	  throws JBaseDuplicateField {
+		return newForeignKey(name,owner,point,StorageType.HEAP);
+	}
+
+
+	/**
+	 * Construct a new Foreign Key Field in the database
+	 *
+	 * @param name The name of the foreign key field
+	 * @param owner Field that owns this foreign key field
+	 * @param point Field that this points to
+	 * @param storage Storage engine used to hold the rows
+	 * @return The new item field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 */
+	public ForeignKeyField newForeignKey(String name, ParentField owner, PointableField point, StorageType storage)
+	  throws JBaseDuplicateField {
+		return newForeignKey(name,owner,point,storage,ReferencePolicy.NO_ACTION);
+	}
+
+
+	/**
+	 * Construct a new Foreign Key Field in the database
+	 *
+	 * @param name The name of the foreign key field
+	 * @param owner Field that owns this foreign key field
+	 * @param point Field that this points to
+	 * @param storage Storage engine used to hold the rows
+	 * @param policy What to do when a row this field points to is deleted
+	 * @return The new item field
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseDuplicateField This field already exists in the database
+	 */
+	public ForeignKeyField newForeignKey(String name, ParentField owner, PointableField point,
+										 StorageType storage, ReferencePolicy policy)
 	  throws JBaseDuplicateField {
 		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
 			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
@@ -331,13 +1012,180 @@ public class Database implements Serializable {
 			throw new JBaseDuplicateField(this,name);
 		}
 
-		ForeignKeyField fkey = new ForeignKeyField(this,name,owner,point);
+		ForeignKeyField fkey = new ForeignKeyField(this,name,owner,point,storage,policy);
 		this.fields.put(name,fkey);
+		FieldChangeEvent.record(fkey,FieldChangeEvent.CREATE);
 		return fkey;
 	}
 
 
 
+	/**
+	 * Create a secondary index on a field, so rows can be found by value.
+	 *  The index is built from the current values, and kept up to date on every put.
+	 *  Creating an index that already exists does nothing.
+	 *
+	 * @param field The field to index
+	 * @param kind The kind of index to create
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseFieldNotFound The field isn't in this database
+	 * @throws JBaseBadIndex The values in the field cannot be indexed this way
+	 */
+	public void createIndex(Field<?> field, IndexKind kind)
+	  throws JBaseDatabaseActionDenied, JBaseFieldNotFound, JBaseBadIndex {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+
+		if (this.fields.get(field.getName()) != field) {
+			throw new JBaseFieldNotFound(this,field.getName());
+		}
+
+		field.addIndex(kind);
+	}
+
+
+	/**
+	 * Remove a secondary index from a field
+	 *
+	 * @param field The indexed field
+	 * @param kind The kind of index to remove
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseFieldNotFound The field isn't in this database
+	 */
+	public void dropIndex(Field<?> field, IndexKind kind)
+	  throws JBaseDatabaseActionDenied, JBaseFieldNotFound {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+
+		if (this.fields.get(field.getName()) != field) {
+			throw new JBaseFieldNotFound(this,field.getName());
+		}
+
+		field.removeIndex(kind);
+	}
+
+
+	/**
+	 * Create a composite index over several item fields of the same parent.
+	 *  The index is sorted by the fields in the order given.
+	 *
+	 * @param name The name of the new index
+	 * @param first First field in the index
+	 * @param rest Other fields in the index, in sort order
+	 * @return The new index
+	 *
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 * @throws JBaseFieldNotFound One of the fields isn't in this database
+	 * @throws JBaseDuplicateIndex A composite index with the same name already exists
+	 * @throws JBaseBadIndex The fields don't share a parent, or hold values that cannot be sorted
+	 */
+	public CompositeIndex createCompositeIndex(String name, ItemField<?> first, ItemField<?>... rest)
+	  throws JBaseDatabaseActionDenied, JBaseFieldNotFound, JBaseDuplicateIndex, JBaseBadIndex {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+
+		if (this.fields.get(first.getName()) != first) {
+			throw new JBaseFieldNotFound(this,first.getName());
+		}
+		for (ItemField<?> column : rest) {
+			if (this.fields.get(column.getName()) != column) {
+				throw new JBaseFieldNotFound(this,column.getName());
+			}
+		}
+
+		//Test for duplicate indexes
+		if (getCompositeIndex(name) != null) {
+			throw new JBaseDuplicateIndex(this,name);
+		}
+
+		return new CompositeIndex(name,first,rest);
+	}
+
+
+	/**
+	 * Get a composite index by name
+	 * @param name The name of the index
+	 * @return The index, or null if it doesn't exist
+	 */
+	public CompositeIndex getCompositeIndex(String name) {
+		for (Field f : this.fields.values()) {
+			if (!(f instanceof ItemField)) {continue;}
+			for (CompositeIndex composite : ((ItemField<?>) f).allCompositeIndexes()) {
+				if (composite.getName().equals(name)) {return composite;}
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Remove a composite index
+	 *
+	 * @param name The name of the index
+	 * @throws JBaseDatabaseActionDenied User doesn't have permission to create new fields
+	 */
+	public void dropCompositeIndex(String name) throws JBaseDatabaseActionDenied {
+		if (!getACL().canDo(DatabaseAction.CREATE_FIELD)) {
+			throw new JBaseDatabaseActionDenied(currentUser(),this,DatabaseAction.CREATE_FIELD);
+		}
+
+		CompositeIndex composite = getCompositeIndex(name);
+		if (composite != null) {composite.detach();}
+	}
+
+
+
+	/**
+	 * Start a new query over a key field and its children
+	 *
+	 * @param key The key field to query
+	 * @return The new query
+	 * @throws JBaseFieldNotFound The key isn't in this database
+	 */
+	public Query query(KeyField<?> key) throws JBaseFieldNotFound {
+		if (this.fields.get(key.getName()) != key) {
+			throw new JBaseFieldNotFound(this,key.getName());
+		}
+		return new Query(key);
+	}
+
+
+	/**
+	 * Start a new join that follows foreign keys from a key field
+	 *
+	 * @param source The key field to start from
+	 * @return The new join
+	 * @throws JBaseFieldNotFound The key isn't in this database
+	 */
+	public Join join(KeyField<?> source) throws JBaseFieldNotFound {
+		if (this.fields.get(source.getName()) != source) {
+			throw new JBaseFieldNotFound(this,source.getName());
+		}
+		return new Join(source);
+	}
+
+
+	/**
+	 * Start a new aggregate over the values in a field
+	 *
+	 * @param field The field to aggregate
+	 * @return The new aggregate
+	 * @throws JBaseFieldNotFound The field isn't in this database
+	 */
+	public Aggregate aggregate(Field<?> field) throws JBaseFieldNotFound {
+		if (this.fields.get(field.getName()) != field) {
+			throw new JBaseFieldNotFound(this,field.getName());
+		}
+		return new Aggregate(field);
+	}
+
+
+
 	/**
 	 * Get a field from the database
 	 *
@@ -364,6 +1212,12 @@ public class Database implements Serializable {
 	public void deleteField(Field field, UUID key) {
 		if (!field.validateUUID(key)) {return;}
 		this.fields.remove(field.getName());
+		getMetricsRegistry().removeField(field.getName());
+		RowCache cache = this.rowCache;
+		if (cache != null && field instanceof PointableField) {cache.invalidateAll((PointableField) field);}
+		QueryCache results = this.queryCache;
+		if (results != null) {results.invalidateField(field);}
+		FieldChangeEvent.record(field,FieldChangeEvent.DELETE);
 	}
 
 
@@ -389,6 +1243,15 @@ public class Database implements Serializable {
 	}
 
 
+	/**
+	 * Get the username for the current user, if anybody is logged in (used by the slow operation log)
+	 * @return Current User, or null
+	 */
+	private String loggedInUser() {
+		return (this.currentUser == null) ? null : this.currentUser.getUsername();
+	}
+
+
 	/**
 	 * Get an array of all users visible to the current user
 	 * @return List of visible users
@@ -15,7 +15,8 @@ public enum DatabaseAction implements JBaseAction {
 	VIEW_USERS,
 	ADD_USER,
 	DELETE_USER,
-	EDIT_PERMISSIONS;
+	EDIT_PERMISSIONS,
+	VIEW_METRICS;
 
 	/**
 	 * Convert this enum constant to a camel-case string.
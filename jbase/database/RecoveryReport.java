@@ -0,0 +1,58 @@
+package jbase.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Describes the result of recovering a database from a directory of snapshot generations
+ * @author Bryan McClain
+ */
+public class RecoveryReport {
+
+	private final String loaded;						// Snapshot file that was loaded
+	private final LinkedHashMap<String,String> discarded;	// Files skipped, and why
+	private final int skipped;							// Number of generations skipped
+
+
+	/**
+	 * Construct a new recovery report
+	 * @param loaded The snapshot file that was loaded
+	 * @param discarded Map of discarded files to the reason they were discarded
+	 * @param skipped Number of generations newer than the loaded one that were discarded
+	 */
+	public RecoveryReport(String loaded, LinkedHashMap<String,String> discarded, int skipped) {
+		this.loaded = loaded;
+		this.discarded = discarded;
+		this.skipped = skipped;
+	}
+
+
+	/**
+	 * Get the snapshot file that was loaded
+	 * @return Filename
+	 */
+	public String getLoaded() {
+		return this.loaded;
+	}
+
+
+	/**
+	 * Get all files that were discarded during recovery, newest first
+	 * @return A copy of the map of filenames to the reason they were discarded
+	 */
+	public Map<String,String> getDiscarded() {
+		return new LinkedHashMap<String,String>(this.discarded);
+	}
+
+
+	/**
+	 * Test if recovery had to fall back to an older snapshot.
+	 *  Leftover temporary files from interrupted saves don't count.
+	 *
+	 * @return True if any newer snapshot was discarded
+	 */
+	public boolean fellBack() {
+		return this.skipped > 0;
+	}
+}
@@ -0,0 +1,65 @@
+package jbase.exception;
+
+import jbase.field.Field;
+import jbase.index.IndexKind;
+
+
+/**
+ * Thrown when a field cannot hold a given kind of secondary index
+ *  (For example, a sorted index on values that cannot be compared)
+ *
+ * @author Bryan McClain
+ */
+public class JBaseBadIndex extends JBaseFieldException {
+
+	private final IndexKind kind;
+
+
+	/**
+	 * Create a new Bad Index exception
+	 * @param field The field being indexed
+	 * @param kind The kind of index requested
+	 */
+	public JBaseBadIndex(Field field, IndexKind kind) {
+		super(field,"Cannot create a '"+kind.toString()+"' index "+
+			  "on field '"+field.getName()+"'!");
+		this.kind = kind;
+	}
+
+
+	/**
+	 * Create a new Bad Index exception for an index that isn't a single kind
+	 *  (For example, a composite index over several fields)
+	 *
+	 * @param field The field being indexed
+	 * @param reason Why the index cannot be created
+	 */
+	public JBaseBadIndex(Field field, String reason) {
+		super(field,"Cannot create an index on field '"+field.getName()+"' ("+reason+")!");
+		this.kind = null;
+	}
+
+
+	/**
+	 * Create a new Bad Index exception for a value that an existing index cannot hold
+	 *  (For example, a String stored in a field whose sorted index holds Integers)
+	 *
+	 * @param field The field being indexed
+	 * @param kind The kind of index that cannot hold the value
+	 * @param val The value that was given
+	 */
+	public JBaseBadIndex(Field field, IndexKind kind, Object val) {
+		super(field,"Cannot store a value of type '"+val.getClass().getSimpleName()+"' "+
+			  "in the '"+kind.toString()+"' index on field '"+field.getName()+"'!");
+		this.kind = kind;
+	}
+
+
+	/**
+	 * Get the kind of index that was requested
+	 * @return Index Kind, or null for a composite index
+	 */
+	public IndexKind getKind() {
+		return this.kind;
+	}
+}
@@ -0,0 +1,19 @@
+package jbase.exception;
+
+
+/**
+ * Thrown when a query cannot be run
+ *  (For example, a column that doesn't belong to the queried key)
+ *
+ * @author Bryan McClain
+ */
+public class JBaseBadQuery extends JBaseException {
+
+	/**
+	 * Create a new Bad Query exception
+	 * @param message Why the query cannot be run
+	 */
+	public JBaseBadQuery(String message) {
+		super("Bad query: "+message);
+	}
+}
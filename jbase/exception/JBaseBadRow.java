@@ -3,7 +3,10 @@ package jbase.exception;
 import jbase.field.Field;
 
 /**
- * Thrown when a bad row is passed into a get, put, next, or pre method
+ * Thrown when a bad row is passed into a get, put, next, or pre method.
+ *  Scanning every row of a field hits unused rows as a matter of course,
+ *   so this is treated as an expected outcome and has no stack trace.
+ *
  * @author Bryan McClain
  */
 public class JBaseBadRow extends JBaseFieldException {
@@ -17,7 +20,7 @@ public class JBaseBadRow extends JBaseFieldException {
 	 */
 	public JBaseBadRow(Field field, int row) {
 		super(field, "Bad row given "
-					+"(Row: "+row+", Field Depth: "+field.getDepth()+")");
+					+"(Row: "+row+", Field Depth: "+field.getDepth()+")", true);
 		this.row = row;
 	}
 
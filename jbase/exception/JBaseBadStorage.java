@@ -0,0 +1,46 @@
+package jbase.exception;
+
+import jbase.database.Database;
+import jbase.storage.StorageType;
+
+/**
+ * Thrown when creating a field with a storage engine that cannot hold its type of data
+ * @author Bryan McClain
+ */
+public class JBaseBadStorage extends JBaseDatabaseException {
+
+	private final StorageType storage;
+	private final Class<?> type;
+
+
+	/**
+	 * Create a new Bad Storage exception
+	 * @param db The database causing this exception
+	 * @param storage The storage engine requested
+	 * @param type The type of data stored in the field (can be null if unknown)
+	 */
+	public JBaseBadStorage(Database db, StorageType storage, Class<?> type) {
+		super(db,"Storage '"+storage.toString()+"' cannot hold "+
+				 ((type == null) ? "fields of unknown type" : "values of type '"+type.getSimpleName()+"'")+"!");
+		this.storage = storage;
+		this.type = type;
+	}
+
+
+	/**
+	 * Get the storage engine that was requested
+	 * @return Storage Type
+	 */
+	public StorageType getStorage() {
+		return this.storage;
+	}
+
+
+	/**
+	 * Get the type of data that couldn't be stored
+	 * @return Data Type (can be null)
+	 */
+	public Class<?> getType() {
+		return this.type;
+	}
+}
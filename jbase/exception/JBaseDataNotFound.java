@@ -4,7 +4,10 @@ import jbase.field.Field;
 
 
 /**
- * Exception thrown when the data doesn't exist when trying to do a delete or find
+ * Exception thrown when the data doesn't exist when trying to do a delete or find.
+ *  This is an expected outcome, so it has no stack trace, and each field reuses one instance.
+ *  Use Field.findOrMinusOne() to avoid the exception entirely.
+ *
  * @author Bryan McClain
  */
 public class JBaseDataNotFound extends JBaseFieldException {
@@ -14,7 +17,7 @@ public class JBaseDataNotFound extends JBaseFieldException {
 	 * @param field The field that caused this exception
 	 */
 	public JBaseDataNotFound(Field field) {
-		super(field,"Data not found");
+		super(field,"Data not found",true);
 	}
 
 }
@@ -0,0 +1,33 @@
+package jbase.exception;
+
+import jbase.database.Database;
+
+
+/**
+ * Exception thrown when creating an index whose name is already used
+ * @author Bryan McClain
+ */
+public class JBaseDuplicateIndex extends JBaseDatabaseException {
+
+	private final String index;
+
+
+	/**
+	 * Create a new Duplicate Index exception
+	 * @param db The database causing this exception
+	 * @param index The index that already exists
+	 */
+	public JBaseDuplicateIndex(Database db, String index) {
+		super(db,"Duplicate Index '"+index+"'!");
+		this.index = index;
+	}
+
+
+	/**
+	 * Get the name of the index that already exists
+	 * @return Index
+	 */
+	public String getIndex() {
+		return this.index;
+	}
+}
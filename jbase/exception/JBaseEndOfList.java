@@ -4,7 +4,10 @@ import jbase.field.Field;
 
 
 /**
- * Exception thrown when a call to next() or pre() has no next or previous entry
+ * Exception thrown when a call to next() or pre() has no next or previous entry.
+ *  This is an expected outcome, so it has no stack trace, and each field reuses one instance.
+ *  Use Field.tryNext() or Field.tryPre() to avoid the exception entirely.
+ *
  * @author Bryan McClain
  */
 public class JBaseEndOfList extends JBaseFieldException {
@@ -14,7 +17,7 @@ public class JBaseEndOfList extends JBaseFieldException {
 	 * @param field The field that caused this exception
 	 */
 	public JBaseEndOfList(Field field) {
-		super(field, "End of List");
+		super(field, "End of List", true);
 	}
 }
 
@@ -7,6 +7,13 @@ package jbase.exception;
  */
 public class JBaseException extends RuntimeException {
 
+	/** System property that turns stack traces back on for expected outcomes (for debugging) */
+	public static final String TRACE_PROPERTY = "jbase.exception.trace";
+
+	/** True if expected outcomes capture a stack trace (set with the system property "jbase.exception.trace=true") */
+	public static final boolean TRACE_EXPECTED = Boolean.getBoolean(TRACE_PROPERTY);
+
+
 	/**
 	 * Throw a new Generic JBase exception
 	 * @param message String message to display for the exception
@@ -15,4 +22,17 @@ public class JBaseException extends RuntimeException {
 		super(message);
 	}
 
+
+	/**
+	 * Throw a new Generic JBase exception for an expected outcome (such as a missed lookup or
+	 *  the end of a list). Expected outcomes don't capture a stack trace, which costs far more
+	 *  than the rest of the lookup, and can be thrown more than once.
+	 *
+	 * @param message String message to display for the exception
+	 * @param expected True if this is an expected outcome
+	 */
+	protected JBaseException(String message, boolean expected) {
+		super(message,null,!expected,!expected || TRACE_EXPECTED);
+	}
+
 }
@@ -24,6 +24,19 @@ public class JBaseFieldException extends JBaseException {
 	}
 
 
+	/**
+	 * Construct a new field exception, which can be an expected outcome (without a stack trace)
+	 *
+	 * @param field The field that caused this exception
+	 * @param message The message for this exception
+	 * @param expected True if this is an expected outcome
+	 */
+	protected JBaseFieldException(Field field, String message, boolean expected) {
+		super(field.getName()+": "+message,expected);
+		this.field = field;
+	}
+
+
 	/**
 	 * Get the field that caused this exception
 	 * @return Field
@@ -0,0 +1,19 @@
+package jbase.exception;
+
+import jbase.field.Field;
+
+/**
+ * Exception thrown when using a field whose storage was released when its database was dropped
+ * @author Bryan McClain
+ */
+public class JBaseFieldReleased extends JBaseFieldException {
+
+	/**
+	 * Construct a new Field Released exception
+	 * @param field The field that was released
+	 */
+	public JBaseFieldReleased(Field field) {
+		super(field,"Storage was released when the database was dropped");
+	}
+
+}
@@ -0,0 +1,46 @@
+package jbase.exception;
+
+import jbase.field.Field;
+
+
+/**
+ * Thrown when deleting a row that is still pointed to by a restricted foreign key
+ * @author Bryan McClain
+ */
+public class JBaseReferenceViolation extends JBaseFieldException {
+
+	private final int row;
+	private final Field pointer;
+
+
+	/**
+	 * Create a new Reference Violation exception
+	 * @param field The field the row is being deleted from
+	 * @param row The row being deleted
+	 * @param pointer The foreign key that still points to the row
+	 */
+	public JBaseReferenceViolation(Field field, int row, Field pointer) {
+		super(field,"Cannot delete row "+row+" "+
+			  "(Still referenced by field '"+pointer.getName()+"')");
+		this.row = row;
+		this.pointer = pointer;
+	}
+
+
+	/**
+	 * Get the row that couldn't be deleted
+	 * @return Row
+	 */
+	public int getRow() {
+		return this.row;
+	}
+
+
+	/**
+	 * Get the foreign key that still points to the row
+	 * @return Pointer field
+	 */
+	public Field getPointer() {
+		return this.pointer;
+	}
+}
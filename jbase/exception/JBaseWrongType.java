@@ -0,0 +1,47 @@
+package jbase.exception;
+
+import jbase.field.Field;
+
+
+/**
+ * Thrown when a value of the wrong type is stored in a field with a known data type
+ * @author Bryan McClain
+ */
+public class JBaseWrongType extends JBaseFieldException {
+
+	private final Class<?> expected;	// Type of data stored in the field
+	private final Class<?> given;		// Type of the value that was given
+
+
+	/**
+	 * Construct a new Wrong Type exception
+	 *
+	 * @param field The field that caused this exception
+	 * @param expected The type of data stored in the field
+	 * @param val The value that was given
+	 */
+	public JBaseWrongType(Field field, Class<?> expected, Object val) {
+		super(field, "Wrong type of data "
+					+"(Expected: "+expected.getSimpleName()+", Given: "+val.getClass().getSimpleName()+")");
+		this.expected = expected;
+		this.given = val.getClass();
+	}
+
+
+	/**
+	 * Get the type of data stored in the field
+	 * @return Expected type
+	 */
+	public Class<?> getExpected() {
+		return this.expected;
+	}
+
+
+	/**
+	 * Get the type of the value that was given
+	 * @return Given type
+	 */
+	public Class<?> getGiven() {
+		return this.given;
+	}
+}
@@ -21,4 +21,12 @@ public interface ChildField extends JBaseField {
 	 * @return Owner Key field, or null if it doesn't exist
 	 */
 	public ParentField getOwner();
+
+
+	/**
+	 * Clear the value stored at a row after the parent deletes the row
+	 * @param parent The parent field for this child
+	 * @param row The row that was deleted
+	 */
+	public void deleteRow(ParentField parent, int row);
 }
@@ -0,0 +1,227 @@
+package jbase.field;
+
+import jbase.exception.*;
+import jbase.index.*;
+import jbase.storage.ColumnStore;
+
+import java.io.Serializable;
+
+/**
+ * Index over several item fields of the same parent, sorted by the columns in the order given.
+ *  Rows can be found by equality on the first columns, plus a range on the column after them
+ *   (For example, [customer, region, date] finds all orders for a customer in a region between two dates)
+ *
+ *  Every participating field updates the index when a value is stored.
+ *  The index contents are not saved in snapshots, and are rebuilt the first time they are needed.
+ *
+ * @author Bryan McClain
+ */
+public class CompositeIndex implements Serializable {
+
+	private final String name;						// Name of this index
+	private final ItemField<?>[] columns;			// Fields in the index, in sort order
+	private transient CompositeTree tree;			// Sorted tuples (null = needs rebuilding)
+
+
+	/**
+	 * Construct a new composite index, and attach it to each column.
+	 *  Use Database.createCompositeIndex() instead, which checks permissions.
+	 *
+	 * @param name The name of this index
+	 * @param first First field in the index
+	 * @param rest Other fields in the index, in sort order
+	 * @throws JBaseBadIndex The fields don't share a parent, or hold values that cannot be sorted
+	 */
+	public CompositeIndex(String name, ItemField<?> first, ItemField<?>... rest) throws JBaseBadIndex {
+		ItemField<?>[] columns = new ItemField<?>[rest.length + 1];
+		columns[0] = first;
+		System.arraycopy(rest,0,columns,1,rest.length);
+
+		//All columns must be different children of the same parent
+		for (int i = 0; i < columns.length; ++i) {
+			if (columns[i].getOwner() != columns[0].getOwner()) {
+				throw new JBaseBadIndex(columns[i],"not owned by '"+columns[0].getOwner().toField().getName()+"'");
+			}
+			for (int j = 0; j < i; ++j) {
+				if (columns[j] == columns[i]) {throw new JBaseBadIndex(columns[i],"listed twice");}
+			}
+		}
+
+		this.name = name;
+		this.columns = columns;
+		this.tree = build();
+
+		for (ItemField<?> column : this.columns) {column.addComposite(this);}
+	}
+
+
+	/**
+	 * Get the name of this index
+	 * @return Name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Get the fields in this index, in sort order
+	 * @return Columns
+	 */
+	public ItemField<?>[] getColumns() {
+		return this.columns.clone();
+	}
+
+
+	/**
+	 * Get the parent field that owns every column
+	 * @return Owner
+	 */
+	public ParentField getOwner() {
+		return this.columns[0].getOwner();
+	}
+
+
+
+	/**
+	 * Find every row whose first columns equal the given values
+	 * @param prefix Values for the first columns, in column order
+	 * @return The rows (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to find values in one of the columns
+	 * @throws JBaseBadQuery More values were given than the index has columns
+	 */
+	public RowSet find(Object... prefix) throws JBaseFieldActionDenied, JBaseBadQuery {
+		checkColumns(prefix.length);
+		checkFind(prefix.length);
+		return tree().find(prefix);
+	}
+
+
+	/**
+	 * Find every row whose first columns equal the given values,
+	 *  and whose next column holds a value inside a range
+	 *
+	 * @param prefix Values for the first columns, in column order
+	 * @param low The lowest value for the next column (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value for the next column (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return The rows (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to find values in one of the columns
+	 * @throws JBaseBadQuery No column is left after the prefix for the range
+	 */
+	public RowSet findRange(Object[] prefix, Object low, boolean lowInclusive, Object high, boolean highInclusive)
+	  throws JBaseFieldActionDenied, JBaseBadQuery {
+		checkColumns(prefix.length+1);
+		checkFind(prefix.length+1);
+		return tree().findRange(prefix,low,lowInclusive,high,highInclusive);
+	}
+
+
+	/**
+	 * Get every row matching an equality prefix and a range, sorted by the columns of the index
+	 *
+	 * @param prefix Values for the first columns, in column order
+	 * @param low The lowest value for the next column (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value for the next column (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return The rows, in index order
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to find values in one of the columns
+	 * @throws JBaseBadQuery More values were given than the index has columns
+	 */
+	public int[] orderedRows(Object[] prefix, Object low, boolean lowInclusive, Object high, boolean highInclusive)
+	  throws JBaseFieldActionDenied, JBaseBadQuery {
+		checkColumns(prefix.length);
+		checkFind(this.columns.length);
+		return tree().orderedRows(prefix,low,lowInclusive,high,highInclusive);
+	}
+
+
+	/**
+	 * Remove this index from every column.
+	 *  Use Database.dropCompositeIndex() instead, which checks permissions.
+	 */
+	public void detach() {
+		for (ItemField<?> column : this.columns) {column.removeComposite(this);}
+		this.tree = null;
+	}
+
+
+
+	/**
+	 * Update the index after a value is stored in one of the columns
+	 * @param column The column that changed
+	 * @param row The row that changed
+	 * @param val The new value
+	 */
+	void update(ItemField<?> column, int row, Object val) {
+		if (this.tree == null) {return;}	// Will be rebuilt when needed
+		for (int i = 0; i < this.columns.length; ++i) {
+			if (this.columns[i] == column) {this.tree.set(row,i,val);}
+		}
+	}
+
+
+	/**
+	 * Get the sorted tuples, rebuilding them if they were just loaded
+	 * @return Tree
+	 */
+	private CompositeTree tree() {
+		if (this.tree == null) {this.tree = build();}
+		return this.tree;
+	}
+
+
+	/**
+	 * Build the sorted tuples from the values currently in the columns
+	 * @return Tree
+	 * @throws JBaseBadIndex One of the columns holds values that cannot be sorted
+	 */
+	private CompositeTree build() throws JBaseBadIndex {
+		CompositeTree built = new CompositeTree(this.columns.length);
+		for (int c = 0; c < this.columns.length; ++c) {
+			ColumnStore<?> store = this.columns[c].valueStore();
+			try {
+				for (int i = 0; i < store.size(); ++i) {
+					Object val = store.get(i);
+					if (val != null) {built.set(i,c,val);}
+				}
+			} catch (ClassCastException ex) {
+				throw new JBaseBadIndex(this.columns[c],IndexKind.SORTED);	// Values aren't Comparable
+			}
+		}
+		return built;
+	}
+
+
+	/**
+	 * Make sure a search doesn't use more columns than the index has
+	 * @param count Number of columns used by the search
+	 * @throws JBaseBadQuery The index doesn't have enough columns
+	 */
+	private void checkColumns(int count) throws JBaseBadQuery {
+		if (count > this.columns.length) {
+			throw new JBaseBadQuery("composite index '"+this.name+"' has "+this.columns.length
+								   +" columns, but the search uses "+count);
+		}
+	}
+
+
+	/**
+	 * Check the find permission on the first columns of the index
+	 * @param count Number of columns used by the search
+	 * @throws JBaseFieldActionDenied User doesn't have permission to find values in one of the columns
+	 */
+	private void checkFind(int count) throws JBaseFieldActionDenied {
+		for (int i = 0; i < count && i < this.columns.length; ++i) {
+			ItemField<?> column = this.columns[i];
+			if (!column.getDatabase().getACL().canDo(column,FieldAction.FIND)) {
+				throw new JBaseFieldActionDenied(column.getDatabase().currentUser(),column,FieldAction.FIND);
+			}
+		}
+	}
+}
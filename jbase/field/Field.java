@@ -3,10 +3,15 @@ package jbase.field;
 import jbase.database.Database;
 import jbase.exception.*;
 import jbase.acl.*;
+import jbase.storage.*;
+import jbase.index.*;
+import jbase.metrics.FieldMetrics;
 
 import java.util.ArrayList;
+import java.util.OptionalInt;
 import java.io.Serializable;
-import java.lang.reflect.ParameterizedType;
+import java.io.File;
+import java.lang.invoke.MethodType;
 import java.util.UUID;
 
 
@@ -20,20 +25,63 @@ public abstract class Field<T extends Serializable> implements Serializable, JBa
 	private final FieldType type;		// Type of this field
 	protected final UUID uuid;			// Unique UUID for the field (Used by delete method)
 	protected final Database db;		// Database object for this field
+	private final StorageType storage;	// Storage engine holding the rows of this field
+	private final String storageDir;	// Directory holding page files (for paged storage)
+	private final Class<T> dataType;	// Type of data stored in this field (null = unknown)
+	private transient ArrayList<ColumnStore<?>> stores;	// Column stores owned by this field
+	private ArrayList<IndexKind> indexKinds;				// Kinds of secondary indexes on this field
+	private transient ArrayList<SecondaryIndex<T>> indexes;	// Secondary indexes (rebuilt on load)
+	private transient FieldMetrics metrics;					// Counters for this field (null = not looked up yet)
+	private transient JBaseDataNotFound notFound;			// Thrown for every missed lookup (null = not thrown yet)
+	private transient JBaseEndOfList endOfList;				// Thrown at the end of every iteration (null = not thrown yet)
+	private transient long version;							// Number of changes made to this field (used by the query cache)
+	private transient boolean released;						// Storage was released when the database was dropped
 
 
 	/**
-	 * Construct a new field object
+	 * Construct a new field object, stored on the heap
 	 *
 	 * @param db Field database
 	 * @param name The name of this field
 	 * @param type Type of this field (key, item, foreign key, etc.)
 	 */
 	public Field(Database db, String name, FieldType type) {
+		this(db,name,type,StorageType.HEAP);
+	}
+
+
+	/**
+	 * Construct a new field object
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param type Type of this field (key, item, foreign key, etc.)
+	 * @param storage Storage engine holding the rows of this field
+	 */
+	public Field(Database db, String name, FieldType type, StorageType storage) {
+		this(db,name,type,storage,null);
+	}
+
+
+	/**
+	 * Construct a new field object with a known data type
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param type Type of this field (key, item, foreign key, etc.)
+	 * @param storage Storage engine holding the rows of this field
+	 * @param dataType Type of data stored in this field (null = unknown)
+	 */
+	public Field(Database db, String name, FieldType type, StorageType storage, Class<T> dataType) {
 		this.db = db;
 		this.name = name;
 		this.type = type;
 		this.uuid = UUID.randomUUID();
+		this.storage = storage;
+		this.storageDir = db.getStorageDirectory();
+		this.dataType = boxed(dataType);
+		this.indexKinds = new ArrayList<IndexKind>();
+		this.indexes = new ArrayList<SecondaryIndex<T>>();
 	}
 
 
@@ -66,21 +114,486 @@ public abstract class Field<T extends Serializable> implements Serializable, JBa
 
 	/**
 	 * Get the class for the type of data stored in this field.
-	 *  This uses some fancy reflection found on Stack Overflow.
-	 *
-	 *  See <a href="https://stackoverflow.com/questions/15084670/how-to-get-the-class-of-type-variable-in-java-generics">Here</a>
+	 *  The type is given when the field is created, and saved with the database.
 	 *
-	 * @return Class for the data stored in this field
+	 * @return Class for the data stored in this field (null = unknown, any value can be stored)
 	 */
 	public Class<T> getDataType() {
-        ParameterizedType parameterizedType = (ParameterizedType) getClass()
-                .getGenericSuperclass();
+		return this.dataType;
+	}
+
 
-        @SuppressWarnings("unchecked")
-        Class<T> ret = (Class<T>) parameterizedType.getActualTypeArguments()[0];
-        return ret;
+	/**
+	 * Make sure a value can be stored in this field
+	 * @param val The value to store (null is always allowed)
+	 * @throws JBaseWrongType The value isn't of the data type of this field
+	 */
+	protected final void checkType(T val) throws JBaseWrongType {
+		if (val != null && this.dataType != null && !this.dataType.isInstance(val)) {
+			throw new JBaseWrongType(this,this.dataType,val);
+		}
 	}
 
+
+	/**
+	 * Convert a primitive class (such as int) into its wrapper class (such as Integer),
+	 *  since fields always hold objects
+	 *
+	 * @param type The class to convert (can be null)
+	 * @return Wrapper class, or the same class if it isn't primitive
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Class<T> boxed(Class<T> type) {
+		if (type == null || !type.isPrimitive()) {return type;}
+		return (Class<T>) MethodType.methodType(type).wrap().returnType();
+	}
+
+	/**
+	 * Get the storage engine holding the rows of this field
+	 * @return Storage Type
+	 */
+	public StorageType getStorage() {
+		return this.storage;
+	}
+
+
+	/**
+	 * Construct a new column store for this field using its storage engine.
+	 *  Paged fields keep their page files in the storage directory
+	 *   the database had when the field was created.
+	 *
+	 * @param depth Initial number of rows
+	 * @return The new column store
+	 */
+	protected <E> ColumnStore<E> newStore(int depth) {
+		ColumnStore<E> store = this.storage.<E>newStore(this.db.getBufferPool(),new File(this.storageDir),
+														 this.name,this.dataType,depth);
+		if (this.stores == null) {this.stores = new ArrayList<ColumnStore<?>>();}
+		this.stores.add(store);
+		return store;
+	}
+
+
+	/**
+	 * Construct a new value index for this field.
+	 *  Paged indexes keep their page files in the same directory as the column stores.
+	 *
+	 * @param type The type of index to construct
+	 * @param fanout Maximum number of keys in a B+tree node (ignored by other types)
+	 * @return The new value index
+	 */
+	protected <E extends Comparable<E>> ValueIndex<E> newIndex(KeyIndexType type, int fanout) {
+		return type.<E>newIndex(this.db.getBufferPool(),new File(this.storageDir),this.name,fanout);
+	}
+
+
+	/**
+	 * Close every column store owned by this field, releasing any files or native memory
+	 */
+	protected void closeStorage() {
+		if (this.stores == null) {return;}
+		for (ColumnStore<?> store : this.stores) {store.close();}
+		this.stores.clear();
+	}
+
+
+	/**
+	 * Release the page files and native memory for this field after its database has been dropped.
+	 *  Fields stored on the heap keep working, but any other field is marked as released,
+	 *   and every later action on it throws JBaseFieldReleased.
+	 *  This method does nothing while the database is still active.
+	 */
+	public void releaseStorage() {
+		if (!this.db.isDropped() || !hasExternalStorage()) {return;}
+		this.released = true;
+		releaseStores();
+	}
+
+
+	/**
+	 * Test if the storage for this field was released when its database was dropped
+	 * @return True if the field can no longer be used
+	 */
+	public boolean isReleased() {
+		return this.released;
+	}
+
+
+	/**
+	 * Test if this field keeps any data outside of the Java heap (page files or native memory)
+	 * @return True if the field has storage to release
+	 */
+	protected boolean hasExternalStorage() {
+		return this.storage != StorageType.HEAP;
+	}
+
+
+	/**
+	 * Release every column store owned by this field (see ColumnStore.release())
+	 */
+	protected void releaseStores() {
+		if (this.stores == null) {return;}
+		for (ColumnStore<?> store : this.stores) {store.release();}
+		this.stores.clear();
+	}
+
+
+	/**
+	 * Get the column store holding the values in this field
+	 * @return Column store
+	 */
+	protected abstract ColumnStore<T> valueStore();
+
+
+	/**
+	 * Check the get permission once, then read the values in this field directly.
+	 *  Used by the query engine to scan a whole column without checking permissions on every row.
+	 *
+	 * @return Read-only view of the values
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values
+	 */
+	public ColumnReader<T> reader() throws JBaseFieldActionDenied {
+		if (!db.getACL().canDo(this,FieldAction.GET)) {
+			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+		}
+		return ColumnReader.readOnly(valueStore());
+	}
+
+
+
+	//============Secondary Indexes=============
+
+	/**
+	 * Test if this field has a given kind of secondary index
+	 * @param kind The kind of index
+	 * @return True if the index exists
+	 */
+	public boolean hasIndex(IndexKind kind) {
+		return this.indexKinds.contains(kind);
+	}
+
+
+	/**
+	 * Get every kind of secondary index on this field
+	 * @return Array of index kinds
+	 */
+	public IndexKind[] allIndexes() {
+		return this.indexKinds.toArray(new IndexKind[this.indexKinds.size()]);
+	}
+
+
+	/**
+	 * Build a new secondary index over the values in this field.
+	 *  Use Database.createIndex() instead, which checks permissions.
+	 *
+	 * @param kind The kind of index to build
+	 * @throws JBaseBadIndex The values in this field cannot be indexed this way
+	 */
+	public void addIndex(IndexKind kind) throws JBaseBadIndex {
+		if (hasIndex(kind)) {return;}
+		if (!kind.supports(this.dataType)) {throw new JBaseBadIndex(this,kind);}
+
+		SecondaryIndex<T> index = buildIndex(kind);
+		this.indexKinds.add(kind);
+		this.indexes.add(index);
+	}
+
+
+	/**
+	 * Remove a secondary index from this field.
+	 *  Use Database.dropIndex() instead, which checks permissions.
+	 *
+	 * @param kind The kind of index to remove
+	 */
+	public void removeIndex(IndexKind kind) {
+		int i = this.indexKinds.indexOf(kind);
+		if (i < 0) {return;}
+		this.indexKinds.remove(i);
+		this.indexes.remove(i);
+	}
+
+
+	/**
+	 * Find every row holding a value, using a secondary index
+	 * @param val The value to find
+	 * @return The rows holding the value (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a secondary index that finds exact values
+	 */
+	public RowSet findAll(T val)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return indexFor(IndexKind.HASH,IndexKind.BITMAP,IndexKind.SORTED,IndexKind.PREFIX).findAll(val);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,val);
+		}
+	}
+
+
+	/**
+	 * Find every row holding a value inside a range, using a sorted secondary index
+	 *
+	 * @param low The lowest value (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return The rows holding a value in the range (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a sorted secondary index
+	 */
+	public RowSet findRange(T low, boolean lowInclusive, T high, boolean highInclusive)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return ((SortedSecondaryIndex<T>) indexFor(IndexKind.SORTED)).findRange(low,lowInclusive,high,highInclusive);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,low);
+		}
+	}
+
+
+	/**
+	 * Find every row holding a value as a bitmap, using a bitmap secondary index.
+	 *  Bitmaps from several fields can be combined with and(), or(), andNot() and not().
+	 *
+	 * @param val The value to find
+	 * @return Bitmap of the rows holding the value (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a bitmap secondary index
+	 */
+	public RowBitmap findBitmap(T val)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return ((BitmapSecondaryIndex<T>) indexFor(IndexKind.BITMAP)).findBitmap(val);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,val);
+		}
+	}
+
+
+	/**
+	 * Find every row holding a string that starts with a prefix, using a prefix secondary index
+	 * @param prefix The prefix to find (case-sensitive)
+	 * @return The rows holding a matching string (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a prefix secondary index
+	 */
+	public RowSet findPrefix(String prefix)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return ((PrefixSecondaryIndex<T>) indexFor(IndexKind.PREFIX)).findPrefix(prefix);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,prefix);
+		}
+	}
+
+
+	/**
+	 * Find every row holding a string that contains all of the given words, using a token secondary index
+	 * @param words The words to find, separated by spaces or punctuation (not case-sensitive)
+	 * @return The rows holding every word (can be empty)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a token secondary index
+	 */
+	public RowSet findWords(String words)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return ((TokenSecondaryIndex<T>) indexFor(IndexKind.TOKEN)).findWords(words);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,words);
+		}
+	}
+
+
+	/**
+	 * Get the version of this field, which changes every time a value is inserted,
+	 *  stored or deleted, or the field is resized or deleted.
+	 *  Cached query results are only used while the versions of their fields are unchanged.
+	 *
+	 * @return Version
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+
+	/**
+	 * Record that the values in this field changed
+	 */
+	protected final void changed() {
+		++this.version;
+	}
+
+
+	/**
+	 * Drop a row of a key from the database's row cache after it changes
+	 * @param key The key field holding the row
+	 * @param row The row that changed
+	 */
+	protected final void invalidateRow(PointableField key, int row) {
+		RowCache cache = this.db.getRowCache();
+		if (cache != null) {cache.invalidate(key,row);}
+	}
+
+
+	/**
+	 * Get the counters and latency histograms for this field
+	 * @return Field metrics
+	 */
+	protected final FieldMetrics metrics() {
+		FieldMetrics m = this.metrics;
+		if (m == null) {
+			m = this.db.getMetricsRegistry().forField(this.name);
+			this.metrics = m;
+		}
+		return m;
+	}
+
+
+	/**
+	 * Get the exception thrown when a value isn't found.
+	 *  The same instance is reused, since it has no stack trace (unless JBaseException.TRACE_EXPECTED is on).
+	 *
+	 * @return Data Not Found exception
+	 */
+	protected final JBaseDataNotFound notFound() {
+		JBaseDataNotFound ex = this.notFound;
+		if (ex == null || JBaseException.TRACE_EXPECTED) {
+			ex = new JBaseDataNotFound(this);
+			this.notFound = ex;
+		}
+		return ex;
+	}
+
+
+	/**
+	 * Get the exception thrown at the end of an iteration.
+	 *  The same instance is reused, since it has no stack trace (unless JBaseException.TRACE_EXPECTED is on).
+	 *
+	 * @return End of List exception
+	 */
+	protected final JBaseEndOfList endOfList() {
+		JBaseEndOfList ex = this.endOfList;
+		if (ex == null || JBaseException.TRACE_EXPECTED) {
+			ex = new JBaseEndOfList(this);
+			this.endOfList = ex;
+		}
+		return ex;
+	}
+
+
+	/**
+	 * Test if this field has any secondary indexes to keep up to date
+	 * @return True if the field is indexed
+	 */
+	protected boolean isIndexed() {
+		return !this.indexes.isEmpty();
+	}
+
+
+	/**
+	 * Make sure a value can be added to every secondary index on this field.
+	 *  Fields with a known data type are checked when the index is created,
+	 *   so this only matters for fields without one.
+	 *
+	 * @param val The value to store (null is always allowed)
+	 * @throws JBaseBadIndex One of the indexes cannot hold the value
+	 */
+	protected final void checkIndexable(T val) throws JBaseBadIndex {
+		if (val == null) {return;}
+		for (SecondaryIndex<T> index : this.indexes) {
+			if (!index.accepts(val)) {throw new JBaseBadIndex(this,index.getKind(),val);}
+		}
+	}
+
+
+	/**
+	 * Update every secondary index after the value in a row has changed
+	 * @param row The row that changed
+	 * @param oldVal The old value (can be null)
+	 * @param newVal The new value (can be null)
+	 */
+	protected void updateIndexes(int row, T oldVal, T newVal) {
+		for (SecondaryIndex<T> index : this.indexes) {
+			index.update(row,oldVal,newVal);
+		}
+	}
+
+
+	/**
+	 * Rebuild every secondary index from the values in the field.
+	 *  Indexes aren't saved in snapshots, so this is called once the values are loaded.
+	 */
+	protected void rebuildIndexes() {
+		this.indexes = new ArrayList<SecondaryIndex<T>>();
+		for (IndexKind kind : this.indexKinds) {
+			this.indexes.add(buildIndex(kind));
+		}
+	}
+
+
+	/**
+	 * Get the first secondary index of any of the given kinds, after checking the find permission
+	 * @param kinds The kinds of index that can be used (in order of preference)
+	 * @return The index
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadFieldAction The field doesn't have a matching index
+	 */
+	private SecondaryIndex<T> indexFor(IndexKind... kinds)
+	  throws JBaseFieldActionDenied, JBaseBadFieldAction {
+		if (!db.getACL().canDo(this,FieldAction.FIND)) {
+			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.FIND);
+		}
+
+		for (IndexKind kind : kinds) {
+			int i = this.indexKinds.indexOf(kind);
+			if (i >= 0) {return this.indexes.get(i);}
+		}
+		throw new JBaseBadFieldAction(this,FieldAction.FIND);
+	}
+
+
+	/**
+	 * Build a secondary index from the values currently in the field
+	 * @param kind The kind of index to build
+	 * @return The new index
+	 * @throws JBaseBadIndex The values cannot be indexed this way
+	 */
+	private SecondaryIndex<T> buildIndex(IndexKind kind) throws JBaseBadIndex {
+		SecondaryIndex<T> index = kind.<T>newIndex();
+		ColumnStore<T> store = valueStore();
+		try {
+			for (int i = 0; i < store.size(); ++i) {
+				index.add(store.get(i),i);
+			}
+		} catch (ClassCastException ex) {
+			throw new JBaseBadIndex(this,kind);	// Values aren't Comparable (or Strings)
+		}
+		return index;
+	}
+
+
+
 	/**
 	 * Get the depth of this field (number of rows stored)
 	 * @return Depth
@@ -203,6 +716,77 @@ public abstract class Field<T extends Serializable> implements Serializable, JBa
 	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow, JBaseEndOfList;
 
 
+	/**
+	 * Find a value stored in a field, without throwing an exception if it isn't there
+	 * @param val The value to find
+	 * @return Row where the value is stored, or -1 if the value isn't in the field
+	 *
+	 * @throws JBaseBadFieldAction The field doesn't support this action
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	public int findOrMinusOne(T val)
+	  throws JBaseBadFieldAction, JBaseFieldActionDenied {
+		try {
+			return find(val);
+		} catch (JBaseDataNotFound ex) {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Find a value stored in a field
+	 * @param val The value to find
+	 * @return Row where the value is stored, or empty if the value isn't in the field
+	 *
+	 * @throws JBaseBadFieldAction The field doesn't support this action
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	public OptionalInt findRow(T val)
+	  throws JBaseBadFieldAction, JBaseFieldActionDenied {
+		int row = findOrMinusOne(val);
+		return (row < 0) ? OptionalInt.empty() : OptionalInt.of(row);
+	}
+
+
+	/**
+	 * Iterate over a sorted field, and go to the next value, without throwing an exception at the end
+	 * @param startRow The row to start at (or a negative number to start at the root)
+	 * @return The next row, or -1 at the end of the list
+	 *
+	 * @throws JBaseBadFieldAction The field doesn't support this action
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow Row given that is greater than or equal to the depth
+	 */
+	public int tryNext(int startRow)
+	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
+		try {
+			return next(startRow);
+		} catch (JBaseEndOfList ex) {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Iterate over a sorted field, and go to the previous value, without throwing an exception at the end
+	 * @param startRow The row to start at (or a negative number to start at the root)
+	 * @return The previous row, or -1 at the end of the list
+	 *
+	 * @throws JBaseBadFieldAction The field doesn't support this action
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow Row given that is greater than or equal to the depth
+	 */
+	public int tryPre(int startRow)
+	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
+		try {
+			return pre(startRow);
+		} catch (JBaseEndOfList ex) {
+			return -1;
+		}
+	}
+
+
 
 
 
@@ -214,6 +798,7 @@ public abstract class Field<T extends Serializable> implements Serializable, JBa
 		if (!this.db.getACL().canDo(this,FieldAction.DELETE_FIELD)) {
 			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.DELETE_FIELD);
 		}
+		changed();
 		deleteInternal();
 	}
 
@@ -2,6 +2,11 @@ package jbase.field;
 
 import jbase.exception.*;
 import jbase.database.*;
+import jbase.storage.StorageType;
+import jbase.index.*;
+
+import java.io.ObjectInputStream;
+import java.io.IOException;
 
 
 /**
@@ -11,6 +16,8 @@ import jbase.database.*;
 public class ForeignKeyField extends ItemField<Integer> implements PointerField {
 
 	private final PointableField point;
+	private final ReferencePolicy policy;					// What to do when a target row is deleted
+	private transient HashSecondaryIndex<Integer> referrers;	// Target row -> rows pointing to it
 
 
 	/**
@@ -23,8 +30,44 @@ public class ForeignKeyField extends ItemField<Integer> implements PointerField
 	 * @param point Key that this field points to
 	 */
 	public ForeignKeyField(Database db, String name, ParentField owner, PointableField point) {
-		super(FieldType.FOREIGN_KEY,db,name,owner);
+		this(db,name,owner,point,StorageType.HEAP);
+	}
+
+
+	/**
+	 * Construct a new foreign key field in the database.
+	 *  Depth is inherited from the owner field.
+	 *
+	 * @param db The database for this field
+	 * @param name The name of this field
+	 * @param owner Key that owns this field
+	 * @param point Key that this field points to
+	 * @param storage Storage engine used to hold the rows
+	 */
+	public ForeignKeyField(Database db, String name, ParentField owner, PointableField point, StorageType storage) {
+		this(db,name,owner,point,storage,ReferencePolicy.NO_ACTION);
+	}
+
+
+	/**
+	 * Construct a new foreign key field in the database.
+	 *  Depth is inherited from the owner field.
+	 *
+	 * @param db The database for this field
+	 * @param name The name of this field
+	 * @param owner Key that owns this field
+	 * @param point Key that this field points to
+	 * @param storage Storage engine used to hold the rows
+	 * @param policy What to do when a row this field points to is deleted
+	 */
+	public ForeignKeyField(Database db, String name, ParentField owner, PointableField point,
+						   StorageType storage, ReferencePolicy policy) {
+		super(FieldType.FOREIGN_KEY,db,name,owner,storage,Integer.class);
 		this.point = point;
+		this.policy = policy;
+		this.referrers = new HashSecondaryIndex<Integer>();
+
+		point.addPointer(this);
 	}
 
 
@@ -39,6 +82,56 @@ public class ForeignKeyField extends ItemField<Integer> implements PointerField
 
 
 
+	/**
+	 * Get what this field does when a row it points to is deleted
+	 * @return Reference Policy
+	 */
+	public ReferencePolicy getPolicy() {
+		return this.policy;
+	}
+
+
+	/**
+	 * Find every row in this field that points to a given row
+	 * @param row The row being pointed to
+	 * @return Rows that point to the row (can be empty)
+	 */
+	public RowSet rowsPointingTo(int row) {
+		return this.referrers.findAll(row);
+	}
+
+
+	/**
+	 * Follow the pointer at a given row, reading the target row and all of its children.
+	 *  If the database has a row cache, the target row is served from it when possible.
+	 *
+	 * @param row The row in this field
+	 * @return The row being pointed to, or null if the row doesn't point anywhere
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from this field or the key it points to
+	 * @throws JBaseBadRow Invalid row given to retrieve
+	 */
+	public TargetRow deref(int row)
+	  throws JBaseFieldActionDenied, JBaseBadRow {
+		Integer target = target(get(row));
+		if (target == null) {return null;}
+
+		KeyField<?> key = (KeyField<?>) this.point;
+		if (!db.getACL().canDo(key,FieldAction.GET)) {
+			throw new JBaseFieldActionDenied(db.currentUser(),key,FieldAction.GET);
+		}
+
+		RowCache cache = db.getRowCache();
+		TargetRow r = (cache == null) ? null : cache.get(key,target);
+		if (r == null) {
+			r = TargetRow.read(key,target);
+			if (r != null && cache != null) {cache.put(r);}
+		}
+		return r;
+	}
+
+
+
 	/**
 	 * Get a value stored at a given row in the field
 	 * @param row The row to retrieve
@@ -50,15 +143,22 @@ public class ForeignKeyField extends ItemField<Integer> implements PointerField
 	 */
 	public Integer get(int row)
 	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.GET)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
-		}
+		long start = metrics().begin(FieldAction.GET);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.GET)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+			}
 
-		if (row < 0 || row >= this.depth) {
-			throw new JBaseBadRow(this,row);
-		}
+			if (row < 0 || row >= this.depth) {
+				throw new JBaseBadRow(this,row);
+			}
 
-		return (Integer) values.get(row);
+			return (Integer) values.get(row);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.GET,ex);
+		} finally {
+			metrics().end(FieldAction.GET,start,row,null);
+		}
 	}
 
 
@@ -74,22 +174,90 @@ public class ForeignKeyField extends ItemField<Integer> implements PointerField
 	@Override
 	public void put(int row, Integer val)
 	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.GET)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
-		}
+		long start = metrics().begin(FieldAction.PUT);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.GET)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+			}
+
+			if (row < 0 || row >= this.depth) {
+				throw new JBaseBadRow(this,row);
+			}
+
+			if (!point.isValidRow(val)) {
+				throw new JBaseBadRow(this,val);
+			}
 
-		if (row < 0 || row >= this.depth) {
-			throw new JBaseBadRow(this,row);
+			store(row,val);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.PUT,ex);
+		} finally {
+			metrics().end(FieldAction.PUT,start,row,val);
 		}
+	}
+
+
+	/**
+	 * Store a value in a row, and update the reverse pointer index
+	 * @param row The row to store (must be valid)
+	 * @param val The row being pointed to (-1 or null = No Row)
+	 */
+	@Override
+	protected void store(int row, Integer val) {
+		Integer oldVal = this.values.get(row);
+		super.store(row,val);
+		this.referrers.update(row,target(oldVal),target(val));
+	}
+
+
+	/**
+	 * Clear the pointers to a deleted row, if this field sets them to null.
+	 *  Cascaded deletes and restrictions are handled by the key before the row is deleted.
+	 *
+	 * @param point The field the row was deleted from
+	 * @param row The deleted row
+	 */
+	public void targetDeleted(PointableField point, int row) {
+		if (point != this.point || this.policy != ReferencePolicy.SET_NULL) {return;}
+
+		RowSet rows = this.referrers.findAll(row);
+		for (int i = 0; i < rows.size(); ++i) {
+			int src = rows.get(i);
 
-		if (!point.isValidRow(val)) {
-			throw new JBaseBadRow(this,val);
+			//Skip rows already cleared by a cascade
+			Integer val = this.values.get(src);
+			if (val == null || val != row) {continue;}
+			store(src,-1);
 		}
+	}
+
 
-		values.set(row,val);
+	/**
+	 * Get the row being pointed to by a value
+	 * @return The row, or null if the value doesn't point anywhere
+	 */
+	private static Integer target(Integer val) {
+		return (val == null || val < 0) ? null : val;
+	}
+
+
+	/**
+	 * Read the field from a snapshot, and rebuild the reverse pointer index
+	 *
+	 * @param in The stream to read from
+	 * @throws IOException Problem reading from the stream
+	 * @throws ClassNotFoundException Snapshot contains an unknown class
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.referrers = new HashSecondaryIndex<Integer>();
+		for (int i = 0; i < this.depth; ++i) {
+			this.referrers.add(target(this.values.get(i)),i);
+		}
 	}
 
 
+
 	/**
 	 * Delete this field from the database
 	 */
@@ -0,0 +1,95 @@
+package jbase.field;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+
+/**
+ * Stack of the free rows in a key field.
+ *  Rows pushed in ascending order are kept as a single run, so a freshly created
+ *   or resized field only needs one entry no matter how many rows it has.
+ *
+ * @author Bryan McClain
+ */
+final class FreeRows implements Serializable {
+
+	private int[] low;			// First row of each run
+	private int[] high;			// One past the last row of each run (top of the run)
+	private int runs;			// Number of runs on the stack
+	private int size;			// Total number of free rows
+
+
+	/**
+	 * Construct a new, empty stack of free rows
+	 */
+	FreeRows() {
+		this.low = new int[4];
+		this.high = new int[4];
+		this.runs = 0;
+		this.size = 0;
+	}
+
+
+	/**
+	 * Get the number of free rows
+	 * @return Size
+	 */
+	int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Test if there are no free rows
+	 * @return True if the stack is empty
+	 */
+	boolean empty() {
+		return this.size == 0;
+	}
+
+
+	/**
+	 * Push a single row onto the stack
+	 * @param row The row that is now free
+	 */
+	void push(int row) {
+		pushRange(row,row+1);
+	}
+
+
+	/**
+	 * Push a range of rows onto the stack, in ascending order
+	 * @param from First row in the range
+	 * @param to One past the last row in the range
+	 */
+	void pushRange(int from, int to) {
+		if (from >= to) {return;}
+		this.size += to - from;
+
+		//Extends the run on top of the stack
+		if (this.runs > 0 && this.high[this.runs-1] == from) {
+			this.high[this.runs-1] = to;
+			return;
+		}
+
+		if (this.runs == this.low.length) {
+			this.low = Arrays.copyOf(this.low,this.runs * 2);
+			this.high = Arrays.copyOf(this.high,this.runs * 2);
+		}
+		this.low[this.runs] = from;
+		this.high[this.runs] = to;
+		++this.runs;
+	}
+
+
+	/**
+	 * Take the row on top of the stack
+	 * @return The free row (stack must not be empty)
+	 */
+	int pop() {
+		int row = --this.high[this.runs-1];
+		if (row == this.low[this.runs-1]) {--this.runs;}
+		--this.size;
+		return row;
+	}
+}
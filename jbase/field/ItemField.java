@@ -2,9 +2,14 @@ package jbase.field;
 
 import jbase.exception.*;
 import jbase.database.*;
+import jbase.storage.*;
 
 import java.io.Serializable;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Represents an "Item" in our database (field owned by a key)
@@ -13,11 +18,14 @@ import java.util.ArrayList;
 public class ItemField<T extends Serializable> extends Field<T> implements ChildField {
 
 	protected final ParentField owner;
-	protected ArrayList<T> values;
+	protected transient ColumnStore<T> values;
 	protected int depth;
+	private ArrayList<CompositeIndex> composites;		// Composite indexes that include this field
+
+	private static final int MAX_DICTIONARY = 1 << 12;	// Most distinct values written as a snapshot dictionary
 
 	/**
-	 * Construct a new item field in the database.
+	 * Construct a new item field in the database, stored on the heap.
 	 *  Depth is inherited from the owner field.
 	 *
 	 * @param db The database for this field
@@ -25,14 +33,36 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	 * @param owner Parent that owns this field
 	 */
 	public ItemField(Database db, String name, ParentField owner) {
-		super(db,name,FieldType.ITEM);
-		this.owner = owner;
+		this(FieldType.ITEM,db,name,owner,StorageType.HEAP,null);
+	}
 
-		this.depth = owner.getDepth();
-		this.values = new ArrayList<T>(this.depth);
-		while(this.values.size() < this.depth) {this.values.add(null);}
 
-		owner.addChild(this);
+	/**
+	 * Construct a new item field in the database.
+	 *  Depth is inherited from the owner field.
+	 *
+	 * @param db The database for this field
+	 * @param name The name of this field
+	 * @param owner Parent that owns this field
+	 * @param storage Storage engine used to hold the values
+	 */
+	public ItemField(Database db, String name, ParentField owner, StorageType storage) {
+		this(FieldType.ITEM,db,name,owner,storage,null);
+	}
+
+
+	/**
+	 * Construct a new item field in the database with a known data type.
+	 *  Depth is inherited from the owner field.
+	 *
+	 * @param db The database for this field
+	 * @param name The name of this field
+	 * @param owner Parent that owns this field
+	 * @param storage Storage engine used to hold the values
+	 * @param dataType Type of data stored in this field
+	 */
+	public ItemField(Database db, String name, ParentField owner, StorageType storage, Class<T> dataType) {
+		this(FieldType.ITEM,db,name,owner,storage,dataType);
 	}
 
 
@@ -47,14 +77,17 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	 * @param db The database for this field
 	 * @param name The name of this field
 	 * @param owner Key that owns this field
+	 * @param storage Storage engine used to hold the values
+	 * @param dataType Type of data stored in this field (null = unknown)
 	 */
-	protected ItemField(FieldType type, Database db, String name, ParentField owner) {
-		super(db,name,type);
+	protected ItemField(FieldType type, Database db, String name, ParentField owner,
+						StorageType storage, Class<T> dataType) {
+		super(db,name,type,storage,dataType);
 		this.owner = owner;
 
 		this.depth = owner.getDepth();
-		this.values = new ArrayList<T>(owner.getDepth());
-		while(this.values.size() < this.depth) {this.values.add(null);}
+		this.values = newStore(this.depth);
+		this.composites = new ArrayList<CompositeIndex>();
 
 		owner.addChild(this);
 	}
@@ -87,7 +120,8 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	public void resize(ParentField parent) {
 		if (this.owner != parent) {return;}
 		this.depth = parent.getDepth();
-		while(this.values.size() < this.depth) {this.values.add(null);}
+		this.values.resize(this.depth);
+		changed();
 	}
 
 
@@ -136,15 +170,22 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	 */
 	public T get(int row)
 	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.GET)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
-		}
-
-		if (row < 0 || row >= this.depth) {
-			throw new JBaseBadRow(this,row);
+		long start = metrics().begin(FieldAction.GET);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.GET)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+			}
+
+			if (row < 0 || row >= this.depth) {
+				throw new JBaseBadRow(this,row);
+			}
+
+			return values.get(row);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.GET,ex);
+		} finally {
+			metrics().end(FieldAction.GET,start,row,null);
 		}
-
-		return values.get(row);
 	}
 
 
@@ -156,18 +197,85 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	 * @throws JBaseBadFieldAction The field doesn't support this action
 	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
 	 * @throws JBaseBadRow Invalid row given for storage
+	 * @throws JBaseWrongType The value isn't of the data type of this field
+	 * @throws JBaseBadIndex A secondary index on this field cannot hold the value
 	 */
 	public void put(int row, T val)
-	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.GET)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+	  throws JBaseBadFieldAction, JBaseFieldActionDenied, JBaseBadRow, JBaseWrongType, JBaseBadIndex {
+		long start = metrics().begin(FieldAction.PUT);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.GET)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+			}
+
+			if (row < 0 || row >= this.depth) {
+				throw new JBaseBadRow(this,row);
+			}
+			checkType(val);
+			checkIndexable(val);
+
+			store(row,val);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.PUT,ex);
+		} finally {
+			metrics().end(FieldAction.PUT,start,row,val);
 		}
+	}
+
 
-		if (row < 0 || row >= this.depth) {
-			throw new JBaseBadRow(this,row);
+	/**
+	 * Store a value in a row, and update any secondary indexes
+	 * @param row The row to store (must be valid)
+	 * @param val The value to store
+	 */
+	protected void store(int row, T val) {
+		if (isIndexed()) {
+			updateIndexes(row,this.values.get(row),val);
+		}
+		for (CompositeIndex composite : this.composites) {
+			composite.update(this,row,val);
 		}
+		this.values.set(row,val);
+		changed();
+		if (this.owner instanceof PointableField) {invalidateRow((PointableField) this.owner,row);}
+	}
+
+
+	/**
+	 * Get every composite index that includes this field
+	 * @return Array of composite indexes
+	 */
+	public CompositeIndex[] allCompositeIndexes() {
+		return this.composites.toArray(new CompositeIndex[this.composites.size()]);
+	}
 
-		values.set(row,val);
+
+	/**
+	 * Add a composite index that must be updated when a value is stored
+	 * @param composite The composite index
+	 */
+	void addComposite(CompositeIndex composite) {
+		if (!this.composites.contains(composite)) {this.composites.add(composite);}
+	}
+
+
+	/**
+	 * Stop updating a composite index
+	 * @param composite The composite index
+	 */
+	void removeComposite(CompositeIndex composite) {
+		this.composites.remove(composite);
+	}
+
+
+	/**
+	 * Clear the value stored at a row after the owner deletes the row
+	 * @param parent The parent field for this child
+	 * @param row The row that was deleted
+	 */
+	public void deleteRow(ParentField parent, int row) {
+		if (this.owner != parent) {return;}
+		if (this.values.get(row) != null) {store(row,null);}
 	}
 
 
@@ -208,11 +316,94 @@ public class ItemField<T extends Serializable> extends Field<T> implements Child
 	}
 
 
+	/**
+	 * Write the column to a snapshot.
+	 *  The values are stored as a dictionary of distinct values followed by one code per row,
+	 *   so columns with many repeated values are written as one small, highly compressible run.
+	 *  Columns with too many distinct values are written as-is instead. Those values are written
+	 *   unshared, so the stream doesn't keep every row reachable until the save ends.
+	 *
+	 * @param out The stream to write to
+	 * @throws IOException Problem writing to the stream
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+
+		//Build the dictionary of distinct values (only a small one is held on the heap)
+		int limit = Math.min(this.depth / 2, MAX_DICTIONARY);
+		HashMap<T,Integer> dictionary = new HashMap<T,Integer>();
+		ArrayList<T> distinct = new ArrayList<T>();
+		for (int i = 0; i < this.depth; ++i) {
+			T val = this.values.get(i);
+			if (val == null || dictionary.containsKey(val)) {continue;}
+			dictionary.put(val,distinct.size());
+			distinct.add(val);
+			if (distinct.size() > limit) {break; /* Not worth it */}
+		}
+
+		//Mostly unique values, so just write them directly
+		if (distinct.size() > limit) {
+			out.writeBoolean(false);
+			for (int i = 0; i < this.depth; ++i) {out.writeUnshared(this.values.get(i));}
+			return;
+		}
+
+		out.writeBoolean(true);
+		out.writeInt(distinct.size());
+		for (T val : distinct) {out.writeObject(val);}
+		for (int i = 0; i < this.depth; ++i) {
+			T val = this.values.get(i);
+			out.writeInt((val == null) ? -1 : dictionary.get(val));
+		}
+	}
+
+
+	/**
+	 * Read the column from a snapshot.
+	 *  Any secondary indexes are rebuilt once the values are loaded.
+	 *
+	 * @param in The stream to read from
+	 * @throws IOException Problem reading from the stream
+	 * @throws ClassNotFoundException Snapshot contains an unknown class
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.values = newStore(this.depth);
+
+		//Values were written directly
+		if (!in.readBoolean()) {
+			for (int i = 0; i < this.depth; ++i) {this.values.set(i,(T) in.readUnshared());}
+		} else {
+			ArrayList<T> distinct = new ArrayList<T>();
+			int size = in.readInt();
+			for (int i = 0; i < size; ++i) {distinct.add((T) in.readObject());}
+			for (int i = 0; i < this.depth; ++i) {
+				int code = in.readInt();
+				if (code >= 0) {this.values.set(i,distinct.get(code));}
+			}
+		}
+
+		rebuildIndexes();
+	}
+
+
+	/**
+	 * Get the column store holding the values in this field
+	 * @return Column store
+	 */
+	protected ColumnStore<T> valueStore() {
+		return this.values;
+	}
+
+
 	/**
 	 * Internal delete method
 	 */
 	protected void deleteInternal() {
+		for (CompositeIndex composite : allCompositeIndexes()) {composite.detach();}
 		this.db.deleteField(this,this.uuid);
 		this.owner.deleteChild(this);
+		closeStorage();
 	}
 }
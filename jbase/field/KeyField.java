@@ -2,12 +2,22 @@ package jbase.field;
 
 import jbase.database.*;
 import jbase.exception.*;
+import jbase.storage.*;
+import jbase.index.RowSet;
+import jbase.jfr.FieldChangeEvent;
 
 import java.io.Serializable;
-import java.util.Stack;
-import java.util.TreeMap;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Field where each entry is unique and searchable
@@ -18,38 +28,119 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 
 
 	//Look up data by either row or value
-	private TreeMap<Integer,T> by_row;		// Search for a value using the row
-	private TreeMap<T,Integer> by_value;	// Search for a row using the value
-	private Stack<Integer> nextRow;			// List of free rows
+	private transient ColumnStore<T> by_row;	// Search for a value using the row (null = free)
+	private transient ValueIndex<T> by_value;	// Search for a row using the value
+	private final KeyIndexType indexType;	// Data structure used for by_value
+	private final int fanout;				// Maximum number of keys in a B+tree node (BTREE only)
+	private FreeRows nextRow;				// List of free rows
 	private HashSet<ChildField> children;	// All fields that this key field owns
 	private HashSet<PointerField> pointers;	// All fields that point to me
 	private int depth;
 
 
 	/**
-	 * Create a new key field
+	 * Create a new key field, stored on the heap
 	 *
 	 * @param db Field database
 	 * @param name The name of this field
 	 * @param depth Initial number of rows in the field
 	 */
 	public KeyField(Database db, String name, int depth) {
-		super(db,name,FieldType.KEY);
+		this(db,name,depth,StorageType.HEAP);
+	}
 
-		this.by_row = new TreeMap<Integer,T>();
-		this.by_value = new TreeMap<T,Integer>();
-		this.nextRow = new Stack<Integer>();
+
+	/**
+	 * Create a new key field
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param depth Initial number of rows in the field
+	 * @param storage Storage engine used to hold the rows
+	 */
+	public KeyField(Database db, String name, int depth, StorageType storage) {
+		this(db,name,depth,storage,KeyIndexType.TREE);
+	}
+
+
+	/**
+	 * Create a new key field
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param depth Initial number of rows in the field
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 */
+	public KeyField(Database db, String name, int depth, StorageType storage, KeyIndexType indexType) {
+		this(db,name,depth,storage,indexType,null);
+	}
+
+
+	/**
+	 * Create a new key field with a known data type
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param depth Initial number of rows in the field
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 * @param dataType Type of data stored in this field (null = unknown)
+	 */
+	public KeyField(Database db, String name, int depth, StorageType storage, KeyIndexType indexType, Class<T> dataType) {
+		this(db,name,depth,storage,indexType,dataType,BTreeValueIndex.DEFAULT_FANOUT);
+	}
+
+
+	/**
+	 * Create a new key field with a known data type and B+tree fanout
+	 *
+	 * @param db Field database
+	 * @param name The name of this field
+	 * @param depth Initial number of rows in the field
+	 * @param storage Storage engine used to hold the rows
+	 * @param indexType Data structure used to search for rows by value
+	 * @param dataType Type of data stored in this field (null = unknown)
+	 * @param fanout Maximum number of keys in a B+tree node (only used by KeyIndexType.BTREE)
+	 */
+	public KeyField(Database db, String name, int depth, StorageType storage, KeyIndexType indexType,
+					Class<T> dataType, int fanout) {
+		super(db,name,FieldType.KEY,storage,dataType);
+
+		this.indexType = indexType;
+		this.fanout = fanout;
+		this.by_row = newStore(depth);
+		this.by_value = newIndex(indexType,fanout);
+		this.nextRow = new FreeRows();
 		this.children = new HashSet<ChildField>();
 		this.pointers = new HashSet<PointerField>();
 		this.depth = depth;
 
 		//Initilize the list of rows
-		for (int i = 0; i < this.depth; ++i) {
-			this.nextRow.push(i);
-		}
+		this.nextRow.pushRange(0,this.depth);
+	}
+
+
+
+	/**
+	 * Get the data structure used to search for rows by value
+	 * @return Index type
+	 */
+	public KeyIndexType getIndexType() {
+		return this.indexType;
 	}
 
 
+	/**
+	 * Get the maximum number of keys in a B+tree node.
+	 *  Only used when the index type is KeyIndexType.BTREE.
+	 *
+	 * @return Fanout
+	 */
+	public int getFanout() {
+		return this.fanout;
+	}
+
 
 	/**
 	 * Get the depth of this field (number of rows stored)
@@ -76,23 +167,33 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 * @throws JBaseBadResize Invalid size passed to function
 	 */
 	public void resize(int toAdd) throws JBaseException, JBasePermissionException {
-		if (!db.getACL().canDo(this,FieldAction.RESIZE_FIELD)) {
-			throw new JBaseFieldActionDenied(this.db.currentUser(),this,FieldAction.RESIZE_FIELD);
-		}
-		if (toAdd <= 0) {throw new JBaseBadResize(this,toAdd);}
-	
-		//Resize the arraylist to the new capacity
-		int oldDepth = this.depth;
-		this.depth += toAdd;
-
-		//Add the new rows to the stack
-		for (int i = oldDepth; i < this.depth; ++i) {
-			this.nextRow.push(i);
-		}
-
-		//Resize all of my children
-		for (ChildField child : children) {
-			child.resize(this);
+		long start = metrics().begin(FieldAction.RESIZE_FIELD);
+		FieldChangeEvent event = new FieldChangeEvent();
+		event.begin();
+		try {
+			if (!db.getACL().canDo(this,FieldAction.RESIZE_FIELD)) {
+				throw new JBaseFieldActionDenied(this.db.currentUser(),this,FieldAction.RESIZE_FIELD);
+			}
+			if (toAdd <= 0) {throw new JBaseBadResize(this,toAdd);}
+
+			//Resize the arraylist to the new capacity
+			int oldDepth = this.depth;
+			this.depth += toAdd;
+			this.by_row.resize(this.depth);
+
+			//Add the new rows to the stack
+			this.nextRow.pushRange(oldDepth,this.depth);
+			changed();
+
+			//Resize all of my children
+			for (ChildField child : children) {
+				child.resize(this);
+			}
+			event.finish(this,FieldChangeEvent.RESIZE);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.RESIZE_FIELD,ex);
+		} finally {
+			metrics().end(FieldAction.RESIZE_FIELD,start);
 		}
 	}
 
@@ -104,7 +205,7 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public boolean isValidRow(int row) {
 		if (row == -1) {return true; /* -1 = Null */}
-		return by_row.containsKey(row);
+		return inRow(row);
 	}
 
 
@@ -114,6 +215,7 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public void addChild(ChildField child) {
 		this.children.add(child);
+		invalidateAll();
 	}
 
 
@@ -132,6 +234,16 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public void deleteChild(ChildField child) {
 		this.children.remove(child);
+		invalidateAll();
+	}
+
+
+	/**
+	 * Drop every row of this field from the database's row cache
+	 */
+	private void invalidateAll() {
+		RowCache cache = this.db.getRowCache();
+		if (cache != null) {cache.invalidateAll(this);}
 	}
 
 
@@ -153,6 +265,20 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 		return this.pointers.toArray(new PointerField[this.pointers.size()]);
 	}
 
+	/**
+	 * Find every row in every pointer field that points to a given row
+	 * @param row The row being pointed to
+	 * @return Map of pointer fields to the rows pointing to the row (only non-empty sets)
+	 */
+	public Map<PointerField,RowSet> referencesTo(int row) {
+		LinkedHashMap<PointerField,RowSet> refs = new LinkedHashMap<PointerField,RowSet>();
+		for (PointerField pointer : this.pointers) {
+			RowSet rows = pointer.rowsPointingTo(row);
+			if (!rows.isEmpty()) {refs.put(pointer,rows);}
+		}
+		return refs;
+	}
+
 	/**
 	 * Remove a pointer field from the list of fields that point to this field
 	 * @param pointer The pointer to remove from the list
@@ -171,28 +297,41 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 * @throws JBaseFieldActionDenied User does not have permission to execute this action
 	 * @throws JBaseDuplicateData Cannot insert duplicate data into a key field
 	 * @throws JBaseOutOfMemory No more space to insert any more values
+	 * @throws JBaseWrongType The value isn't of the data type of this field
+	 * @throws JBaseBadIndex A secondary index on this field cannot hold the value
 	 */
 	public int insert(T val)
-	throws JBaseFieldActionDenied, JBaseDuplicateData, JBaseOutOfMemory {
-		if (!db.getACL().canDo(this,FieldAction.INSERT)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.INSERT);
+	throws JBaseFieldActionDenied, JBaseDuplicateData, JBaseOutOfMemory, JBaseWrongType, JBaseBadIndex {
+		long start = metrics().begin(FieldAction.INSERT);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.INSERT)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.INSERT);
+			}
+			checkType(val);
+			checkIndexable(val);
+
+			//Make sure I have space to store this value
+			if (this.nextRow.empty()) {
+				throw new JBaseOutOfMemory(this);
+			}
+
+			//Make sure the value doesn't already exist
+			if (by_value.find(val) >= 0) {
+				throw new JBaseDuplicateData(this);
+			}
+
+			//Add to the two lists
+			int row = this.nextRow.pop();
+			by_row.set(row,val);
+			by_value.put(val,row);
+			if (isIndexed()) {updateIndexes(row,null,val);}
+			changed();
+			return row;
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.INSERT,ex);
+		} finally {
+			metrics().end(FieldAction.INSERT,start,-1,val);
 		}
-
-		//Make sure I have space to store this value
-		if (this.nextRow.empty()) {
-			throw new JBaseOutOfMemory(this);
-		}
-
-		//Make sure the value doesn't already exist
-		if (by_value.containsKey(val)) {
-			throw new JBaseDuplicateData(this);
-		}
-
-		//Add to the two lists
-		Integer row = this.nextRow.pop();
-		by_row.put(row,val);
-		by_value.put(val,row);
-		return row;
 	}
 
 
@@ -202,21 +341,150 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 *
 	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
 	 * @throws JBaseDataNotFound Data doesn't exist in the key field
+	 * @throws JBaseReferenceViolation The row is still pointed to by a restricted foreign key
 	 */
 	public void delete(T val)
-	throws JBaseFieldActionDenied, JBaseDataNotFound {
-		if (!db.getACL().canDo(this,FieldAction.DELETE)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.DELETE);
+	throws JBaseFieldActionDenied, JBaseDataNotFound, JBaseReferenceViolation {
+		long start = metrics().begin(FieldAction.DELETE);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.DELETE)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.DELETE);
+			}
+
+			//Make sure the value actually exists to delete
+			int row = this.by_value.find(val);
+			if (row < 0) {
+				throw notFound();
+			}
+
+			deleteAt(row);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.DELETE,ex);
+		} finally {
+			metrics().end(FieldAction.DELETE,start,-1,val);
 		}
+	}
+
 
-		//Make sure the value actually exists to delete
-		if (!this.by_value.containsKey(val)) {
-			throw new JBaseDataNotFound(this);
+	/**
+	 * Delete the value stored at a given row in the key field
+	 * @param row The row to delete
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow The row doesn't hold a value
+	 * @throws JBaseReferenceViolation The row is still pointed to by a restricted foreign key
+	 */
+	public void deleteRow(int row)
+	throws JBaseFieldActionDenied, JBaseBadRow, JBaseReferenceViolation {
+		long start = metrics().begin(FieldAction.DELETE);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.DELETE)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.DELETE);
+			}
+
+			if (!inRow(row)) {
+				throw new JBaseBadRow(this,row);
+			}
+
+			deleteAt(row);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.DELETE,ex);
+		} finally {
+			metrics().end(FieldAction.DELETE,start,row,null);
+		}
+	}
+
+
+	/**
+	 * Delete a row, then apply the reference policy of every foreign key pointing to it.
+	 *  Every row the delete cascades to is found and checked before anything is changed,
+	 *   so either the whole cascade is deleted or nothing is.
+	 *
+	 * @param row The row to delete (must be in use)
+	 * @throws JBaseFieldActionDenied User doesn't have permission to delete a cascaded row, or clear a pointer to it
+	 * @throws JBaseReferenceViolation A deleted row is still pointed to by a restricted foreign key
+	 */
+	private void deleteAt(int row) throws JBaseFieldActionDenied, JBaseReferenceViolation {
+
+		//Find every row the delete cascades to
+		ArrayList<KeyField<?>> keys = new ArrayList<KeyField<?>>();
+		ArrayList<Integer> rows = new ArrayList<Integer>();
+		IdentityHashMap<KeyField<?>,HashSet<Integer>> deleted = new IdentityHashMap<KeyField<?>,HashSet<Integer>>();
+		addDeleted(this,row,keys,rows,deleted);
+		for (int i = 0; i < keys.size(); ++i) {
+			for (PointerField pointer : keys.get(i).pointers) {
+				if (pointer.getPolicy() != ReferencePolicy.CASCADE) {continue;}
+
+				KeyField<?> owner = (KeyField<?>) ((ChildField) pointer).getOwner();
+				RowSet src = pointer.rowsPointingTo(rows.get(i));
+				for (int j = 0; j < src.size(); ++j) {addDeleted(owner,src.get(j),keys,rows,deleted);}
+			}
 		}
 
-		Integer row = this.by_value.get(val);
+		//Make sure every row can be deleted, and no restricted foreign key is left pointing to one
+		for (int i = 0; i < keys.size(); ++i) {
+			KeyField<?> key = keys.get(i);
+			int r = rows.get(i);
+			if (!db.getACL().canDo(key,FieldAction.DELETE)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),key,FieldAction.DELETE);
+			}
+
+			for (PointerField pointer : key.pointers) {
+				RowSet src = pointer.rowsPointingTo(r);
+				if (src.isEmpty()) {continue;}
+
+				if (pointer.getPolicy() == ReferencePolicy.RESTRICT) {
+					HashSet<Integer> gone = deleted.get((KeyField<?>) ((ChildField) pointer).getOwner());
+					for (int j = 0; j < src.size(); ++j) {
+						if (gone == null || !gone.contains(src.get(j))) {
+							throw new JBaseReferenceViolation(key,r,pointer.toField());
+						}
+					}
+				} else if (pointer.getPolicy() == ReferencePolicy.SET_NULL) {
+					if (!db.getACL().canDo(pointer.toField(),FieldAction.PUT)) {
+						throw new JBaseFieldActionDenied(db.currentUser(),pointer.toField(),FieldAction.PUT);
+					}
+				}
+			}
+		}
+
+		//Delete the rows, then clear any pointers left pointing to them
+		for (int i = 0; i < keys.size(); ++i) {keys.get(i).removeAt(rows.get(i));}
+		for (int i = 0; i < keys.size(); ++i) {
+			for (PointerField pointer : keys.get(i).allPointers()) {
+				pointer.targetDeleted(keys.get(i),rows.get(i));
+			}
+		}
+	}
+
+
+	/**
+	 * Add a row to the rows being deleted, unless it is already there
+	 */
+	private static void addDeleted(KeyField<?> key, int row, ArrayList<KeyField<?>> keys, ArrayList<Integer> rows,
+								   IdentityHashMap<KeyField<?>,HashSet<Integer>> deleted) {
+		if (!deleted.computeIfAbsent(key,k -> new HashSet<Integer>()).add(row)) {return;}
+		keys.add(key);
+		rows.add(row);
+	}
+
+
+	/**
+	 * Remove a row from this key and clear it in all of my children, without checking anything
+	 * @param row The row to remove (must be in use)
+	 */
+	private void removeAt(int row) {
+		T val = this.by_row.get(row);
 		this.by_value.remove(val);
-		this.by_row.remove(row);
+		this.by_row.set(row,null);
+		if (isIndexed()) {updateIndexes(row,val,null);}
+		changed();
+		invalidateRow(this,row);
+
+		//Clear the row in all of my children
+		for (ChildField child : children) {
+			child.deleteRow(this,row);
+		}
 
 		//Make the row available to use again
 		this.nextRow.push(row);
@@ -234,15 +502,22 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public T get(int row)
 	  throws JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.GET)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
-		}
-
-		if (!this.by_row.containsKey(row)) {
-			throw new JBaseBadRow(this,row);
+		long start = metrics().begin(FieldAction.GET);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.GET)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.GET);
+			}
+
+			if (!inRow(row)) {
+				throw new JBaseBadRow(this,row);
+			}
+
+			return this.by_row.get(row);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.GET,ex);
+		} finally {
+			metrics().end(FieldAction.GET,start,row,null);
 		}
-
-		return this.by_row.get(row);
 	}
 
 
@@ -270,16 +545,54 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public int find(T val)
 	  throws JBaseFieldActionDenied, JBaseDataNotFound {
-		if (!db.getACL().canDo(this,FieldAction.FIND)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.FIND);
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			int row = search(val);
+			if (row < 0) {
+				throw notFound();
+			} 
+
+			return row;
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,val);
 		}
+	}
 
-		//Search for the value
-		if (!this.by_value.containsKey(val)) {
-			throw new JBaseDataNotFound(this);
-		} 
 
-		return this.by_value.get(val);
+	/**
+	 * Find a value stored in the key field, without throwing an exception if it isn't there
+	 * @param val The value to find
+	 * @return Row where the value is stored, or -1 if the value isn't in the field
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	@Override
+	public int findOrMinusOne(T val)
+	  throws JBaseFieldActionDenied {
+		long start = metrics().begin(FieldAction.FIND);
+		try {
+			return search(val);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.FIND,ex);
+		} finally {
+			metrics().end(FieldAction.FIND,start,-1,val);
+		}
+	}
+
+
+	/**
+	 * Check permission to find, then search for a value
+	 * @param val The value to find
+	 * @return Row where the value is stored, or -1 if the value isn't in the field
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	private int search(T val) throws JBaseFieldActionDenied {
+		if (!db.getACL().canDo(this,FieldAction.FIND)) {
+			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.FIND);
+		}
+		return this.by_value.find(val);
 	}
 
 
@@ -295,27 +608,128 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public int next(int startRow)
 	  throws JBaseFieldActionDenied, JBaseBadRow {
-		if (!db.getACL().canDo(this,FieldAction.ITERATE)) {
-			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.ITERATE);
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			int row = step(startRow,true);
+			if (row < 0) {throw endOfList();}
+			return row;
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,startRow,null);
 		}
+	}
 
-		//When to get the start
-		if (startRow < 0) {
-			Entry<T,Integer> entry = this.by_value.firstEntry();
-			if (entry == null) {throw new JBaseEndOfList(this);}
-			return entry.getValue();
+
+	/**
+	 * Iterate over the sorted field, and go to the next value, without throwing an exception at the end
+	 * @param startRow The row to start at (or a negative number to start at the root)
+	 * @return The next row, or -1 at the end of the list
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow Bad row given
+	 */
+	@Override
+	public int tryNext(int startRow)
+	  throws JBaseFieldActionDenied, JBaseBadRow {
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			return step(startRow,true);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,startRow,null);
 		}
+	}
 
-		//Validate the row
-		if (!this.by_row.containsKey(startRow)) {
-			throw new JBaseBadRow(this,startRow);
+
+	/**
+	 * Get every row holding a value inside a range, in sorted order
+	 *
+	 * @param low The lowest value (null = start at the first value)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value (null = stop at the last value)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return Rows in the range, sorted by value
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	public int[] rowsBetween(T low, boolean lowInclusive, T high, boolean highInclusive)
+	  throws JBaseFieldActionDenied {
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.ITERATE)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.ITERATE);
+			}
+
+			//Find the first row in the range
+			int row;
+			if (low == null) {row = this.by_value.firstRow();}
+			else if (lowInclusive) {row = this.by_value.ceilingRow(low);}
+			else {row = this.by_value.higherRow(low);}
+
+			return collect(row,high,highInclusive,Integer.MAX_VALUE);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,-1,low);
 		}
+	}
 
-		//Get the next entry, testing for the end of the list
-		T value = this.by_row.get(startRow);
-		Entry<T,Integer> entry = this.by_value.higherEntry(value);
-		if (entry == null) {throw new JBaseEndOfList(this);}
-		return entry.getValue();
+
+	/**
+	 * Get one page of rows in sorted order, starting just after a given value (keyset pagination).
+	 *  Pass the value of the last row on the previous page to get the next page.
+	 *
+	 * @param after Get rows with values greater than this (null = start at the first value)
+	 * @param limit Maximum number of rows to return
+	 * @return Rows on the page, sorted by value (fewer than the limit at the end of the list)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 */
+	public int[] page(T after, int limit)
+	  throws JBaseFieldActionDenied {
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			if (!db.getACL().canDo(this,FieldAction.ITERATE)) {
+				throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.ITERATE);
+			}
+
+			int row = (after == null) ? this.by_value.firstRow() : this.by_value.higherRow(after);
+			return collect(row,null,true,limit);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,-1,after);
+		}
+	}
+
+
+	/**
+	 * Walk the sorted values from a starting row, collecting rows until the upper limit is passed
+	 *
+	 * @param row The first row to collect (negative = nothing to collect)
+	 * @param high The highest value (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @param limit Maximum number of rows to collect
+	 * @return Rows, sorted by value
+	 */
+	private int[] collect(int row, T high, boolean highInclusive, int limit) {
+		int[] rows = new int[Math.max(0,Math.min(limit,16))];
+		int n = 0;
+		while (row >= 0 && n < limit) {
+			T val = this.by_row.get(row);
+			if (high != null) {
+				int cmp = val.compareTo(high);
+				if (cmp > 0 || (cmp == 0 && !highInclusive)) {break;}
+			}
+
+			if (n == rows.length) {rows = Arrays.copyOf(rows,n*2);}
+			rows[n++] = row;
+			row = this.by_value.higherRow(val);
+		}
+
+		return Arrays.copyOf(rows,n);
 	}
 
 
@@ -330,27 +744,168 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	public int pre(int startRow)
 	  throws JBaseFieldActionDenied, JBaseBadRow, JBaseEndOfList {
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			int row = step(startRow,false);
+			if (row < 0) {throw endOfList();}
+			return row;
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,startRow,null);
+		}
+	}
+
+
+	/**
+	 * Iterate over the sorted field, and go to the previous value, without throwing an exception at the end
+	 * @param startRow The row to start at (or a negative number to start at the root)
+	 * @return The previous row, or -1 at the end of the list
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow Row given that is greater than or equal to the depth
+	 */
+	@Override
+	public int tryPre(int startRow)
+	  throws JBaseFieldActionDenied, JBaseBadRow {
+		long start = metrics().begin(FieldAction.ITERATE);
+		try {
+			return step(startRow,false);
+		} catch (JBaseException ex) {
+			throw metrics().failed(FieldAction.ITERATE,ex);
+		} finally {
+			metrics().end(FieldAction.ITERATE,start,startRow,null);
+		}
+	}
+
+
+	/**
+	 * Check permission to iterate, then move one value forward or backward in sorted order
+	 *
+	 * @param startRow The row to start at (or a negative number to start at the first or last value)
+	 * @param forward True to go to the next value, false to go to the previous value
+	 * @return The row, or -1 at the end of the list
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to execute this action
+	 * @throws JBaseBadRow Row given that doesn't hold a value
+	 */
+	private int step(int startRow, boolean forward) throws JBaseFieldActionDenied, JBaseBadRow {
 		if (!db.getACL().canDo(this,FieldAction.ITERATE)) {
 			throw new JBaseFieldActionDenied(db.currentUser(),this,FieldAction.ITERATE);
 		}
 
 		//When to get the start
 		if (startRow < 0) {
-			Entry<T,Integer> entry = this.by_value.lastEntry();
-			if (entry == null) {throw new JBaseEndOfList(this);}
-			return entry.getValue();
+			return forward ? this.by_value.firstRow() : this.by_value.lastRow();
 		}
 
 		//Validate the row
-		if (!this.by_row.containsKey(startRow)) {
+		if (!inRow(startRow)) {
 			throw new JBaseBadRow(this,startRow);
 		}
 
-		//Get the next entry, testing for the end of the list
+		//Get the next entry (negative at the end of the list)
 		T value = this.by_row.get(startRow);
-		Entry<T,Integer> entry = this.by_value.lowerEntry(value);
-		if (entry == null) {throw new JBaseEndOfList(this);}
-		return entry.getValue();
+		return forward ? this.by_value.higherRow(value) : this.by_value.lowerRow(value);
+	}
+
+
+
+	/**
+	 * Test if a row is currently in use
+	 * @param row The row to test
+	 * @return True if the row holds a value
+	 */
+	private boolean inRow(int row) {
+		return (row >= 0 && row < this.depth && this.by_row.get(row) != null);
+	}
+
+
+	/**
+	 * Write the key to a snapshot.
+	 *  The rows are written in order, so they can be streamed straight back into the storage engine.
+	 *  Values are written unshared, so the stream doesn't keep every row reachable until the save ends.
+	 *  The index is written in sorted order, so it can be bulk loaded without sorting it again.
+	 *
+	 * @param out The stream to write to
+	 * @throws IOException Problem writing to the stream
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for (int i = 0; i < this.depth; ++i) {
+			out.writeUnshared(this.by_row.get(i));
+		}
+
+		out.writeInt(this.by_value.size());
+		for (Iterator<Entry<T,Integer>> it = this.by_value.iterator(); it.hasNext(); ) {
+			out.writeInt(it.next().getValue());
+		}
+	}
+
+
+	/**
+	 * Read the key from a snapshot
+	 *
+	 * @param in The stream to read from
+	 * @throws IOException Problem reading from the stream
+	 * @throws ClassNotFoundException Snapshot contains an unknown class
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		this.by_row = newStore(this.depth);
+		for (int i = 0; i < this.depth; ++i) {
+			T val = (T) in.readUnshared();
+			if (val != null) {this.by_row.set(i,val);}
+		}
+
+		this.by_value = newIndex(this.indexType,this.fanout);
+		int size = in.readInt();
+		for (int i = 0; i < size; ++i) {
+			int row = in.readInt();
+			this.by_value.bulkAppend(this.by_row.get(row),row);
+		}
+		this.by_value.finishBulkLoad();
+		rebuildIndexes();
+	}
+
+
+
+	/**
+	 * Get the column store holding the values in this field
+	 * @return Column store
+	 */
+	protected ColumnStore<T> valueStore() {
+		return this.by_row;
+	}
+
+
+	/**
+	 * Close the column store and the value index for this field
+	 */
+	protected void closeStorage() {
+		super.closeStorage();
+		if (this.by_value != null) {this.by_value.close();}
+	}
+
+
+	/**
+	 * Test if the column store or the value index keeps any data outside of the Java heap
+	 * @return True if the field has storage to release
+	 */
+	@Override
+	protected boolean hasExternalStorage() {
+		return super.hasExternalStorage() || this.indexType == KeyIndexType.BTREE;
+	}
+
+
+	/**
+	 * Release the column store and the value index for this field
+	 */
+	@Override
+	protected void releaseStores() {
+		super.releaseStores();
+		if (this.by_value != null) {this.by_value.close();}
 	}
 
 
@@ -360,6 +915,7 @@ public final class KeyField<T extends Comparable<T> & Serializable> extends Fiel
 	 */
 	protected void deleteInternal() {
 		this.db.deleteField(this,this.uuid);
+		closeStorage();
 
 		//Delete all of my children
 		HashSet<ChildField> childs = new HashSet<ChildField>(this.children);
@@ -28,6 +28,13 @@ public interface ParentField extends JBaseField {
 	public ChildField[] allChildren();
 
 
+	/**
+	 * Delete the value stored at a given row, along with the row in every child
+	 * @param row The row to delete
+	 */
+	public void deleteRow(int row);
+
+
 	/**
 	 * Get the depth of this field (number of rows stored)
 	 * @return Depth
@@ -1,5 +1,8 @@
 package jbase.field;
 
+import jbase.index.RowSet;
+import java.util.Map;
+
 
 /**
  * Represents a field that can be pointed to by a foreign key
@@ -33,4 +36,12 @@ public interface PointableField extends JBaseField {
 	 * @return Array of pointer fields
  	 */
 	public PointerField[] allPointers();
+
+
+	/**
+	 * Find every row in every pointer field that points to a given row
+	 * @param row The row being pointed to
+	 * @return Map of pointer fields to the rows pointing to the row (only non-empty sets)
+	 */
+	public Map<PointerField,RowSet> referencesTo(int row);
 }
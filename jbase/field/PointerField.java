@@ -1,5 +1,7 @@
 package jbase.field;
 
+import jbase.index.RowSet;
+
 /**
  * Interface for a field that points to another field
  * @author Bryan McClain
@@ -13,4 +15,27 @@ public interface PointerField extends JBaseField {
 	 */
 	public PointableField getPoint();
 
+
+	/**
+	 * Get what this field does when a row it points to is deleted
+	 * @return Reference Policy
+	 */
+	public ReferencePolicy getPolicy();
+
+
+	/**
+	 * Find every row in this field that points to a given row
+	 * @param row The row being pointed to
+	 * @return Rows that point to the row (can be empty)
+	 */
+	public RowSet rowsPointingTo(int row);
+
+
+	/**
+	 * Clear pointers to a row after it is deleted (SET_NULL). Cascades and restrictions
+	 *  are checked and applied by the key before any row is deleted.
+	 * @param point The field the row was deleted from
+	 * @param row The deleted row
+	 */
+	public void targetDeleted(PointableField point, int row);
 }
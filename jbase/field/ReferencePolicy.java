@@ -0,0 +1,27 @@
+package jbase.field;
+
+import jbase.JBaseAction;
+
+
+/**
+ * What a foreign key does when a row it points to is deleted
+ * @author Bryan McClain
+ */
+public enum ReferencePolicy {
+	NO_ACTION,		/* Leave the pointer as-is */
+	RESTRICT,		/* Refuse to delete a row that is still pointed to */
+	CASCADE,		/* Delete every row that points to the deleted row */
+	SET_NULL;		/* Clear every pointer to the deleted row (set to -1) */
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
@@ -0,0 +1,152 @@
+package jbase.field;
+
+import jbase.storage.ClockCache;
+
+
+/**
+ * Cache of target rows read through foreign keys (see ForeignKeyField.deref()),
+ *  so popular rows of a small key (a "dimension table") aren't read again for every
+ *  row pointing at them. Rows are found by key field and row number.
+ *
+ *  A cached row is dropped whenever the key or one of its children changes at that row,
+ *   and every row of a key is dropped when a child is added to or removed from the key.
+ *  Size limits and eviction are handled by a ClockCache.
+ *
+ * @author Bryan McClain
+ */
+public class RowCache {
+
+	private final ClockCache<RowKey,TargetRow> rows;
+
+
+	/**
+	 * Construct a new row cache
+	 * @param rows Maximum number of rows held
+	 * @param maxWeight Maximum estimated size of all rows, in bytes
+	 */
+	public RowCache(int rows, long maxWeight) {
+		this.rows = new ClockCache<RowKey,TargetRow>(rows,maxWeight,null);
+	}
+
+
+	/**
+	 * Get a cached row
+	 *
+	 * @param key The key field holding the row
+	 * @param row The row
+	 * @return The cached row, or null if it isn't cached
+	 */
+	public TargetRow get(PointableField key, int row) {
+		return this.rows.get(new RowKey(key,row));
+	}
+
+
+	/**
+	 * Add a row to the cache.
+	 *  Rows larger than the whole cache are not added.
+	 *
+	 * @param r The row to add
+	 */
+	public void put(TargetRow r) {
+		this.rows.put(new RowKey(r.getKey(),r.getRow()),r,r.weight);
+	}
+
+
+	/**
+	 * Drop a row from the cache after it changes
+	 * @param key The key field holding the row
+	 * @param row The row that changed
+	 */
+	public void invalidate(PointableField key, int row) {
+		this.rows.invalidate(new RowKey(key,row));
+	}
+
+
+	/**
+	 * Drop every row of a key from the cache (when the children of the key change)
+	 * @param key The key field
+	 */
+	public void invalidateAll(PointableField key) {
+		this.rows.invalidateIf(r -> r.getKey() == key);
+	}
+
+
+	/**
+	 * Drop every row from the cache
+	 */
+	public void clear() {
+		this.rows.clear();
+	}
+
+
+	/**
+	 * Get the maximum number of rows held
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return this.rows.getCapacity();
+	}
+
+
+	/**
+	 * Get the maximum estimated size of all rows
+	 * @return Bytes
+	 */
+	public long getMaxWeight() {
+		return this.rows.getMaxWeight();
+	}
+
+
+	/**
+	 * Get the number of rows currently cached
+	 * @return Rows
+	 */
+	public int size() {
+		return this.rows.size();
+	}
+
+
+	/**
+	 * Get the estimated size of all cached rows
+	 * @return Bytes
+	 */
+	public long getWeight() {
+		return this.rows.getWeight();
+	}
+
+
+	/**
+	 * Get the number of lookups served from the cache
+	 * @return Hits
+	 */
+	public long getHits() {
+		return this.rows.getHits();
+	}
+
+
+	/**
+	 * Get the number of lookups that had to read the row
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return this.rows.getMisses();
+	}
+
+
+	/**
+	 * Get the number of rows evicted to make room for other rows
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return this.rows.getEvictions();
+	}
+
+
+	/**
+	 * Get the number of rows dropped because they changed
+	 * @return Invalidations
+	 */
+	public long getInvalidations() {
+		return this.rows.getInvalidations();
+	}
+}
@@ -0,0 +1,46 @@
+package jbase.field;
+
+
+/**
+ * A row of a key field, used to find target rows in the row cache
+ * @author Bryan McClain
+ */
+final class RowKey {
+
+	private final PointableField key;
+	private final int row;
+
+
+	/**
+	 * Construct a new row key
+	 * @param key The key field holding the row
+	 * @param row The row
+	 */
+	RowKey(PointableField key, int row) {
+		this.key = key;
+		this.row = row;
+	}
+
+
+	/**
+	 * Test if two row keys are for the same row of the same field
+	 * @param o The other row key
+	 * @return True if they are equal
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof RowKey)) {return false;}
+		RowKey other = (RowKey) o;
+		return this.key == other.key && this.row == other.row;
+	}
+
+
+	/**
+	 * Get the hash code of this row key
+	 * @return Hash code
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(this.key) + this.row;
+	}
+}
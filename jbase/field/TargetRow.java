@@ -0,0 +1,137 @@
+package jbase.field;
+
+import jbase.exception.*;
+
+
+/**
+ * A row of a key field read together with the values of all of its children,
+ *  as returned by ForeignKeyField.deref(). Target rows can be kept in the
+ *   database's RowCache, so the values are a copy taken when the row was read.
+ *
+ *  Permissions are still checked on every get(), so a cached row never shows
+ *   a value the current user isn't allowed to read.
+ *
+ * @author Bryan McClain
+ */
+public class TargetRow {
+
+	private final KeyField<?> key;			// Key field holding the row
+	private final int row;
+	private final Object value;				// Value of the key at the row
+	private final ChildField[] children;	// Children of the key when the row was read
+	private final Object[] values;			// Value of each child at the row
+	final long weight;						// Estimated size in bytes (used by the row cache)
+
+
+	/**
+	 * Read a row of a key field and all of its children, without checking permissions
+	 *
+	 * @param key The key field
+	 * @param row The row to read
+	 * @return The row, or null if the row isn't in use
+	 */
+	static TargetRow read(KeyField<?> key, int row) {
+		Object value = key.valueStore().get(row);
+		if (value == null) {return null;}
+
+		ChildField[] children = key.allChildren();
+		Object[] values = new Object[children.length];
+		for (int i = 0; i < children.length; ++i) {
+			values[i] = ((Field<?>) children[i]).valueStore().get(row);
+		}
+		return new TargetRow(key,row,value,children,values);
+	}
+
+
+	/**
+	 * Construct a new target row
+	 */
+	private TargetRow(KeyField<?> key, int row, Object value, ChildField[] children, Object[] values) {
+		this.key = key;
+		this.row = row;
+		this.value = value;
+		this.children = children;
+		this.values = values;
+
+		long w = 64 + weigh(value) + 24L * children.length;
+		for (Object v : values) {w += weigh(v);}
+		this.weight = w;
+	}
+
+
+	/**
+	 * Get the key field holding this row
+	 * @return Key Field
+	 */
+	public KeyField<?> getKey() {
+		return this.key;
+	}
+
+
+	/**
+	 * Get the row in the key field
+	 * @return Row
+	 */
+	public int getRow() {
+		return this.row;
+	}
+
+
+	/**
+	 * Get the value of the key at this row
+	 * @return Key value
+	 */
+	public Object getValue() {
+		return this.value;
+	}
+
+
+	/**
+	 * Get the value of a child of the key at this row
+	 * @param child A child field of the key
+	 * @return The value (can be null)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the child
+	 * @throws JBaseFieldNotFound The field isn't a child of the key
+	 */
+	public Object get(Field<?> child) throws JBaseFieldActionDenied, JBaseFieldNotFound {
+		for (int i = 0; i < this.children.length; ++i) {
+			if (this.children[i] == child) {
+				if (!child.getDatabase().getACL().canDo(child,FieldAction.GET)) {
+					throw new JBaseFieldActionDenied(child.getDatabase().currentUser(),child,FieldAction.GET);
+				}
+				return this.values[i];
+			}
+		}
+		throw new JBaseFieldNotFound(this.key.getDatabase(),child.getName());
+	}
+
+
+	/**
+	 * Get the value of a child of the key at this row
+	 * @param name Name of a child field of the key
+	 * @return The value (can be null)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the child
+	 * @throws JBaseFieldNotFound The field isn't a child of the key
+	 */
+	public Object get(String name) throws JBaseFieldActionDenied, JBaseFieldNotFound {
+		for (ChildField child : this.children) {
+			if (child.toField().getName().equals(name)) {return get(child.toField());}
+		}
+		throw new JBaseFieldNotFound(this.key.getDatabase(),name);
+	}
+
+
+	/**
+	 * Estimate the memory used by a value
+	 * @param v The value (can be null)
+	 * @return Bytes
+	 */
+	private static long weigh(Object v) {
+		if (v == null) {return 0;}
+		if (v instanceof String) {return 40 + 2L * ((String) v).length();}
+		if (v instanceof Number || v instanceof Boolean || v instanceof Character) {return 16;}
+		return 64;
+	}
+}
@@ -0,0 +1,103 @@
+package jbase.index;
+
+import java.util.HashMap;
+
+
+/**
+ * Secondary index that keeps a compressed bitmap of rows for each value.
+ *  Best for columns with only a few distinct values (status flags, categories, etc.),
+ *   where the bitmaps for several columns can be combined with bitwise operations.
+ *
+ * @author Bryan McClain
+ */
+public class BitmapSecondaryIndex<T> extends SecondaryIndex<T> {
+
+	private final HashMap<T,RowBitmap> bitmaps;	// Rows holding each value
+
+
+	/**
+	 * Construct a new, empty bitmap index
+	 */
+	public BitmapSecondaryIndex() {
+		this.bitmaps = new HashMap<T,RowBitmap>();
+	}
+
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public IndexKind getKind() {
+		return IndexKind.BITMAP;
+	}
+
+
+	/**
+	 * Add a row to the index
+	 * @param val The value stored in the row
+	 * @param row The row
+	 */
+	public void add(T val, int row) {
+		if (val == null) {return;}
+		RowBitmap bitmap = this.bitmaps.get(val);
+		if (bitmap == null) {
+			bitmap = new RowBitmap();
+			this.bitmaps.put(val,bitmap);
+		}
+		bitmap.add(row);
+	}
+
+
+	/**
+	 * Remove a row from the index
+	 * @param val The value that was stored in the row
+	 * @param row The row
+	 */
+	public void remove(T val, int row) {
+		if (val == null) {return;}
+		RowBitmap bitmap = this.bitmaps.get(val);
+		if (bitmap == null) {return;}
+		bitmap.remove(row);
+		if (bitmap.isEmpty()) {this.bitmaps.remove(val);}
+	}
+
+
+	/**
+	 * Find every row holding a value
+	 * @param val The value to find
+	 * @return The rows (empty if the value isn't found)
+	 */
+	public RowSet findAll(T val) {
+		if (val == null) {return RowSet.EMPTY;}
+		RowBitmap bitmap = this.bitmaps.get(val);
+		return (bitmap == null) ? RowSet.EMPTY : bitmap.toRowSet();
+	}
+
+
+	/**
+	 * Get a copy of the bitmap of rows holding a value
+	 * @param val The value to find
+	 * @return The bitmap (empty if the value isn't found)
+	 */
+	public RowBitmap findBitmap(T val) {
+		RowBitmap bitmap = (val == null) ? null : this.bitmaps.get(val);
+		return (bitmap == null) ? new RowBitmap() : bitmap.copy();
+	}
+
+
+	/**
+	 * Get the number of distinct values in the index
+	 * @return Distinct Values
+	 */
+	public int distinctValues() {
+		return this.bitmaps.size();
+	}
+
+
+	/**
+	 * Remove every row from the index
+	 */
+	public void clear() {
+		this.bitmaps.clear();
+	}
+}
@@ -0,0 +1,81 @@
+package jbase.index;
+
+import java.util.Map;
+
+
+/**
+ * Secondary index that keeps a growable list of rows for each value
+ * @author Bryan McClain
+ */
+abstract class BucketedIndex<T> extends SecondaryIndex<T> {
+
+	protected final Map<T,RowBucket> buckets;	// Rows holding each value
+
+
+	/**
+	 * Construct a new bucketed index
+	 * @param buckets Empty map used to hold the rows for each value
+	 */
+	protected BucketedIndex(Map<T,RowBucket> buckets) {
+		this.buckets = buckets;
+	}
+
+
+	/**
+	 * Add a row to the index
+	 * @param val The value stored in the row
+	 * @param row The row
+	 */
+	public void add(T val, int row) {
+		if (val == null) {return;}
+		RowBucket bucket = this.buckets.get(val);
+		if (bucket == null) {
+			bucket = new RowBucket();
+			this.buckets.put(val,bucket);
+		}
+		bucket.add(row);
+	}
+
+
+	/**
+	 * Remove a row from the index
+	 * @param val The value that was stored in the row
+	 * @param row The row
+	 */
+	public void remove(T val, int row) {
+		if (val == null) {return;}
+		RowBucket bucket = this.buckets.get(val);
+		if (bucket == null) {return;}
+		bucket.remove(row);
+		if (bucket.size() == 0) {this.buckets.remove(val);}
+	}
+
+
+	/**
+	 * Find every row holding a value
+	 * @param val The value to find
+	 * @return The rows (empty if the value isn't found)
+	 */
+	public RowSet findAll(T val) {
+		if (val == null) {return RowSet.EMPTY;}
+		RowBucket bucket = this.buckets.get(val);
+		return (bucket == null) ? RowSet.EMPTY : bucket.toRowSet();
+	}
+
+
+	/**
+	 * Get the number of distinct values in the index
+	 * @return Distinct Values
+	 */
+	public int distinctValues() {
+		return this.buckets.size();
+	}
+
+
+	/**
+	 * Remove every row from the index
+	 */
+	public void clear() {
+		this.buckets.clear();
+	}
+}
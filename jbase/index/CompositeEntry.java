@@ -0,0 +1,56 @@
+package jbase.index;
+
+
+/**
+ * A single row in a composite index: the tuple of column values, followed by the row itself
+ * @author Bryan McClain
+ */
+class CompositeEntry implements Comparable<CompositeEntry> {
+
+	static final Object MIN = new Object();		// Sorts before every value (used for search bounds)
+	static final Object MAX = new Object();		// Sorts after every value (used for search bounds)
+
+	final Object[] values;
+	final int row;
+
+
+	/**
+	 * Construct a new entry
+	 * @param values Column values (in column order)
+	 * @param row The row holding the values
+	 */
+	CompositeEntry(Object[] values, int row) {
+		this.values = values;
+		this.row = row;
+	}
+
+
+	/**
+	 * Compare two entries column by column, then by row.
+	 *  Null values sort before every other value.
+	 *
+	 * @param other The entry to compare against
+	 * @return Negative, zero or positive
+	 */
+	public int compareTo(CompositeEntry other) {
+		for (int i = 0; i < this.values.length; ++i) {
+			int cmp = compareValues(this.values[i],other.values[i]);
+			if (cmp != 0) {return cmp;}
+		}
+		return Integer.compare(this.row,other.row);
+	}
+
+
+	/**
+	 * Compare two column values
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	static int compareValues(Object a, Object b) {
+		if (a == b) {return 0;}
+		if (a == MIN || b == MAX) {return -1;}
+		if (a == MAX || b == MIN) {return 1;}
+		if (a == null) {return -1;}
+		if (b == null) {return 1;}
+		return ((Comparable) a).compareTo(b);
+	}
+}
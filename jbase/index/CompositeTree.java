@@ -0,0 +1,190 @@
+package jbase.index;
+
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+
+
+/**
+ * Sorted tree of tuples taken from several columns, ordered column by column.
+ *  Supports finding rows by equality on the first columns,
+ *   plus an optional range on the column after them.
+ *
+ *  Each row's tuple is kept separately, so a single column can be changed
+ *   without reading the other columns again. Rows where every column is null are not indexed.
+ *
+ * @author Bryan McClain
+ */
+public class CompositeTree {
+
+	private final int columns;						// Number of columns in each tuple
+	private final TreeSet<CompositeEntry> entries;	// Sorted tuples
+	private Object[][] tuples;						// Current tuple for each row (null = not indexed)
+
+
+	/**
+	 * Construct a new, empty composite tree
+	 * @param columns Number of columns in each tuple
+	 */
+	public CompositeTree(int columns) {
+		this.columns = columns;
+		this.entries = new TreeSet<CompositeEntry>();
+		this.tuples = new Object[16][];
+	}
+
+
+	/**
+	 * Get the number of columns in each tuple
+	 * @return Columns
+	 */
+	public int getColumns() {
+		return this.columns;
+	}
+
+
+	/**
+	 * Get the number of rows in the tree
+	 * @return Size
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+
+	/**
+	 * Change the value of a single column in a row
+	 *
+	 * @param row The row that changed
+	 * @param column The column that changed
+	 * @param val The new value (can be null)
+	 */
+	public void set(int row, int column, Object val) {
+		if (row >= this.tuples.length) {
+			this.tuples = Arrays.copyOf(this.tuples,Math.max(row+1,this.tuples.length*2));
+		}
+
+		Object[] old = this.tuples[row];
+		if (old != null) {
+			if (Objects.equals(old[column],val)) {return;}
+			this.entries.remove(new CompositeEntry(old,row));
+		}
+
+		Object[] tuple = (old == null) ? new Object[this.columns] : old.clone();
+		tuple[column] = val;
+
+		for (Object v : tuple) {
+			if (v != null) {
+				this.tuples[row] = tuple;
+				this.entries.add(new CompositeEntry(tuple,row));
+				return;
+			}
+		}
+		this.tuples[row] = null;	// Every column is null
+	}
+
+
+	/**
+	 * Find every row whose first columns equal the given values
+	 * @param prefix Values for the first columns (at most one per column)
+	 * @return The rows
+	 */
+	public RowSet find(Object... prefix) {
+		return toRowSet(select(prefix,CompositeEntry.MIN,true,CompositeEntry.MAX,true));
+	}
+
+
+	/**
+	 * Find every row whose first columns equal the given values,
+	 *  and whose next column is inside a range
+	 *
+	 * @param prefix Values for the first columns
+	 * @param low The lowest value for the next column (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value for the next column (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return The rows
+	 */
+	public RowSet findRange(Object[] prefix, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+		if (prefix.length >= this.columns) {
+			throw new IllegalArgumentException("No column left for the range");
+		}
+		if (low == null) {low = CompositeEntry.MIN; lowInclusive = true;}
+		if (high == null) {high = CompositeEntry.MAX; highInclusive = true;}
+		return toRowSet(select(prefix,low,lowInclusive,high,highInclusive));
+	}
+
+
+	/**
+	 * Get the rows matching an equality prefix and range, in the order of the index
+	 *
+	 * @param prefix Values for the first columns
+	 * @param low The lowest value for the next column (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value for the next column (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return Rows sorted by their tuples
+	 */
+	public int[] orderedRows(Object[] prefix, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+		if (prefix.length >= this.columns) {
+			return rowsOf(select(prefix,CompositeEntry.MIN,true,CompositeEntry.MAX,true));
+		}
+		if (low == null) {low = CompositeEntry.MIN; lowInclusive = true;}
+		if (high == null) {high = CompositeEntry.MAX; highInclusive = true;}
+		return rowsOf(select(prefix,low,lowInclusive,high,highInclusive));
+	}
+
+
+
+	/**
+	 * Select the entries matching an equality prefix and a range on the following column
+	 */
+	private NavigableSet<CompositeEntry> select(Object[] prefix, Object low, boolean lowInclusive,
+												Object high, boolean highInclusive) {
+		if (prefix.length > this.columns) {
+			throw new IllegalArgumentException("Too many values for "+this.columns+" columns");
+		}
+		if (prefix.length == this.columns) {
+			low = high = null;	// Every column is fixed
+		}
+
+		CompositeEntry from = bound(prefix,low,lowInclusive ? CompositeEntry.MIN : CompositeEntry.MAX);
+		CompositeEntry to = bound(prefix,high,highInclusive ? CompositeEntry.MAX : CompositeEntry.MIN);
+		if (from.compareTo(to) > 0) {return new TreeSet<CompositeEntry>();}
+		return this.entries.subSet(from,true,to,true);
+	}
+
+
+	/**
+	 * Build a search bound: the prefix, then the range value, then a sentinel for the rest
+	 */
+	private CompositeEntry bound(Object[] prefix, Object val, Object rest) {
+		Object[] values = new Object[this.columns];
+		System.arraycopy(prefix,0,values,0,prefix.length);
+		int i = prefix.length;
+		if (i < this.columns) {values[i++] = val;}
+		for (; i < this.columns; ++i) {values[i] = rest;}
+		return new CompositeEntry(values,(rest == CompositeEntry.MIN) ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Get the rows from a set of entries (in index order)
+	 */
+	private static int[] rowsOf(NavigableSet<CompositeEntry> selected) {
+		int[] rows = new int[selected.size()];
+		int n = 0;
+		for (CompositeEntry entry : selected) {rows[n++] = entry.row;}
+		return rows;
+	}
+
+
+	/**
+	 * Convert a set of entries into a row set
+	 */
+	private static RowSet toRowSet(NavigableSet<CompositeEntry> selected) {
+		int[] rows = rowsOf(selected);
+		Arrays.sort(rows);
+		return new RowSet(rows,rows.length);
+	}
+}
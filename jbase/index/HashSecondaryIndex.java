@@ -0,0 +1,29 @@
+package jbase.index;
+
+import java.util.HashMap;
+
+
+/**
+ * Secondary index that keeps its values in a hash table.
+ *  Only supports finding exact values.
+ *
+ * @author Bryan McClain
+ */
+public class HashSecondaryIndex<T> extends BucketedIndex<T> {
+
+	/**
+	 * Construct a new, empty hash index
+	 */
+	public HashSecondaryIndex() {
+		super(new HashMap<T,RowBucket>());
+	}
+
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public IndexKind getKind() {
+		return IndexKind.HASH;
+	}
+}
@@ -0,0 +1,83 @@
+package jbase.index;
+
+import jbase.JBaseAction;
+
+
+/**
+ * Data structure used by a secondary index on an item field
+ * @author Bryan McClain
+ */
+public enum IndexKind {
+	SORTED	(true),		/* Values are kept in sorted order (supports range lookups) */
+	HASH	(false),	/* Values are kept in a hash table (exact lookups only) */
+	BITMAP	(false),	/* Each value has a compressed bitmap of rows (few distinct values) */
+	PREFIX	(false),	/* Strings are kept in a trie (exact and prefix lookups) */
+	TOKEN	(false);	/* Each word in a string maps to its rows (word search) */
+
+
+	private final boolean ordered;		// Does this index support range lookups
+
+
+	/**
+	 * Construct a new IndexKind enumeration
+	 * @param ordered Does this index support range lookups
+	 */
+	private IndexKind(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+
+	/**
+	 * Can this index find every row in a range of values?
+	 * @return Is Ordered
+	 */
+	public boolean isOrdered() {
+		return this.ordered;
+	}
+
+
+	/**
+	 * Test if this kind of index can hold values of a given type
+	 * @param type The type of data stored in the field (null = unknown)
+	 * @return True if the type is supported
+	 */
+	public boolean supports(Class<?> type) {
+		if (type == null) {return true; /* Checked before each value is stored (see SecondaryIndex.accepts()) */}
+		if (this == PREFIX || this == TOKEN) {return String.class.isAssignableFrom(type);}
+		if (this == SORTED) {return Comparable.class.isAssignableFrom(type);}
+		return true;
+	}
+
+
+	/**
+	 * Construct a new, empty index of this kind
+	 * @return The new index
+	 */
+	public <T> SecondaryIndex<T> newIndex() {
+		if (this == SORTED) {
+			return new SortedSecondaryIndex<T>();
+		}
+		if (this == BITMAP) {
+			return new BitmapSecondaryIndex<T>();
+		}
+		if (this == PREFIX) {
+			return new PrefixSecondaryIndex<T>();
+		}
+		if (this == TOKEN) {
+			return new TokenSecondaryIndex<T>();
+		}
+		return new HashSecondaryIndex<T>();
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
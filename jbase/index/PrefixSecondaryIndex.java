@@ -0,0 +1,217 @@
+package jbase.index;
+
+import java.util.ArrayList;
+
+
+/**
+ * Secondary index that keeps String values in a compressed trie,
+ *  so every row holding a string that starts with a given prefix can be found
+ *   without comparing against the rest of the values.
+ *
+ *  Values must be Strings. Lookups are case-sensitive.
+ *
+ * @author Bryan McClain
+ */
+public class PrefixSecondaryIndex<T> extends SecondaryIndex<T> {
+
+	private TrieNode root;		// Root of the trie (empty edge)
+	private int distinct;		// Number of distinct strings in the trie
+
+
+	/**
+	 * Construct a new, empty prefix index
+	 */
+	public PrefixSecondaryIndex() {
+		clear();
+	}
+
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public IndexKind getKind() {
+		return IndexKind.PREFIX;
+	}
+
+
+	/**
+	 * Test if a value can be held by this index
+	 * @param val The value (not null)
+	 * @return True if the value is a String
+	 */
+	@Override
+	public boolean accepts(T val) {
+		return val instanceof String;
+	}
+
+
+	/**
+	 * Add a row to the index
+	 * @param val The string stored in the row
+	 * @param row The row
+	 */
+	public void add(T val, int row) {
+		if (val == null) {return;}
+		String key = (String) val;
+
+		TrieNode node = this.root;
+		int pos = 0;
+		while (pos < key.length()) {
+			int i = node.childIndex(key.charAt(pos));
+			if (i < 0) {
+				TrieNode leaf = new TrieNode(key.substring(pos));
+				node.insertChild(-(i+1),leaf);
+				node = leaf;
+				break;
+			}
+
+			//Split the edge if the key only matches part of it
+			TrieNode child = node.children[i];
+			int common = commonPrefix(child.edge,key,pos);
+			if (common < child.edge.length()) {
+				TrieNode mid = new TrieNode(child.edge.substring(0,common));
+				child.edge = child.edge.substring(common);
+				mid.insertChild(0,child);
+				node.children[i] = mid;
+				child = mid;
+			}
+
+			pos += common;
+			node = child;
+		}
+
+		if (node.rows == null) {
+			node.rows = new RowBucket();
+			++this.distinct;
+		}
+		node.rows.add(row);
+	}
+
+
+	/**
+	 * Remove a row from the index
+	 * @param val The string that was stored in the row
+	 * @param row The row
+	 */
+	public void remove(T val, int row) {
+		if (val == null) {return;}
+		String key = (String) val;
+
+		//Find the node, remembering the path to it
+		ArrayList<TrieNode> path = new ArrayList<TrieNode>();
+		TrieNode node = this.root;
+		path.add(node);
+		for (int pos = 0; pos < key.length(); ) {
+			node = node.child(key.charAt(pos));
+			if (node == null || !key.startsWith(node.edge,pos)) {return;}
+			pos += node.edge.length();
+			path.add(node);
+		}
+		if (node.rows == null) {return;}
+
+		node.rows.remove(row);
+		if (node.rows.size() > 0) {return;}
+		node.rows = null;
+		--this.distinct;
+
+		//Remove nodes that no longer lead anywhere
+		int depth = path.size() - 1;
+		while (depth > 0 && node.rows == null && node.childCount == 0) {
+			TrieNode parent = path.get(depth-1);
+			parent.removeChild(parent.childIndex(node.edge.charAt(0)));
+			node = parent;
+			--depth;
+		}
+
+		//Merge a node with its only child, so the trie stays compressed
+		if (depth > 0 && node.rows == null && node.childCount == 1) {
+			TrieNode child = node.children[0];
+			node.edge = node.edge + child.edge;
+			node.children = child.children;
+			node.childCount = child.childCount;
+			node.rows = child.rows;
+		}
+	}
+
+
+	/**
+	 * Find every row holding exactly a given string
+	 * @param val The string to find
+	 * @return The rows (empty if the string isn't found, or the value isn't a String)
+	 */
+	public RowSet findAll(T val) {
+		if (val == null || !accepts(val)) {return RowSet.EMPTY;}
+		String key = (String) val;
+
+		TrieNode node = this.root;
+		for (int pos = 0; pos < key.length(); ) {
+			node = node.child(key.charAt(pos));
+			if (node == null || !key.startsWith(node.edge,pos)) {return RowSet.EMPTY;}
+			pos += node.edge.length();
+		}
+		return (node.rows == null) ? RowSet.EMPTY : node.rows.toRowSet();
+	}
+
+
+	/**
+	 * Find every row holding a string that starts with a prefix
+	 * @param prefix The prefix to find
+	 * @return The rows (empty if no strings match)
+	 */
+	public RowSet findPrefix(String prefix) {
+		TrieNode node = this.root;
+		int pos = 0;
+		while (pos < prefix.length()) {
+			TrieNode child = node.child(prefix.charAt(pos));
+			if (child == null) {return RowSet.EMPTY;}
+
+			int common = commonPrefix(child.edge,prefix,pos);
+			if (pos + common == prefix.length()) {node = child; break; /* Prefix ends inside this edge */}
+			if (common < child.edge.length()) {return RowSet.EMPTY;}
+
+			pos += common;
+			node = child;
+		}
+
+		//Collect the rows for every string below the node
+		ArrayList<RowBucket> buckets = new ArrayList<RowBucket>();
+		ArrayList<TrieNode> stack = new ArrayList<TrieNode>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			TrieNode next = stack.remove(stack.size()-1);
+			if (next.rows != null) {buckets.add(next.rows);}
+			for (int i = 0; i < next.childCount; ++i) {stack.add(next.children[i]);}
+		}
+		return RowBucket.merge(buckets);
+	}
+
+
+	/**
+	 * Get the number of distinct strings in the index
+	 * @return Distinct Values
+	 */
+	public int distinctValues() {
+		return this.distinct;
+	}
+
+
+	/**
+	 * Remove every row from the index
+	 */
+	public void clear() {
+		this.root = new TrieNode("");
+		this.distinct = 0;
+	}
+
+
+	/**
+	 * Count the characters an edge shares with a key, starting at a position in the key
+	 */
+	private static int commonPrefix(String edge, String key, int pos) {
+		int n = Math.min(edge.length(),key.length() - pos);
+		int i = 0;
+		while (i < n && edge.charAt(i) == key.charAt(pos+i)) {++i;}
+		return i;
+	}
+}
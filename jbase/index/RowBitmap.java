@@ -0,0 +1,473 @@
+package jbase.index;
+
+import java.util.Arrays;
+
+
+/**
+ * Compressed bitmap of rows, in the style of a Roaring bitmap.
+ *  Rows are split into chunks of 65536 by their upper 16 bits. Each chunk is stored as either:
+ *   - A sorted array of the lower 16 bits (when the chunk holds at most 4096 rows)
+ *   - A plain bitmap of 65536 bits (when the chunk is dense)
+ *
+ *  Bitmaps returned to callers are never changed, so they can be safely combined
+ *   using and(), or(), andNot() and not().
+ *
+ * @author Bryan McClain
+ */
+public final class RowBitmap {
+
+	private static final int ARRAY_MAX = 4096;		// Largest array chunk before switching to bits
+	private static final int WORDS = 1024;			// Words in a bitmap chunk (65536 bits)
+
+	private char[] keys;		// Upper 16 bits of each chunk (sorted)
+	private Object[] chunks;	// Each chunk: char[] (array) or long[] (bitmap)
+	private int[] cards;		// Number of rows in each chunk
+	private int count;			// Number of chunks in use
+
+
+	/**
+	 * Construct a new, empty bitmap
+	 */
+	public RowBitmap() {
+		this.keys = new char[4];
+		this.chunks = new Object[4];
+		this.cards = new int[4];
+		this.count = 0;
+	}
+
+
+	/**
+	 * Construct a bitmap holding every row in a set
+	 * @param rows The rows
+	 * @return The bitmap
+	 */
+	public static RowBitmap of(RowSet rows) {
+		RowBitmap bitmap = new RowBitmap();
+		for (int i = 0; i < rows.size(); ++i) {bitmap.add(rows.get(i));}
+		return bitmap;
+	}
+
+
+	/**
+	 * Construct a bitmap holding every row from 0 up to (but not including) a limit
+	 * @param limit The first row not in the bitmap
+	 * @return The bitmap
+	 */
+	public static RowBitmap range(int limit) {
+		RowBitmap bitmap = new RowBitmap();
+		for (int start = 0; start < limit; start += 65536) {
+			int len = Math.min(65536,limit - start);
+			long[] bits = new long[WORDS];
+			Arrays.fill(bits,0,len >>> 6,-1L);
+			if ((len & 63) != 0) {bits[len >>> 6] = (1L << (len & 63)) - 1;}
+			bitmap.append((char) (start >>> 16),toChunk(bits,len),len);
+		}
+		return bitmap;
+	}
+
+
+
+	//========== Reading ==========
+
+	/**
+	 * Get the number of rows in the bitmap
+	 * @return Cardinality
+	 */
+	public int cardinality() {
+		int total = 0;
+		for (int i = 0; i < this.count; ++i) {total += this.cards[i];}
+		return total;
+	}
+
+
+	/**
+	 * Test if the bitmap holds no rows
+	 * @return True if empty
+	 */
+	public boolean isEmpty() {
+		return (this.count == 0);
+	}
+
+
+	/**
+	 * Test if the bitmap holds a row
+	 * @param row The row to test
+	 * @return True if the row is in the bitmap
+	 */
+	public boolean contains(int row) {
+		int i = findChunk((char) (row >>> 16));
+		if (i < 0) {return false;}
+		return chunkContains(this.chunks[i],this.cards[i],(char) row);
+	}
+
+
+	/**
+	 * Convert the bitmap to a set of rows
+	 * @return Row set
+	 */
+	public RowSet toRowSet() {
+		int[] rows = new int[cardinality()];
+		int n = 0;
+		for (int i = 0; i < this.count; ++i) {
+			int high = this.keys[i] << 16;
+			Object chunk = this.chunks[i];
+
+			if (chunk instanceof char[]) {
+				char[] arr = (char[]) chunk;
+				for (int j = 0; j < this.cards[i]; ++j) {rows[n++] = high | arr[j];}
+			} else {
+				long[] bits = (long[]) chunk;
+				for (int w = 0; w < WORDS; ++w) {
+					for (long word = bits[w]; word != 0; word &= (word - 1)) {
+						rows[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+					}
+				}
+			}
+		}
+		return new RowSet(rows,n);
+	}
+
+
+	/**
+	 * Get the number of bytes used by this bitmap (approximate)
+	 * @return Size in bytes
+	 */
+	public long memorySize() {
+		long size = 0;
+		for (int i = 0; i < this.count; ++i) {
+			Object chunk = this.chunks[i];
+			size += (chunk instanceof char[]) ? 2L * ((char[]) chunk).length : 8L * WORDS;
+		}
+		return size;
+	}
+
+
+
+	//========== Combining ==========
+
+	/**
+	 * Get the rows that are in both bitmaps
+	 * @param other The other bitmap
+	 * @return Intersection of the bitmaps
+	 */
+	public RowBitmap and(RowBitmap other) {
+		RowBitmap out = new RowBitmap();
+		int i = 0, j = 0;
+		while (i < this.count && j < other.count) {
+			if (this.keys[i] < other.keys[j]) {++i;}
+			else if (this.keys[i] > other.keys[j]) {++j;}
+			else {
+				out.appendBits(this.keys[i],andChunks(this.chunks[i],this.cards[i],other.chunks[j],other.cards[j]));
+				++i; ++j;
+			}
+		}
+		return out;
+	}
+
+
+	/**
+	 * Get the rows that are in either bitmap
+	 * @param other The other bitmap
+	 * @return Union of the bitmaps
+	 */
+	public RowBitmap or(RowBitmap other) {
+		RowBitmap out = new RowBitmap();
+		int i = 0, j = 0;
+		while (i < this.count || j < other.count) {
+			if (j >= other.count || (i < this.count && this.keys[i] < other.keys[j])) {
+				out.append(this.keys[i],copyChunk(this.chunks[i]),this.cards[i]);
+				++i;
+			} else if (i >= this.count || this.keys[i] > other.keys[j]) {
+				out.append(other.keys[j],copyChunk(other.chunks[j]),other.cards[j]);
+				++j;
+			} else {
+				long[] bits = toBits(this.chunks[i],this.cards[i]);
+				orInto(bits,other.chunks[j],other.cards[j]);
+				out.appendBits(this.keys[i],bits);
+				++i; ++j;
+			}
+		}
+		return out;
+	}
+
+
+	/**
+	 * Get the rows in this bitmap that are not in another bitmap
+	 * @param other The other bitmap
+	 * @return Difference of the bitmaps
+	 */
+	public RowBitmap andNot(RowBitmap other) {
+		RowBitmap out = new RowBitmap();
+		int j = 0;
+		for (int i = 0; i < this.count; ++i) {
+			while (j < other.count && other.keys[j] < this.keys[i]) {++j;}
+			if (j >= other.count || other.keys[j] != this.keys[i]) {
+				out.append(this.keys[i],copyChunk(this.chunks[i]),this.cards[i]);
+				continue;
+			}
+
+			long[] bits = toBits(this.chunks[i],this.cards[i]);
+			long[] remove = toBits(other.chunks[j],other.cards[j]);
+			for (int w = 0; w < WORDS; ++w) {bits[w] &= ~remove[w];}
+			out.appendBits(this.keys[i],bits);
+		}
+		return out;
+	}
+
+
+	/**
+	 * Get every row from 0 up to a limit that is NOT in this bitmap
+	 * @param limit The first row not considered (usually the depth of the field)
+	 * @return Complement of the bitmap
+	 */
+	public RowBitmap not(int limit) {
+		return range(limit).andNot(this);
+	}
+
+
+
+	//========== Changing (used by the bitmap index) ==========
+
+	/**
+	 * Add a row to the bitmap
+	 * @param row The row to add
+	 */
+	void add(int row) {
+		char high = (char) (row >>> 16);
+		char low = (char) row;
+		int i = findChunk(high);
+		if (i < 0) {
+			i = -(i+1);
+			insertChunk(i,high,new char[4],0);
+		}
+
+		Object chunk = this.chunks[i];
+		if (chunk instanceof long[]) {
+			long[] bits = (long[]) chunk;
+			long mask = 1L << (low & 63);
+			if ((bits[low >>> 6] & mask) == 0) {
+				bits[low >>> 6] |= mask;
+				++this.cards[i];
+			}
+			return;
+		}
+
+		char[] arr = (char[]) chunk;
+		int card = this.cards[i];
+		int pos = Arrays.binarySearch(arr,0,card,low);
+		if (pos >= 0) {return;}
+		pos = -(pos+1);
+
+		//Chunk is too dense for an array, so switch to bits
+		if (card >= ARRAY_MAX) {
+			long[] bits = toBits(arr,card);
+			bits[low >>> 6] |= 1L << (low & 63);
+			this.chunks[i] = bits;
+			++this.cards[i];
+			return;
+		}
+
+		if (card == arr.length) {
+			arr = Arrays.copyOf(arr,Math.min(arr.length*2,ARRAY_MAX));
+			this.chunks[i] = arr;
+		}
+		System.arraycopy(arr,pos,arr,pos+1,card-pos);
+		arr[pos] = low;
+		++this.cards[i];
+	}
+
+
+	/**
+	 * Remove a row from the bitmap
+	 * @param row The row to remove
+	 */
+	void remove(int row) {
+		int i = findChunk((char) (row >>> 16));
+		if (i < 0) {return;}
+		char low = (char) row;
+
+		Object chunk = this.chunks[i];
+		if (chunk instanceof long[]) {
+			long[] bits = (long[]) chunk;
+			long mask = 1L << (low & 63);
+			if ((bits[low >>> 6] & mask) == 0) {return;}
+			bits[low >>> 6] &= ~mask;
+			--this.cards[i];
+
+			//Chunk is sparse again, so switch back to an array
+			if (this.cards[i] <= ARRAY_MAX) {this.chunks[i] = toChunk(bits,this.cards[i]);}
+		} else {
+			char[] arr = (char[]) chunk;
+			int card = this.cards[i];
+			int pos = Arrays.binarySearch(arr,0,card,low);
+			if (pos < 0) {return;}
+			System.arraycopy(arr,pos+1,arr,pos,card-pos-1);
+			--this.cards[i];
+		}
+
+		if (this.cards[i] == 0) {removeChunk(i);}
+	}
+
+
+	/**
+	 * Make a copy of this bitmap
+	 * @return Copy
+	 */
+	RowBitmap copy() {
+		RowBitmap out = new RowBitmap();
+		for (int i = 0; i < this.count; ++i) {
+			out.append(this.keys[i],copyChunk(this.chunks[i]),this.cards[i]);
+		}
+		return out;
+	}
+
+
+
+	//========== Chunk Helpers ==========
+
+	/**
+	 * Binary search for a chunk
+	 * @return The index of the chunk, or (-(insertion point) - 1) if not found
+	 */
+	private int findChunk(char high) {
+		return Arrays.binarySearch(this.keys,0,this.count,high);
+	}
+
+
+	/**
+	 * Insert a new chunk at a given position
+	 */
+	private void insertChunk(int i, char high, Object chunk, int card) {
+		if (this.count == this.keys.length) {
+			int size = this.keys.length * 2;
+			this.keys = Arrays.copyOf(this.keys,size);
+			this.chunks = Arrays.copyOf(this.chunks,size);
+			this.cards = Arrays.copyOf(this.cards,size);
+		}
+		System.arraycopy(this.keys,i,this.keys,i+1,this.count-i);
+		System.arraycopy(this.chunks,i,this.chunks,i+1,this.count-i);
+		System.arraycopy(this.cards,i,this.cards,i+1,this.count-i);
+		this.keys[i] = high;
+		this.chunks[i] = chunk;
+		this.cards[i] = card;
+		++this.count;
+	}
+
+
+	/**
+	 * Remove an empty chunk
+	 */
+	private void removeChunk(int i) {
+		System.arraycopy(this.keys,i+1,this.keys,i,this.count-i-1);
+		System.arraycopy(this.chunks,i+1,this.chunks,i,this.count-i-1);
+		System.arraycopy(this.cards,i+1,this.cards,i,this.count-i-1);
+		this.chunks[--this.count] = null;
+	}
+
+
+	/**
+	 * Add a chunk after every other chunk (keys must be added in order)
+	 */
+	private void append(char high, Object chunk, int card) {
+		if (card > 0) {insertChunk(this.count,high,chunk,card);}
+	}
+
+
+	/**
+	 * Add a chunk built from plain bits, choosing the smallest representation
+	 */
+	private void appendBits(char high, long[] bits) {
+		int card = 0;
+		for (long word : bits) {card += Long.bitCount(word);}
+		append(high,toChunk(bits,card),card);
+	}
+
+
+	/**
+	 * Convert plain bits to an array chunk if they are sparse
+	 */
+	private static Object toChunk(long[] bits, int card) {
+		if (card > ARRAY_MAX) {return bits;}
+
+		char[] arr = new char[Math.max(card,4)];
+		int n = 0;
+		for (int w = 0; w < WORDS; ++w) {
+			for (long word = bits[w]; word != 0; word &= (word - 1)) {
+				arr[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+			}
+		}
+		return arr;
+	}
+
+
+	/**
+	 * Get a (new) copy of a chunk as plain bits
+	 */
+	private static long[] toBits(Object chunk, int card) {
+		if (chunk instanceof long[]) {return ((long[]) chunk).clone();}
+
+		long[] bits = new long[WORDS];
+		char[] arr = (char[]) chunk;
+		for (int j = 0; j < card; ++j) {bits[arr[j] >>> 6] |= 1L << (arr[j] & 63);}
+		return bits;
+	}
+
+
+	/**
+	 * OR a chunk into plain bits
+	 */
+	private static void orInto(long[] bits, Object chunk, int card) {
+		if (chunk instanceof long[]) {
+			long[] other = (long[]) chunk;
+			for (int w = 0; w < WORDS; ++w) {bits[w] |= other[w];}
+		} else {
+			char[] arr = (char[]) chunk;
+			for (int j = 0; j < card; ++j) {bits[arr[j] >>> 6] |= 1L << (arr[j] & 63);}
+		}
+	}
+
+
+	/**
+	 * AND two chunks together, returning plain bits
+	 */
+	private static long[] andChunks(Object a, int cardA, Object b, int cardB) {
+		long[] bits = new long[WORDS];
+
+		//Only test the rows in the smaller array against the other chunk
+		if (a instanceof char[] || b instanceof char[]) {
+			boolean useA = (a instanceof char[]) && (!(b instanceof char[]) || cardA <= cardB);
+			char[] arr = (char[]) (useA ? a : b);
+			int card = useA ? cardA : cardB;
+			Object other = useA ? b : a;
+			int otherCard = useA ? cardB : cardA;
+			for (int j = 0; j < card; ++j) {
+				if (chunkContains(other,otherCard,arr[j])) {bits[arr[j] >>> 6] |= 1L << (arr[j] & 63);}
+			}
+			return bits;
+		}
+
+		long[] x = (long[]) a, y = (long[]) b;
+		for (int w = 0; w < WORDS; ++w) {bits[w] = x[w] & y[w];}
+		return bits;
+	}
+
+
+	/**
+	 * Test if a chunk holds the lower 16 bits of a row
+	 */
+	private static boolean chunkContains(Object chunk, int card, char low) {
+		if (chunk instanceof long[]) {
+			return (((long[]) chunk)[low >>> 6] & (1L << (low & 63))) != 0;
+		}
+		return (Arrays.binarySearch((char[]) chunk,0,card,low) >= 0);
+	}
+
+
+	/**
+	 * Copy a chunk, so the copy can be changed safely
+	 */
+	private static Object copyChunk(Object chunk) {
+		if (chunk instanceof long[]) {return ((long[]) chunk).clone();}
+		return ((char[]) chunk).clone();
+	}
+}
@@ -0,0 +1,115 @@
+package jbase.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+
+/**
+ * Growable list of the rows holding a single value in a secondary index.
+ *  New rows are appended, and the list is only sorted when it is read or a row is removed.
+ *
+ * @author Bryan McClain
+ */
+class RowBucket {
+
+	private int[] rows;
+	private int size;
+	private boolean sorted;
+
+
+	/**
+	 * Construct a new, empty bucket
+	 */
+	RowBucket() {
+		this.rows = new int[4];
+		this.size = 0;
+		this.sorted = true;
+	}
+
+
+	/**
+	 * Get the number of rows in the bucket
+	 * @return Size
+	 */
+	int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Add a row to the bucket
+	 * @param row The row to add
+	 */
+	void add(int row) {
+		if (this.size == this.rows.length) {
+			this.rows = Arrays.copyOf(this.rows,this.size*2);
+		}
+		if (this.size > 0 && this.rows[this.size-1] >= row) {this.sorted = false;}
+		this.rows[this.size++] = row;
+	}
+
+
+	/**
+	 * Remove a row from the bucket
+	 * @param row The row to remove
+	 * @return True if the row was removed
+	 */
+	boolean remove(int row) {
+		sort();
+		int i = Arrays.binarySearch(this.rows,0,this.size,row);
+		if (i < 0) {return false;}
+		System.arraycopy(this.rows,i+1,this.rows,i,this.size-i-1);
+		--this.size;
+		return true;
+	}
+
+
+	/**
+	 * Copy the rows into a new row set
+	 * @return The row set
+	 */
+	RowSet toRowSet() {
+		sort();
+		return new RowSet(Arrays.copyOf(this.rows,this.size),this.size);
+	}
+
+
+	/**
+	 * Copy the rows into an array
+	 * @param dst The array to copy into
+	 * @param pos Where to start copying
+	 * @return The new position in the array
+	 */
+	int copyTo(int[] dst, int pos) {
+		System.arraycopy(this.rows,0,dst,pos,this.size);
+		return pos + this.size;
+	}
+
+
+	/**
+	 * Merge the rows from many buckets into a single row set
+	 * @param buckets The buckets to merge
+	 * @return The row set
+	 */
+	static RowSet merge(Collection<RowBucket> buckets) {
+		int total = 0;
+		for (RowBucket bucket : buckets) {total += bucket.size();}
+
+		int[] rows = new int[total];
+		int pos = 0;
+		for (RowBucket bucket : buckets) {pos = bucket.copyTo(rows,pos);}
+		Arrays.sort(rows);
+		return new RowSet(rows,RowSet.dedupe(rows,total));
+	}
+
+
+	/**
+	 * Sort (and remove duplicates from) the rows if needed
+	 */
+	private void sort() {
+		if (this.sorted) {return;}
+		Arrays.sort(this.rows,0,this.size);
+		this.size = RowSet.dedupe(this.rows,this.size);
+		this.sorted = true;
+	}
+}
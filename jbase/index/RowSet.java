@@ -0,0 +1,166 @@
+package jbase.index;
+
+import java.util.Arrays;
+
+
+/**
+ * Immutable set of rows, kept in ascending order.
+ *  Sets from different lookups can be combined using and(), or() and andNot().
+ *
+ * @author Bryan McClain
+ */
+public final class RowSet {
+
+	public static final RowSet EMPTY = new RowSet(new int[0],0);
+
+	private final int[] rows;		// Sorted, distinct rows
+	private final int size;			// Number of rows in use
+
+
+	/**
+	 * Construct a new row set from an array that is already sorted and distinct
+	 * @param rows The rows
+	 * @param size Number of rows in the array to use
+	 */
+	RowSet(int[] rows, int size) {
+		this.rows = rows;
+		this.size = size;
+	}
+
+
+	/**
+	 * Construct a new row set from any list of rows
+	 * @param rows The rows (in any order, and can have duplicates)
+	 * @return The row set
+	 */
+	public static RowSet of(int... rows) {
+		int[] sorted = Arrays.copyOf(rows,rows.length);
+		Arrays.sort(sorted);
+		return new RowSet(sorted,dedupe(sorted,sorted.length));
+	}
+
+
+	/**
+	 * Get the number of rows in the set
+	 * @return Size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Test if the set has no rows
+	 * @return True if empty
+	 */
+	public boolean isEmpty() {
+		return (this.size == 0);
+	}
+
+
+	/**
+	 * Get a row from the set
+	 * @param i The index of the row (0 is the smallest row)
+	 * @return The row
+	 */
+	public int get(int i) {
+		if (i < 0 || i >= this.size) {throw new IndexOutOfBoundsException(i);}
+		return this.rows[i];
+	}
+
+
+	/**
+	 * Test if the set holds a row
+	 * @param row The row to test
+	 * @return True if the row is in the set
+	 */
+	public boolean contains(int row) {
+		return (Arrays.binarySearch(this.rows,0,this.size,row) >= 0);
+	}
+
+
+	/**
+	 * Get every row in the set
+	 * @return Array of rows in ascending order
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(this.rows,this.size);
+	}
+
+
+	/**
+	 * Get the rows that are in both sets
+	 * @param other The other set
+	 * @return Intersection of the sets
+	 */
+	public RowSet and(RowSet other) {
+		int[] out = new int[Math.min(this.size,other.size)];
+		int n = 0;
+		for (int i = 0, j = 0; i < this.size && j < other.size; ) {
+			if (this.rows[i] < other.rows[j]) {++i;}
+			else if (this.rows[i] > other.rows[j]) {++j;}
+			else {out[n++] = this.rows[i]; ++i; ++j;}
+		}
+		return new RowSet(out,n);
+	}
+
+
+	/**
+	 * Get the rows that are in either set
+	 * @param other The other set
+	 * @return Union of the sets
+	 */
+	public RowSet or(RowSet other) {
+		int[] out = new int[this.size + other.size];
+		int n = 0, i = 0, j = 0;
+		while (i < this.size && j < other.size) {
+			if (this.rows[i] < other.rows[j]) {out[n++] = this.rows[i++];}
+			else if (this.rows[i] > other.rows[j]) {out[n++] = other.rows[j++];}
+			else {out[n++] = this.rows[i++]; ++j;}
+		}
+		while (i < this.size) {out[n++] = this.rows[i++];}
+		while (j < other.size) {out[n++] = other.rows[j++];}
+		return new RowSet(out,n);
+	}
+
+
+	/**
+	 * Get the rows in this set that are not in another set
+	 * @param other The other set
+	 * @return Difference of the sets
+	 */
+	public RowSet andNot(RowSet other) {
+		int[] out = new int[this.size];
+		int n = 0;
+		for (int i = 0, j = 0; i < this.size; ) {
+			if (j >= other.size || this.rows[i] < other.rows[j]) {out[n++] = this.rows[i++];}
+			else if (this.rows[i] > other.rows[j]) {++j;}
+			else {++i; ++j;}
+		}
+		return new RowSet(out,n);
+	}
+
+
+	/**
+	 * Convert the set to a string
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+
+	/**
+	 * Remove duplicates from a sorted array
+	 * @return The number of distinct rows
+	 */
+	static int dedupe(int[] rows, int size) {
+		if (size == 0) {return 0;}
+		int n = 1;
+		for (int i = 1; i < size; ++i) {
+			if (rows[i] != rows[n-1]) {rows[n++] = rows[i];}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,79 @@
+package jbase.index;
+
+
+/**
+ * Index mapping each value in an item field to the set of rows holding it.
+ *  Null values are never indexed.
+ *
+ * @author Bryan McClain
+ */
+public abstract class SecondaryIndex<T> {
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public abstract IndexKind getKind();
+
+
+	/**
+	 * Test if a value can be held by this index.
+	 *  Fields without a data type are checked with this before any index is changed.
+	 *
+	 * @param val The value (not null)
+	 * @return True if the value can be added to the index
+	 */
+	public boolean accepts(T val) {
+		return true;
+	}
+
+
+	/**
+	 * Add a row to the index
+	 * @param val The value stored in the row (null is ignored)
+	 * @param row The row
+	 */
+	public abstract void add(T val, int row);
+
+
+	/**
+	 * Remove a row from the index
+	 * @param val The value that was stored in the row (null is ignored)
+	 * @param row The row
+	 */
+	public abstract void remove(T val, int row);
+
+
+	/**
+	 * Update the index after the value in a row has changed
+	 * @param row The row that changed
+	 * @param oldVal The old value (can be null)
+	 * @param newVal The new value (can be null)
+	 */
+	public void update(int row, T oldVal, T newVal) {
+		if (oldVal == null ? newVal == null : oldVal.equals(newVal)) {return;}
+		remove(oldVal,row);
+		add(newVal,row);
+	}
+
+
+	/**
+	 * Find every row holding a value
+	 * @param val The value to find
+	 * @return The rows (empty if the value isn't found)
+	 */
+	public abstract RowSet findAll(T val);
+
+
+	/**
+	 * Get the number of distinct values in the index
+	 * @return Distinct Values
+	 */
+	public abstract int distinctValues();
+
+
+	/**
+	 * Remove every row from the index
+	 */
+	public abstract void clear();
+}
@@ -0,0 +1,86 @@
+package jbase.index;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+
+/**
+ * Secondary index that keeps its values in sorted order.
+ *  Values must be Comparable.
+ *
+ * @author Bryan McClain
+ */
+public class SortedSecondaryIndex<T> extends BucketedIndex<T> {
+
+	/**
+	 * Construct a new, empty sorted index
+	 */
+	public SortedSecondaryIndex() {
+		super(new TreeMap<T,RowBucket>());
+	}
+
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public IndexKind getKind() {
+		return IndexKind.SORTED;
+	}
+
+
+	/**
+	 * Test if a value can be compared with the values already in the index
+	 * @param val The value (not null)
+	 * @return True if the value can be added to the index
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean accepts(T val) {
+		if (!(val instanceof Comparable)) {return false;}
+		if (this.buckets.isEmpty()) {return true;}
+		try {
+			((Comparable<T>) val).compareTo(((TreeMap<T,RowBucket>) this.buckets).firstKey());
+			return true;
+		} catch (ClassCastException ex) {
+			return false;
+		}
+	}
+
+
+	/**
+	 * Find every row holding a value
+	 * @param val The value to find
+	 * @return The rows (empty if the value isn't found, or can't be compared with the values in the index)
+	 */
+	@Override
+	public RowSet findAll(T val) {
+		if (val != null && !accepts(val)) {return RowSet.EMPTY;}
+		return super.findAll(val);
+	}
+
+
+	/**
+	 * Find every row holding a value inside a range
+	 *
+	 * @param low The lowest value (null = no lower limit)
+	 * @param lowInclusive True if the range includes the lowest value
+	 * @param high The highest value (null = no upper limit)
+	 * @param highInclusive True if the range includes the highest value
+	 * @return The rows
+	 */
+	@SuppressWarnings("unchecked")
+	public RowSet findRange(T low, boolean lowInclusive, T high, boolean highInclusive) {
+		if ((low != null && !accepts(low)) || (high != null && !accepts(high))) {
+			return RowSet.EMPTY;	// Can't be compared with the values in the index
+		}
+		if (low != null && high != null && ((Comparable<T>) low).compareTo(high) > 0) {
+			return RowSet.EMPTY;	// Empty range
+		}
+
+		NavigableMap<T,RowBucket> range = (TreeMap<T,RowBucket>) this.buckets;
+		if (low != null) {range = range.tailMap(low,lowInclusive);}
+		if (high != null) {range = range.headMap(high,highInclusive);}
+		return RowBucket.merge(range.values());
+	}
+}
@@ -0,0 +1,151 @@
+package jbase.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+
+/**
+ * Inverted index from each word in a String value to the rows holding that word.
+ *  Words are runs of letters and digits, and are compared without case.
+ *
+ * @author Bryan McClain
+ */
+public class TokenSecondaryIndex<T> extends SecondaryIndex<T> {
+
+	private final HashMap<String,RowBucket> tokens;		// Rows holding each word
+
+
+	/**
+	 * Construct a new, empty token index
+	 */
+	public TokenSecondaryIndex() {
+		this.tokens = new HashMap<String,RowBucket>();
+	}
+
+
+	/**
+	 * Get the kind of data structure used by this index
+	 * @return Index Kind
+	 */
+	public IndexKind getKind() {
+		return IndexKind.TOKEN;
+	}
+
+
+	/**
+	 * Test if a value can be held by this index
+	 * @param val The value (not null)
+	 * @return True if the value is a String
+	 */
+	@Override
+	public boolean accepts(T val) {
+		return val instanceof String;
+	}
+
+
+	/**
+	 * Add a row to the index, under every word in its value
+	 * @param val The string stored in the row
+	 * @param row The row
+	 */
+	public void add(T val, int row) {
+		if (val == null) {return;}
+		for (String token : tokenize((String) val)) {
+			RowBucket bucket = this.tokens.get(token);
+			if (bucket == null) {
+				bucket = new RowBucket();
+				this.tokens.put(token,bucket);
+			}
+			bucket.add(row);
+		}
+	}
+
+
+	/**
+	 * Remove a row from the index
+	 * @param val The string that was stored in the row
+	 * @param row The row
+	 */
+	public void remove(T val, int row) {
+		if (val == null) {return;}
+		for (String token : tokenize((String) val)) {
+			RowBucket bucket = this.tokens.get(token);
+			if (bucket == null) {continue;}
+			bucket.remove(row);
+			if (bucket.size() == 0) {this.tokens.remove(token);}
+		}
+	}
+
+
+	/**
+	 * Find every row containing all of the words in a value
+	 * @param val The words to find
+	 * @return The rows (empty if no rows match, or the value isn't a String)
+	 */
+	public RowSet findAll(T val) {
+		return (val == null || !accepts(val)) ? RowSet.EMPTY : findWords((String) val);
+	}
+
+
+	/**
+	 * Find every row containing all of the given words
+	 * @param words The words to find
+	 * @return The rows (empty if no rows match)
+	 */
+	public RowSet findWords(String words) {
+		ArrayList<RowBucket> buckets = new ArrayList<RowBucket>();
+		for (String token : tokenize(words)) {
+			RowBucket bucket = this.tokens.get(token);
+			if (bucket == null) {return RowSet.EMPTY;}
+			buckets.add(bucket);
+		}
+		if (buckets.isEmpty()) {return RowSet.EMPTY;}
+
+		//Intersect the smallest lists first
+		buckets.sort((a,b) -> Integer.compare(a.size(),b.size()));
+		RowSet result = buckets.get(0).toRowSet();
+		for (int i = 1; i < buckets.size() && !result.isEmpty(); ++i) {
+			result = result.and(buckets.get(i).toRowSet());
+		}
+		return result;
+	}
+
+
+	/**
+	 * Get the number of distinct words in the index
+	 * @return Distinct Values
+	 */
+	public int distinctValues() {
+		return this.tokens.size();
+	}
+
+
+	/**
+	 * Remove every row from the index
+	 */
+	public void clear() {
+		this.tokens.clear();
+	}
+
+
+	/**
+	 * Split a string into its distinct, lower-case words
+	 * @param str The string to split
+	 * @return The words
+	 */
+	static LinkedHashSet<String> tokenize(String str) {
+		LinkedHashSet<String> words = new LinkedHashSet<String>();
+		int start = -1;
+		for (int i = 0; i <= str.length(); ++i) {
+			boolean inWord = (i < str.length()) && Character.isLetterOrDigit(str.charAt(i));
+			if (inWord && start < 0) {start = i;}
+			if (!inWord && start >= 0) {
+				words.add(str.substring(start,i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return words;
+	}
+}
@@ -0,0 +1,79 @@
+package jbase.index;
+
+import java.util.Arrays;
+
+
+/**
+ * A single node in a compressed (radix) trie.
+ *  Each edge holds a run of characters, so chains of single-child nodes are never stored.
+ *
+ * @author Bryan McClain
+ */
+class TrieNode {
+
+	String edge;			// Characters on the edge leading to this node
+	TrieNode[] children;	// Children, sorted by the first character of their edge
+	int childCount;			// Number of children in use
+	RowBucket rows;			// Rows holding the string that ends at this node (null = none)
+
+
+	/**
+	 * Construct a new node with no children
+	 * @param edge Characters on the edge leading to this node
+	 */
+	TrieNode(String edge) {
+		this.edge = edge;
+		this.children = new TrieNode[2];
+		this.childCount = 0;
+		this.rows = null;
+	}
+
+
+	/**
+	 * Binary search for the child whose edge starts with a character
+	 * @return The index of the child, or (-(insertion point) - 1) if not found
+	 */
+	int childIndex(char c) {
+		int lo = 0, hi = this.childCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char first = this.children[mid].edge.charAt(0);
+			if (first < c) {lo = mid + 1;}
+			else if (first > c) {hi = mid - 1;}
+			else {return mid;}
+		}
+		return -(lo + 1);
+	}
+
+
+	/**
+	 * Get the child whose edge starts with a character
+	 * @return The child, or null if it doesn't exist
+	 */
+	TrieNode child(char c) {
+		int i = childIndex(c);
+		return (i >= 0) ? this.children[i] : null;
+	}
+
+
+	/**
+	 * Insert a new child at a given position
+	 */
+	void insertChild(int i, TrieNode child) {
+		if (this.childCount == this.children.length) {
+			this.children = Arrays.copyOf(this.children,this.childCount*2);
+		}
+		System.arraycopy(this.children,i,this.children,i+1,this.childCount-i);
+		this.children[i] = child;
+		++this.childCount;
+	}
+
+
+	/**
+	 * Remove the child at a given position
+	 */
+	void removeChild(int i) {
+		System.arraycopy(this.children,i+1,this.children,i,this.childCount-i-1);
+		this.children[--this.childCount] = null;
+	}
+}
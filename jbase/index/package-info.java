@@ -0,0 +1,5 @@
+/**
+ * Secondary indexes that map the values in an item field back to the rows holding them,
+ *  so rows can be found by value without scanning the whole field.
+ */
+package jbase.index;
@@ -0,0 +1,173 @@
+package jbase.io;
+
+import java.io.InputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Input stream that reads the blocks written by a BlockOutputStream,
+ *  decompressing them and verifying the checksum of every block.
+ *
+ * @author Bryan McClain
+ */
+public class BlockInputStream extends InputStream {
+
+	private final DataInputStream in;	// Underlying stream
+	private final CRC32C crc;
+	private final int blockSize;		// Largest raw block in the stream
+	private byte[] buffer;				// Raw data for the current block
+	private byte[] stored;				// Data as it was stored on disk
+	private int count;					// Number of bytes in the current block
+	private int pos;					// Current position inside the block
+	private boolean finished;			// Read the end of stream marker
+
+
+	/**
+	 * Construct a new block input stream, and validate the stream header
+	 *
+	 * @param in The stream to read from
+	 * @throws StreamCorruptedException The stream doesn't contain a snapshot, or uses an unknown version
+	 * @throws IOException Problem reading the header
+	 */
+	public BlockInputStream(InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+		this.crc = new CRC32C();
+		this.buffer = new byte[0];
+		this.stored = new byte[0];
+		this.count = 0;
+		this.pos = 0;
+		this.finished = false;
+
+		int magic, version;
+		try {
+			magic = this.in.readInt();
+			version = this.in.readInt();
+			this.blockSize = this.in.readInt();
+		} catch (EOFException ex) {
+			throw new StreamCorruptedException("Missing snapshot header");
+		}
+		if (magic != BlockOutputStream.MAGIC) {
+			throw new StreamCorruptedException("Not a JBase snapshot");
+		}
+		if (version != BlockOutputStream.VERSION) {
+			throw new StreamCorruptedException("Unsupported snapshot version " + version);
+		}
+		if (this.blockSize <= 0 || this.blockSize > BlockOutputStream.MAX_BLOCK_SIZE) {
+			throw new StreamCorruptedException("Bad block size " + this.blockSize);
+		}
+	}
+
+
+	/**
+	 * Read a single byte from the stream
+	 * @return The byte, or -1 at the end of the stream
+	 * @throws IOException Problem reading the block
+	 */
+	@Override
+	public int read() throws IOException {
+		if (this.pos == this.count && !readBlock()) {return -1;}
+		return this.buffer[this.pos++] & 0xFF;
+	}
+
+
+	/**
+	 * Read an array of bytes from the stream
+	 *
+	 * @param b Buffer to read into
+	 * @param off Offset in the buffer to start at
+	 * @param len Maximum number of bytes to read
+	 * @return Number of bytes read, or -1 at the end of the stream
+	 * @throws IOException Problem reading the block
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {return 0;}
+		if (this.pos == this.count && !readBlock()) {return -1;}
+
+		int toCopy = Math.min(len, this.count - this.pos);
+		System.arraycopy(this.buffer,this.pos,b,off,toCopy);
+		this.pos += toCopy;
+		return toCopy;
+	}
+
+
+	/**
+	 * Get the number of bytes that can be read without blocking
+	 * @return Bytes left in the current block
+	 */
+	@Override
+	public int available() {
+		return this.count - this.pos;
+	}
+
+
+	/**
+	 * Close the underlying stream
+	 * @throws IOException Problem closing the stream
+	 */
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+
+	/**
+	 * Read, decompress and verify the next block
+	 * @return True if a block was read, false at the end of the stream
+	 * @throws StreamCorruptedException Block is corrupt or the stream is truncated
+	 * @throws IOException Problem reading the block
+	 */
+	private boolean readBlock() throws IOException {
+		if (this.finished) {return false;}
+
+		SnapshotCodec codec;
+		int rawLen, storedLen, checksum;
+		try {
+			codec = SnapshotCodec.fromId(this.in.readByte());
+			rawLen = this.in.readInt();
+			storedLen = this.in.readInt();
+			checksum = this.in.readInt();
+		} catch (EOFException ex) {
+			throw new StreamCorruptedException("Snapshot is truncated");
+		}
+
+		//Lengths aren't covered by the checksum, so check them before allocating anything
+		if (codec == null || rawLen < 0 || storedLen < 0 || rawLen > this.blockSize
+				|| storedLen > BlockOutputStream.maxStoredLength(this.blockSize)) {
+			throw new StreamCorruptedException("Bad block header");
+		}
+
+		//End of stream marker
+		if (rawLen == 0) {
+			this.finished = true;
+			return false;
+		}
+
+		if (this.stored.length < storedLen) {this.stored = new byte[storedLen];}
+		if (this.buffer.length < rawLen) {this.buffer = new byte[rawLen];}
+
+		try {
+			this.in.readFully(this.stored,0,storedLen);
+		} catch (EOFException ex) {
+			throw new StreamCorruptedException("Snapshot is truncated");
+		}
+
+		if (!codec.getCodec().decompress(this.stored,storedLen,this.buffer,rawLen)) {
+			throw new StreamCorruptedException("Unable to decompress block");
+		}
+
+		this.crc.reset();
+		this.crc.update(this.buffer,0,rawLen);
+		if ((int) this.crc.getValue() != checksum) {
+			throw new StreamCorruptedException("Block checksum mismatch");
+		}
+
+		this.count = rawLen;
+		this.pos = 0;
+		return true;
+	}
+}
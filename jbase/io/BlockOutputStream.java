@@ -0,0 +1,191 @@
+package jbase.io;
+
+import java.io.OutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Output stream that splits the data into compressed, checksummed blocks.
+ *
+ *  The stream starts with a header (magic number, version and block size), followed by blocks in the form:
+ *   [Codec ID (1 byte)] [Raw Length (4)] [Stored Length (4)] [CRC32C of raw data (4)] [Data]
+ *  An empty block marks the end of the stream.
+ *
+ * @author Bryan McClain
+ */
+public class BlockOutputStream extends OutputStream {
+
+	public static final int MAGIC = 0x4A425332;			// "JBS2"
+	public static final int VERSION = 1;
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+	public static final int MAX_BLOCK_SIZE = 1 << 24;
+
+	private final DataOutputStream out;		// Underlying stream
+	private final SnapshotCodec codec;		// Codec used to compress each block
+	private final byte[] buffer;			// Raw data for the current block
+	private final byte[] compressed;		// Compressed data for the current block
+	private final CRC32C crc;
+	private int count;						// Number of bytes in the current block
+	private boolean finished;			// End of stream marker has been written
+
+
+	/**
+	 * Construct a new block output stream, and write the stream header
+	 *
+	 * @param out The stream to write to
+	 * @param codec The codec used to compress each block
+	 * @param blockSize Maximum number of raw bytes in each block (1 to MAX_BLOCK_SIZE)
+	 * @throws IllegalArgumentException Block size is out of range
+	 * @throws IOException Problem writing the header
+	 */
+	public BlockOutputStream(OutputStream out, SnapshotCodec codec, int blockSize) throws IOException {
+		if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+		}
+
+		this.out = new DataOutputStream(out);
+		this.codec = codec;
+		this.buffer = new byte[blockSize];
+		this.compressed = new byte[maxStoredLength(blockSize)];
+		this.crc = new CRC32C();
+		this.count = 0;
+		this.finished = false;
+
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeInt(blockSize);
+	}
+
+
+	/**
+	 * Construct a new block output stream using the default block size
+	 *
+	 * @param out The stream to write to
+	 * @param codec The codec used to compress each block
+	 * @throws IOException Problem writing the header
+	 */
+	public BlockOutputStream(OutputStream out, SnapshotCodec codec) throws IOException {
+		this(out,codec,DEFAULT_BLOCK_SIZE);
+	}
+
+
+	/**
+	 * Get the largest number of bytes a block can take on disk, including any codec overhead
+	 * @param blockSize Maximum number of raw bytes in each block
+	 * @return Largest stored length of a block
+	 */
+	static int maxStoredLength(int blockSize) {
+		return blockSize + (blockSize >>> 4) + 64;
+	}
+
+
+	/**
+	 * Write a single byte to the stream
+	 * @param b The byte to write
+	 * @throws IOException Problem writing the block
+	 */
+	@Override
+	public void write(int b) throws IOException {
+		if (this.finished) {throw new IOException("Stream is finished");}
+		if (this.count == this.buffer.length) {writeBlock();}
+		this.buffer[this.count++] = (byte) b;
+	}
+
+
+	/**
+	 * Write an array of bytes to the stream
+	 *
+	 * @param b The data to write
+	 * @param off Offset in the array to start at
+	 * @param len Number of bytes to write
+	 * @throws IOException Problem writing the block
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (this.finished) {throw new IOException("Stream is finished");}
+		while (len > 0) {
+			if (this.count == this.buffer.length) {writeBlock();}
+
+			int toCopy = Math.min(len, this.buffer.length - this.count);
+			System.arraycopy(b,off,this.buffer,this.count,toCopy);
+			this.count += toCopy;
+			off += toCopy;
+			len -= toCopy;
+		}
+	}
+
+
+	/**
+	 * Flush the current block to the underlying stream
+	 * @throws IOException Problem writing the block
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!this.finished && this.count > 0) {writeBlock();}
+		this.out.flush();
+	}
+
+
+	/**
+	 * Write the end of stream marker, and flush the underlying stream without closing it.
+	 *  No more data can be written after the stream is finished.
+	 *
+	 * @throws IOException Problem writing the final block
+	 */
+	public void finish() throws IOException {
+		if (this.finished) {return;}
+		this.finished = true;
+
+		if (this.count > 0) {writeBlock();}
+		writeHeader(SnapshotCodec.NONE,0,0,0);
+		this.out.flush();
+	}
+
+
+	/**
+	 * Write the end of stream marker, and close the underlying stream
+	 * @throws IOException Problem writing the final block
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		this.out.close();
+	}
+
+
+	/**
+	 * Compress and write the current block.
+	 *  If the block doesn't get any smaller, then it is stored uncompressed.
+	 *
+	 * @throws IOException Problem writing the block
+	 */
+	private void writeBlock() throws IOException {
+		this.crc.reset();
+		this.crc.update(this.buffer,0,this.count);
+		int checksum = (int) this.crc.getValue();
+
+		int len = this.codec.getCodec().compress(this.buffer,this.count,this.compressed);
+		if (len >= 0 && len < this.count) {
+			writeHeader(this.codec,this.count,len,checksum);
+			this.out.write(this.compressed,0,len);
+		} else {
+			writeHeader(SnapshotCodec.NONE,this.count,this.count,checksum);
+			this.out.write(this.buffer,0,this.count);
+		}
+
+		this.count = 0;
+	}
+
+
+	/**
+	 * Write the header for a single block
+	 */
+	private void writeHeader(SnapshotCodec c, int rawLen, int storedLen, int checksum) throws IOException {
+		this.out.writeByte(c.getId());
+		this.out.writeInt(rawLen);
+		this.out.writeInt(storedLen);
+		this.out.writeInt(checksum);
+	}
+}
@@ -0,0 +1,31 @@
+package jbase.io;
+
+
+/**
+ * Interface for a block compression codec used by database snapshots
+ * @author Bryan McClain
+ */
+public interface Codec {
+
+	/**
+	 * Compress a block of data
+	 *
+	 * @param src The raw data to compress
+	 * @param srcLen Number of bytes in the source to compress
+	 * @param dst Destination buffer for the compressed data
+	 * @return Number of bytes written to dst, or -1 if the data didn't fit
+	 */
+	public int compress(byte[] src, int srcLen, byte[] dst);
+
+
+	/**
+	 * Decompress a block of data
+	 *
+	 * @param src The compressed data
+	 * @param srcLen Number of compressed bytes in the source
+	 * @param dst Destination buffer for the raw data
+	 * @param rawLen Number of raw bytes expected in the output
+	 * @return True if the block was decompressed, false if it is corrupt
+	 */
+	public boolean decompress(byte[] src, int srcLen, byte[] dst, int rawLen);
+}
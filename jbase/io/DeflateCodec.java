@@ -0,0 +1,69 @@
+package jbase.io;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.DataFormatException;
+
+
+/**
+ * Codec that compresses blocks using java.util.zip Deflate
+ * @author Bryan McClain
+ */
+public class DeflateCodec implements Codec {
+
+	private final int level;		// Deflate compression level (1-9)
+
+
+	/**
+	 * Construct a new Deflate codec
+	 * @param level The compression level to use (1 = fastest, 9 = smallest)
+	 */
+	public DeflateCodec(int level) {
+		this.level = level;
+	}
+
+
+	/**
+	 * Compress a block of data using Deflate
+	 *
+	 * @param src The raw data to compress
+	 * @param srcLen Number of bytes in the source to compress
+	 * @param dst Destination buffer for the compressed data
+	 * @return Number of bytes written to dst, or -1 if the data didn't fit
+	 */
+	public int compress(byte[] src, int srcLen, byte[] dst) {
+		Deflater deflater = new Deflater(this.level,true);
+		try {
+			deflater.setInput(src,0,srcLen);
+			deflater.finish();
+			int len = deflater.deflate(dst,0,dst.length);
+			if (!deflater.finished()) {return -1; /* Didn't fit */}
+			return len;
+		} finally {
+			deflater.end();
+		}
+	}
+
+
+	/**
+	 * Decompress a block of data using Inflate
+	 *
+	 * @param src The compressed data
+	 * @param srcLen Number of compressed bytes in the source
+	 * @param dst Destination buffer for the raw data
+	 * @param rawLen Number of raw bytes expected in the output
+	 * @return True if the block was decompressed, false if it is corrupt
+	 */
+	public boolean decompress(byte[] src, int srcLen, byte[] dst, int rawLen) {
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(src,0,srcLen);
+			int len = inflater.inflate(dst,0,rawLen);
+			return (len == rawLen);
+		} catch (DataFormatException ex) {
+			return false;
+		} finally {
+			inflater.end();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package jbase.io;
+
+import java.util.Arrays;
+
+
+/**
+ * Fast LZ77-style codec built in to JBase.
+ *  Trades compression ratio for speed by using a single hash probe per position.
+ *
+ *  Each block is a series of sequences in the form:
+ *   [Literal Length (varint)] [Literals] [Match Length (varint)] [Offset (2 bytes)]
+ *  A match length of 0 marks the final sequence in the block (and has no offset).
+ *
+ * @author Bryan McClain
+ */
+public class LZCodec implements Codec {
+
+	private static final int MIN_MATCH = 4;				// Smallest match worth encoding
+	private static final int MAX_OFFSET = 0xFFFF;		// Offsets are stored in 2 bytes
+	private static final int HASH_BITS = 14;			// Size of the hash table (log 2)
+
+
+	/**
+	 * Compress a block of data
+	 *
+	 * @param src The raw data to compress
+	 * @param srcLen Number of bytes in the source to compress
+	 * @param dst Destination buffer for the compressed data
+	 * @return Number of bytes written to dst, or -1 if the data didn't fit
+	 */
+	public int compress(byte[] src, int srcLen, byte[] dst) {
+		int[] table = new int[1 << HASH_BITS];
+		Arrays.fill(table,-1);
+
+		int ip = 0;			// Input position
+		int op = 0;			// Output position
+		int anchor = 0;		// Start of the pending literals
+
+		while (ip + MIN_MATCH <= srcLen) {
+			int seq = read32(src,ip);
+			int h = hash(seq);
+			int ref = table[h];
+			table[h] = ip;
+
+			//No match here, so keep scanning
+			if (ref < 0 || (ip - ref) > MAX_OFFSET || read32(src,ref) != seq) {
+				++ip;
+				continue;
+			}
+
+			//Extend the match as far as it will go
+			int len = MIN_MATCH;
+			while (ip + len < srcLen && src[ref+len] == src[ip+len]) {++len;}
+
+			op = writeSequence(src,anchor,ip-anchor,dst,op,len,ip-ref);
+			if (op < 0) {return -1;}
+
+			ip += len;
+			anchor = ip;
+		}
+
+		//Flush the final literals
+		return writeSequence(src,anchor,srcLen-anchor,dst,op,0,0);
+	}
+
+
+	/**
+	 * Decompress a block of data
+	 *
+	 * @param src The compressed data
+	 * @param srcLen Number of compressed bytes in the source
+	 * @param dst Destination buffer for the raw data
+	 * @param rawLen Number of raw bytes expected in the output
+	 * @return True if the block was decompressed, false if it is corrupt
+	 */
+	public boolean decompress(byte[] src, int srcLen, byte[] dst, int rawLen) {
+		int ip = 0;
+		int op = 0;
+		int[] pos = new int[1];
+
+		while (ip < srcLen) {
+
+			//Copy the literals
+			pos[0] = ip;
+			int litLen = readVarInt(src,srcLen,pos);
+			ip = pos[0];
+			if (litLen < 0 || ip + litLen > srcLen || op + litLen > rawLen) {return false;}
+			System.arraycopy(src,ip,dst,op,litLen);
+			ip += litLen;
+			op += litLen;
+
+			//Copy the match (byte by byte, since it might overlap)
+			pos[0] = ip;
+			int matchLen = readVarInt(src,srcLen,pos);
+			ip = pos[0];
+			if (matchLen < 0) {return false;}
+			if (matchLen == 0) {return (ip == srcLen && op == rawLen);}
+
+			if (ip + 2 > srcLen) {return false;}
+			int offset = ((src[ip] & 0xFF) << 8) | (src[ip+1] & 0xFF);
+			ip += 2;
+			if (offset == 0 || offset > op || op + matchLen > rawLen) {return false;}
+
+			for (int i = 0; i < matchLen; ++i, ++op) {
+				dst[op] = dst[op-offset];
+			}
+		}
+
+		return false;	// Missing the final sequence
+	}
+
+
+
+	/**
+	 * Write a single sequence to the output buffer
+	 * @return New output position, or -1 if the output buffer is too small
+	 */
+	private static int writeSequence(byte[] src, int litStart, int litLen,
+									 byte[] dst, int op, int matchLen, int offset) {
+		if (op + litLen + 12 > dst.length) {return -1;}
+
+		op = writeVarInt(dst,op,litLen);
+		System.arraycopy(src,litStart,dst,op,litLen);
+		op += litLen;
+
+		op = writeVarInt(dst,op,matchLen);
+		if (matchLen > 0) {
+			dst[op++] = (byte) (offset >>> 8);
+			dst[op++] = (byte) offset;
+		}
+		return op;
+	}
+
+
+	/**
+	 * Write a variable-length integer (7 bits per byte)
+	 * @return New output position
+	 */
+	private static int writeVarInt(byte[] dst, int op, int val) {
+		while ((val & ~0x7F) != 0) {
+			dst[op++] = (byte) ((val & 0x7F) | 0x80);
+			val >>>= 7;
+		}
+		dst[op++] = (byte) val;
+		return op;
+	}
+
+
+	/**
+	 * Read a variable-length integer, updating pos[0]
+	 * @return The integer, or -1 if it is corrupt
+	 */
+	private static int readVarInt(byte[] src, int srcLen, int[] pos) {
+		int val = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (pos[0] >= srcLen) {return -1;}
+			int b = src[pos[0]++] & 0xFF;
+			val |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {return (val < 0) ? -1 : val;}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Read 4 bytes from an array as a single integer
+	 */
+	private static int read32(byte[] src, int i) {
+		return ((src[i] & 0xFF) << 24) | ((src[i+1] & 0xFF) << 16)
+			 | ((src[i+2] & 0xFF) << 8) | (src[i+3] & 0xFF);
+	}
+
+
+	/**
+	 * Hash 4 bytes into the hash table
+	 */
+	private static int hash(int seq) {
+		return (seq * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+}
@@ -0,0 +1,39 @@
+package jbase.io;
+
+
+/**
+ * Codec that stores the data without any compression
+ * @author Bryan McClain
+ */
+public class PlainCodec implements Codec {
+
+	/**
+	 * Copy the block without compressing it
+	 *
+	 * @param src The raw data to compress
+	 * @param srcLen Number of bytes in the source to compress
+	 * @param dst Destination buffer for the compressed data
+	 * @return Number of bytes written to dst, or -1 if the data didn't fit
+	 */
+	public int compress(byte[] src, int srcLen, byte[] dst) {
+		if (srcLen > dst.length) {return -1;}
+		System.arraycopy(src,0,dst,0,srcLen);
+		return srcLen;
+	}
+
+
+	/**
+	 * Copy the block back out without decompressing it
+	 *
+	 * @param src The compressed data
+	 * @param srcLen Number of compressed bytes in the source
+	 * @param dst Destination buffer for the raw data
+	 * @param rawLen Number of raw bytes expected in the output
+	 * @return True if the block was decompressed, false if it is corrupt
+	 */
+	public boolean decompress(byte[] src, int srcLen, byte[] dst, int rawLen) {
+		if (srcLen != rawLen || rawLen > dst.length) {return false;}
+		System.arraycopy(src,0,dst,0,rawLen);
+		return true;
+	}
+}
@@ -0,0 +1,72 @@
+package jbase.io;
+
+import jbase.JBaseAction;
+
+/**
+ * Compression codec used when writing a database snapshot to disk
+ * @author Bryan McClain
+ */
+public enum SnapshotCodec {
+	NONE     (0, new PlainCodec()),
+	LZ       (1, new LZCodec()),
+	DEFLATE  (2, new DeflateCodec(6));
+
+
+	private final byte id;				// Identifier written in each block header
+	private final Codec codec;			// Implementation of the codec
+
+
+	/**
+	 * Construct a new SnapshotCodec enumeration
+	 *
+	 * @param id The identifier written in the block header
+	 * @param codec The codec implementation
+	 */
+	private SnapshotCodec(int id, Codec codec) {
+		this.id = (byte) id;
+		this.codec = codec;
+	}
+
+
+	/**
+	 * Get the identifier written in the block header
+	 * @return ID
+	 */
+	public byte getId() {
+		return this.id;
+	}
+
+
+	/**
+	 * Get the codec implementation
+	 * @return Codec
+	 */
+	public Codec getCodec() {
+		return this.codec;
+	}
+
+
+	/**
+	 * Look up a codec from the identifier in a block header
+	 * @param id The identifier to search for
+	 * @return The codec, or null if the identifier is unknown
+	 */
+	public static SnapshotCodec fromId(byte id) {
+		for (SnapshotCodec c : values()) {
+			if (c.id == id) {return c;}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
@@ -0,0 +1,209 @@
+package jbase.io;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+
+/**
+ * Static helper methods for reading and writing snapshot files on disk
+ * @author Bryan McClain
+ */
+public class SnapshotFile {
+
+	public static final String EXTENSION = ".jbs";		// Extension for snapshot generations
+	public static final String TEMP_EXTENSION = ".tmp";	// Extension for snapshots still being written
+
+
+	/**
+	 * Atomically write an object to a snapshot file.
+	 *  The snapshot is written to a temporary file, synced to disk, and then renamed over the target.
+	 *   The directory is synced after the rename, so the new name survives a crash.
+	 *  If the JVM dies part way through, the old target file is left untouched.
+	 *
+	 * @param obj The object to write
+	 * @param target The file to write to
+	 * @param codec The codec used to compress each block
+	 * @throws IOException Problem writing the file
+	 */
+	public static void write(Serializable obj, File target, SnapshotCodec codec) throws IOException {
+		File temp = new File(target.getPath() + TEMP_EXTENSION);
+
+		FileOutputStream outFile = new FileOutputStream(temp);
+		try {
+			BlockOutputStream blockOut = new BlockOutputStream(new BufferedOutputStream(outFile),codec);
+			ObjectOutputStream objOut = new ObjectOutputStream(blockOut);
+			objOut.writeObject(obj);
+			objOut.flush();
+			blockOut.finish();
+			outFile.getFD().sync();
+		} catch (IOException ex) {
+			outFile.close();
+			temp.delete();
+			throw ex;
+		}
+		outFile.close();
+
+		//Swap in the new snapshot
+		try {
+			Files.move(temp.toPath(),target.toPath(),
+					   StandardCopyOption.ATOMIC_MOVE,StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temp.toPath(),target.toPath(),StandardCopyOption.REPLACE_EXISTING);
+		}
+		syncDirectory(target.getAbsoluteFile().getParentFile());
+	}
+
+
+	/**
+	 * Flush a directory to disk, so renames inside it are durable
+	 * @param directory The directory to sync
+	 * @throws IOException Problem syncing the directory
+	 */
+	private static void syncDirectory(File directory) throws IOException {
+		if (directory == null) {return;}
+
+		FileChannel dir;
+		try {
+			dir = FileChannel.open(directory.toPath(),StandardOpenOption.READ);
+		} catch (IOException ex) {
+			return;		// Some platforms (Windows) can't open a directory, and don't need it synced
+		}
+		try {
+			dir.force(true);
+		} finally {
+			dir.close();
+		}
+	}
+
+
+	/**
+	 * Read an object from a snapshot file
+	 *
+	 * @param source The file to read from
+	 * @return The object stored in the snapshot
+	 * @throws StreamCorruptedException File is not a snapshot, or is corrupt
+	 * @throws IOException Problem reading the file
+	 * @throws ClassNotFoundException Snapshot contains an unknown class
+	 */
+	public static Object read(File source) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream objIn = new ObjectInputStream(
+				new BlockInputStream(new BufferedInputStream(new FileInputStream(source))))) {
+			return objIn.readObject();
+		}
+	}
+
+
+	/**
+	 * Get the file for a given generation of a snapshot
+	 *
+	 * @param directory The directory holding all generations
+	 * @param name The name of the snapshot (database name)
+	 * @param generation The generation number
+	 * @return Snapshot file
+	 */
+	public static File generationFile(File directory, String name, long generation) {
+		return new File(directory, name + "." + generation + EXTENSION);
+	}
+
+
+	/**
+	 * Get the generation number from a snapshot file name
+	 * @param file The file to test
+	 * @param name The name of the snapshot (database name)
+	 * @return Generation number, or -1 if the file isn't a generation of the named snapshot
+	 */
+	public static long generationOf(File file, String name) {
+		String fname = file.getName();
+		String prefix = name + ".";
+		if (!fname.startsWith(prefix) || !fname.endsWith(EXTENSION)) {return -1;}
+		if (fname.length() <= prefix.length() + EXTENSION.length()) {return -1;}
+
+		String number = fname.substring(prefix.length(), fname.length() - EXTENSION.length());
+		for (int i = 0; i < number.length(); ++i) {
+			if (!Character.isDigit(number.charAt(i))) {return -1;}
+		}
+
+		try {
+			return Long.parseLong(number);
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+
+	/**
+	 * Get the snapshot name (database name) from a snapshot generation file name
+	 * @param file The file to test
+	 * @return Name, or null if the file isn't a snapshot generation
+	 */
+	public static String nameOf(File file) {
+		String fname = file.getName();
+		if (!fname.endsWith(EXTENSION)) {return null;}
+
+		fname = fname.substring(0, fname.length() - EXTENSION.length());
+		int dot = fname.lastIndexOf('.');
+		if (dot <= 0) {return null;}
+
+		String name = fname.substring(0,dot);
+		return (generationOf(file,name) >= 0) ? name : null;
+	}
+
+
+	/**
+	 * Get the names of every snapshot with generations in a directory
+	 * @param directory The directory to scan
+	 * @return Sorted array of names
+	 */
+	public static String[] allNames(File directory) {
+		File[] files = directory.listFiles();
+		if (files == null) {return new String[0];}
+
+		TreeSet<String> names = new TreeSet<String>();
+		for (File f : files) {
+			String name = f.isFile() ? nameOf(f) : null;
+			if (name != null) {names.add(name);}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+
+	/**
+	 * Get all generations of one snapshot in a directory, sorted from newest to oldest
+	 * @param directory The directory to scan
+	 * @param name The name of the snapshot (database name)
+	 * @return Array of snapshot files
+	 */
+	public static File[] allGenerations(File directory, String name) {
+		File[] files = directory.listFiles();
+		if (files == null) {return new File[0];}
+
+		ArrayList<File> gens = new ArrayList<File>();
+		for (File f : files) {
+			if (f.isFile() && generationOf(f,name) >= 0) {gens.add(f);}
+		}
+
+		File[] sorted = gens.toArray(new File[gens.size()]);
+		Arrays.sort(sorted, (a,b) -> Long.compare(generationOf(b,name),generationOf(a,name)));
+		return sorted;
+	}
+
+
+	/**
+	 * Get the leftover temporary files of one snapshot in a directory (generations that never finished writing)
+	 * @param directory The directory to scan
+	 * @param name The name of the snapshot (database name)
+	 * @return Array of temporary files
+	 */
+	public static File[] allTempFiles(File directory, String name) {
+		File[] files = directory.listFiles((dir,fname) -> fname.endsWith(EXTENSION + TEMP_EXTENSION)
+			&& generationOf(new File(fname.substring(0, fname.length() - TEMP_EXTENSION.length())),name) >= 0);
+		return (files == null) ? new File[0] : files;
+	}
+}
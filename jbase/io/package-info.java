@@ -0,0 +1,5 @@
+/**
+ * Classes used to stream JBase snapshots to and from disk, including the
+ *  compression codecs and the checksummed block format.
+ */
+package jbase.io;
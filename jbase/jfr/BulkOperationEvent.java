@@ -0,0 +1,67 @@
+package jbase.jfr;
+
+import jbase.field.Field;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Flight Recorder event for an operation that reads many rows at once
+ *  (queries, aggregates and joins). Call begin() before the operation, then finish() once it is done.
+ *
+ * @author Bryan McClain
+ */
+@Name("jbase.BulkOperation")
+@Label("Bulk Operation")
+@Category("JBase")
+@Description("Query, aggregate or join over many rows")
+public class BulkOperationEvent extends Event {
+
+	@Label("Database")
+	String database;
+
+	@Label("Field")
+	@Description("Key being queried, field being aggregated, or source key of a join")
+	String field;
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Detail")
+	@Description("Query plan, or the type of aggregate")
+	String detail;
+
+	@Label("Rows Read")
+	@Description("Candidate rows considered by the operation")
+	long rowsRead;
+
+	@Label("Rows Returned")
+	long rowsReturned;
+
+
+	/**
+	 * Finish timing the operation, and record it if the event is enabled
+	 *
+	 * @param field The main field of the operation
+	 * @param operation Operation (Query, Aggregate or Join)
+	 * @param detail Query plan, or the type of aggregate
+	 * @param rowsRead Rows read by the operation
+	 * @param rowsReturned Rows (or groups) returned by the operation
+	 */
+	public void finish(Field<?> field, String operation, Object detail, long rowsRead, long rowsReturned) {
+		end();
+		if (!shouldCommit()) {return;}
+
+		this.database = field.getDatabase().getDBName();
+		this.field = field.getName();
+		this.operation = operation;
+		this.detail = String.valueOf(detail);
+		this.rowsRead = rowsRead;
+		this.rowsReturned = rowsReturned;
+		commit();
+	}
+}
@@ -0,0 +1,78 @@
+package jbase.jfr;
+
+import jbase.field.Field;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Flight Recorder event for creating, deleting or resizing a field.
+ *  Resizes are timed (call begin() first); creates and deletes are recorded as instants.
+ *
+ * @author Bryan McClain
+ */
+@Name("jbase.FieldChange")
+@Label("Field Change")
+@Category("JBase")
+@Description("Field created, deleted or resized")
+public class FieldChangeEvent extends Event {
+
+	/** Field was added to the database */
+	public static final String CREATE = "Create";
+
+	/** Field was removed from the database */
+	public static final String DELETE = "Delete";
+
+	/** Key field (and all of its children) got more rows */
+	public static final String RESIZE = "Resize";
+
+	@Label("Database")
+	String database;
+
+	@Label("Field")
+	String field;
+
+	@Label("Field Type")
+	String fieldType;
+
+	@Label("Change")
+	String change;
+
+	@Label("Depth")
+	@Description("Rows in the field after the change")
+	int depth;
+
+
+	/**
+	 * Finish timing the change, and record it if the event is enabled
+	 *
+	 * @param field The field that changed
+	 * @param change Type of change (CREATE, DELETE or RESIZE)
+	 */
+	public void finish(Field<?> field, String change) {
+		end();
+		if (!shouldCommit()) {return;}
+
+		this.database = field.getDatabase().getDBName();
+		this.field = field.getName();
+		this.fieldType = field.getType().toString();
+		this.change = change;
+		this.depth = field.getDepth();
+		commit();
+	}
+
+
+	/**
+	 * Record a change that happens instantly (creating or deleting a field)
+	 *
+	 * @param field The field that changed
+	 * @param change Type of change (CREATE or DELETE)
+	 */
+	public static void record(Field<?> field, String change) {
+		new FieldChangeEvent().finish(field,change);
+	}
+}
@@ -0,0 +1,100 @@
+package jbase.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight Recorder event for a single field operation that took longer than a threshold.
+ *  Field operations are timed by their FieldMetrics, so the event is recorded after the
+ *   operation has finished, with the time it took.
+ *
+ *  The threshold is set with setThreshold() or the system property "jbase.jfr.slowThreshold"
+ *   (in microseconds, default 1000). Operations are only timed while the event is enabled
+ *   in a running recording.
+ *
+ * @author Bryan McClain
+ */
+@Name("jbase.SlowOperation")
+@Label("Slow Field Operation")
+@Category("JBase")
+@Description("Single field operation that took longer than the threshold")
+public class SlowOperationEvent extends Event {
+
+	/** System property holding the threshold, in microseconds */
+	public static final String THRESHOLD_PROPERTY = "jbase.jfr.slowThreshold";
+
+	private static final SlowOperationEvent PROBE = new SlowOperationEvent();	// Only used to test if the event is enabled
+	private static volatile long limit = Long.getLong(THRESHOLD_PROPERTY,1000) * 1000;
+
+	@Label("Database")
+	String database;
+
+	@Label("Field")
+	String field;
+
+	@Label("Action")
+	String action;
+
+	@Label("Elapsed")
+	@Timespan(Timespan.NANOSECONDS)
+	long elapsed;
+
+	@Label("Threshold")
+	@Timespan(Timespan.NANOSECONDS)
+	long threshold;
+
+
+	/**
+	 * Test if slow operations are being recorded
+	 * @return True if the event is enabled in a running recording
+	 */
+	public static boolean isRecording() {
+		return PROBE.isEnabled();
+	}
+
+
+	/**
+	 * Get the time an operation must take to be recorded
+	 * @return Threshold in nanoseconds
+	 */
+	public static long getThreshold() {
+		return limit;
+	}
+
+
+	/**
+	 * Set the time an operation must take to be recorded
+	 * @param nanos Threshold in nanoseconds
+	 */
+	public static void setThreshold(long nanos) {
+		limit = Math.max(0,nanos);
+	}
+
+
+	/**
+	 * Record an operation if it took at least as long as the threshold
+	 *
+	 * @param database Name of the database
+	 * @param field Name of the field
+	 * @param action The action that was called
+	 * @param elapsed Time taken in nanoseconds
+	 */
+	public static void record(String database, String field, Object action, long elapsed) {
+		long min = limit;
+		if (elapsed < min) {return;}
+
+		SlowOperationEvent event = new SlowOperationEvent();
+		if (!event.shouldCommit()) {return;}
+		event.database = database;
+		event.field = field;
+		event.action = action.toString();
+		event.elapsed = elapsed;
+		event.threshold = min;
+		event.commit();
+	}
+}
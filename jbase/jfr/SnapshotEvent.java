@@ -0,0 +1,57 @@
+package jbase.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+
+
+/**
+ * Flight Recorder event for saving, restoring, loading or recovering a whole database.
+ *  Call begin() before the operation, then finish() once it is done.
+ *
+ * @author Bryan McClain
+ */
+@Name("jbase.Snapshot")
+@Label("Database Snapshot")
+@Category("JBase")
+@Description("Database saved to or read from a snapshot file")
+public class SnapshotEvent extends Event {
+
+	@Label("Database")
+	String database;
+
+	@Label("Operation")
+	@Description("Save, Restore, Load or Recover")
+	String operation;
+
+	@Label("File")
+	String file;
+
+	@Label("Size")
+	@DataAmount
+	long bytes;
+
+
+	/**
+	 * Finish timing the operation, and record it if the event is enabled
+	 *
+	 * @param database Name of the database
+	 * @param operation Operation (Save, Restore, Load or Recover)
+	 * @param file The snapshot file (or directory of generations)
+	 */
+	public void finish(String database, String operation, String file) {
+		end();
+		if (!shouldCommit()) {return;}
+
+		this.database = database;
+		this.operation = operation;
+		this.file = file;
+		this.bytes = new File(file).length();
+		commit();
+	}
+}
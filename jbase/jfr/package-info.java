@@ -0,0 +1,6 @@
+/**
+ * Java Flight Recorder events for database operations (snapshots, field changes,
+ *  bulk queries and slow field operations), so JBase activity shows up next to GC and CPU
+ *  in the same recording.
+ */
+package jbase.jfr;
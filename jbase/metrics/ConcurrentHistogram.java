@@ -0,0 +1,79 @@
+package jbase.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Lock-free latency histogram that can be recorded from any number of threads.
+ *  Uses 5 bits of precision (within about 6% of the true value), so each histogram
+ *   takes under 8KB no matter how large the values are.
+ *
+ * @author Bryan McClain
+ */
+public class ConcurrentHistogram {
+
+	private static final HistogramBuckets BUCKETS = new HistogramBuckets(5);
+
+	private final AtomicLongArray counts;
+	private final LongAdder sum;
+	private final LongAccumulator max;
+
+
+	/**
+	 * Construct a new empty histogram
+	 */
+	public ConcurrentHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS.size());
+		this.sum = new LongAdder();
+		this.max = new LongAccumulator(Math::max,0);
+	}
+
+
+	/**
+	 * Record a single value
+	 * @param value The value to record (negative values are recorded as 0)
+	 */
+	public void record(long value) {
+		if (value < 0) {value = 0;}
+		this.counts.incrementAndGet(BUCKETS.indexOf(value));
+		this.sum.add(value);
+		this.max.accumulate(value);
+	}
+
+
+	/**
+	 * Take a summary of the values recorded so far.
+	 *  Values recorded while the summary is being taken might only be partly included.
+	 *
+	 * @return Summary
+	 */
+	public LatencySummary summarize() {
+		long[] copy = new long[this.counts.length()];
+		long count = 0;
+		for (int i = 0; i < copy.length; ++i) {
+			copy[i] = this.counts.get(i);
+			count += copy[i];
+		}
+
+		long max = this.max.get();
+		double mean = (count == 0) ? 0 : (double) this.sum.sum() / count;
+		return new LatencySummary(count,mean,
+								  BUCKETS.percentile(copy,count,max,50),
+								  BUCKETS.percentile(copy,count,max,90),
+								  BUCKETS.percentile(copy,count,max,99),
+								  BUCKETS.percentile(copy,count,max,99.9),
+								  max);
+	}
+
+
+	/**
+	 * Remove every recorded value
+	 */
+	public void reset() {
+		for (int i = 0; i < this.counts.length(); ++i) {this.counts.set(i,0);}
+		this.sum.reset();
+		this.max.reset();
+	}
+}
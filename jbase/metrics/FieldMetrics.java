@@ -0,0 +1,190 @@
+package jbase.metrics;
+
+import jbase.field.FieldAction;
+import jbase.jfr.SlowOperationEvent;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Counters and latency histograms for the operations on a single field.
+ *  Every method is thread-safe and lock-free.
+ *
+ *  Each operation calls begin() before it starts, end() when it finishes,
+ *   and failed() with any exception it throws:
+ *
+ *   long start = metrics.begin(FieldAction.GET);
+ *   try {...}
+ *   catch (JBaseException ex) {throw metrics.failed(FieldAction.GET,ex);}
+ *   finally {metrics.end(FieldAction.GET,start);}
+ *
+ * @author Bryan McClain
+ */
+public class FieldMetrics {
+
+	private static final int ACTIONS = FieldAction.values().length;
+
+	private final MetricsRegistry registry;
+	private final String field;
+	private final LongAdder[] calls;								// Calls to each action
+	private final LongAdder[] errors;								// Exceptions thrown by each action
+	private final ConcurrentHashMap<String,LongAdder> errorTypes;	// Exceptions thrown, by class name
+	private final AtomicReferenceArray<ConcurrentHistogram> latency;	// Created on first use
+
+
+	/**
+	 * Construct a new set of field metrics
+	 * @param registry Registry that owns the metrics
+	 * @param field Name of the field
+	 */
+	FieldMetrics(MetricsRegistry registry, String field) {
+		this.registry = registry;
+		this.field = field;
+		this.calls = new LongAdder[ACTIONS];
+		this.errors = new LongAdder[ACTIONS];
+		for (int i = 0; i < ACTIONS; ++i) {
+			this.calls[i] = new LongAdder();
+			this.errors[i] = new LongAdder();
+		}
+		this.errorTypes = new ConcurrentHashMap<String,LongAdder>();
+		this.latency = new AtomicReferenceArray<ConcurrentHistogram>(ACTIONS);
+	}
+
+
+	/**
+	 * Get the name of the field
+	 * @return Field name
+	 */
+	public String getField() {
+		return this.field;
+	}
+
+
+	/**
+	 * Count a call to an action, and start timing it (if latency tracking is on,
+	 *  slow operations are being logged, or they are being recorded by Flight Recorder)
+	 *
+	 * @param action The action being called
+	 * @return Start time to pass to end(), or 0 if the call isn't timed
+	 */
+	public long begin(FieldAction action) {
+		this.calls[action.ordinal()].increment();
+		return (this.registry.isTiming() || SlowOperationEvent.isRecording()) ? System.nanoTime() : 0;
+	}
+
+
+	/**
+	 * Finish timing a call to an action
+	 * @param action The action that was called
+	 * @param start Start time returned by begin()
+	 */
+	public void end(FieldAction action, long start) {
+		end(action,start,-1,null);
+	}
+
+
+	/**
+	 * Finish timing a call to an action, and log it if it was slow
+	 *
+	 * @param action The action that was called
+	 * @param start Start time returned by begin()
+	 * @param row Row used by the action (-1 = none), for the slow operation log
+	 * @param value Value used by the action (null = none), for the slow operation log
+	 */
+	public void end(FieldAction action, long start, int row, Object value) {
+		if (start == 0) {return;}
+		long elapsed = System.nanoTime() - start;
+		SlowOperationEvent.record(this.registry.getDatabase(),this.field,action,elapsed);
+
+		SlowOperationLog log = this.registry.getSlowLog();
+		if (log != null && log.isSlow(elapsed)) {
+			log.record(this.registry.getDatabase(),this.registry.currentUser(),this.field,action,
+					   SlowOperationLog.describe(row,value),elapsed);
+		}
+		if (!this.registry.isLatencyTracking()) {return;}
+
+		int i = action.ordinal();
+		ConcurrentHistogram h = this.latency.get(i);
+		if (h == null) {
+			this.latency.compareAndSet(i,null,new ConcurrentHistogram());
+			h = this.latency.get(i);
+		}
+		h.record(elapsed);
+	}
+
+
+	/**
+	 * Count an exception thrown by an action
+	 *
+	 * @param action The action that failed
+	 * @param ex The exception thrown
+	 * @return The same exception, so it can be rethrown
+	 */
+	public <E extends RuntimeException> E failed(FieldAction action, E ex) {
+		this.errors[action.ordinal()].increment();
+		this.errorTypes.computeIfAbsent(ex.getClass().getSimpleName(),k -> new LongAdder()).increment();
+		return ex;
+	}
+
+
+	/**
+	 * Get the number of calls to an action
+	 * @param action The action
+	 * @return Calls
+	 */
+	public long getCalls(FieldAction action) {
+		return this.calls[action.ordinal()].sum();
+	}
+
+
+	/**
+	 * Get the number of exceptions thrown by an action
+	 * @param action The action
+	 * @return Errors
+	 */
+	public long getErrors(FieldAction action) {
+		return this.errors[action.ordinal()].sum();
+	}
+
+
+	/**
+	 * Get the number of exceptions thrown by all actions, by exception class
+	 * @return Map of class name (for example "JBaseBadRow") to count
+	 */
+	public Map<String,Long> getErrorTypes() {
+		TreeMap<String,Long> types = new TreeMap<String,Long>();
+		for (Map.Entry<String,LongAdder> e : this.errorTypes.entrySet()) {
+			types.put(e.getKey(),e.getValue().sum());
+		}
+		return types;
+	}
+
+
+	/**
+	 * Get a summary of the latencies of an action
+	 * @param action The action
+	 * @return Summary, or null if no calls have been timed
+	 */
+	public LatencySummary getLatency(FieldAction action) {
+		ConcurrentHistogram h = this.latency.get(action.ordinal());
+		return (h == null) ? null : h.summarize();
+	}
+
+
+	/**
+	 * Set every counter and histogram back to zero
+	 */
+	public void reset() {
+		for (int i = 0; i < ACTIONS; ++i) {
+			this.calls[i].reset();
+			this.errors[i].reset();
+			ConcurrentHistogram h = this.latency.get(i);
+			if (h != null) {h.reset();}
+		}
+		this.errorTypes.clear();
+	}
+}
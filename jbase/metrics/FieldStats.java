@@ -0,0 +1,159 @@
+package jbase.metrics;
+
+import jbase.field.FieldAction;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Metrics for a single field at the moment a snapshot was taken
+ * @author Bryan McClain
+ */
+public final class FieldStats {
+
+	private final String name;
+	private final String type;
+	private final int depth;
+	private final int inUse;						// Rows in use (-1 = not a key field)
+	private final long[] calls;						// Calls to each action (by ordinal)
+	private final long[] errors;					// Exceptions thrown by each action (by ordinal)
+	private final Map<String,Long> errorTypes;		// Exceptions thrown, by class name
+	private final LatencySummary[] latency;			// Latency of each action (null = not timed)
+
+
+	/**
+	 * Construct new field statistics from the live metrics
+	 *
+	 * @param name Name of the field
+	 * @param type Type of the field
+	 * @param depth Rows in the field
+	 * @param inUse Rows in use (-1 = not a key field)
+	 * @param metrics The live metrics for the field
+	 */
+	FieldStats(String name, String type, int depth, int inUse, FieldMetrics metrics) {
+		this.name = name;
+		this.type = type;
+		this.depth = depth;
+		this.inUse = inUse;
+
+		FieldAction[] actions = FieldAction.values();
+		this.calls = new long[actions.length];
+		this.errors = new long[actions.length];
+		this.latency = new LatencySummary[actions.length];
+		for (FieldAction a : actions) {
+			this.calls[a.ordinal()] = metrics.getCalls(a);
+			this.errors[a.ordinal()] = metrics.getErrors(a);
+			this.latency[a.ordinal()] = metrics.getLatency(a);
+		}
+		this.errorTypes = Collections.unmodifiableMap(metrics.getErrorTypes());
+	}
+
+
+	/**
+	 * Get the name of the field
+	 * @return Name
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+
+	/**
+	 * Get the type of the field
+	 * @return Type (for example "Key")
+	 */
+	public String getType() {
+		return this.type;
+	}
+
+
+	/**
+	 * Get the number of rows in the field
+	 * @return Depth
+	 */
+	public int getDepth() {
+		return this.depth;
+	}
+
+
+	/**
+	 * Get the number of rows in use
+	 * @return Rows in use, or -1 if the field isn't a key field
+	 */
+	public int getInUse() {
+		return this.inUse;
+	}
+
+
+	/**
+	 * Get the number of calls to an action
+	 * @param action The action
+	 * @return Calls
+	 */
+	public long getCalls(FieldAction action) {
+		return this.calls[action.ordinal()];
+	}
+
+
+	/**
+	 * Get the number of calls to every action
+	 * @return Calls
+	 */
+	public long getTotalCalls() {
+		long sum = 0;
+		for (long c : this.calls) {sum += c;}
+		return sum;
+	}
+
+
+	/**
+	 * Get the number of exceptions thrown by an action
+	 * @param action The action
+	 * @return Errors
+	 */
+	public long getErrors(FieldAction action) {
+		return this.errors[action.ordinal()];
+	}
+
+
+	/**
+	 * Get the number of exceptions thrown by all actions, by exception class
+	 * @return Map of class name (for example "JBaseBadRow") to count
+	 */
+	public Map<String,Long> getErrorTypes() {
+		return this.errorTypes;
+	}
+
+
+	/**
+	 * Get a summary of the latencies of an action
+	 * @param action The action
+	 * @return Summary, or null if latency tracking was off for every call
+	 */
+	public LatencySummary getLatency(FieldAction action) {
+		return this.latency[action.ordinal()];
+	}
+
+
+	/**
+	 * Convert the statistics to a string, with one line for each action that was called
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT,"%s (%s): depth=%d",this.name,this.type,this.depth));
+		if (this.inUse >= 0) {sb.append(" inUse=").append(this.inUse);}
+		if (!this.errorTypes.isEmpty()) {sb.append(" errors=").append(this.errorTypes);}
+
+		for (FieldAction a : FieldAction.values()) {
+			int i = a.ordinal();
+			if (this.calls[i] == 0) {continue;}
+			sb.append(String.format(Locale.ROOT,"%n  %-14s calls=%d errors=%d",a,this.calls[i],this.errors[i]));
+			if (this.latency[i] != null) {sb.append(' ').append(this.latency[i]);}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,93 @@
+package jbase.metrics;
+
+
+/**
+ * Log-linear bucket layout used by the latency histograms (in the style of HdrHistogram).
+ *  Values below 2^bits get a bucket each; above that, every power of two is split into
+ *   2^(bits-1) equal buckets, so any value is recorded with a relative error below 2^-(bits-1).
+ *
+ * @author Bryan McClain
+ */
+public final class HistogramBuckets {
+
+	private final int subBits;		// Bits of precision kept in each value
+	private final int subCount;		// Buckets below the first power of two
+	private final int halfCount;	// Buckets in each power of two above that
+	private final int size;			// Total number of buckets
+
+
+	/**
+	 * Construct a new bucket layout
+	 * @param subBits Bits of precision kept in each value (from 2 to 16)
+	 * @throws IllegalArgumentException Precision out of range
+	 */
+	public HistogramBuckets(int subBits) {
+		if (subBits < 2 || subBits > 16) {throw new IllegalArgumentException("Precision must be from 2 to 16 bits");}
+		this.subBits = subBits;
+		this.subCount = 1 << subBits;
+		this.halfCount = this.subCount >> 1;
+		this.size = this.subCount + (64 - subBits) * this.halfCount;
+	}
+
+
+	/**
+	 * Get the number of buckets needed to hold any non-negative long
+	 * @return Number of buckets
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Get the bucket holding a value
+	 * @param value The value (must not be negative)
+	 * @return Bucket index
+	 */
+	public int indexOf(long value) {
+		if (value < this.subCount) {return (int) value;}
+
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - (this.subBits - 1);
+		int sub = (int) (value >>> shift);		// From halfCount to subCount-1
+		return this.subCount + (shift - 1) * this.halfCount + (sub - this.halfCount);
+	}
+
+
+	/**
+	 * Get the largest value that lands in a bucket
+	 * @param index Bucket index
+	 * @return Value
+	 */
+	public long highestIn(int index) {
+		if (index < this.subCount) {return index;}
+
+		int shift = (index - this.subCount) / this.halfCount + 1;
+		long sub = (index - this.subCount) % this.halfCount + this.halfCount;
+		long high = ((sub + 1) << shift) - 1;
+		return (high < 0) ? Long.MAX_VALUE : high;
+	}
+
+
+	/**
+	 * Find the value at a percentile from a set of bucket counts
+	 *
+	 * @param counts Count in each bucket
+	 * @param total Sum of all counts
+	 * @param max Largest value recorded (results are capped at this)
+	 * @param percentile Percentile from 0 to 100
+	 * @return Value, or 0 if the counts are empty
+	 */
+	public long percentile(long[] counts, long total, long max, double percentile) {
+		if (total <= 0) {return 0;}
+
+		long target = (long) Math.ceil(Math.min(100,Math.max(0,percentile)) / 100 * total);
+		if (target < 1) {target = 1;}
+
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= target) {return Math.min(highestIn(i),max);}
+		}
+		return max;
+	}
+}
@@ -0,0 +1,72 @@
+package jbase.metrics;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the metrics for a database.
+ *  Maps are keyed by "field.Action" (or "field.ExceptionType" for errors).
+ *
+ * @author Bryan McClain
+ */
+public interface JBaseMetricsMXBean {
+
+	/**
+	 * Get the name of the database
+	 * @return Database name
+	 */
+	public String getDatabase();
+
+	/**
+	 * Test if every call is being timed
+	 * @return True if latency tracking is on
+	 */
+	public boolean isLatencyTracking();
+
+	/**
+	 * Turn timing of every call on or off
+	 * @param on True to turn latency tracking on
+	 */
+	public void setLatencyTracking(boolean on);
+
+	/**
+	 * Get the number of calls to each action of each field
+	 * @return Map of "field.Action" to calls
+	 */
+	public Map<String,Long> getCalls();
+
+	/**
+	 * Get the number of exceptions thrown by each field, by exception class
+	 * @return Map of "field.ExceptionType" to count
+	 */
+	public Map<String,Long> getErrors();
+
+	/**
+	 * Get the depth of each field
+	 * @return Map of field name to depth
+	 */
+	public Map<String,Long> getDepth();
+
+	/**
+	 * Get the rows in use in each key field
+	 * @return Map of field name to rows in use
+	 */
+	public Map<String,Long> getInUse();
+
+	/**
+	 * Get the average latency of each timed action of each field
+	 * @return Map of "field.Action" to microseconds
+	 */
+	public Map<String,Double> getMeanLatencyMicros();
+
+	/**
+	 * Get the 99th percentile latency of each timed action of each field
+	 * @return Map of "field.Action" to microseconds
+	 */
+	public Map<String,Double> getP99LatencyMicros();
+
+	/**
+	 * Set every counter and histogram back to zero
+	 */
+	public void reset();
+}
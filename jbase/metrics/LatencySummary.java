@@ -0,0 +1,116 @@
+package jbase.metrics;
+
+import java.util.Locale;
+
+
+/**
+ * Summary of the latencies recorded for one action on one field (all times are in nanoseconds)
+ * @author Bryan McClain
+ */
+public final class LatencySummary {
+
+	private final long count;
+	private final double mean;
+	private final long p50;
+	private final long p90;
+	private final long p99;
+	private final long p999;
+	private final long max;
+
+
+	/**
+	 * Construct a new latency summary
+	 *
+	 * @param count Number of latencies recorded
+	 * @param mean Average latency
+	 * @param p50 Median latency
+	 * @param p90 90th percentile latency
+	 * @param p99 99th percentile latency
+	 * @param p999 99.9th percentile latency
+	 * @param max Largest latency
+	 */
+	public LatencySummary(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+
+	/**
+	 * Get the number of latencies recorded
+	 * @return Count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+
+	/**
+	 * Get the average latency
+	 * @return Nanoseconds
+	 */
+	public double getMean() {
+		return this.mean;
+	}
+
+
+	/**
+	 * Get the median latency
+	 * @return Nanoseconds
+	 */
+	public long getP50() {
+		return this.p50;
+	}
+
+
+	/**
+	 * Get the 90th percentile latency
+	 * @return Nanoseconds
+	 */
+	public long getP90() {
+		return this.p90;
+	}
+
+
+	/**
+	 * Get the 99th percentile latency
+	 * @return Nanoseconds
+	 */
+	public long getP99() {
+		return this.p99;
+	}
+
+
+	/**
+	 * Get the 99.9th percentile latency
+	 * @return Nanoseconds
+	 */
+	public long getP999() {
+		return this.p999;
+	}
+
+
+	/**
+	 * Get the largest latency
+	 * @return Nanoseconds
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+
+	/**
+	 * Convert this summary to a string (in microseconds)
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,"n=%d mean=%.3fus p50=%.3fus p90=%.3fus p99=%.3fus p99.9=%.3fus max=%.3fus",
+							 this.count,this.mean / 1000,this.p50 / 1000.0,this.p90 / 1000.0,
+							 this.p99 / 1000.0,this.p999 / 1000.0,this.max / 1000.0);
+	}
+}
@@ -0,0 +1,112 @@
+package jbase.metrics;
+
+import jbase.field.FieldAction;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+
+/**
+ * Publishes the metrics for a database over JMX
+ * @author Bryan McClain
+ */
+class MetricsMBean implements JBaseMetricsMXBean {
+
+	private final MetricsRegistry registry;
+	private final Supplier<MetricsSnapshot> source;		// Takes a snapshot of every field
+
+
+	/**
+	 * Construct a new metrics MBean
+	 * @param registry The registry holding the metrics
+	 * @param source Takes a snapshot of the metrics for every field in the database
+	 */
+	MetricsMBean(MetricsRegistry registry, Supplier<MetricsSnapshot> source) {
+		this.registry = registry;
+		this.source = source;
+	}
+
+
+	public String getDatabase() {
+		return this.source.get().getDatabase();
+	}
+
+
+	public boolean isLatencyTracking() {
+		return this.registry.isLatencyTracking();
+	}
+
+
+	public void setLatencyTracking(boolean on) {
+		this.registry.setLatencyTracking(on);
+	}
+
+
+	public Map<String,Long> getCalls() {
+		TreeMap<String,Long> map = new TreeMap<String,Long>();
+		for (FieldStats f : this.source.get().getFields()) {
+			for (FieldAction a : FieldAction.values()) {
+				long calls = f.getCalls(a);
+				if (calls > 0) {map.put(f.getName()+"."+a,calls);}
+			}
+		}
+		return map;
+	}
+
+
+	public Map<String,Long> getErrors() {
+		TreeMap<String,Long> map = new TreeMap<String,Long>();
+		for (FieldStats f : this.source.get().getFields()) {
+			for (Map.Entry<String,Long> e : f.getErrorTypes().entrySet()) {
+				map.put(f.getName()+"."+e.getKey(),e.getValue());
+			}
+		}
+		return map;
+	}
+
+
+	public Map<String,Long> getDepth() {
+		TreeMap<String,Long> map = new TreeMap<String,Long>();
+		for (FieldStats f : this.source.get().getFields()) {map.put(f.getName(),(long) f.getDepth());}
+		return map;
+	}
+
+
+	public Map<String,Long> getInUse() {
+		TreeMap<String,Long> map = new TreeMap<String,Long>();
+		for (FieldStats f : this.source.get().getFields()) {
+			if (f.getInUse() >= 0) {map.put(f.getName(),(long) f.getInUse());}
+		}
+		return map;
+	}
+
+
+	public Map<String,Double> getMeanLatencyMicros() {
+		TreeMap<String,Double> map = new TreeMap<String,Double>();
+		for (FieldStats f : this.source.get().getFields()) {
+			for (FieldAction a : FieldAction.values()) {
+				LatencySummary s = f.getLatency(a);
+				if (s != null) {map.put(f.getName()+"."+a,s.getMean() / 1000);}
+			}
+		}
+		return map;
+	}
+
+
+	public Map<String,Double> getP99LatencyMicros() {
+		TreeMap<String,Double> map = new TreeMap<String,Double>();
+		for (FieldStats f : this.source.get().getFields()) {
+			for (FieldAction a : FieldAction.values()) {
+				LatencySummary s = f.getLatency(a);
+				if (s != null) {map.put(f.getName()+"."+a,s.getP99() / 1000.0);}
+			}
+		}
+		return map;
+	}
+
+
+	public void reset() {
+		this.registry.reset();
+	}
+}
@@ -0,0 +1,235 @@
+package jbase.metrics;
+
+import jbase.field.Field;
+import jbase.field.KeyField;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Holds the metrics for every field in a database.
+ *  Call counts and errors are always recorded; timing each call (latency tracking)
+ *   costs two reads of the system clock, so it is off unless turned on with
+ *   setLatencyTracking() or the system property "jbase.metrics.latency=true".
+ *
+ * @author Bryan McClain
+ */
+public class MetricsRegistry {
+
+	/** System property that turns on latency tracking for new databases */
+	public static final String LATENCY_PROPERTY = "jbase.metrics.latency";
+
+	private final String database;
+	private final Supplier<String> user;	// User logged in to the database
+	private final ConcurrentHashMap<String,FieldMetrics> fields;
+	private volatile boolean latencyTracking;
+	private volatile SlowOperationLog slowLog;	// Null = slow operations aren't logged
+	private volatile boolean timing;		// Latency tracking is on, or there is a slow operation log
+	private ObjectName mbean;				// Name registered with JMX (null = not registered)
+
+
+	/**
+	 * Construct a new metrics registry
+	 * @param database Name of the database
+	 */
+	public MetricsRegistry(String database) {
+		this(database,() -> null);
+	}
+
+
+	/**
+	 * Construct a new metrics registry
+	 * @param database Name of the database
+	 * @param user Gets the user logged in to the database (for the slow operation log)
+	 */
+	public MetricsRegistry(String database, Supplier<String> user) {
+		this.database = database;
+		this.user = user;
+		this.fields = new ConcurrentHashMap<String,FieldMetrics>();
+		this.latencyTracking = Boolean.getBoolean(LATENCY_PROPERTY);
+		this.slowLog = SlowOperationLog.getDefault();
+		this.timing = this.latencyTracking || this.slowLog != null;
+	}
+
+
+	/**
+	 * Get the name of the database
+	 * @return Database name
+	 */
+	public String getDatabase() {
+		return this.database;
+	}
+
+
+	/**
+	 * Get the metrics for a field, creating them if needed
+	 * @param field Name of the field
+	 * @return Field metrics
+	 */
+	public FieldMetrics forField(String field) {
+		return this.fields.computeIfAbsent(field,name -> new FieldMetrics(this,name));
+	}
+
+
+	/**
+	 * Stop tracking a field after it is deleted
+	 * @param field Name of the field
+	 */
+	public void removeField(String field) {
+		this.fields.remove(field);
+	}
+
+
+	/**
+	 * Test if every call is being timed
+	 * @return True if latency tracking is on
+	 */
+	public boolean isLatencyTracking() {
+		return this.latencyTracking;
+	}
+
+
+	/**
+	 * Turn timing of every call on or off
+	 * @param on True to turn latency tracking on
+	 */
+	public void setLatencyTracking(boolean on) {
+		this.latencyTracking = on;
+		this.timing = on || this.slowLog != null;
+	}
+
+
+	/**
+	 * Test if every call needs to be timed (for latency tracking or the slow operation log)
+	 * @return True if calls are timed
+	 */
+	public boolean isTiming() {
+		return this.timing;
+	}
+
+
+	/**
+	 * Get the log that slow operations are written to
+	 * @return Slow operation log, or null if slow operations aren't logged
+	 */
+	public SlowOperationLog getSlowLog() {
+		return this.slowLog;
+	}
+
+
+	/**
+	 * Set the log that slow operations are written to
+	 * @param log Slow operation log (null = stop logging slow operations)
+	 */
+	public void setSlowLog(SlowOperationLog log) {
+		this.slowLog = log;
+		this.timing = this.latencyTracking || log != null;
+	}
+
+
+	/**
+	 * Get the user logged in to the database
+	 * @return Username, or null if nobody is logged in
+	 */
+	public String currentUser() {
+		return this.user.get();
+	}
+
+
+	/**
+	 * Start timing an operation that isn't a field action (such as a query or save),
+	 *  for the slow operation log
+	 *
+	 * @return Start time to pass to logIfSlow(), or 0 if slow operations aren't logged
+	 */
+	public long startTimer() {
+		return (this.slowLog != null) ? System.nanoTime() : 0;
+	}
+
+
+	/**
+	 * Write an operation to the slow operation log if it took longer than the threshold
+	 *
+	 * @param field Name of the field (null for database operations)
+	 * @param action The operation (such as "Query" or "Save")
+	 * @param detail Query plan, file or other detail (only converted to a string if the operation is slow)
+	 * @param start Start time returned by startTimer(), or System.nanoTime()
+	 */
+	public void logIfSlow(String field, Object action, Object detail, long start) {
+		SlowOperationLog log = this.slowLog;
+		if (start == 0 || log == null) {return;}
+
+		long elapsed = System.nanoTime() - start;
+		if (log.isSlow(elapsed)) {
+			log.record(this.database,currentUser(),field,action,"detail=\""+detail+"\"",elapsed);
+		}
+	}
+
+
+	/**
+	 * Set every counter and histogram back to zero
+	 */
+	public void reset() {
+		for (FieldMetrics m : this.fields.values()) {m.reset();}
+	}
+
+
+	/**
+	 * Take a snapshot of the metrics for a set of fields, along with their depth and rows in use
+	 * @param fields The fields to include
+	 * @return Snapshot
+	 */
+	public MetricsSnapshot snapshot(Field<?>[] fields) {
+		Field<?>[] sorted = fields.clone();
+		Arrays.sort(sorted,Comparator.comparing(Field::getName));
+
+		ArrayList<FieldStats> stats = new ArrayList<FieldStats>(sorted.length);
+		for (Field<?> f : sorted) {
+			int inUse = (f instanceof KeyField) ? ((KeyField<?>) f).inUse() : -1;
+			stats.add(new FieldStats(f.getName(),f.getType().toString(),f.getDepth(),inUse,forField(f.getName())));
+		}
+		return new MetricsSnapshot(this.database,this.latencyTracking,stats);
+	}
+
+
+	/**
+	 * Publish the metrics over JMX as "jbase:type=Database,name=(database)".
+	 *  Does nothing if the metrics are already published, or JMX isn't available.
+	 *
+	 * @param source Takes a snapshot of the metrics for every field in the database
+	 */
+	public synchronized void registerMBean(Supplier<MetricsSnapshot> source) {
+		if (this.mbean != null) {return;}
+		try {
+			ObjectName name = new ObjectName("jbase:type=Database,name="+ObjectName.quote(this.database));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {server.unregisterMBean(name);}
+			server.registerMBean(new MetricsMBean(this,source),name);
+			this.mbean = name;
+		} catch (JMException | SecurityException ex) {
+			//Metrics are still available through Database.metrics()
+		}
+	}
+
+
+	/**
+	 * Stop publishing the metrics over JMX
+	 */
+	public synchronized void unregisterMBean() {
+		if (this.mbean == null) {return;}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.mbean);
+		} catch (JMException | SecurityException ex) {
+			//Already gone
+		}
+		this.mbean = null;
+	}
+}
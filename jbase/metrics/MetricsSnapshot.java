@@ -0,0 +1,98 @@
+package jbase.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Metrics for every field in a database at the moment the snapshot was taken
+ * @author Bryan McClain
+ */
+public final class MetricsSnapshot {
+
+	private final String database;
+	private final long timestamp;				// When the snapshot was taken (milliseconds since the epoch)
+	private final boolean latencyTracking;
+	private final List<FieldStats> fields;
+
+
+	/**
+	 * Construct a new metrics snapshot
+	 *
+	 * @param database Name of the database
+	 * @param latencyTracking True if calls are being timed
+	 * @param fields Statistics for each field
+	 */
+	MetricsSnapshot(String database, boolean latencyTracking, List<FieldStats> fields) {
+		this.database = database;
+		this.timestamp = System.currentTimeMillis();
+		this.latencyTracking = latencyTracking;
+		this.fields = Collections.unmodifiableList(new ArrayList<FieldStats>(fields));
+	}
+
+
+	/**
+	 * Get the name of the database
+	 * @return Database name
+	 */
+	public String getDatabase() {
+		return this.database;
+	}
+
+
+	/**
+	 * Get the time the snapshot was taken
+	 * @return Milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+
+	/**
+	 * Test if calls were being timed when the snapshot was taken
+	 * @return True if latency tracking is on
+	 */
+	public boolean isLatencyTracking() {
+		return this.latencyTracking;
+	}
+
+
+	/**
+	 * Get the statistics for every field, sorted by name
+	 * @return List of field statistics
+	 */
+	public List<FieldStats> getFields() {
+		return this.fields;
+	}
+
+
+	/**
+	 * Get the statistics for a single field
+	 * @param name Name of the field
+	 * @return Field statistics, or null if the field doesn't exist
+	 */
+	public FieldStats getField(String name) {
+		for (FieldStats f : this.fields) {
+			if (f.getName().equals(name)) {return f;}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Convert the snapshot to a string, with a section for each field
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Metrics for ").append(this.database);
+		sb.append(this.latencyTracking ? " (latency tracking on)" : " (latency tracking off)");
+		for (FieldStats f : this.fields) {
+			sb.append(System.lineSeparator()).append(f);
+		}
+		return sb.toString();
+	}
+}
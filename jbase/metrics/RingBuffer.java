@@ -0,0 +1,82 @@
+package jbase.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Bounded lock-free queue with many producers and a single consumer.
+ *  Each slot has a sequence number that tells producers when it is free and
+ *   the consumer when it is full (Vyukov's bounded queue), so neither side ever waits on a lock.
+ *  When the buffer is full, offer() fails instead of blocking.
+ *
+ * @author Bryan McClain
+ */
+class RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequence;		// Position a slot is waiting for (pos = free, pos+1 = full)
+	private final int mask;
+	private final AtomicLong tail;				// Next position to fill (shared by the producers)
+	private long head;							// Next position to read (only used by the consumer)
+
+
+	/**
+	 * Construct a new ring buffer
+	 * @param capacity Number of slots (rounded up to a power of two)
+	 */
+	RingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2,capacity) - 1) << 1;
+		this.slots = new AtomicReferenceArray<E>(size);
+		this.sequence = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i) {this.sequence.set(i,i);}
+		this.mask = size - 1;
+		this.tail = new AtomicLong();
+		this.head = 0;
+	}
+
+
+	/**
+	 * Add an element to the buffer (can be called from any thread)
+	 * @param e The element to add
+	 * @return True if it was added, false if the buffer is full
+	 */
+	boolean offer(E e) {
+		long pos = this.tail.get();
+		while (true) {
+			int i = (int) (pos & this.mask);
+			long diff = this.sequence.get(i) - pos;
+
+			if (diff == 0) {
+				//Slot is free, so try to claim it
+				if (this.tail.compareAndSet(pos,pos+1)) {
+					this.slots.set(i,e);
+					this.sequence.set(i,pos+1);
+					return true;
+				}
+				pos = this.tail.get();
+			} else if (diff < 0) {
+				return false;	// Consumer hasn't read this slot yet
+			} else {
+				pos = this.tail.get();	// Another producer took the slot
+			}
+		}
+	}
+
+
+	/**
+	 * Remove the oldest element from the buffer (only call from the consumer thread)
+	 * @return The element, or null if the buffer is empty
+	 */
+	E poll() {
+		int i = (int) (this.head & this.mask);
+		if (this.sequence.get(i) != this.head + 1) {return null;}
+
+		E e = this.slots.get(i);
+		this.slots.set(i,null);
+		this.sequence.set(i,this.head + this.mask + 1);
+		++this.head;
+		return e;
+	}
+}
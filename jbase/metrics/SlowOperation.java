@@ -0,0 +1,56 @@
+package jbase.metrics;
+
+import java.time.Instant;
+import java.util.Locale;
+
+
+/**
+ * A single operation written to the slow operation log
+ * @author Bryan McClain
+ */
+class SlowOperation {
+
+	private final long time;			// When the operation finished (milliseconds since the epoch)
+	private final String database;
+	private final String user;
+	private final String field;			// Null for database operations
+	private final String action;
+	private final String detail;		// Row, value or file (can be empty)
+	private final long elapsed;			// Time taken in nanoseconds
+	private final String stack;			// First few frames of the calling code
+
+
+	/**
+	 * Construct a new slow operation
+	 */
+	SlowOperation(long time, String database, String user, String field, String action,
+				  String detail, long elapsed, String stack) {
+		this.time = time;
+		this.database = database;
+		this.user = user;
+		this.field = field;
+		this.action = action;
+		this.detail = detail;
+		this.elapsed = elapsed;
+		this.stack = stack;
+	}
+
+
+	/**
+	 * Convert this operation to a single line of the log
+	 * @return Line of text (without the line break)
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(160);
+		sb.append(Instant.ofEpochMilli(this.time));
+		sb.append(" db=").append(this.database);
+		sb.append(" user=").append((this.user == null) ? "-" : this.user);
+		sb.append(" field=").append((this.field == null) ? "-" : this.field);
+		sb.append(" action=\"").append(this.action).append('"');
+		if (!this.detail.isEmpty()) {sb.append(' ').append(this.detail);}
+		sb.append(String.format(Locale.ROOT," elapsed_us=%.1f",this.elapsed / 1000.0));
+		if (!this.stack.isEmpty()) {sb.append(" at=").append(this.stack);}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,367 @@
+package jbase.metrics;
+
+import jbase.exception.JBaseIOException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+
+/**
+ * Log of operations that took longer than a threshold (field operations, queries,
+ *  saves and loads), one line per operation, with the user, field, action, row or value,
+ *  time taken and the first few frames of the calling code.
+ *
+ *  Slow operations are put in a lock-free ring buffer and written to the file by a
+ *   background thread, so logging never blocks the thread doing the work. If the
+ *   buffer is full, the operation is dropped and counted instead.
+ *  When the file grows past its maximum size, it is renamed to "file.1" (and older
+ *   files to "file.2", "file.3", etc.) and a new file is started.
+ *
+ *  One log can be shared by several databases (see Database.setSlowLog()). Setting the
+ *   system property "jbase.slowlog.file" creates a default log that every database uses,
+ *   with the threshold from "jbase.slowlog.threshold" (in microseconds, default 10000).
+ *
+ * @author Bryan McClain
+ */
+public class SlowOperationLog {
+
+	/** System property holding the file of the default log */
+	public static final String FILE_PROPERTY = "jbase.slowlog.file";
+
+	/** System property holding the threshold of the default log, in microseconds */
+	public static final String THRESHOLD_PROPERTY = "jbase.slowlog.threshold";
+
+	/** Size a log file can grow to before it is rotated */
+	public static final long DEFAULT_MAX_BYTES = 10L << 20;
+
+	/** Number of log files kept (including the current one) */
+	public static final int DEFAULT_KEEP = 5;
+
+	private static final int CAPACITY = 4096;			// Operations waiting to be written
+	private static final int STACK_FRAMES = 3;			// Frames of calling code in each line
+	private static final int VALUE_LENGTH = 40;			// Longest value written before it is cut off
+	private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private static SlowOperationLog defaultLog;			// Created from the system properties
+	private static boolean defaultChecked;
+
+	private final File file;
+	private final long maxBytes;
+	private final int keep;
+	private volatile long threshold;					// In nanoseconds
+	private final RingBuffer<SlowOperation> ring;
+	private final LongAdder dropped;					// Operations that couldn't be written
+	private volatile long written;						// Operations written (only changed by the writer)
+	private volatile boolean running;
+	private final Thread writer;
+
+	private Writer out;									// Only used by the writer thread after construction
+	private long bytes;									// Size of the current file
+
+
+	/**
+	 * Construct a new slow operation log, with the default file size and number of files
+	 *
+	 * @param filename The file to write to (appended to if it already exists)
+	 * @param thresholdMicros Operations taking at least this long are logged (in microseconds)
+	 * @throws JBaseIOException Unable to open the file
+	 */
+	public SlowOperationLog(String filename, long thresholdMicros) throws JBaseIOException {
+		this(filename,thresholdMicros,DEFAULT_MAX_BYTES,DEFAULT_KEEP);
+	}
+
+
+	/**
+	 * Construct a new slow operation log
+	 *
+	 * @param filename The file to write to (appended to if it already exists)
+	 * @param thresholdMicros Operations taking at least this long are logged (in microseconds)
+	 * @param maxBytes Size the file can grow to before it is rotated
+	 * @param keep Number of files to keep (including the current one)
+	 * @throws JBaseIOException Unable to open the file
+	 */
+	public SlowOperationLog(String filename, long thresholdMicros, long maxBytes, int keep) throws JBaseIOException {
+		this.file = new File(filename);
+		this.maxBytes = Math.max(1,maxBytes);
+		this.keep = Math.max(1,keep);
+		setThreshold(thresholdMicros);
+		this.ring = new RingBuffer<SlowOperation>(CAPACITY);
+		this.dropped = new LongAdder();
+
+		try {
+			open();
+		} catch (IOException ex) {
+			throw new JBaseIOException(filename,ex);
+		}
+
+		this.running = true;
+		this.writer = new Thread(this::drain,"jbase-slowlog");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+
+	/**
+	 * Get the log used by every database, created from the system properties
+	 * @return Default log, or null if the property isn't set or the file can't be opened
+	 */
+	public static synchronized SlowOperationLog getDefault() {
+		if (defaultChecked) {return defaultLog;}
+		defaultChecked = true;
+
+		String filename = System.getProperty(FILE_PROPERTY);
+		if (filename == null) {return null;}
+		try {
+			defaultLog = new SlowOperationLog(filename,Long.getLong(THRESHOLD_PROPERTY,10000));
+			Runtime.getRuntime().addShutdownHook(new Thread(defaultLog::close));
+		} catch (JBaseIOException ex) {
+			defaultLog = null;
+		}
+		return defaultLog;
+	}
+
+
+	/**
+	 * Get the file being written to
+	 * @return File name
+	 */
+	public String getFile() {
+		return this.file.getPath();
+	}
+
+
+	/**
+	 * Get the time an operation must take to be logged
+	 * @return Threshold in microseconds
+	 */
+	public long getThreshold() {
+		return TimeUnit.NANOSECONDS.toMicros(this.threshold);
+	}
+
+
+	/**
+	 * Set the time an operation must take to be logged
+	 * @param micros Threshold in microseconds
+	 */
+	public void setThreshold(long micros) {
+		this.threshold = TimeUnit.MICROSECONDS.toNanos(Math.max(0,micros));
+	}
+
+
+	/**
+	 * Test if an operation took long enough to be logged
+	 * @param elapsed Time taken in nanoseconds
+	 * @return True if the operation is slow
+	 */
+	public boolean isSlow(long elapsed) {
+		return elapsed >= this.threshold;
+	}
+
+
+	/**
+	 * Get the number of operations written to the file
+	 * @return Operations written
+	 */
+	public long getWritten() {
+		return this.written;
+	}
+
+
+	/**
+	 * Get the number of operations that were dropped, because the buffer was full
+	 *  or the file couldn't be written
+	 *
+	 * @return Operations dropped
+	 */
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+
+	/**
+	 * Queue a slow operation to be written to the log. Never blocks.
+	 *
+	 * @param database Name of the database
+	 * @param user User logged in to the database (can be null)
+	 * @param field Name of the field (null for database operations)
+	 * @param action The action (field action, or a database operation such as "Save")
+	 * @param detail Row, value or file used by the operation (can be empty)
+	 * @param elapsed Time taken in nanoseconds
+	 */
+	public void record(String database, String user, String field, Object action, String detail, long elapsed) {
+		if (!this.running) {return;}
+
+		SlowOperation op = new SlowOperation(System.currentTimeMillis(),database,user,field,action.toString(),
+											 detail,elapsed,stackHint());
+		if (!this.ring.offer(op)) {this.dropped.increment();}
+	}
+
+
+	/**
+	 * Stop the log: every queued operation is written, then the file is closed.
+	 *  Operations recorded after this are ignored.
+	 */
+	public void close() {
+		if (!this.running) {return;}
+		this.running = false;
+		LockSupport.unpark(this.writer);
+		try {
+			this.writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+
+	/**
+	 * Describe the row and value used by a field operation
+	 *
+	 * @param row The row (-1 = no row)
+	 * @param value The value (null = no value)
+	 * @return Description, such as: row=12 value="abc"
+	 */
+	public static String describe(int row, Object value) {
+		StringBuilder sb = new StringBuilder();
+		if (row >= 0) {sb.append("row=").append(row);}
+		if (value != null) {
+			String str = value.toString();
+			if (str.length() > VALUE_LENGTH) {str = str.substring(0,VALUE_LENGTH)+"...";}
+			if (sb.length() > 0) {sb.append(' ');}
+			sb.append("value=\"").append(str.replace('"','\'').replace('\n',' ')).append('"');
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Get the first few frames of the code that called into JBase
+	 * @return Frames such as "Main.run:42 < Main.main:10"
+	 */
+	private static String stackHint() {
+		return StackWalker.getInstance().walk(frames -> frames
+			.filter(f -> isCaller(f.getClassName()))
+			.limit(STACK_FRAMES)
+			.map(f -> shortName(f.getClassName())+"."+f.getMethodName()+":"+f.getLineNumber())
+			.collect(Collectors.joining(" < ")));
+	}
+
+
+	/**
+	 * Test if a class is outside the JBase core (the user interface and benchmarks count as callers)
+	 */
+	private static boolean isCaller(String className) {
+		if (!className.startsWith("jbase.")) {return true;}
+		return className.startsWith("jbase.ui.") || className.startsWith("jbase.bench.");
+	}
+
+
+	/**
+	 * Remove the package from a class name
+	 */
+	private static String shortName(String className) {
+		return className.substring(className.lastIndexOf('.') + 1);
+	}
+
+
+
+	//============Writer Thread=============
+
+	/**
+	 * Write queued operations to the file until the log is closed
+	 */
+	private void drain() {
+		while (true) {
+			boolean stopping = !this.running;
+
+			SlowOperation op;
+			while ((op = this.ring.poll()) != null) {write(op.toString()+"\n");}
+			flush();
+
+			if (stopping) {break;}
+			LockSupport.parkNanos(this,POLL_NANOS);
+		}
+
+		try {
+			if (this.out != null) {this.out.close();}
+		} catch (IOException ex) {
+			//Nothing left to write to
+		}
+		this.out = null;
+	}
+
+
+	/**
+	 * Write a line to the file, rotating the file first if it would grow too large
+	 * @param line The line to write
+	 */
+	private void write(String line) {
+		try {
+			if (this.out == null) {open();}
+			if (this.bytes > 0 && this.bytes + line.length() > this.maxBytes) {rotate();}
+			this.out.write(line);
+			this.bytes += line.length();
+			++this.written;
+		} catch (IOException ex) {
+			//Drop the line, then try opening the file again next time
+			this.dropped.increment();
+			try {
+				if (this.out != null) {this.out.close();}
+			} catch (IOException ex2) {
+				//Already broken
+			}
+			this.out = null;
+		}
+	}
+
+
+	/**
+	 * Flush any buffered lines to the file
+	 */
+	private void flush() {
+		if (this.out == null) {return;}
+		try {
+			this.out.flush();
+		} catch (IOException ex) {
+			this.out = null;
+		}
+	}
+
+
+	/**
+	 * Open the current file for appending
+	 * @throws IOException Unable to open the file
+	 */
+	private void open() throws IOException {
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file,true),StandardCharsets.UTF_8));
+		this.bytes = this.file.length();
+	}
+
+
+	/**
+	 * Move the current file to "file.1" (shifting the older files up by one), then start a new file
+	 * @throws IOException Unable to open the new file
+	 */
+	private void rotate() throws IOException {
+		this.out.close();
+		this.out = null;
+
+		new File(this.file.getPath()+"."+(this.keep-1)).delete();
+		for (int i = this.keep-2; i >= 1; --i) {
+			new File(this.file.getPath()+"."+i).renameTo(new File(this.file.getPath()+"."+(i+1)));
+		}
+		if (this.keep > 1) {this.file.renameTo(new File(this.file.getPath()+".1"));}
+		else {this.file.delete();}
+
+		open();
+	}
+}
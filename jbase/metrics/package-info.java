@@ -0,0 +1,6 @@
+/**
+ * Low-overhead counters, latency histograms and gauges for every field operation,
+ *  read through Database.metrics() or over JMX, and a log of operations that take
+ *  longer than a threshold.
+ */
+package jbase.metrics;
@@ -0,0 +1,484 @@
+package jbase.query;
+
+import jbase.exception.*;
+import jbase.field.*;
+import jbase.jfr.BulkOperationEvent;
+import jbase.storage.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+
+/**
+ * Aggregates over the values in a single field (count, sum, minimum, maximum, average,
+ *  count distinct, histograms, and grouping by another field of the same key).
+ *
+ *  Permissions are checked once per aggregate, not once per row.
+ *  Fixed-width (off-heap) columns are read a block at a time into primitive arrays, so nothing is boxed.
+ *  Heap and off-heap columns can be split across threads with parallel(true);
+ *   paged columns are always read by a single thread.
+ *
+ * @author Bryan McClain
+ */
+public class Aggregate {
+
+	private static final int BLOCK = 4096;		// Rows read at a time
+
+	private final Field<?> field;		// Field being aggregated
+	private int[] rows;					// Rows to aggregate (null = every row)
+	private boolean parallel;			// Split the rows across threads
+
+
+	/**
+	 * Construct a new aggregate over a field.
+	 *  Use Database.aggregate() instead, which checks the field belongs to the database.
+	 *
+	 * @param field The field to aggregate
+	 */
+	public Aggregate(Field<?> field) {
+		this.field = field;
+		this.rows = null;
+		this.parallel = false;
+	}
+
+
+	/**
+	 * Only aggregate the given rows (for example, the rows returned by a query)
+	 * @param rows Rows of the field
+	 * @return This aggregate
+	 */
+	public Aggregate rows(int[] rows) {
+		this.rows = rows.clone();
+		return this;
+	}
+
+
+	/**
+	 * Choose whether to split the rows across threads
+	 * @param parallel True to use every available processor
+	 * @return This aggregate
+	 */
+	public Aggregate parallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+
+	/**
+	 * Count, sum, minimum, maximum and average of the numbers in the field.
+	 *  Null values are skipped.
+	 *
+	 * @return Summary of the values
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the field
+	 * @throws JBaseBadQuery The field doesn't hold numbers
+	 */
+	public Summary summary() throws JBaseFieldActionDenied, JBaseBadQuery {
+		BulkOperationEvent event = new BulkOperationEvent();
+		event.begin();
+		ColumnReader<?> reader = this.field.reader();
+		int total = total(reader);
+		int parts = parts(total,reader);
+
+		//The reader is open, so the user can read the cached summary (summaries can't be changed outside this package)
+		QueryCache cache = this.field.getDatabase().getQueryCache();
+		CacheKey cacheKey = null;
+		Field<?>[] read = null;
+		long[] versions = null;
+		if (cache != null) {
+			cacheKey = new CacheKey("Summary",this.field.getDatabase().currentUser(),this.field,this.rows);
+			Summary cached = (Summary) cache.get(cacheKey);
+			if (cached != null) {
+				event.finish(this.field,"Aggregate (cached)","Summary",0,1);
+				return cached;
+			}
+			read = new Field<?>[] {this.field};
+			versions = CachedResult.versions(read);
+		}
+
+		Summary[] partial = new Summary[parts];
+		if (parts == 1) {
+			partial[0] = summarize(reader,0,total);
+		} else {
+			IntStream.range(0,parts).parallel().forEach(p ->
+				partial[p] = summarize(reader,start(p,parts,total),start(p+1,parts,total)));
+		}
+
+		Summary result = new Summary();
+		for (Summary s : partial) {result.merge(s);}
+		if (cache != null) {cache.put(cacheKey,read,versions,result,(this.rows == null) ? 96 : 96 + 4L * this.rows.length);}
+		event.finish(this.field,"Aggregate","Summary",total,1);
+		return result;
+	}
+
+
+	/**
+	 * Count the non-null values in the field
+	 * @return Count
+	 */
+	public long count() {
+		return summary().getCount();
+	}
+
+
+	/**
+	 * Add up the numbers in the field
+	 * @return Sum
+	 */
+	public double sum() {
+		return summary().getSum();
+	}
+
+
+	/**
+	 * Find the smallest number in the field
+	 * @return Minimum, or NaN if there are no values
+	 */
+	public double min() {
+		return summary().getMin();
+	}
+
+
+	/**
+	 * Find the largest number in the field
+	 * @return Maximum, or NaN if there are no values
+	 */
+	public double max() {
+		return summary().getMax();
+	}
+
+
+	/**
+	 * Average the numbers in the field
+	 * @return Average, or NaN if there are no values
+	 */
+	public double average() {
+		return summary().getAverage();
+	}
+
+
+	/**
+	 * Count the distinct non-null values in the field.
+	 *  Works for any type of value, not just numbers.
+	 *
+	 * @return Number of distinct values
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the field
+	 */
+	public long countDistinct() throws JBaseFieldActionDenied {
+		BulkOperationEvent event = new BulkOperationEvent();
+		event.begin();
+		ColumnReader<?> reader = this.field.reader();
+		int total = total(reader);
+
+		//Off-heap values are sorted as primitives, then the runs are counted
+		if (reader.getType() != null && this.rows == null) {
+			boolean integral = reader.getType().isIntegral() || reader.getType() == FixedWidthType.BOOLEAN
+							   || reader.getType() == FixedWidthType.CHARACTER;
+
+			long[] keys = new long[total];
+			int n = 0;
+			long[] longs = integral ? new long[BLOCK] : null;
+			double[] doubles = integral ? null : new double[BLOCK];
+			for (int start = 0; start < total; start += BLOCK) {
+				int end = Math.min(total,start+BLOCK);
+				if (integral) {
+					int m = reader.getLongs(start,end,longs);
+					System.arraycopy(longs,0,keys,n,m);
+					n += m;
+				} else {
+					int m = reader.getDoubles(start,end,doubles);
+					for (int i = 0; i < m; ++i) {keys[n++] = Double.doubleToLongBits(doubles[i]);}
+				}
+			}
+
+			Arrays.sort(keys,0,n);
+			long distinct = 0;
+			for (int i = 0; i < n; ++i) {
+				if (i == 0 || keys[i] != keys[i-1]) {++distinct;}
+			}
+			event.finish(this.field,"Aggregate","Count Distinct",total,1);
+			return distinct;
+		}
+
+		HashSet<Object> seen = new HashSet<Object>();
+		for (int i = 0; i < total; ++i) {
+			Object val = reader.get(rowAt(i));
+			if (val != null) {seen.add(val);}
+		}
+		event.finish(this.field,"Aggregate","Count Distinct",total,1);
+		return seen.size();
+	}
+
+
+	/**
+	 * Count the numbers in the field that fall in each of a set of equal-width buckets.
+	 *  Values outside the range are not counted.
+	 *
+	 * @param low Lowest value in the first bucket
+	 * @param high Value just past the end of the last bucket
+	 * @param buckets Number of buckets
+	 * @return Count for each bucket
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the field
+	 * @throws JBaseBadQuery The field doesn't hold numbers, or the range is empty
+	 */
+	public long[] histogram(double low, double high, int buckets) throws JBaseFieldActionDenied, JBaseBadQuery {
+		if (!(high > low) || buckets <= 0) {
+			throw new JBaseBadQuery("histogram needs at least one bucket and a range that isn't empty");
+		}
+
+		BulkOperationEvent event = new BulkOperationEvent();
+		event.begin();
+		ColumnReader<?> reader = this.field.reader();
+		int total = total(reader);
+		int parts = parts(total,reader);
+
+		long[][] partial = new long[parts][];
+		if (parts == 1) {
+			partial[0] = bucketize(reader,0,total,low,high,buckets);
+		} else {
+			IntStream.range(0,parts).parallel().forEach(p ->
+				partial[p] = bucketize(reader,start(p,parts,total),start(p+1,parts,total),low,high,buckets));
+		}
+
+		long[] counts = new long[buckets];
+		for (long[] part : partial) {
+			for (int b = 0; b < buckets; ++b) {counts[b] += part[b];}
+		}
+		event.finish(this.field,"Aggregate","Histogram",total,buckets);
+		return counts;
+	}
+
+
+	/**
+	 * Summarize the numbers in the field for each distinct value of another field.
+	 *  Both fields must belong to the same key. Rows that aren't in use are skipped.
+	 *
+	 * @param group The field to group by
+	 * @return Summary for each group value (the null group holds rows with no group value)
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from one of the fields
+	 * @throws JBaseBadQuery The fields don't share a key, or the field doesn't hold numbers
+	 */
+	public Map<Object,Summary> groupBy(Field<?> group) throws JBaseFieldActionDenied, JBaseBadQuery {
+		BulkOperationEvent event = new BulkOperationEvent();
+		event.begin();
+		Field<?> key = keyOf(this.field);
+		if (keyOf(group) != key) {
+			throw new JBaseBadQuery("field '"+group.getName()+"' doesn't belong to key '"+key.getName()+"'");
+		}
+
+		ColumnReader<?> reader = this.field.reader();
+		ColumnReader<?> groups = group.reader();
+		ColumnReader<?> keys = key.reader();
+		int total = total(reader);
+		int parts = (groups.isPaged() || keys.isPaged()) ? 1 : parts(total,reader);
+
+		HashMap<Object,Summary>[] partial = newMaps(parts);
+		if (parts == 1) {
+			partial[0] = group(reader,groups,keys,0,total);
+		} else {
+			IntStream.range(0,parts).parallel().forEach(p ->
+				partial[p] = group(reader,groups,keys,start(p,parts,total),start(p+1,parts,total)));
+		}
+
+		HashMap<Object,Summary> result = partial[0];
+		for (int p = 1; p < parts; ++p) {
+			for (Map.Entry<Object,Summary> e : partial[p].entrySet()) {
+				Summary s = result.get(e.getKey());
+				if (s == null) {result.put(e.getKey(),e.getValue());}
+				else {s.merge(e.getValue());}
+			}
+		}
+		event.finish(this.field,"Aggregate","Group By",total,result.size());
+		return result;
+	}
+
+
+
+	/**
+	 * Summarize a range of positions
+	 * @param reader The column to read
+	 * @param from First position
+	 * @param to Position after the last one
+	 * @return Summary of the numbers in the range
+	 */
+	private Summary summarize(ColumnReader<?> reader, int from, int to) {
+		Summary s = new Summary();
+
+		if (reader.getType() != null) {
+			boolean integral = checkNumeric(reader);
+
+			//Read whole blocks of rows into primitive arrays
+			if (this.rows == null) {
+				long[] longs = integral ? new long[BLOCK] : null;
+				double[] doubles = integral ? null : new double[BLOCK];
+				for (int start = from; start < to; start += BLOCK) {
+					int end = Math.min(to,start+BLOCK);
+					if (integral) {s.addLongs(longs,reader.getLongs(start,end,longs));}
+					else {s.addDoubles(doubles,reader.getDoubles(start,end,doubles));}
+				}
+				return s;
+			}
+
+			for (int i = from; i < to; ++i) {
+				int row = this.rows[i];
+				if (reader.isNull(row)) {continue;}
+				if (integral) {s.add(reader.getLong(row));}
+				else {s.add(reader.getDouble(row));}
+			}
+			return s;
+		}
+
+		for (int i = from; i < to; ++i) {
+			Object val = reader.get(rowAt(i));
+			if (val != null) {addNumber(s,val);}
+		}
+		return s;
+	}
+
+
+	/**
+	 * Count the numbers in a range of positions that fall in each bucket
+	 */
+	private long[] bucketize(ColumnReader<?> reader, int from, int to, double low, double high, int buckets) {
+		long[] counts = new long[buckets];
+		double scale = buckets / (high - low);
+
+		if (reader.getType() != null && this.rows == null) {
+			checkNumeric(reader);
+			double[] doubles = new double[BLOCK];
+			for (int start = from; start < to; start += BLOCK) {
+				int n = reader.getDoubles(start,Math.min(to,start+BLOCK),doubles);
+				for (int i = 0; i < n; ++i) {
+					double v = doubles[i];
+					if (v >= low && v < high) {++counts[Math.min(buckets-1,(int) ((v - low) * scale))];}
+				}
+			}
+			return counts;
+		}
+
+		for (int i = from; i < to; ++i) {
+			Object val = reader.get(rowAt(i));
+			if (val == null) {continue;}
+			double v = toNumber(val).doubleValue();
+			if (v >= low && v < high) {++counts[Math.min(buckets-1,(int) ((v - low) * scale))];}
+		}
+		return counts;
+	}
+
+
+	/**
+	 * Summarize each group in a range of positions
+	 */
+	private HashMap<Object,Summary> group(ColumnReader<?> reader, ColumnReader<?> groups, ColumnReader<?> keys,
+										  int from, int to) {
+		HashMap<Object,Summary> result = new HashMap<Object,Summary>();
+		for (int i = from; i < to; ++i) {
+			int row = rowAt(i);
+			if (keys.get(row) == null) {continue; /* Row isn't in use */}
+
+			Object g = groups.get(row);
+			Summary s = result.get(g);
+			if (s == null) {
+				s = new Summary();
+				result.put(g,s);
+			}
+
+			Object val = reader.get(row);
+			if (val != null) {addNumber(s,val);}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Get the number of positions to aggregate
+	 */
+	private int total(ColumnReader<?> reader) {
+		return (this.rows == null) ? reader.size() : this.rows.length;
+	}
+
+
+	/**
+	 * Get the row at a position
+	 */
+	private int rowAt(int i) {
+		return (this.rows == null) ? i : this.rows[i];
+	}
+
+
+	/**
+	 * Choose how many parts to split the positions into
+	 */
+	private int parts(int total, ColumnReader<?> reader) {
+		if (!this.parallel || reader.isPaged()) {return 1;}
+		int blocks = (total + BLOCK - 1) / BLOCK;
+		return Math.max(1,Math.min(blocks,Runtime.getRuntime().availableProcessors()));
+	}
+
+
+	/**
+	 * Get the first position in a part
+	 */
+	private static int start(int part, int parts, int total) {
+		return (int) ((long) total * part / parts);
+	}
+
+
+	/**
+	 * Create an array of group maps (one for each part)
+	 */
+	@SuppressWarnings("unchecked")
+	private static HashMap<Object,Summary>[] newMaps(int parts) {
+		return (HashMap<Object,Summary>[]) new HashMap<?,?>[parts];
+	}
+
+
+	/**
+	 * Get the key that a field belongs to
+	 */
+	private static Field<?> keyOf(Field<?> field) {
+		if (field instanceof ChildField) {return ((ChildField) field).getOwner().toField();}
+		return field;
+	}
+
+
+	/**
+	 * Make sure a column of fixed-width values holds numbers
+	 * @return True if the numbers are whole numbers
+	 */
+	private boolean checkNumeric(ColumnReader<?> reader) throws JBaseBadQuery {
+		FixedWidthType type = reader.getType();
+		if (type == FixedWidthType.BOOLEAN || type == FixedWidthType.CHARACTER) {
+			throw new JBaseBadQuery("field '"+this.field.getName()+"' doesn't hold numbers");
+		}
+		return type.isIntegral();
+	}
+
+
+	/**
+	 * Make sure a value is a number
+	 */
+	private Number toNumber(Object val) throws JBaseBadQuery {
+		if (!(val instanceof Number)) {
+			throw new JBaseBadQuery("field '"+this.field.getName()+"' doesn't hold numbers");
+		}
+		return (Number) val;
+	}
+
+
+	/**
+	 * Add a boxed number to a summary, keeping whole numbers exact
+	 */
+	private void addNumber(Summary s, Object val) {
+		Number num = toNumber(val);
+		if (num instanceof Long || num instanceof Integer || num instanceof Short || num instanceof Byte) {
+			s.add(num.longValue());
+		} else {
+			s.add(num.doubleValue());
+		}
+	}
+}
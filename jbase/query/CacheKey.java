@@ -0,0 +1,68 @@
+package jbase.query;
+
+import java.util.Arrays;
+
+
+/**
+ * Normalized form of a query or aggregate, used to find its results in the query cache.
+ *  Two keys are equal when they were made by the same kind of operation, for the same user,
+ *   from equal parts (fields are compared by identity, arrays by their contents).
+ *
+ * @author Bryan McClain
+ */
+final class CacheKey {
+
+	private final String kind;			// Operation that made the key ("Query", "Summary", ...)
+	private final String user;			// User the results were computed for
+	private final Object[] parts;		// Everything else that changes the results
+	private final int hash;
+
+
+	/**
+	 * Construct a new cache key
+	 * @param kind Operation that made the key
+	 * @param user User running the operation
+	 * @param parts Everything else that changes the results
+	 */
+	CacheKey(String kind, String user, Object... parts) {
+		this.kind = kind;
+		this.user = user;
+		this.parts = parts;
+		this.hash = 31 * (31 * kind.hashCode() + user.hashCode()) + Arrays.deepHashCode(parts);
+	}
+
+
+	/**
+	 * Get the operation that made this key
+	 * @return Kind
+	 */
+	String getKind() {
+		return this.kind;
+	}
+
+
+	/**
+	 * Test if two keys are equal
+	 * @param o The other key
+	 * @return True if the keys are equal
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {return true;}
+		if (!(o instanceof CacheKey)) {return false;}
+
+		CacheKey other = (CacheKey) o;
+		return this.hash == other.hash && this.kind.equals(other.kind)
+			&& this.user.equals(other.user) && Arrays.deepEquals(this.parts,other.parts);
+	}
+
+
+	/**
+	 * Get the hash code of this key
+	 * @return Hash code
+	 */
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+}
@@ -0,0 +1,72 @@
+package jbase.query;
+
+import jbase.field.Field;
+
+
+/**
+ * Result held by the query cache, along with the version of every field it was computed from
+ * @author Bryan McClain
+ */
+final class CachedResult {
+
+	final CacheKey key;
+	final Object value;				// Rows or summary
+	final long weight;				// Estimated size in bytes
+	private final Field<?>[] fields;	// Fields read to compute the result
+	private final long[] versions;		// Version of each field when the result was computed
+
+
+	/**
+	 * Construct a new cached result
+	 *
+	 * @param key Key of the query that computed the result
+	 * @param fields Fields read to compute the result
+	 * @param versions Version of each field before it was read (see versions())
+	 * @param value The result
+	 * @param weight Estimated size of the result in bytes
+	 */
+	CachedResult(CacheKey key, Field<?>[] fields, long[] versions, Object value, long weight) {
+		this.key = key;
+		this.fields = fields;
+		this.versions = versions;
+		this.value = value;
+		this.weight = 64 + weight + 8L * fields.length;
+	}
+
+
+	/**
+	 * Get the current version of every field
+	 * @param fields The fields
+	 * @return Versions
+	 */
+	static long[] versions(Field<?>[] fields) {
+		long[] versions = new long[fields.length];
+		for (int i = 0; i < fields.length; ++i) {versions[i] = fields[i].getVersion();}
+		return versions;
+	}
+
+
+	/**
+	 * Test if none of the fields have changed since the result was computed
+	 * @return True if the result can still be used
+	 */
+	boolean isCurrent() {
+		for (int i = 0; i < this.fields.length; ++i) {
+			if (this.fields[i].getVersion() != this.versions[i]) {return false;}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Test if a field was read to compute the result
+	 * @param field The field
+	 * @return True if the result depends on the field
+	 */
+	boolean reads(Field<?> field) {
+		for (Field<?> f : this.fields) {
+			if (f == field) {return true;}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,66 @@
+package jbase.query;
+
+import jbase.JBaseAction;
+
+
+/**
+ * Comparison used by a query condition
+ * @author Bryan McClain
+ */
+public enum CompareOp {
+	EQUAL,				/* Value equals the operand */
+	NOT_EQUAL,			/* Value doesn't equal the operand */
+	LESS,				/* Value is less than the operand */
+	LESS_EQUAL,			/* Value is less than or equal to the operand */
+	GREATER,			/* Value is greater than the operand */
+	GREATER_EQUAL,		/* Value is greater than or equal to the operand */
+	IS_NULL,			/* Value is null (operand is ignored) */
+	NOT_NULL;			/* Value is not null (operand is ignored) */
+
+
+	/**
+	 * Test a value against an operand.
+	 *  A null value only matches IS_NULL.
+	 *
+	 * @param val The value stored in the row
+	 * @param operand The value given in the query
+	 * @return True if the value matches
+	 * @throws ClassCastException The value cannot be compared to the operand
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	public boolean test(Object val, Object operand) {
+		if (this == IS_NULL) {return (val == null);}
+		if (this == NOT_NULL) {return (val != null);}
+		if (val == null || operand == null) {return false;}
+
+		if (this == EQUAL) {return val.equals(operand);}
+		if (this == NOT_EQUAL) {return !val.equals(operand);}
+
+		int cmp = ((Comparable) val).compareTo(operand);
+		if (this == LESS) {return (cmp < 0);}
+		if (this == LESS_EQUAL) {return (cmp <= 0);}
+		if (this == GREATER) {return (cmp > 0);}
+		return (cmp >= 0);
+	}
+
+
+	/**
+	 * Test if this comparison limits the values to a range
+	 * @return True for equal, less or greater comparisons
+	 */
+	public boolean isRange() {
+		return (this != NOT_EQUAL && this != IS_NULL && this != NOT_NULL);
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
@@ -0,0 +1,105 @@
+package jbase.query;
+
+import jbase.field.Field;
+
+import java.util.Objects;
+
+
+/**
+ * A single condition in a query: (field) (comparison) (operand)
+ * @author Bryan McClain
+ */
+public final class Condition {
+
+	private final Field<?> field;
+	private final CompareOp op;
+	private final Object operand;
+
+
+	/**
+	 * Construct a new condition
+	 * @param field The field being tested
+	 * @param op The comparison to use
+	 * @param operand The value to compare against (ignored for null tests)
+	 */
+	public Condition(Field<?> field, CompareOp op, Object operand) {
+		this.field = field;
+		this.op = op;
+		this.operand = operand;
+	}
+
+
+	/**
+	 * Get the field being tested
+	 * @return Field
+	 */
+	public Field<?> getField() {
+		return this.field;
+	}
+
+
+	/**
+	 * Get the comparison used by this condition
+	 * @return Comparison
+	 */
+	public CompareOp getOp() {
+		return this.op;
+	}
+
+
+	/**
+	 * Get the value being compared against
+	 * @return Operand
+	 */
+	public Object getOperand() {
+		return this.operand;
+	}
+
+
+	/**
+	 * Test a value against this condition
+	 * @param val The value to test
+	 * @return True if the value matches
+	 */
+	public boolean test(Object val) {
+		return this.op.test(val,this.operand);
+	}
+
+
+	/**
+	 * Test if two conditions are the same (same field, comparison and operand)
+	 * @param o The other condition
+	 * @return True if the conditions are equal
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {return true;}
+		if (!(o instanceof Condition)) {return false;}
+
+		Condition other = (Condition) o;
+		return this.field == other.field && this.op == other.op && Objects.equals(this.operand,other.operand);
+	}
+
+
+	/**
+	 * Get the hash code of this condition
+	 * @return Hash code
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * System.identityHashCode(this.field) + this.op.hashCode()) + Objects.hashCode(this.operand);
+	}
+
+
+	/**
+	 * Convert this condition to a string
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		if (this.op == CompareOp.IS_NULL || this.op == CompareOp.NOT_NULL) {
+			return this.field.getName()+" "+this.op.toString();
+		}
+		return this.field.getName()+" "+this.op.toString()+" "+this.operand;
+	}
+}
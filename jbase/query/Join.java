@@ -0,0 +1,161 @@
+package jbase.query;
+
+import jbase.exception.*;
+import jbase.field.*;
+
+import java.util.ArrayList;
+
+
+/**
+ * Join that follows foreign keys from a source key to the rows they point to.
+ *  Each call to follow() adds one hop, and select() adds columns from the key reached by the last hop:
+ *
+ *   db.join(orders).select(total)
+ *     .follow(orderCustomer).select(customerName)
+ *     .follow(customerRegion).select(regionName)
+ *     .open();
+ *
+ *  Rows are joined by reading the pointer stored in each foreign key (no searching),
+ *   and are read in batches so each column is visited in row order.
+ *
+ * @author Bryan McClain
+ */
+public class Join {
+
+	private static final int DEFAULT_BATCH = 256;		// Source rows read at a time
+
+	private final ArrayList<Field<?>> levels;			// Source key, then the key reached by each hop
+	private final ArrayList<ForeignKeyField> hops;		// Foreign key followed from each level
+	private final ArrayList<Field<?>> columns;			// Columns to return
+	private final ArrayList<Integer> columnLevels;		// Level each column is read from
+	private int[] sourceRows;							// Source rows to join (null = every row in use)
+	private int batchSize;								// Source rows read at a time
+	private boolean inner;								// Drop rows where a pointer is null
+
+
+	/**
+	 * Construct a new join starting from a key field.
+	 *  Use Database.join() instead, which checks the key belongs to the database.
+	 *
+	 * @param source The key field to start from
+	 */
+	public Join(KeyField<?> source) {
+		this.levels = new ArrayList<Field<?>>();
+		this.hops = new ArrayList<ForeignKeyField>();
+		this.columns = new ArrayList<Field<?>>();
+		this.columnLevels = new ArrayList<Integer>();
+		this.sourceRows = null;
+		this.batchSize = DEFAULT_BATCH;
+		this.inner = false;
+
+		this.levels.add(source);
+	}
+
+
+	/**
+	 * Follow a foreign key from the key reached by the last hop
+	 *
+	 * @param fk A foreign key owned by the current key
+	 * @return This join
+	 * @throws JBaseBadQuery The foreign key isn't owned by the current key
+	 */
+	public Join follow(ForeignKeyField fk) throws JBaseBadQuery {
+		Field<?> current = this.levels.get(this.levels.size()-1);
+		if (fk.getOwner() != current) {
+			throw new JBaseBadQuery("foreign key '"+fk.getName()+"' doesn't belong to key '"+current.getName()+"'");
+		}
+
+		this.hops.add(fk);
+		this.levels.add(fk.getPoint().toField());
+		return this;
+	}
+
+
+	/**
+	 * Add columns to return from the key reached by the last hop
+	 *
+	 * @param fields The current key or its children
+	 * @return This join
+	 * @throws JBaseBadQuery A field isn't the current key or one of its children
+	 */
+	public Join select(Field<?>... fields) throws JBaseBadQuery {
+		int level = this.levels.size()-1;
+		Field<?> current = this.levels.get(level);
+
+		for (Field<?> f : fields) {
+			if (f != current && !(f instanceof ChildField && ((ChildField) f).getOwner() == current)) {
+				throw new JBaseBadQuery("field '"+f.getName()+"' doesn't belong to key '"+current.getName()+"'");
+			}
+			this.columns.add(f);
+			this.columnLevels.add(level);
+		}
+		return this;
+	}
+
+
+	/**
+	 * Only join the given source rows (for example, the rows returned by a query)
+	 * @param rows Rows of the source key
+	 * @return This join
+	 */
+	public Join rows(int[] rows) {
+		this.sourceRows = rows.clone();
+		return this;
+	}
+
+
+	/**
+	 * Set how many source rows are read at a time
+	 * @param size Rows per batch
+	 * @return This join
+	 */
+	public Join batchSize(int size) {
+		this.batchSize = Math.max(1,size);
+		return this;
+	}
+
+
+	/**
+	 * Choose what happens when a foreign key along the chain is null.
+	 *  By default the row is kept, and the columns past the null pointer are null.
+	 *
+	 * @param inner True to drop the row instead
+	 * @return This join
+	 */
+	public Join inner(boolean inner) {
+		this.inner = inner;
+		return this;
+	}
+
+
+	/**
+	 * Get the number of keys in the chain (the source key, plus one for each hop)
+	 * @return Levels
+	 */
+	public int getLevels() {
+		return this.levels.size();
+	}
+
+
+	/**
+	 * Start reading the joined rows
+	 * @return Cursor over the joined rows
+	 * @throws JBaseFieldActionDenied User doesn't have permission to read one of the fields in the join
+	 */
+	public JoinCursor open() throws JBaseFieldActionDenied {
+		QueryColumn[] keys = new QueryColumn[this.levels.size()];
+		for (int i = 0; i < keys.length; ++i) {keys[i] = new QueryColumn(this.levels.get(i));}
+
+		QueryColumn[] pointers = new QueryColumn[this.hops.size()];
+		for (int i = 0; i < pointers.length; ++i) {pointers[i] = new QueryColumn(this.hops.get(i));}
+
+		QueryColumn[] out = new QueryColumn[this.columns.size()];
+		int[] outLevels = new int[out.length];
+		for (int i = 0; i < out.length; ++i) {
+			out[i] = new QueryColumn(this.columns.get(i));
+			outLevels[i] = this.columnLevels.get(i);
+		}
+
+		return new JoinCursor(keys,pointers,out,outLevels,this.sourceRows,this.batchSize,this.inner);
+	}
+}
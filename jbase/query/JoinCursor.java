@@ -0,0 +1,248 @@
+package jbase.query;
+
+import jbase.jfr.BulkOperationEvent;
+
+import java.util.Arrays;
+
+
+/**
+ * Cursor over the rows of a join.
+ *  Source rows are read in batches. For each batch, every pointer and paged column is read in row order
+ *   (instead of jumping around the target key once per source row), which keeps paged columns
+ *   from loading the same page over and over.
+ *
+ * @author Bryan McClain
+ */
+public class JoinCursor {
+
+	private final QueryColumn[] keys;		// Key at each level (source first)
+	private final QueryColumn[] pointers;	// Foreign key followed from each level
+	private final QueryColumn[] columns;	// Columns to return
+	private final int[] columnLevels;		// Level each column is read from
+	private final int[] sourceRows;			// Source rows to join (null = every row)
+	private final boolean inner;			// Drop rows where a pointer is null
+
+	private int nextSource;					// Next source position to read
+	private final int[][] batchRows;		// Row at each level for each joined row in the batch (-1 = null)
+	private final Object[][] batchValues;	// Value of each column for each joined row in the batch
+	private int batchCount;					// Joined rows in the batch
+	private int batchIndex;					// Current joined row in the batch (-1 = before the first)
+
+	private final BulkOperationEvent event;	// Recorded to Flight Recorder once the join is exhausted
+	private long joined;					// Joined rows returned so far
+	private boolean finished;				// Event has been recorded
+
+
+	/**
+	 * Construct a new join cursor
+	 */
+	JoinCursor(QueryColumn[] keys, QueryColumn[] pointers, QueryColumn[] columns, int[] columnLevels,
+			   int[] sourceRows, int batchSize, boolean inner) {
+		this.keys = keys;
+		this.pointers = pointers;
+		this.columns = columns;
+		this.columnLevels = columnLevels;
+		this.sourceRows = sourceRows;
+		this.inner = inner;
+
+		this.nextSource = 0;
+		this.batchRows = new int[keys.length][batchSize];
+		this.batchValues = new Object[columns.length][batchSize];
+		this.batchCount = 0;
+		this.batchIndex = -1;
+
+		this.event = new BulkOperationEvent();
+		this.event.begin();
+		this.joined = 0;
+		this.finished = false;
+	}
+
+
+	/**
+	 * Move to the next joined row
+	 * @return True if there is another row, false at the end of the join
+	 */
+	public boolean next() {
+		++this.batchIndex;
+		while (this.batchIndex >= this.batchCount) {
+			if (!fillBatch()) {
+				finish();
+				return false;
+			}
+			this.batchIndex = 0;
+		}
+		++this.joined;
+		return true;
+	}
+
+
+	/**
+	 * Get the row of a key in the current joined row
+	 * @param level The level of the key (0 = source key, 1 = after the first hop, etc.)
+	 * @return The row, or -1 if a pointer before this level is null
+	 */
+	public int getRow(int level) {
+		return this.batchRows[level][this.batchIndex];
+	}
+
+
+	/**
+	 * Get the number of columns in each joined row
+	 * @return Columns
+	 */
+	public int getColumnCount() {
+		return this.columns.length;
+	}
+
+
+	/**
+	 * Get a value from the current joined row
+	 * @param column The index of the selected column
+	 * @return The value (can be null)
+	 */
+	public Object get(int column) {
+		return this.batchValues[column][this.batchIndex];
+	}
+
+
+	/**
+	 * Get every selected value from the current joined row
+	 * @return Values, in column order
+	 */
+	public Object[] getValues() {
+		Object[] values = new Object[this.columns.length];
+		for (int c = 0; c < values.length; ++c) {values[c] = get(c);}
+		return values;
+	}
+
+
+
+	/**
+	 * Record the join to Flight Recorder (only the first time the end is reached)
+	 */
+	private void finish() {
+		if (this.finished) {return;}
+		this.finished = true;
+		this.event.finish(this.keys[0].field,"Join",this.pointers.length+" hops",this.nextSource,this.joined);
+	}
+
+
+	/**
+	 * Read the next batch of source rows, follow the pointers, then read the selected columns
+	 * @return True if the batch has any rows, false at the end of the source
+	 */
+	private boolean fillBatch() {
+		int capacity = this.batchRows[0].length;
+		int total = (this.sourceRows == null) ? this.keys[0].size() : this.sourceRows.length;
+		if (this.nextSource >= total) {return false;}
+
+		//Collect source rows that are in use
+		int[] source = this.batchRows[0];
+		int n = 0;
+		while (n < capacity && this.nextSource < total) {
+			int row = (this.sourceRows == null) ? this.nextSource : this.sourceRows[this.nextSource];
+			++this.nextSource;
+			if (row >= 0 && row < this.keys[0].size() && this.keys[0].get(row) != null) {source[n++] = row;}
+		}
+
+		//Follow each hop in row order
+		Object[] scratch = new Object[n];
+		for (int h = 0; h < this.pointers.length; ++h) {
+			int[] from = this.batchRows[h];
+			int[] to = this.batchRows[h+1];
+
+			gather(this.pointers[h],from,n,scratch);
+			for (int i = 0; i < n; ++i) {
+				Integer target = (Integer) scratch[i];
+				to[i] = (target == null || target < 0 || target >= this.keys[h+1].size()) ? -1 : target;
+			}
+
+			//Make sure each target row is still in use
+			gather(this.keys[h+1],to,n,scratch);
+			for (int i = 0; i < n; ++i) {
+				if (scratch[i] == null) {to[i] = -1;}
+			}
+		}
+
+		if (this.inner) {n = dropBroken(n);}
+
+		//Read the selected columns in row order
+		for (int c = 0; c < this.columns.length; ++c) {
+			gather(this.columns[c],this.batchRows[this.columnLevels[c]],n,this.batchValues[c]);
+		}
+
+		this.batchCount = n;
+		return true;
+	}
+
+
+	/**
+	 * Remove joined rows where any pointer along the chain is null
+	 * @param n Number of joined rows in the batch
+	 * @return New number of rows
+	 */
+	private int dropBroken(int n) {
+		int last = this.batchRows.length-1;
+		int kept = 0;
+		for (int i = 0; i < n; ++i) {
+			if (this.batchRows[last][i] < 0) {continue; /* A null pointer carries down to the last level */}
+			for (int l = 0; l <= last; ++l) {this.batchRows[l][kept] = this.batchRows[l][i];}
+			++kept;
+		}
+		return kept;
+	}
+
+
+	/**
+	 * Read a column for a batch of rows.
+	 *  Paged columns are read in increasing row order, so each page is only loaded once per batch.
+	 *
+	 * @param column The column to read
+	 * @param rows Row to read for each entry (-1 = null)
+	 * @param n Number of entries
+	 * @param out Value for each entry
+	 */
+	private static void gather(QueryColumn column, int[] rows, int n, Object[] out) {
+		if (!column.paged || isAscending(rows,n)) {
+			for (int i = 0; i < n; ++i) {
+				out[i] = (rows[i] < 0) ? null : column.get(rows[i]);
+			}
+			return;
+		}
+
+		//Sort by row, keeping the original position in the low bits
+		long[] order = new long[n];
+		int m = 0;
+		for (int i = 0; i < n; ++i) {
+			if (rows[i] < 0) {out[i] = null; continue;}
+			order[m++] = ((long) rows[i] << 32) | i;
+		}
+		Arrays.sort(order,0,m);
+
+		//Repeated rows are only read once
+		int lastRow = -1;
+		Object lastVal = null;
+		for (int k = 0; k < m; ++k) {
+			int row = (int) (order[k] >>> 32);
+			if (row != lastRow) {
+				lastVal = column.get(row);
+				lastRow = row;
+			}
+			out[(int) order[k]] = lastVal;
+		}
+	}
+
+
+	/**
+	 * Test if the rows in a batch are already in increasing order (ignoring nulls)
+	 */
+	private static boolean isAscending(int[] rows, int n) {
+		int last = -1;
+		for (int i = 0; i < n; ++i) {
+			if (rows[i] < 0) {continue;}
+			if (rows[i] < last) {return false;}
+			last = rows[i];
+		}
+		return true;
+	}
+}
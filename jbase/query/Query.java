@@ -0,0 +1,376 @@
+package jbase.query;
+
+import jbase.database.Database;
+import jbase.exception.*;
+import jbase.field.*;
+import jbase.jfr.BulkOperationEvent;
+import jbase.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+
+
+/**
+ * Query over a key field and its children.
+ *  Chooses the columns to return, filters the rows with conditions, then sorts and limits the results:
+ *
+ *   db.query(orders).select(customer,total).where(total,CompareOp.GREATER,100)
+ *     .orderBy(total,false).limit(10).run();
+ *
+ *  Only the columns used by the query are read, and permissions are checked once per column.
+ *  Without an order, rows are returned in key order for key range scans, or row order otherwise.
+ *  With both an order and a limit, only the best rows are kept while scanning (top-K).
+ *
+ * @author Bryan McClain
+ */
+public class Query {
+
+	private final KeyField<?> key;						// Key being queried
+	private final ArrayList<Field<?>> columns;			// Columns to return
+	private final ArrayList<Condition> conditions;		// Every row must match all of these
+	private final ArrayList<Field<?>> sortFields;		// Fields to sort by (in order)
+	private final ArrayList<Boolean> sortAscending;		// Direction for each sort field
+	private int limit;									// Maximum rows to return (-1 = no limit)
+
+
+	/**
+	 * Construct a new query over a key field.
+	 *  Use Database.query() instead, which checks the key belongs to the database.
+	 *
+	 * @param key The key field to query
+	 */
+	public Query(KeyField<?> key) {
+		this.key = key;
+		this.columns = new ArrayList<Field<?>>();
+		this.conditions = new ArrayList<Condition>();
+		this.sortFields = new ArrayList<Field<?>>();
+		this.sortAscending = new ArrayList<Boolean>();
+		this.limit = -1;
+	}
+
+
+	/**
+	 * Add columns to return from the query.
+	 *  If no columns are chosen, only the key is returned.
+	 *
+	 * @param fields The key or its children
+	 * @return This query
+	 * @throws JBaseBadQuery A field isn't the key or one of its children
+	 */
+	public Query select(Field<?>... fields) throws JBaseBadQuery {
+		for (Field<?> f : fields) {
+			checkField(f);
+			this.columns.add(f);
+		}
+		return this;
+	}
+
+
+	/**
+	 * Only return rows where a field matches a condition
+	 *
+	 * @param field The key or one of its children
+	 * @param op The comparison to use
+	 * @param operand The value to compare against
+	 * @return This query
+	 * @throws JBaseBadQuery The field isn't the key or one of its children
+	 */
+	public Query where(Field<?> field, CompareOp op, Object operand) throws JBaseBadQuery {
+		checkField(field);
+		this.conditions.add(new Condition(field,op,operand));
+		return this;
+	}
+
+
+	/**
+	 * Only return rows where a field matches a null test (IS_NULL or NOT_NULL)
+	 *
+	 * @param field The key or one of its children
+	 * @param op The comparison to use
+	 * @return This query
+	 * @throws JBaseBadQuery The field isn't the key or one of its children
+	 */
+	public Query where(Field<?> field, CompareOp op) throws JBaseBadQuery {
+		return where(field,op,null);
+	}
+
+
+	/**
+	 * Sort the results by a field.
+	 *  Fields are sorted in the order they are added, and null values sort first.
+	 *  Rows that tie on every field are sorted by row.
+	 *
+	 * @param field The key or one of its children
+	 * @param ascending True to sort from smallest to largest
+	 * @return This query
+	 * @throws JBaseBadQuery The field isn't the key or one of its children
+	 */
+	public Query orderBy(Field<?> field, boolean ascending) throws JBaseBadQuery {
+		checkField(field);
+		this.sortFields.add(field);
+		this.sortAscending.add(ascending);
+		return this;
+	}
+
+
+	/**
+	 * Limit the number of rows returned
+	 * @param count Maximum number of rows (negative = no limit)
+	 * @return This query
+	 */
+	public Query limit(int count) {
+		this.limit = (count < 0) ? -1 : count;
+		return this;
+	}
+
+
+	/**
+	 * Get the plan used to find the candidate rows, without running the query
+	 * @return Query plan
+	 */
+	public QueryPlan explain() {
+		return QueryPlan.choose(this.key,this.conditions);
+	}
+
+
+	/**
+	 * Run the query
+	 * @return The matching rows
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to read one of the fields in the query
+	 * @throws JBaseBadQuery A condition value cannot be compared to the values in its field
+	 */
+	public QueryResult run() throws JBaseFieldActionDenied, JBaseBadQuery {
+		BulkOperationEvent event = new BulkOperationEvent();
+		event.begin();
+		Database db = this.key.getDatabase();
+		MetricsRegistry metrics = db.getMetricsRegistry();
+		long start = metrics.startTimer();
+		QueryPlan plan = explain();
+
+		//Open each column once
+		HashMap<Field<?>,QueryColumn> open = new HashMap<Field<?>,QueryColumn>();
+		QueryColumn keyColumn = open(this.key,open);
+
+		ArrayList<Field<?>> selected = new ArrayList<Field<?>>(this.columns);
+		if (selected.isEmpty()) {selected.add(this.key);}
+		QueryColumn[] out = new QueryColumn[selected.size()];
+		for (int i = 0; i < out.length; ++i) {out[i] = open(selected.get(i),open);}
+
+		QueryColumn[] tests = new QueryColumn[this.conditions.size()];
+		for (int i = 0; i < tests.length; ++i) {tests[i] = open(this.conditions.get(i).getField(),open);}
+
+		QueryColumn[] sorts = new QueryColumn[this.sortFields.size()];
+		for (int i = 0; i < sorts.length; ++i) {sorts[i] = open(this.sortFields.get(i),open);}
+		Field<?>[] fields = selected.toArray(new Field<?>[selected.size()]);
+
+		//Every column is open, so the user can read the cached rows
+		QueryCache cache = db.getQueryCache();
+		CacheKey cacheKey = null;
+		Field<?>[] read = null;
+		long[] versions = null;
+		if (cache != null) {
+			cacheKey = cacheKey(db.currentUser(),fields,plan);
+			int[] rows = (int[]) cache.get(cacheKey);
+			if (rows != null) {
+				event.finish(this.key,"Query (cached)",plan,0,rows.length);
+				return new QueryResult(fields,out,rows);
+			}
+			read = open.keySet().toArray(new Field<?>[open.size()]);
+			versions = CachedResult.versions(read);
+		}
+
+		try {
+			int[] candidates = plan.candidates();
+			int count = (candidates == null) ? keyColumn.size() : candidates.length;
+			boolean stopEarly = (sorts.length == 0 && this.limit >= 0);
+
+			//Sorted with a limit, so only keep the best rows
+			if (sorts.length > 0 && this.limit >= 0) {
+				int[] rows = topK(candidates,count,keyColumn,tests,sorts);
+				if (cache != null) {cache.put(cacheKey,read,versions,rows,4L * rows.length);}
+				event.finish(this.key,"Query",plan,count,rows.length);
+				metrics.logIfSlow(this.key.getName(),"Query",plan,start);
+				return new QueryResult(fields,out,rows);
+			}
+
+			//Filter the candidate rows
+			int[] rows = new int[Math.max(16,Math.min(count,1024))];
+			int n = 0;
+			for (int i = 0; i < count; ++i) {
+				if (stopEarly && n >= this.limit) {break;}
+
+				int row = (candidates == null) ? i : candidates[i];
+				if (keyColumn.get(row) == null) {continue; /* Row isn't in use */}
+				if (!matches(row,tests)) {continue;}
+
+				if (n == rows.length) {rows = Arrays.copyOf(rows,n*2);}
+				rows[n++] = row;
+			}
+			rows = Arrays.copyOf(rows,n);
+
+			if (sorts.length > 0) {rows = sort(rows,sorts);}
+			if (this.limit >= 0 && rows.length > this.limit) {rows = Arrays.copyOf(rows,this.limit);}
+
+			if (cache != null) {cache.put(cacheKey,read,versions,rows,4L * rows.length);}
+			event.finish(this.key,"Query",plan,count,rows.length);
+			metrics.logIfSlow(this.key.getName(),"Query",plan,start);
+			return new QueryResult(fields,out,rows);
+
+		} catch (ClassCastException ex) {
+			throw new JBaseBadQuery("condition value cannot be compared to the values in the field");
+		}
+	}
+
+
+
+	/**
+	 * Get the normalized form of this query for the query cache.
+	 *  The conditions are compared as a set, since their order doesn't change the rows.
+	 *   The plan is part of the key, because rows without an order are returned in plan order.
+	 *
+	 * @param user User running the query
+	 * @param fields Columns selected by the query
+	 * @param plan Plan used to find the candidate rows
+	 * @return Cache key
+	 */
+	private CacheKey cacheKey(String user, Field<?>[] fields, QueryPlan plan) {
+		Condition[] conds = new LinkedHashSet<Condition>(this.conditions).toArray(new Condition[0]);
+		Arrays.sort(conds,Comparator.comparing(Condition::toString));
+		return new CacheKey("Query",user,this.key,fields,conds,
+							this.sortFields.toArray(new Field<?>[this.sortFields.size()]),
+							this.sortAscending.toArray(new Boolean[this.sortAscending.size()]),
+							this.limit,plan.toString());
+	}
+
+
+	/**
+	 * Make sure a field is the key or one of its children
+	 * @param field The field to check
+	 * @throws JBaseBadQuery The field isn't part of the key
+	 */
+	private void checkField(Field<?> field) throws JBaseBadQuery {
+		if (field == this.key) {return;}
+		if (field instanceof ChildField && ((ChildField) field).getOwner() == this.key) {return;}
+		throw new JBaseBadQuery("field '"+field.getName()+"' doesn't belong to key '"+this.key.getName()+"'");
+	}
+
+
+	/**
+	 * Open a column for reading, reusing it if it is already open
+	 * @param field The field to open
+	 * @param open Columns that are already open
+	 * @return The column
+	 */
+	private static QueryColumn open(Field<?> field, HashMap<Field<?>,QueryColumn> open) {
+		QueryColumn column = open.get(field);
+		if (column == null) {
+			column = new QueryColumn(field);
+			open.put(field,column);
+		}
+		return column;
+	}
+
+
+	/**
+	 * Test a row against every condition
+	 * @param row The row to test
+	 * @param tests The column read by each condition
+	 * @return True if the row matches all conditions
+	 */
+	private boolean matches(int row, QueryColumn[] tests) {
+		for (int i = 0; i < tests.length; ++i) {
+			if (!this.conditions.get(i).test(tests[i].get(row))) {return false;}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Find the best rows by the sort fields using a bounded heap, in O(n log k) time and O(k) space.
+	 *  The heap is ordered so the worst row kept so far is at the top.
+	 *
+	 * @param candidates Candidate rows (null = every row)
+	 * @param count Number of candidates
+	 * @param keyColumn The key column (to skip rows not in use)
+	 * @param tests The column read by each condition
+	 * @param sorts The column read by each sort field
+	 * @return Up to limit rows, in sorted order
+	 */
+	private int[] topK(int[] candidates, int count, QueryColumn keyColumn, QueryColumn[] tests, QueryColumn[] sorts) {
+		int[] heap = new int[Math.min(this.limit,Math.max(count,0))];
+		int size = 0;
+		if (heap.length == 0) {return heap;}
+
+		for (int i = 0; i < count; ++i) {
+			int row = (candidates == null) ? i : candidates[i];
+			if (keyColumn.get(row) == null) {continue; /* Row isn't in use */}
+			if (!matches(row,tests)) {continue;}
+
+			if (size < heap.length) {
+				//Sift up
+				int k = size++;
+				while (k > 0) {
+					int parent = (k - 1) >>> 1;
+					if (compareRows(row,heap[parent],sorts) <= 0) {break;}
+					heap[k] = heap[parent];
+					k = parent;
+				}
+				heap[k] = row;
+			} else if (compareRows(row,heap[0],sorts) < 0) {
+				//Replace the worst row, then sift down
+				int k = 0;
+				while (true) {
+					int child = 2*k + 1;
+					if (child >= size) {break;}
+					if (child + 1 < size && compareRows(heap[child+1],heap[child],sorts) > 0) {++child;}
+					if (compareRows(row,heap[child],sorts) >= 0) {break;}
+					heap[k] = heap[child];
+					k = child;
+				}
+				heap[k] = row;
+			}
+		}
+
+		return sort(Arrays.copyOf(heap,size),sorts);
+	}
+
+
+	/**
+	 * Sort the rows by the sort fields
+	 * @param rows The rows to sort
+	 * @param sorts The column read by each sort field
+	 * @return The sorted rows
+	 */
+	private int[] sort(int[] rows, QueryColumn[] sorts) {
+		Integer[] boxed = new Integer[rows.length];
+		for (int i = 0; i < rows.length; ++i) {boxed[i] = rows[i];}
+
+		Arrays.sort(boxed,(a,b) -> compareRows(a,b,sorts));
+
+		for (int i = 0; i < rows.length; ++i) {rows[i] = boxed[i];}
+		return rows;
+	}
+
+
+	/**
+	 * Compare two rows using the sort fields
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private int compareRows(int a, int b, QueryColumn[] sorts) {
+		for (int i = 0; i < sorts.length; ++i) {
+			Object va = sorts[i].get(a);
+			Object vb = sorts[i].get(b);
+
+			int cmp;
+			if (va == null || vb == null) {cmp = (va == null) ? ((vb == null) ? 0 : -1) : 1;}
+			else {cmp = ((Comparable) va).compareTo(vb);}
+
+			if (cmp != 0) {return this.sortAscending.get(i) ? cmp : -cmp;}
+		}
+		return Integer.compare(a,b);	// Ties are sorted by row
+	}
+}
@@ -0,0 +1,148 @@
+package jbase.query;
+
+import jbase.field.Field;
+import jbase.storage.ClockCache;
+
+
+/**
+ * Cache of query results and summaries, so a query repeated over fields that
+ *  haven't changed (such as a dashboard refreshing) is answered from memory.
+ *  Results are found by the normalized query and the user who ran it.
+ *
+ *  Every result remembers the version of each field it read (see Field.getVersion()),
+ *   and is dropped the first time it is looked up after any of those fields changed.
+ *   Writes to other fields never invalidate it.
+ *  Permissions are still checked every time a cached result is returned.
+ *
+ * @author Bryan McClain
+ */
+public class QueryCache {
+
+	private final ClockCache<CacheKey,CachedResult> results;
+
+
+	/**
+	 * Construct a new query cache
+	 * @param results Maximum number of results held
+	 * @param maxWeight Maximum estimated size of all results, in bytes
+	 */
+	public QueryCache(int results, long maxWeight) {
+		this.results = new ClockCache<CacheKey,CachedResult>(results,maxWeight,CachedResult::isCurrent);
+	}
+
+
+	/**
+	 * Get a cached result, dropping it if any of its fields changed
+	 * @param key Normalized query
+	 * @return The result, or null if it isn't cached
+	 */
+	Object get(CacheKey key) {
+		CachedResult r = this.results.get(key);
+		return (r == null) ? null : r.value;
+	}
+
+
+	/**
+	 * Add a result to the cache.
+	 *  Results larger than the whole cache are not added.
+	 *
+	 * @param key Normalized query
+	 * @param fields Fields read to compute the result
+	 * @param versions Version of each field before it was read
+	 * @param value The result
+	 * @param weight Estimated size of the result in bytes
+	 */
+	void put(CacheKey key, Field<?>[] fields, long[] versions, Object value, long weight) {
+		CachedResult r = new CachedResult(key,fields,versions,value,weight);
+		this.results.put(key,r,r.weight);
+	}
+
+
+	/**
+	 * Drop every result that read a field (when the field is deleted)
+	 * @param field The field
+	 */
+	public void invalidateField(Field<?> field) {
+		this.results.invalidateIf(r -> r.reads(field));
+	}
+
+
+	/**
+	 * Drop every result from the cache
+	 */
+	public void clear() {
+		this.results.clear();
+	}
+
+
+	/**
+	 * Get the maximum number of results held
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return this.results.getCapacity();
+	}
+
+
+	/**
+	 * Get the maximum estimated size of all results
+	 * @return Bytes
+	 */
+	public long getMaxWeight() {
+		return this.results.getMaxWeight();
+	}
+
+
+	/**
+	 * Get the number of results currently cached
+	 * @return Results
+	 */
+	public int size() {
+		return this.results.size();
+	}
+
+
+	/**
+	 * Get the estimated size of all cached results
+	 * @return Bytes
+	 */
+	public long getWeight() {
+		return this.results.getWeight();
+	}
+
+
+	/**
+	 * Get the number of lookups served from the cache
+	 * @return Hits
+	 */
+	public long getHits() {
+		return this.results.getHits();
+	}
+
+
+	/**
+	 * Get the number of lookups that had to run the query
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return this.results.getMisses();
+	}
+
+
+	/**
+	 * Get the number of results evicted to make room for other results
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return this.results.getEvictions();
+	}
+
+
+	/**
+	 * Get the number of results dropped because a field they read changed or was deleted
+	 * @return Invalidations
+	 */
+	public long getInvalidations() {
+		return this.results.getInvalidations();
+	}
+}
@@ -0,0 +1,49 @@
+package jbase.query;
+
+import jbase.field.Field;
+import jbase.storage.ColumnReader;
+
+
+/**
+ * A column read by a running query.
+ *  The get permission is checked once when the column is opened.
+ *
+ * @author Bryan McClain
+ */
+final class QueryColumn {
+
+	final Field<?> field;
+	final boolean paged;				// Rows are read from pages (order matters)
+	private final ColumnReader<?> reader;
+
+
+	/**
+	 * Open a column for reading
+	 * @param field The field to read
+	 * @throws JBaseFieldActionDenied User doesn't have permission to get values from the field
+	 */
+	QueryColumn(Field<?> field) {
+		this.field = field;
+		this.reader = field.reader();
+		this.paged = this.reader.isPaged();
+	}
+
+
+	/**
+	 * Get the value in a row of the queried key
+	 * @param row The row of the key
+	 * @return The value (can be null)
+	 */
+	Object get(int row) {
+		return this.reader.get(row);
+	}
+
+
+	/**
+	 * Get the number of rows in the column
+	 * @return Size
+	 */
+	int size() {
+		return this.reader.size();
+	}
+}
@@ -0,0 +1,184 @@
+package jbase.query;
+
+import jbase.field.*;
+import jbase.index.IndexKind;
+
+import java.io.Serializable;
+import java.util.List;
+
+
+/**
+ * How a query finds its candidate rows, chosen from the conditions in the query.
+ *  The planner prefers (in order):
+ *   1. A single key value (key range where both bounds are equal)
+ *   2. A secondary index lookup for an equal condition
+ *   3. A range of key values
+ *   4. A sorted secondary index range
+ *   5. A full scan of the key
+ *
+ *  Every condition is still tested on the candidate rows, so the plan only has to narrow them down.
+ *
+ * @author Bryan McClain
+ */
+public final class QueryPlan {
+
+	private final ScanType scan;		// How the rows are found
+	private final Field<?> field;		// Field being scanned
+	private final Object low;			// Lowest value (null = no lower limit)
+	private final boolean lowInclusive;
+	private final Object high;			// Highest value (null = no upper limit)
+	private final boolean highInclusive;
+
+
+	/**
+	 * Construct a new query plan
+	 */
+	private QueryPlan(ScanType scan, Field<?> field, Object low, boolean lowInclusive,
+					  Object high, boolean highInclusive) {
+		this.scan = scan;
+		this.field = field;
+		this.low = low;
+		this.lowInclusive = lowInclusive;
+		this.high = high;
+		this.highInclusive = highInclusive;
+	}
+
+
+	/**
+	 * Get how the rows are found
+	 * @return Scan type
+	 */
+	public ScanType getScan() {
+		return this.scan;
+	}
+
+
+	/**
+	 * Get the field being scanned
+	 * @return Field
+	 */
+	public Field<?> getField() {
+		return this.field;
+	}
+
+
+	/**
+	 * Convert this plan to a string
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		String str = this.scan.toString()+" on '"+this.field.getName()+"'";
+		if (this.scan == ScanType.FULL_SCAN) {return str;}
+		if (this.scan == ScanType.INDEX_LOOKUP || isPoint()) {return str+" = "+this.low;}
+		return str+" "+(this.lowInclusive ? "[" : "(")+((this.low == null) ? "*" : this.low)+", "
+			   +((this.high == null) ? "*" : this.high)+(this.highInclusive ? "]" : ")");
+	}
+
+
+
+	/**
+	 * Choose the best plan for a set of conditions
+	 * @param key The key being queried
+	 * @param conditions Conditions on the key and its children
+	 * @return The plan
+	 */
+	static QueryPlan choose(KeyField<?> key, List<Condition> conditions) {
+		QueryPlan keyRange = range(ScanType.KEY_RANGE,key,conditions);
+		if (keyRange != null && keyRange.isPoint()) {return keyRange;}
+
+		for (Condition c : conditions) {
+			Field<?> f = c.getField();
+			if (f == key || c.getOp() != CompareOp.EQUAL || c.getOperand() == null) {continue;}
+			if (f.hasIndex(IndexKind.HASH) || f.hasIndex(IndexKind.BITMAP)
+				|| f.hasIndex(IndexKind.SORTED) || f.hasIndex(IndexKind.PREFIX)) {
+				return new QueryPlan(ScanType.INDEX_LOOKUP,f,c.getOperand(),true,c.getOperand(),true);
+			}
+		}
+
+		if (keyRange != null) {return keyRange;}
+
+		for (Condition c : conditions) {
+			Field<?> f = c.getField();
+			if (f == key || !f.hasIndex(IndexKind.SORTED)) {continue;}
+			QueryPlan indexRange = range(ScanType.INDEX_RANGE,f,conditions);
+			if (indexRange != null) {return indexRange;}
+		}
+
+		return new QueryPlan(ScanType.FULL_SCAN,key,null,true,null,true);
+	}
+
+
+	/**
+	 * Get the candidate rows for this plan
+	 * @return Candidate rows, or null to scan every row of the key
+	 *
+	 * @throws JBaseFieldActionDenied User doesn't have permission to search the scanned field
+	 * @throws ClassCastException A condition value cannot be compared to the field
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	int[] candidates() {
+		if (this.scan == ScanType.KEY_RANGE) {
+			return ((KeyField) this.field).rowsBetween((Comparable) this.low,this.lowInclusive,
+													   (Comparable) this.high,this.highInclusive);
+		}
+		if (this.scan == ScanType.INDEX_LOOKUP) {
+			return ((Field) this.field).findAll((Serializable) this.low).toArray();
+		}
+		if (this.scan == ScanType.INDEX_RANGE) {
+			return ((Field) this.field).findRange((Serializable) this.low,this.lowInclusive,
+												  (Serializable) this.high,this.highInclusive).toArray();
+		}
+		return null;	// Full scan
+	}
+
+
+	/**
+	 * Test if this plan looks up a single value
+	 * @return True if both bounds are the same, inclusive value
+	 */
+	private boolean isPoint() {
+		return (this.low != null && this.lowInclusive && this.highInclusive && this.low.equals(this.high));
+	}
+
+
+	/**
+	 * Combine every range condition on a field into a single range
+	 * @param scan The type of scan for the range
+	 * @param field The field to find conditions for
+	 * @param conditions All conditions in the query
+	 * @return The range, or null if no condition limits the field to a range
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static QueryPlan range(ScanType scan, Field<?> field, List<Condition> conditions) {
+		Comparable low = null, high = null;
+		boolean lowInclusive = true, highInclusive = true;
+		boolean found = false;
+
+		for (Condition c : conditions) {
+			if (c.getField() != field || !c.getOp().isRange() || c.getOperand() == null) {continue;}
+			Comparable val = (Comparable) c.getOperand();
+			found = true;
+
+			//Raise the lower bound
+			CompareOp op = c.getOp();
+			if (op == CompareOp.EQUAL || op == CompareOp.GREATER || op == CompareOp.GREATER_EQUAL) {
+				boolean inclusive = (op != CompareOp.GREATER);
+				int cmp = (low == null) ? 1 : val.compareTo(low);
+				if (cmp > 0) {low = val; lowInclusive = inclusive;}
+				else if (cmp == 0) {lowInclusive &= inclusive;}
+			}
+
+			//Lower the upper bound
+			if (op == CompareOp.EQUAL || op == CompareOp.LESS || op == CompareOp.LESS_EQUAL) {
+				boolean inclusive = (op != CompareOp.LESS);
+				int cmp = (high == null) ? -1 : val.compareTo(high);
+				if (cmp < 0) {high = val; highInclusive = inclusive;}
+				else if (cmp == 0) {highInclusive &= inclusive;}
+			}
+		}
+
+		if (!found) {return null;}
+		return new QueryPlan(scan,field,low,lowInclusive,high,highInclusive);
+	}
+}
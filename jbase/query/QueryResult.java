@@ -0,0 +1,107 @@
+package jbase.query;
+
+import jbase.exception.JBaseBadQuery;
+import jbase.field.Field;
+
+
+/**
+ * Rows returned by a query.
+ *  Only the row numbers are stored; values are read from the columns when they are requested,
+ *   so they reflect the field at that moment.
+ *
+ * @author Bryan McClain
+ */
+public class QueryResult {
+
+	private final Field<?>[] fields;		// Columns selected by the query
+	private final QueryColumn[] columns;	// Open column for each field
+	private final int[] rows;				// Matching rows of the key, in result order
+
+
+	/**
+	 * Construct a new query result
+	 * @param fields Columns selected by the query
+	 * @param columns Open column for each field
+	 * @param rows Matching rows of the key
+	 */
+	QueryResult(Field<?>[] fields, QueryColumn[] columns, int[] rows) {
+		this.fields = fields;
+		this.columns = columns;
+		this.rows = rows;
+	}
+
+
+	/**
+	 * Get the number of rows in the result
+	 * @return Size
+	 */
+	public int size() {
+		return this.rows.length;
+	}
+
+
+	/**
+	 * Get the columns selected by the query
+	 * @return Array of fields
+	 */
+	public Field<?>[] getColumns() {
+		return this.fields.clone();
+	}
+
+
+	/**
+	 * Get the row of the key for a result
+	 * @param i The index of the result
+	 * @return Row of the key
+	 */
+	public int getRow(int i) {
+		return this.rows[i];
+	}
+
+
+	/**
+	 * Get the rows of the key for every result
+	 * @return Rows, in result order
+	 */
+	public int[] getRows() {
+		return this.rows.clone();
+	}
+
+
+	/**
+	 * Get a value from a result
+	 * @param i The index of the result
+	 * @param column The index of the selected column
+	 * @return The value (can be null)
+	 */
+	public Object get(int i, int column) {
+		return this.columns[column].get(this.rows[i]);
+	}
+
+
+	/**
+	 * Get a value from a result
+	 * @param i The index of the result
+	 * @param field A selected column
+	 * @return The value (can be null)
+	 * @throws JBaseBadQuery The field wasn't selected by the query
+	 */
+	public Object get(int i, Field<?> field) throws JBaseBadQuery {
+		for (int c = 0; c < this.fields.length; ++c) {
+			if (this.fields[c] == field) {return get(i,c);}
+		}
+		throw new JBaseBadQuery("field '"+field.getName()+"' wasn't selected");
+	}
+
+
+	/**
+	 * Get every selected value from a result
+	 * @param i The index of the result
+	 * @return Values, in column order
+	 */
+	public Object[] getValues(int i) {
+		Object[] values = new Object[this.columns.length];
+		for (int c = 0; c < values.length; ++c) {values[c] = get(i,c);}
+		return values;
+	}
+}
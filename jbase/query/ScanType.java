@@ -0,0 +1,27 @@
+package jbase.query;
+
+import jbase.JBaseAction;
+
+
+/**
+ * How a query finds its candidate rows
+ * @author Bryan McClain
+ */
+public enum ScanType {
+	FULL_SCAN,			/* Read every row of the key */
+	KEY_RANGE,			/* Walk the sorted key values between two bounds */
+	INDEX_LOOKUP,		/* Find rows holding a value using a secondary index */
+	INDEX_RANGE;		/* Find rows inside a range using a sorted secondary index */
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
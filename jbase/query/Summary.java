@@ -0,0 +1,258 @@
+package jbase.query;
+
+import java.math.BigInteger;
+
+/**
+ * Count, sum, minimum and maximum of the numbers in a column.
+ *  Whole numbers are added as longs so their sum is exact (spilling into a BigInteger if the sum overflows);
+ *   floating point numbers are added separately.
+ *
+ * @author Bryan McClain
+ */
+public final class Summary {
+
+	private long count;				// Number of non-null values
+	private long longCount;			// Number of whole-number values
+	private long longSum;
+	private BigInteger overflow;	// Part of the whole-number sum that didn't fit in longSum (null = none)
+	private long longMin;
+	private long longMax;
+	private double doubleSum;
+	private double doubleMin;
+	private double doubleMax;
+
+
+	/**
+	 * Construct a new, empty summary
+	 */
+	Summary() {
+		this.longMin = Long.MAX_VALUE;
+		this.longMax = Long.MIN_VALUE;
+		this.doubleMin = Double.POSITIVE_INFINITY;
+		this.doubleMax = Double.NEGATIVE_INFINITY;
+	}
+
+
+	/**
+	 * Get the number of non-null values
+	 * @return Count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+
+	/**
+	 * Test if every value was a whole number (so the long methods are exact)
+	 * @return True if no floating point values were added
+	 */
+	public boolean isIntegral() {
+		return (this.count == this.longCount);
+	}
+
+
+	/**
+	 * Get the sum of the values
+	 * @return Sum (0 if empty)
+	 */
+	public double getSum() {
+		double whole = (this.overflow == null) ? this.longSum : getExactSum().doubleValue();
+		return whole + this.doubleSum;
+	}
+
+
+	/**
+	 * Get the exact sum of the whole-number values
+	 * @return Sum (0 if empty)
+	 * @throws ArithmeticException The sum doesn't fit in a long (use getExactSum() instead)
+	 */
+	public long getLongSum() {
+		return (this.overflow == null) ? this.longSum : getExactSum().longValueExact();
+	}
+
+
+	/**
+	 * Get the exact sum of the whole-number values, no matter how large
+	 * @return Sum (0 if empty)
+	 */
+	public BigInteger getExactSum() {
+		BigInteger sum = BigInteger.valueOf(this.longSum);
+		return (this.overflow == null) ? sum : sum.add(this.overflow);
+	}
+
+
+	/**
+	 * Get the smallest value
+	 * @return Minimum, or NaN if empty
+	 */
+	public double getMin() {
+		if (this.count == 0) {return Double.NaN;}
+		return Math.min((this.longCount == 0) ? Double.POSITIVE_INFINITY : this.longMin,this.doubleMin);
+	}
+
+
+	/**
+	 * Get the largest value
+	 * @return Maximum, or NaN if empty
+	 */
+	public double getMax() {
+		if (this.count == 0) {return Double.NaN;}
+		return Math.max((this.longCount == 0) ? Double.NEGATIVE_INFINITY : this.longMax,this.doubleMax);
+	}
+
+
+	/**
+	 * Get the exact smallest whole-number value
+	 * @return Minimum (Long.MAX_VALUE if there are none)
+	 */
+	public long getLongMin() {
+		return this.longMin;
+	}
+
+
+	/**
+	 * Get the exact largest whole-number value
+	 * @return Maximum (Long.MIN_VALUE if there are none)
+	 */
+	public long getLongMax() {
+		return this.longMax;
+	}
+
+
+	/**
+	 * Get the average of the values
+	 * @return Average, or NaN if empty
+	 */
+	public double getAverage() {
+		if (this.count == 0) {return Double.NaN;}
+		return getSum() / this.count;
+	}
+
+
+	/**
+	 * Convert this summary to a string
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return "Count: "+this.count+", Sum: "+(isIntegral() ? getExactSum().toString() : Double.toString(getSum()))
+			   +", Min: "+getMin()+", Max: "+getMax()+", Average: "+getAverage();
+	}
+
+
+
+	/**
+	 * Add a single whole number
+	 * @param val The value
+	 */
+	void add(long val) {
+		++this.count;
+		++this.longCount;
+		addToSum(val);
+		this.longMin = Math.min(this.longMin,val);
+		this.longMax = Math.max(this.longMax,val);
+	}
+
+
+	/**
+	 * Add a single floating point number
+	 * @param val The value
+	 */
+	void add(double val) {
+		++this.count;
+		this.doubleSum += val;
+		this.doubleMin = Math.min(this.doubleMin,val);
+		this.doubleMax = Math.max(this.doubleMax,val);
+	}
+
+
+	/**
+	 * Add a block of whole numbers
+	 * @param vals The values
+	 * @param n Number of values to add
+	 */
+	void addLongs(long[] vals, int n) {
+		long sum = 0, min = this.longMin, max = this.longMax;
+		for (int i = 0; i < n; ++i) {
+			long v = vals[i];
+			try {
+				sum = Math.addExact(sum,v);
+			} catch (ArithmeticException ex) {
+				spill(sum);
+				sum = v;
+			}
+			min = Math.min(min,v);
+			max = Math.max(max,v);
+		}
+
+		this.count += n;
+		this.longCount += n;
+		addToSum(sum);
+		this.longMin = min;
+		this.longMax = max;
+	}
+
+
+	/**
+	 * Add a block of floating point numbers
+	 * @param vals The values
+	 * @param n Number of values to add
+	 */
+	void addDoubles(double[] vals, int n) {
+		double sum = 0, min = this.doubleMin, max = this.doubleMax;
+		for (int i = 0; i < n; ++i) {
+			double v = vals[i];
+			sum += v;
+			min = Math.min(min,v);
+			max = Math.max(max,v);
+		}
+
+		this.count += n;
+		this.doubleSum += sum;
+		this.doubleMin = min;
+		this.doubleMax = max;
+	}
+
+
+	/**
+	 * Add every value from another summary
+	 * @param other The summary to add
+	 */
+	void merge(Summary other) {
+		this.count += other.count;
+		this.longCount += other.longCount;
+		addToSum(other.longSum);
+		if (other.overflow != null) {
+			this.overflow = (this.overflow == null) ? other.overflow : this.overflow.add(other.overflow);
+		}
+		this.longMin = Math.min(this.longMin,other.longMin);
+		this.longMax = Math.max(this.longMax,other.longMax);
+		this.doubleSum += other.doubleSum;
+		this.doubleMin = Math.min(this.doubleMin,other.doubleMin);
+		this.doubleMax = Math.max(this.doubleMax,other.doubleMax);
+	}
+
+
+	/**
+	 * Add a whole number to the sum, spilling the sum into the overflow if it no longer fits in a long
+	 * @param val The value
+	 */
+	private void addToSum(long val) {
+		try {
+			this.longSum = Math.addExact(this.longSum,val);
+		} catch (ArithmeticException ex) {
+			spill(this.longSum);
+			this.longSum = val;
+		}
+	}
+
+
+	/**
+	 * Move part of the whole-number sum into the overflow
+	 * @param part The part of the sum to move
+	 */
+	private void spill(long part) {
+		BigInteger big = BigInteger.valueOf(part);
+		this.overflow = (this.overflow == null) ? big : this.overflow.add(big);
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Query engine that selects the rows of a key field, filters them with conditions on its columns,
+ *  and sorts and limits the results without reading columns that aren't needed.
+ */
+package jbase.query;
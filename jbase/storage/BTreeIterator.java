@@ -0,0 +1,61 @@
+package jbase.storage;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Iterates over the values in a B+tree index by walking its chain of leaves
+ * @author Bryan McClain
+ */
+class BTreeIterator<T extends Comparable<T>> implements Iterator<Map.Entry<T,Integer>> {
+
+	private final BTreeValueIndex<T> index;
+	private int pageNo;			// Current leaf (-1 = finished)
+	private int pos;			// Position inside the leaf
+
+
+	/**
+	 * Construct a new iterator
+	 * @param index The index to iterate over
+	 * @param pageNo The first leaf in the chain
+	 */
+	BTreeIterator(BTreeValueIndex<T> index, int pageNo) {
+		this.index = index;
+		this.pageNo = pageNo;
+		this.pos = 0;
+	}
+
+
+	/**
+	 * Test if there are any more values
+	 * @return True if there is another value
+	 */
+	public boolean hasNext() {
+		while (this.pageNo >= 0) {
+			BTreeNode leaf = this.index.node(this.pageNo);
+			if (this.pos < leaf.count) {return true;}
+			this.pageNo = leaf.next;	// Skip to the next (non-empty) leaf
+			this.pos = 0;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Get the next value (and its row)
+	 * @return The next entry
+	 */
+	@SuppressWarnings("unchecked")
+	public Map.Entry<T,Integer> next() {
+		if (!hasNext()) {throw new NoSuchElementException();}
+
+		BTreeNode leaf = this.index.node(this.pageNo);
+		T key = (T) leaf.keys[this.pos];
+		int row = leaf.values[this.pos];
+		++this.pos;
+		return new AbstractMap.SimpleImmutableEntry<T,Integer>(key,row);
+	}
+}
@@ -0,0 +1,36 @@
+package jbase.storage;
+
+import java.io.Serializable;
+
+
+/**
+ * A single node (page) in an on-disk B+tree.
+ *  Leaves store rows and are chained together in both directions.
+ *  Internal nodes store one more child page than keys, where keys[i]
+ *   is the smallest value that can be found under children[i+1].
+ *
+ * @author Bryan McClain
+ */
+class BTreeNode implements Serializable {
+
+	boolean leaf;			// Is this a leaf node
+	int count;				// Number of keys in use
+	Object[] keys;			// Sorted keys (one extra slot for overflow)
+	int[] values;			// Rows (leaf) or child pages (internal)
+	int next;				// Next leaf page (-1 = none)
+	int prev;				// Previous leaf page (-1 = none)
+
+
+	/**
+	 * Construct a new, empty node
+	 * @param fanout Maximum number of keys in the node
+	 */
+	BTreeNode(int fanout) {
+		this.leaf = true;
+		this.count = 0;
+		this.keys = new Object[fanout+1];
+		this.values = new int[fanout+2];
+		this.next = -1;
+		this.prev = -1;
+	}
+}
@@ -0,0 +1,606 @@
+package jbase.storage;
+
+import jbase.exception.JBaseIOException;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Value index stored as a B+tree in a page file, with nodes cached by the buffer pool.
+ *  Unlike a tree on the Java heap, the index can be much larger than the heap,
+ *   and each node holds many values, so lookups touch very few pages.
+ *
+ *  Deletes are lazy: values are removed from their leaf, but nodes are never merged.
+ *   Empty leaves are skipped when walking the chain of leaves.
+ *
+ * @author Bryan McClain
+ */
+public class BTreeValueIndex<T extends Comparable<T>> extends PageOwner implements ValueIndex<T> {
+
+	public static final int DEFAULT_FANOUT = 128;
+
+	private final BufferPool pool;		// Pool caching the nodes
+	private final PageFile file;		// File holding the nodes
+	private final int fanout;			// Maximum number of keys in a node
+	private Page[] resident;			// Nodes currently in the pool (null = on disk)
+	private int pages;					// Number of pages allocated
+	private int root;					// Page holding the root node
+	private int size;					// Number of values in the index
+	private boolean closed;
+
+	//Result of splitting a node (used while inserting)
+	private Object splitKey;
+	private int splitPage;
+
+	//Leaves built so far by the bulk loader
+	private ArrayList<Object> bulkKeys;
+	private ArrayList<Integer> bulkPages;
+	private Page bulkLeaf;
+
+
+	/**
+	 * Construct a new, empty B+tree index with the default fanout
+	 *
+	 * @param pool The buffer pool caching the nodes
+	 * @param directory Directory to hold the page file
+	 * @param name Name of the field (used to name the page file)
+	 * @throws JBaseIOException Unable to create the page file
+	 */
+	public BTreeValueIndex(BufferPool pool, File directory, String name) throws JBaseIOException {
+		this(pool,directory,name,DEFAULT_FANOUT);
+	}
+
+
+	/**
+	 * Construct a new, empty B+tree index
+	 *
+	 * @param pool The buffer pool caching the nodes
+	 * @param directory Directory to hold the page file
+	 * @param name Name of the field (used to name the page file)
+	 * @param fanout Maximum number of keys in a single node (at least 3)
+	 * @throws JBaseIOException Unable to create the page file
+	 */
+	public BTreeValueIndex(BufferPool pool, File directory, String name, int fanout) throws JBaseIOException {
+		this.pool = pool;
+		this.file = new PageFile(directory,"jbase-"+name.replaceAll("[^A-Za-z0-9]","_")+"-idx");
+		this.fanout = Math.max(fanout,3);
+		this.resident = new Page[16];
+		this.pages = 0;
+		this.size = 0;
+		this.closed = false;
+		pool.register(this);
+		this.root = newNode(true);
+	}
+
+
+	/**
+	 * Get the maximum number of keys in a single node
+	 * @return Fanout
+	 */
+	public int getFanout() {
+		return this.fanout;
+	}
+
+
+	/**
+	 * Get the number of bytes used on disk by this index
+	 * @return Size in bytes
+	 */
+	public long diskSize() {
+		return this.file.length();
+	}
+
+
+
+	//========== Searching ==========
+
+	/**
+	 * Find the row for a value
+	 * @param val The value to find
+	 * @return The row, or -1 if the value isn't in the index
+	 */
+	public int find(T val) {
+		BTreeNode leaf = node(findLeaf(val));
+		int i = search(leaf,val);
+		return (i >= 0) ? leaf.values[i] : -1;
+	}
+
+
+	/**
+	 * Get the number of values in the index
+	 * @return Size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Get the row holding the smallest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int firstRow() {
+		int pageNo = this.root;
+		BTreeNode n = node(pageNo);
+		while (!n.leaf) {
+			pageNo = n.values[0];
+			n = node(pageNo);
+		}
+		return forwardFrom(pageNo,0);
+	}
+
+
+	/**
+	 * Get the row holding the largest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int lastRow() {
+		int pageNo = this.root;
+		BTreeNode n = node(pageNo);
+		while (!n.leaf) {
+			pageNo = n.values[n.count];
+			n = node(pageNo);
+		}
+		return backwardFrom(pageNo,n.count-1);
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int higherRow(T val) {
+		int pageNo = findLeaf(val);
+		int i = search(node(pageNo),val);
+		return forwardFrom(pageNo, (i >= 0) ? i+1 : -(i+1));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int lowerRow(T val) {
+		int pageNo = findLeaf(val);
+		int i = search(node(pageNo),val);
+		return backwardFrom(pageNo, (i >= 0) ? i-1 : -(i+1)-1);
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int ceilingRow(T val) {
+		int pageNo = findLeaf(val);
+		int i = search(node(pageNo),val);
+		return forwardFrom(pageNo, (i >= 0) ? i : -(i+1));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int floorRow(T val) {
+		int pageNo = findLeaf(val);
+		int i = search(node(pageNo),val);
+		return backwardFrom(pageNo, (i >= 0) ? i : -(i+1)-1);
+	}
+
+
+	/**
+	 * Iterate over every value in ascending order, by walking the chain of leaves
+	 * @return Iterator of values to rows
+	 */
+	public Iterator<Map.Entry<T,Integer>> iterator() {
+		int pageNo = this.root;
+		BTreeNode n = node(pageNo);
+		while (!n.leaf) {
+			pageNo = n.values[0];
+			n = node(pageNo);
+		}
+		return new BTreeIterator<T>(this,pageNo);
+	}
+
+
+
+	//========== Changing ==========
+
+	/**
+	 * Add a value to the index (replacing the row if it already exists)
+	 * @param val The value to add
+	 * @param row The row holding the value
+	 */
+	public void put(T val, int row) {
+		if (!insert(this.root,val,row)) {return;}
+
+		//Root was split, so grow the tree by one level
+		int newRoot = newNode(false);
+		Page page = this.pool.fetch(this,newRoot);
+		BTreeNode n = (BTreeNode) page.data;
+		n.count = 1;
+		n.keys[0] = this.splitKey;
+		n.values[0] = this.root;
+		n.values[1] = this.splitPage;
+		page.dirty = true;
+
+		this.root = newRoot;
+		this.splitKey = null;
+	}
+
+
+	/**
+	 * Remove a value from the index.
+	 *  The value is removed from its leaf, but leaves are never merged.
+	 *
+	 * @param val The value to remove
+	 * @return True if the value was removed
+	 */
+	public boolean remove(T val) {
+		Page page = this.pool.fetch(this,findLeaf(val));
+		BTreeNode leaf = (BTreeNode) page.data;
+		int i = search(leaf,val);
+		if (i < 0) {return false;}
+
+		System.arraycopy(leaf.keys,i+1,leaf.keys,i,leaf.count-i-1);
+		System.arraycopy(leaf.values,i+1,leaf.values,i,leaf.count-i-1);
+		leaf.keys[--leaf.count] = null;
+		page.dirty = true;
+		--this.size;
+		return true;
+	}
+
+
+	/**
+	 * Append a value while bulk loading an empty index.
+	 *  Leaves are filled from left to right, leaving some free space for later inserts.
+	 *
+	 * @param val The value to append (in strictly ascending order)
+	 * @param row The row holding the value
+	 */
+	public void bulkAppend(T val, int row) {
+		if (this.bulkKeys == null) {
+			this.bulkKeys = new ArrayList<Object>();
+			this.bulkPages = new ArrayList<Integer>();
+			this.bulkLeaf = this.pool.pin(this,this.root);	// Empty root becomes the first leaf
+			this.bulkKeys.add(val);
+			this.bulkPages.add(this.root);
+		}
+
+		BTreeNode leaf = (BTreeNode) this.bulkLeaf.data;
+		if (leaf.count >= this.fanout - this.fanout / 10) {
+
+			//Start a new leaf, and link it to the last one
+			int pageNo = newNode(true);
+			Page page = this.pool.pin(this,pageNo);
+			BTreeNode next = (BTreeNode) page.data;
+			leaf.next = pageNo;
+			next.prev = this.bulkLeaf.pageNo;
+			this.bulkLeaf.dirty = true;
+			this.pool.unpin(this.bulkLeaf);
+
+			this.bulkLeaf = page;
+			this.bulkKeys.add(val);
+			this.bulkPages.add(pageNo);
+			leaf = next;
+		}
+
+		leaf.keys[leaf.count] = val;
+		leaf.values[leaf.count] = row;
+		++leaf.count;
+		this.bulkLeaf.dirty = true;
+		++this.size;
+	}
+
+
+	/**
+	 * Finish bulk loading the index, by building the internal nodes one level at a time
+	 */
+	public void finishBulkLoad() {
+		if (this.bulkKeys == null) {return;}
+		this.pool.unpin(this.bulkLeaf);
+
+		ArrayList<Object> keys = this.bulkKeys;
+		ArrayList<Integer> children = this.bulkPages;
+		while (children.size() > 1) {
+			ArrayList<Object> upperKeys = new ArrayList<Object>();
+			ArrayList<Integer> upperPages = new ArrayList<Integer>();
+
+			for (int start = 0; start < children.size(); start += this.fanout) {
+				int end = Math.min(start + this.fanout, children.size());
+				int pageNo = newNode(false);
+				Page page = this.pool.fetch(this,pageNo);
+				BTreeNode n = (BTreeNode) page.data;
+
+				n.values[0] = children.get(start);
+				for (int i = start+1; i < end; ++i) {
+					n.keys[n.count] = keys.get(i);
+					n.values[++n.count] = children.get(i);
+				}
+				page.dirty = true;
+
+				upperKeys.add(keys.get(start));
+				upperPages.add(pageNo);
+			}
+
+			keys = upperKeys;
+			children = upperPages;
+		}
+
+		this.root = children.get(0);
+		this.bulkKeys = null;
+		this.bulkPages = null;
+		this.bulkLeaf = null;
+	}
+
+
+	/**
+	 * Remove all nodes from the buffer pool, and delete the page file
+	 */
+	public void close() {
+		if (this.closed) {return;}
+		this.closed = true;
+
+		this.pool.release(this);
+		this.resident = new Page[0];
+		this.file.close();
+	}
+
+
+
+	//========== Tree Helpers ==========
+
+	/**
+	 * Get the node stored in a page
+	 */
+	BTreeNode node(int pageNo) {
+		return (BTreeNode) this.pool.fetch(this,pageNo).data;
+	}
+
+
+	/**
+	 * Find the leaf that would hold a value
+	 * @return The page number of the leaf
+	 */
+	private int findLeaf(T val) {
+		int pageNo = this.root;
+		BTreeNode n = node(pageNo);
+		while (!n.leaf) {
+			pageNo = n.values[childIndex(n,val)];
+			n = node(pageNo);
+		}
+		return pageNo;
+	}
+
+
+	/**
+	 * Binary search for a value inside a node
+	 * @return The index of the value, or (-(insertion point) - 1) if not found
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<T>> int search(BTreeNode n, T val) {
+		int lo = 0, hi = n.count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = ((T) n.keys[mid]).compareTo(val);
+			if (cmp < 0) {lo = mid + 1;}
+			else if (cmp > 0) {hi = mid - 1;}
+			else {return mid;}
+		}
+		return -(lo + 1);
+	}
+
+
+	/**
+	 * Get the child of an internal node that would hold a value
+	 */
+	private static <T extends Comparable<T>> int childIndex(BTreeNode n, T val) {
+		int i = search(n,val);
+		return (i >= 0) ? i+1 : -(i+1);
+	}
+
+
+	/**
+	 * Get the first row at or after a position, skipping empty leaves
+	 */
+	private int forwardFrom(int pageNo, int i) {
+		while (pageNo >= 0) {
+			BTreeNode leaf = node(pageNo);
+			if (i < leaf.count) {return leaf.values[i];}
+			pageNo = leaf.next;
+			i = 0;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Get the last row at or before a position, skipping empty leaves
+	 */
+	private int backwardFrom(int pageNo, int i) {
+		while (pageNo >= 0) {
+			BTreeNode leaf = node(pageNo);
+			i = Math.min(i,leaf.count-1);
+			if (i >= 0) {return leaf.values[i];}
+			pageNo = leaf.prev;
+			i = Integer.MAX_VALUE;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Insert a value below a node.
+	 *  The node is pinned while its children are changed, so it can't be evicted mid-insert.
+	 *
+	 * @return True if the node was split (see splitKey and splitPage)
+	 */
+	private boolean insert(int pageNo, T val, int row) {
+		Page page = this.pool.pin(this,pageNo);
+		try {
+			BTreeNode n = (BTreeNode) page.data;
+
+			if (n.leaf) {
+				int i = search(n,val);
+				if (i >= 0) {
+					n.values[i] = row;
+					page.dirty = true;
+					return false;
+				}
+				insertAt(n,-(i+1),val,row);
+				++this.size;
+			} else {
+				int c = childIndex(n,val);
+				if (!insert(n.values[c],val,row)) {return false;}
+				insertAt(n,c,this.splitKey,this.splitPage);
+			}
+
+			page.dirty = true;
+			if (n.count <= this.fanout) {return false;}
+			split(page);
+			return true;
+		} finally {
+			this.pool.unpin(page);
+		}
+	}
+
+
+	/**
+	 * Insert a key into a node, shifting the rest to the right.
+	 *  For internal nodes, the value is the child page to the right of the key.
+	 */
+	private static void insertAt(BTreeNode n, int i, Object key, int value) {
+		int shift = n.leaf ? 0 : 1;
+		System.arraycopy(n.keys,i,n.keys,i+1,n.count-i);
+		System.arraycopy(n.values,i+shift,n.values,i+shift+1,n.count-i);
+		n.keys[i] = key;
+		n.values[i+shift] = value;
+		++n.count;
+	}
+
+
+	/**
+	 * Split an overflowing node in half, moving the upper half to a new page
+	 * @param page The (pinned) page to split
+	 */
+	private void split(Page page) {
+		BTreeNode left = (BTreeNode) page.data;
+		int rightNo = newNode(left.leaf);
+		Page rightPage = this.pool.pin(this,rightNo);
+		BTreeNode right = (BTreeNode) rightPage.data;
+		int mid = left.count / 2;
+
+		if (left.leaf) {
+			right.count = left.count - mid;
+			System.arraycopy(left.keys,mid,right.keys,0,right.count);
+			System.arraycopy(left.values,mid,right.values,0,right.count);
+			this.splitKey = right.keys[0];
+
+			//Link the new leaf into the chain
+			right.next = left.next;
+			right.prev = page.pageNo;
+			if (left.next >= 0) {
+				Page nextPage = this.pool.fetch(this,left.next);
+				((BTreeNode) nextPage.data).prev = rightNo;
+				nextPage.dirty = true;
+			}
+			left.next = rightNo;
+		} else {
+			//Middle key moves up instead of into the right node
+			right.count = left.count - mid - 1;
+			System.arraycopy(left.keys,mid+1,right.keys,0,right.count);
+			System.arraycopy(left.values,mid+1,right.values,0,right.count+1);
+			this.splitKey = left.keys[mid];
+		}
+
+		Arrays.fill(left.keys,mid,left.keys.length,null);
+		left.count = mid;
+		this.splitPage = rightNo;
+		rightPage.dirty = true;
+		this.pool.unpin(rightPage);
+	}
+
+
+	/**
+	 * Allocate a new, empty node
+	 * @param leaf True to create a leaf node
+	 * @return The page number of the node
+	 */
+	private int newNode(boolean leaf) {
+		int pageNo = this.pages++;
+		if (pageNo >= this.resident.length) {
+			this.resident = Arrays.copyOf(this.resident,this.resident.length*2);
+		}
+
+		Page page = this.pool.fetch(this,pageNo);
+		((BTreeNode) page.data).leaf = leaf;
+		page.dirty = true;
+		return pageNo;
+	}
+
+
+
+	//========== Called by the Buffer Pool ==========
+
+	/**
+	 * Get a page if it is held by the buffer pool
+	 */
+	Page resident(int pageNo) {
+		return this.resident[pageNo];
+	}
+
+
+	/**
+	 * Record that a page was loaded into (or evicted from) the buffer pool
+	 */
+	void setResident(int pageNo, Page page) {
+		this.resident[pageNo] = page;
+	}
+
+
+	/**
+	 * Load a node from the page file
+	 * @param pageNo The page to load
+	 * @return The node stored in the page
+	 */
+	Object loadPage(int pageNo) {
+		byte[] data = this.file.read(pageNo);
+		if (data == null) {return new BTreeNode(this.fanout); /* Never written */}
+
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+			return (BTreeNode) in.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),new InvalidClassException(ex.getMessage()));
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),ex);
+		}
+	}
+
+
+	/**
+	 * Write a changed node back to the page file
+	 * @param page The page to write
+	 */
+	void storePage(Page page) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(page.data);
+			out.close();
+			this.file.write(page.pageNo,bytes.toByteArray());
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),ex);
+		}
+		page.dirty = false;
+	}
+}
@@ -0,0 +1,215 @@
+package jbase.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+
+/**
+ * Bounded cache of pages shared by all paged columns and indexes in a database.
+ *  When the pool is full, a page is evicted using the CLOCK algorithm,
+ *   and written back to its page file if it has changed.
+ *
+ * @author Bryan McClain
+ */
+public class BufferPool {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private Page[] frames;			// Pages currently held in memory
+	private final Set<PageOwner> owners;	// Every open column or index using the pool
+	private int hand;				// Current position of the CLOCK hand
+	private long hits;				// Number of fetches served from memory
+	private long misses;			// Number of fetches that had to load a page
+
+
+	/**
+	 * Construct a new buffer pool
+	 * @param capacity Maximum number of pages held in memory
+	 */
+	public BufferPool(int capacity) {
+		this.frames = new Page[Math.max(capacity,1)];
+		this.owners = Collections.newSetFromMap(new IdentityHashMap<PageOwner,Boolean>());
+		this.hand = 0;
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+
+	/**
+	 * Get the maximum number of pages held in memory
+	 * @return Capacity
+	 */
+	public synchronized int getCapacity() {
+		return this.frames.length;
+	}
+
+
+	/**
+	 * Change the maximum number of pages held in memory.
+	 *  If the pool shrinks, pages are evicted until the rest fit.
+	 *
+	 * @param capacity The new capacity
+	 */
+	public synchronized void setCapacity(int capacity) {
+		capacity = Math.max(capacity,1);
+
+		int used = 0;
+		for (Page page : this.frames) {
+			if (page != null) {++used;}
+		}
+		for (; used > capacity; --used) {
+			evict(false);
+		}
+
+		//Move the remaining pages into the new frames (pinned pages always stay)
+		ArrayList<Page> remaining = new ArrayList<Page>();
+		for (Page page : this.frames) {
+			if (page != null) {remaining.add(page);}
+		}
+		Page[] newFrames = remaining.toArray(new Page[Math.max(capacity,remaining.size())]);
+		this.frames = newFrames;
+		this.hand = 0;
+	}
+
+
+	/**
+	 * Get the number of fetches served from memory
+	 * @return Hits
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+
+	/**
+	 * Get the number of fetches that had to load a page
+	 * @return Misses
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+
+	/**
+	 * Get a page from a paged column or index, loading it into the pool if needed
+	 *
+	 * @param store The column or index to read from
+	 * @param pageNo The page to fetch
+	 * @return The page
+	 */
+	synchronized Page fetch(PageOwner store, int pageNo) {
+		Page page = store.resident(pageNo);
+		if (page != null) {
+			page.referenced = true;
+			++this.hits;
+			return page;
+		}
+
+		++this.misses;
+		int frame = evict(true);
+		page = new Page(store,pageNo,store.loadPage(pageNo));
+		this.frames[frame] = page;
+		store.setResident(pageNo,page);
+		return page;
+	}
+
+
+	/**
+	 * Fetch a page, and keep it in memory until it is unpinned.
+	 *  Used when a page will be changed after other pages are fetched.
+	 *
+	 * @param store The column or index to read from
+	 * @param pageNo The page to fetch
+	 * @return The pinned page
+	 */
+	synchronized Page pin(PageOwner store, int pageNo) {
+		Page page = fetch(store,pageNo);
+		++page.pins;
+		return page;
+	}
+
+
+	/**
+	 * Allow a pinned page to be evicted again
+	 * @param page The page to unpin
+	 */
+	synchronized void unpin(Page page) {
+		--page.pins;
+	}
+
+
+	/**
+	 * Close every column and index using this pool, deleting their page files.
+	 *  Used when the database is discarded before its fields can be closed one by one
+	 *   (for example, a snapshot that failed halfway through loading).
+	 */
+	public void closeAll() {
+		PageOwner[] all;
+		synchronized (this) {
+			all = this.owners.toArray(new PageOwner[this.owners.size()]);
+		}
+		for (PageOwner owner : all) {owner.close();}
+	}
+
+
+	/**
+	 * Record a new column or index using this pool
+	 * @param store The column or index that was opened
+	 */
+	synchronized void register(PageOwner store) {
+		this.owners.add(store);
+	}
+
+
+	/**
+	 * Remove every page owned by a column or index from the pool, without writing them back
+	 * @param store The column or index being closed
+	 */
+	synchronized void release(PageOwner store) {
+		this.owners.remove(store);
+		for (int i = 0; i < this.frames.length; ++i) {
+			if (this.frames[i] != null && this.frames[i].owner == store) {
+				this.frames[i] = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Find a free frame, evicting a page if the pool is full
+	 * @param useEmpty If true, an empty frame can be returned without evicting anything
+	 * @return The free frame
+	 */
+	private int evict(boolean useEmpty) {
+		for (int tries = 0; ; ++tries) {
+
+			//Every page is pinned, so temporarily grow the pool
+			if (tries > 2 * this.frames.length) {
+				this.frames = Arrays.copyOf(this.frames,this.frames.length+1);
+				return this.frames.length - 1;
+			}
+
+			Page page = this.frames[this.hand];
+			int frame = this.hand;
+			this.hand = (this.hand + 1) % this.frames.length;
+
+			if (page == null) {
+				if (useEmpty) {return frame;}
+				continue;
+			}
+			if (page.pins > 0) {continue;}
+			if (page.referenced) {
+				page.referenced = false;	// Second chance
+				continue;
+			}
+
+			if (page.dirty) {page.owner.storePage(page);}
+			page.owner.setResident(page.pageNo,null);
+			this.frames[frame] = null;
+			return frame;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package jbase.storage;
+
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+
+/**
+ * Bounded cache of values with an estimated size, shared by the row cache and the query cache.
+ *  The cache holds at most a number of entries and a total weight (estimated bytes).
+ *   When either limit is reached, an entry is evicted using the CLOCK algorithm (like the BufferPool).
+ *
+ *  An optional test marks entries that are out of date: they are dropped the next time they
+ *   are looked up, and are evicted before any entry that is still current.
+ *
+ *  All methods are synchronized, so one cache can be shared by every thread using a database.
+ *
+ * @author Bryan McClain
+ */
+public class ClockCache<K,V> {
+
+	private final Object[] keys;			// Key of each slot (null = free)
+	private final Object[] values;			// Value of each slot
+	private final long[] weights;			// Weight of each slot
+	private final boolean[] referenced;		// Entry was used since the CLOCK hand last passed it
+	private final int[] free;				// Stack of free slots
+	private int freeCount;
+	private final HashMap<K,Integer> index;	// Slot of each key
+	private final Predicate<? super V> current;	// Test if a value is still current (null = always)
+	private final long maxWeight;
+	private int hand;						// Current position of the CLOCK hand
+	private long weight;					// Total weight of every entry
+
+	private long hits;						// Lookups served from the cache
+	private long misses;					// Lookups that found nothing
+	private long evictions;					// Entries evicted to make room
+	private long invalidations;				// Entries dropped because they were out of date
+
+
+	/**
+	 * Construct a new cache
+	 *
+	 * @param capacity Maximum number of entries
+	 * @param maxWeight Maximum total weight of all entries
+	 * @param current Test if a value is still current (null = values never go out of date)
+	 */
+	public ClockCache(int capacity, long maxWeight, Predicate<? super V> current) {
+		capacity = Math.max(capacity,1);
+		this.keys = new Object[capacity];
+		this.values = new Object[capacity];
+		this.weights = new long[capacity];
+		this.referenced = new boolean[capacity];
+		this.free = new int[capacity];
+		for (int i = 0; i < capacity; ++i) {this.free[i] = capacity - 1 - i;}
+		this.freeCount = capacity;
+		this.index = new HashMap<K,Integer>();
+		this.current = current;
+		this.maxWeight = Math.max(maxWeight,1);
+		this.hand = 0;
+		this.weight = 0;
+	}
+
+
+	/**
+	 * Get a cached value, dropping it if it is out of date
+	 * @param key The key to look up
+	 * @return The value, or null if it isn't cached
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized V get(K key) {
+		Integer slot = this.index.get(key);
+		if (slot == null) {
+			++this.misses;
+			return null;
+		}
+
+		V value = (V) this.values[slot];
+		if (this.current != null && !this.current.test(value)) {
+			remove(slot);
+			++this.invalidations;
+			++this.misses;
+			return null;
+		}
+
+		++this.hits;
+		this.referenced[slot] = true;
+		return value;
+	}
+
+
+	/**
+	 * Add a value to the cache (replacing any value with the same key), evicting entries until it fits.
+	 *  Values heavier than the whole cache are not added.
+	 *
+	 * @param key The key
+	 * @param value The value
+	 * @param weight Estimated size of the entry in bytes
+	 */
+	public synchronized void put(K key, V value, long weight) {
+		if (weight > this.maxWeight) {return;}
+
+		Integer old = this.index.get(key);
+		if (old != null) {remove(old);}
+
+		while (this.freeCount == 0 || this.weight + weight > this.maxWeight) {evict();}
+
+		int slot = this.free[--this.freeCount];
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.weights[slot] = weight;
+		this.referenced[slot] = false;
+		this.weight += weight;
+		this.index.put(key,slot);
+	}
+
+
+	/**
+	 * Drop an entry because it is out of date
+	 * @param key The key of the entry
+	 */
+	public synchronized void invalidate(K key) {
+		Integer slot = this.index.get(key);
+		if (slot == null) {return;}
+		remove(slot);
+		++this.invalidations;
+	}
+
+
+	/**
+	 * Drop every entry whose value matches a test, because they are out of date
+	 * @param test Test for the values to drop
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void invalidateIf(Predicate<? super V> test) {
+		for (int i = 0; i < this.keys.length; ++i) {
+			if (this.keys[i] != null && test.test((V) this.values[i])) {
+				remove(i);
+				++this.invalidations;
+			}
+		}
+	}
+
+
+	/**
+	 * Drop every entry
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < this.keys.length; ++i) {
+			if (this.keys[i] != null) {remove(i);}
+		}
+	}
+
+
+	/**
+	 * Get the maximum number of entries
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return this.keys.length;
+	}
+
+
+	/**
+	 * Get the maximum total weight of all entries
+	 * @return Bytes
+	 */
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+
+
+	/**
+	 * Get the number of entries currently cached
+	 * @return Entries
+	 */
+	public synchronized int size() {
+		return this.keys.length - this.freeCount;
+	}
+
+
+	/**
+	 * Get the total weight of every entry
+	 * @return Bytes
+	 */
+	public synchronized long getWeight() {
+		return this.weight;
+	}
+
+
+	/**
+	 * Get the number of lookups served from the cache
+	 * @return Hits
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+
+	/**
+	 * Get the number of lookups that found nothing (or an out of date entry)
+	 * @return Misses
+	 */
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+
+	/**
+	 * Get the number of entries evicted to make room for others
+	 * @return Evictions
+	 */
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+
+	/**
+	 * Get the number of entries dropped because they were out of date
+	 * @return Invalidations
+	 */
+	public synchronized long getInvalidations() {
+		return this.invalidations;
+	}
+
+
+
+	/**
+	 * Empty a slot and remove its key from the index
+	 */
+	private void remove(int slot) {
+		this.index.remove(this.keys[slot]);
+		this.weight -= this.weights[slot];
+		this.keys[slot] = null;
+		this.values[slot] = null;
+		this.referenced[slot] = false;
+		this.free[this.freeCount++] = slot;
+	}
+
+
+	/**
+	 * Evict one entry, giving entries that were used recently a second chance.
+	 *  Entries that are out of date are dropped first.
+	 */
+	@SuppressWarnings("unchecked")
+	private void evict() {
+		while (true) {
+			int slot = this.hand;
+			this.hand = (this.hand + 1) % this.keys.length;
+
+			if (this.keys[slot] == null) {continue;}
+			if (this.current != null && !this.current.test((V) this.values[slot])) {
+				remove(slot);
+				++this.invalidations;
+				return;
+			}
+			if (this.referenced[slot]) {
+				this.referenced[slot] = false;	// Second chance
+				continue;
+			}
+
+			remove(slot);
+			++this.evictions;
+			return;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package jbase.storage;
+
+
+/**
+ * Read-only access to every row of a single column.
+ *  Columns stored as fixed-width primitives (see getType()) can also be read a block at a time
+ *   into primitive arrays without boxing; other columns do the same by unboxing each value.
+ *
+ * @author Bryan McClain
+ */
+public interface ColumnReader<T> {
+
+	/**
+	 * Get the value stored at a given row
+	 * @param row The row to retrieve (must be less than the size)
+	 * @return The value stored at the row (can be null)
+	 */
+	public T get(int row);
+
+
+	/**
+	 * Get the number of rows in this column
+	 * @return Size
+	 */
+	public int size();
+
+
+	/**
+	 * Test if the rows are read from pages, so scans should read them in order from one thread
+	 * @return True if the column is paged
+	 */
+	public default boolean isPaged() {
+		return false;
+	}
+
+
+	/**
+	 * Get the fixed-width type of the values, if they are stored as primitives
+	 * @return Type, or null if the values are stored as objects
+	 */
+	public default FixedWidthType getType() {
+		return null;
+	}
+
+
+	/**
+	 * Test if the value at a given row is null
+	 * @param row The row to test
+	 * @return True if the row holds no value
+	 */
+	public default boolean isNull(int row) {
+		return get(row) == null;
+	}
+
+
+	/**
+	 * Get the value at a given row as a long
+	 * @param row The row to retrieve (must not be null)
+	 * @return The value
+	 */
+	public default long getLong(int row) {
+		return toLong(get(row));
+	}
+
+
+	/**
+	 * Get the value at a given row as a double
+	 * @param row The row to retrieve (must not be null)
+	 * @return The value
+	 */
+	public default double getDouble(int row) {
+		Object val = get(row);
+		return (val instanceof Number) ? ((Number) val).doubleValue() : toLong(val);
+	}
+
+
+	/**
+	 * Copy the non-null values in a block of rows into an array as longs
+	 *
+	 * @param from First row to read
+	 * @param to Row after the last row to read
+	 * @param out Destination for the values (must hold to - from values)
+	 * @return Number of non-null values copied
+	 */
+	public default int getLongs(int from, int to, long[] out) {
+		int n = 0;
+		for (int row = from; row < to; ++row) {
+			if (!isNull(row)) {out[n++] = getLong(row);}
+		}
+		return n;
+	}
+
+
+	/**
+	 * Copy the non-null values in a block of rows into an array as doubles
+	 *
+	 * @param from First row to read
+	 * @param to Row after the last row to read
+	 * @param out Destination for the values (must hold to - from values)
+	 * @return Number of non-null values copied
+	 */
+	public default int getDoubles(int from, int to, double[] out) {
+		int n = 0;
+		for (int row = from; row < to; ++row) {
+			if (!isNull(row)) {out[n++] = getDouble(row);}
+		}
+		return n;
+	}
+
+
+	/**
+	 * Wrap a column so it can only be read (the column can't be cast back to a store and changed)
+	 * @param column The column to wrap
+	 * @return Read-only view of the column
+	 */
+	public static <T> ColumnReader<T> readOnly(ColumnReader<T> column) {
+		return new ReadOnlyColumn<T>(column);
+	}
+
+
+	/**
+	 * Convert a number, boolean or character to a long (the same way as FixedWidthType)
+	 * @param val The value
+	 * @return Long value
+	 */
+	private static long toLong(Object val) {
+		if (val instanceof Boolean) {return ((Boolean) val) ? 1 : 0;}
+		if (val instanceof Character) {return (Character) val;}
+		return ((Number) val).longValue();
+	}
+}
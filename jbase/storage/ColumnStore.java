@@ -0,0 +1,42 @@
+package jbase.storage;
+
+
+/**
+ * Interface for the storage engine holding every row of a single column
+ * @author Bryan McClain
+ */
+public interface ColumnStore<T> extends ColumnReader<T> {
+
+	/**
+	 * Store a value at a given row
+	 * @param row The row to store (must be less than the size)
+	 * @param val The value to store (can be null)
+	 */
+	public void set(int row, T val);
+
+
+	/**
+	 * Grow the store to hold a new number of rows.
+	 *  New rows are initialized to null.
+	 *
+	 * @param depth The new number of rows
+	 */
+	public void resize(int depth);
+
+
+	/**
+	 * Release any resources (files, buffers) held by this store.
+	 *  The store cannot be used again after it is closed.
+	 */
+	public void close();
+
+
+	/**
+	 * Release the resources held by this store when its database is dropped.
+	 *  Unlike close(), memory that another thread may still be reading
+	 *   is left for the garbage collector to free.
+	 */
+	public default void release() {
+		close();
+	}
+}
@@ -0,0 +1,160 @@
+package jbase.storage;
+
+import jbase.JBaseAction;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Fixed-width data types that can be stored off the Java heap
+ * @author Bryan McClain
+ */
+public enum FixedWidthType {
+	BOOLEAN   (Boolean.class,   1),
+	BYTE      (Byte.class,      1),
+	SHORT     (Short.class,     2),
+	CHARACTER (Character.class, 2),
+	INTEGER   (Integer.class,   4),
+	FLOAT     (Float.class,     4),
+	LONG      (Long.class,      8),
+	DOUBLE    (Double.class,    8);
+
+
+	private final Class<?> type;	// Boxed Java type
+	private final int width;		// Number of bytes per value
+
+
+	/**
+	 * Construct a new FixedWidthType enumeration
+	 *
+	 * @param type The boxed Java type
+	 * @param width Number of bytes per value
+	 */
+	private FixedWidthType(Class<?> type, int width) {
+		this.type = type;
+		this.width = width;
+	}
+
+
+	/**
+	 * Get the boxed Java type
+	 * @return Type
+	 */
+	public Class<?> getType() {
+		return this.type;
+	}
+
+
+	/**
+	 * Get the number of bytes used by each value
+	 * @return Width
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+
+	/**
+	 * Test if this type holds whole numbers (as opposed to floating point or characters)
+	 * @return True for integral types
+	 */
+	public boolean isIntegral() {
+		return (this == BYTE || this == SHORT || this == INTEGER || this == LONG);
+	}
+
+
+	/**
+	 * Find the fixed-width type for a Java class
+	 * @param type The class to search for
+	 * @return The fixed-width type, or null if the class doesn't have a fixed width
+	 */
+	public static FixedWidthType forClass(Class<?> type) {
+		for (FixedWidthType t : values()) {
+			if (t.type == type) {return t;}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Read a boxed value from a buffer
+	 *
+	 * @param buf The buffer to read from
+	 * @param off Byte offset of the value
+	 * @return The boxed value
+	 */
+	public Object read(ByteBuffer buf, int off) {
+		if (this == BOOLEAN)   {return (buf.get(off) != 0);}
+		if (this == BYTE)      {return buf.get(off);}
+		if (this == SHORT)     {return buf.getShort(off);}
+		if (this == CHARACTER) {return buf.getChar(off);}
+		if (this == INTEGER)   {return buf.getInt(off);}
+		if (this == FLOAT)     {return buf.getFloat(off);}
+		if (this == LONG)      {return buf.getLong(off);}
+		return buf.getDouble(off);
+	}
+
+
+	/**
+	 * Write a boxed value to a buffer
+	 *
+	 * @param buf The buffer to write to
+	 * @param off Byte offset of the value
+	 * @param val The boxed value (must match this type)
+	 */
+	public void write(ByteBuffer buf, int off, Object val) {
+		if (this == BOOLEAN)        {buf.put(off,(byte) (((Boolean) val) ? 1 : 0));}
+		else if (this == BYTE)      {buf.put(off,(Byte) val);}
+		else if (this == SHORT)     {buf.putShort(off,(Short) val);}
+		else if (this == CHARACTER) {buf.putChar(off,(Character) val);}
+		else if (this == INTEGER)   {buf.putInt(off,(Integer) val);}
+		else if (this == FLOAT)     {buf.putFloat(off,(Float) val);}
+		else if (this == LONG)      {buf.putLong(off,(Long) val);}
+		else                        {buf.putDouble(off,(Double) val);}
+	}
+
+
+	/**
+	 * Read a value from a buffer as a long (without boxing)
+	 *
+	 * @param buf The buffer to read from
+	 * @param off Byte offset of the value
+	 * @return The value
+	 */
+	public long readLong(ByteBuffer buf, int off) {
+		if (this == BOOLEAN)   {return buf.get(off);}
+		if (this == BYTE)      {return buf.get(off);}
+		if (this == SHORT)     {return buf.getShort(off);}
+		if (this == CHARACTER) {return buf.getChar(off);}
+		if (this == INTEGER)   {return buf.getInt(off);}
+		if (this == FLOAT)     {return (long) buf.getFloat(off);}
+		if (this == LONG)      {return buf.getLong(off);}
+		return (long) buf.getDouble(off);
+	}
+
+
+	/**
+	 * Read a value from a buffer as a double (without boxing)
+	 *
+	 * @param buf The buffer to read from
+	 * @param off Byte offset of the value
+	 * @return The value
+	 */
+	public double readDouble(ByteBuffer buf, int off) {
+		if (this == FLOAT)  {return buf.getFloat(off);}
+		if (this == DOUBLE) {return buf.getDouble(off);}
+		return readLong(buf,off);
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
@@ -0,0 +1,327 @@
+package jbase.storage;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Value index that keeps every value in an open-addressing hash table.
+ *  Finding an exact value only compares the values that share its (cached) hash code,
+ *   so point lookups avoid the chain of compareTo() calls done by a tree.
+ *
+ *  Ordered operations (first, last, higher, lower) use a sorted view of the values,
+ *   which is only built when first needed, and thrown away whenever the index changes.
+ *
+ * @author Bryan McClain
+ */
+public class HashValueIndex<T extends Comparable<T>> implements ValueIndex<T> {
+
+	private static final Object DELETED = new Object();		// Marks a removed slot
+	private static final int MIN_CAPACITY = 16;
+
+	private Object[] keys;			// Values in each slot (null = empty)
+	private int[] hashes;			// Cached hash code for each slot
+	private int[] rows;				// Row for each slot
+	private int size;				// Number of values in the table
+	private int used;				// Number of slots in use (including removed slots)
+
+	private Object[] sortedKeys;	// Sorted view of the values (null = not built)
+	private int[] sortedRows;		// Rows for the sorted view
+
+
+	/**
+	 * Construct a new, empty hash index
+	 */
+	public HashValueIndex() {
+		allocate(MIN_CAPACITY);
+	}
+
+
+	/**
+	 * Find the row for a value
+	 * @param val The value to find
+	 * @return The row, or -1 if the value isn't in the index
+	 */
+	public int find(T val) {
+		int slot = slotOf(val,hash(val));
+		return (slot >= 0) ? this.rows[slot] : -1;
+	}
+
+
+	/**
+	 * Add a value to the index (replacing the row if it already exists)
+	 * @param val The value to add
+	 * @param row The row holding the value
+	 */
+	public void put(T val, int row) {
+		int h = hash(val);
+		int mask = this.keys.length - 1;
+		int free = -1;
+
+		for (int i = h & mask; ; i = (i + 1) & mask) {
+			Object key = this.keys[i];
+			if (key == null) {
+				if (free < 0) {free = i; ++this.used;}
+				break;
+			}
+			if (key == DELETED) {
+				if (free < 0) {free = i;}
+				continue;
+			}
+			if (this.hashes[i] == h && key.equals(val)) {
+				this.rows[i] = row;
+				this.sortedKeys = null;
+				return;
+			}
+		}
+
+		this.keys[free] = val;
+		this.hashes[free] = h;
+		this.rows[free] = row;
+		++this.size;
+		this.sortedKeys = null;
+
+		//Keep the table at most 3/4 full
+		if (this.used * 4 > this.keys.length * 3) {
+			rehash();
+		}
+	}
+
+
+	/**
+	 * Remove a value from the index
+	 * @param val The value to remove
+	 * @return True if the value was removed
+	 */
+	public boolean remove(T val) {
+		int slot = slotOf(val,hash(val));
+		if (slot < 0) {return false;}
+
+		this.keys[slot] = DELETED;
+		--this.size;
+		this.sortedKeys = null;
+		return true;
+	}
+
+
+	/**
+	 * Get the number of values in the index
+	 * @return Size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Get the row holding the smallest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int firstRow() {
+		return sortedRow(0);
+	}
+
+
+	/**
+	 * Get the row holding the largest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int lastRow() {
+		return sortedRow(this.size - 1);
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int higherRow(T val) {
+		int i = searchSorted(val);
+		return sortedRow((i >= 0) ? i+1 : -(i+1));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int lowerRow(T val) {
+		int i = searchSorted(val);
+		return sortedRow((i >= 0) ? i-1 : -(i+1)-1);
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int ceilingRow(T val) {
+		int i = searchSorted(val);
+		return sortedRow((i >= 0) ? i : -(i+1));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int floorRow(T val) {
+		int i = searchSorted(val);
+		return sortedRow((i >= 0) ? i : -(i+1)-1);
+	}
+
+
+	/**
+	 * Iterate over every value in ascending order, using the sorted view
+	 * @return Iterator of values to rows
+	 */
+	@SuppressWarnings("unchecked")
+	public Iterator<Map.Entry<T,Integer>> iterator() {
+		buildSorted();
+		ArrayList<Map.Entry<T,Integer>> entries = new ArrayList<Map.Entry<T,Integer>>(this.size);
+		for (int i = 0; i < this.sortedKeys.length; ++i) {
+			entries.add(new AbstractMap.SimpleImmutableEntry<T,Integer>((T) this.sortedKeys[i],this.sortedRows[i]));
+		}
+		return entries.iterator();
+	}
+
+
+	/**
+	 * Append a value while bulk loading
+	 * @param val The value to append
+	 * @param row The row holding the value
+	 */
+	public void bulkAppend(T val, int row) {
+		put(val,row);
+	}
+
+
+	/**
+	 * Finish bulk loading the index
+	 */
+	public void finishBulkLoad() {
+		/* Nothing to do */
+	}
+
+
+	/**
+	 * Release the values held by this index
+	 */
+	public void close() {
+		allocate(MIN_CAPACITY);
+		this.size = 0;
+		this.used = 0;
+		this.sortedKeys = null;
+	}
+
+
+
+	/**
+	 * Spread the bits of a hash code, so values that only differ in their upper bits don't collide
+	 */
+	private static int hash(Object val) {
+		int h = val.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * Find the slot holding a value
+	 * @return The slot, or -1 if the value isn't in the table
+	 */
+	private int slotOf(T val, int h) {
+		int mask = this.keys.length - 1;
+		for (int i = h & mask; ; i = (i + 1) & mask) {
+			Object key = this.keys[i];
+			if (key == null) {return -1;}
+			if (key != DELETED && this.hashes[i] == h && key.equals(val)) {return i;}
+		}
+	}
+
+
+	/**
+	 * Allocate empty slots for the table
+	 */
+	private void allocate(int capacity) {
+		this.keys = new Object[capacity];
+		this.hashes = new int[capacity];
+		this.rows = new int[capacity];
+	}
+
+
+	/**
+	 * Move every value into a new table, dropping removed slots.
+	 *  The table only grows if it is more than half full of live values.
+	 */
+	private void rehash() {
+		Object[] oldKeys = this.keys;
+		int[] oldHashes = this.hashes;
+		int[] oldRows = this.rows;
+
+		int capacity = oldKeys.length;
+		if (this.size * 2 > capacity) {capacity *= 2;}
+		allocate(capacity);
+
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; ++j) {
+			if (oldKeys[j] == null || oldKeys[j] == DELETED) {continue;}
+			int i = oldHashes[j] & mask;
+			while (this.keys[i] != null) {i = (i + 1) & mask;}
+			this.keys[i] = oldKeys[j];
+			this.hashes[i] = oldHashes[j];
+			this.rows[i] = oldRows[j];
+		}
+		this.used = this.size;
+	}
+
+
+	/**
+	 * Build the sorted view of the values, if it isn't already built
+	 */
+	@SuppressWarnings("unchecked")
+	private void buildSorted() {
+		if (this.sortedKeys != null) {return;}
+
+		Object[] sk = new Object[this.size];
+		int n = 0;
+		for (Object key : this.keys) {
+			if (key != null && key != DELETED) {sk[n++] = key;}
+		}
+		Arrays.sort(sk);
+
+		int[] sr = new int[sk.length];
+		for (int i = 0; i < sk.length; ++i) {
+			sr[i] = find((T) sk[i]);
+		}
+
+		this.sortedRows = sr;
+		this.sortedKeys = sk;
+	}
+
+
+	/**
+	 * Binary search for a value in the sorted view
+	 * @return The index of the value, or (-(insertion point) - 1) if not found
+	 */
+	private int searchSorted(T val) {
+		buildSorted();
+		return Arrays.binarySearch(this.sortedKeys,val);
+	}
+
+
+	/**
+	 * Get a row from the sorted view
+	 * @return The row, or -1 if the position is outside the view
+	 */
+	private int sortedRow(int i) {
+		buildSorted();
+		return (i >= 0 && i < this.sortedRows.length) ? this.sortedRows[i] : -1;
+	}
+}
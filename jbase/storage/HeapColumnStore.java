@@ -0,0 +1,70 @@
+package jbase.storage;
+
+import java.util.ArrayList;
+
+
+/**
+ * Column store that keeps every row on the Java heap
+ * @author Bryan McClain
+ */
+public class HeapColumnStore<T> implements ColumnStore<T> {
+
+	private ArrayList<T> values;
+
+
+	/**
+	 * Construct a new heap column store
+	 * @param depth Initial number of rows
+	 */
+	public HeapColumnStore(int depth) {
+		this.values = new ArrayList<T>(depth);
+		resize(depth);
+	}
+
+
+	/**
+	 * Get the value stored at a given row
+	 * @param row The row to retrieve
+	 * @return The value stored at the row (can be null)
+	 */
+	public T get(int row) {
+		return this.values.get(row);
+	}
+
+
+	/**
+	 * Store a value at a given row
+	 * @param row The row to store
+	 * @param val The value to store (can be null)
+	 */
+	public void set(int row, T val) {
+		this.values.set(row,val);
+	}
+
+
+	/**
+	 * Get the number of rows in this store
+	 * @return Size
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+
+	/**
+	 * Grow the store to hold a new number of rows
+	 * @param depth The new number of rows
+	 */
+	public void resize(int depth) {
+		this.values.ensureCapacity(depth);
+		while (this.values.size() < depth) {this.values.add(null);}
+	}
+
+
+	/**
+	 * Release the rows held by this store
+	 */
+	public void close() {
+		this.values = new ArrayList<T>();
+	}
+}
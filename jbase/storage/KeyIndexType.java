@@ -0,0 +1,48 @@
+package jbase.storage;
+
+import jbase.JBaseAction;
+
+import java.io.File;
+
+
+/**
+ * Data structure used by a key field to search for rows by value
+ * @author Bryan McClain
+ */
+public enum KeyIndexType {
+	TREE,		/* Red-black tree kept on the Java heap */
+	BTREE,		/* B+tree kept in file-backed pages, cached by the buffer pool */
+	HASH;		/* Hash table kept on the Java heap (fast exact lookups, slower iteration) */
+
+
+	/**
+	 * Construct a new, empty value index of this type
+	 *
+	 * @param pool The buffer pool used by paged indexes
+	 * @param directory Directory holding the page file for paged indexes
+	 * @param name The name of the key field
+	 * @param fanout Maximum number of keys in a B+tree node (ignored by other types)
+	 * @return The new value index
+	 */
+	public <T extends Comparable<T>> ValueIndex<T> newIndex(BufferPool pool, File directory, String name, int fanout) {
+		if (this == BTREE) {
+			return new BTreeValueIndex<T>(pool,directory,name,fanout);
+		}
+		if (this == HASH) {
+			return new HashValueIndex<T>();
+		}
+		return new TreeValueIndex<T>();
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
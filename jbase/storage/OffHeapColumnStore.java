@@ -0,0 +1,271 @@
+package jbase.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.lang.reflect.Method;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+
+/**
+ * Column store that keeps fixed-width values in direct buffers outside of the Java heap.
+ *  Rows are split into chunks, each with its own value buffer and null bitmap,
+ *   so the column can grow past 2 GB and the garbage collector never scans the values.
+ *
+ *  The buffers are freed as soon as the store is closed (when the field is deleted)
+ *   rather than waiting for the garbage collector. When the database is dropped,
+ *   they are left for the garbage collector, since another thread may still be reading them.
+ *
+ * @author Bryan McClain
+ */
+public class OffHeapColumnStore<T> implements ColumnStore<T> {
+
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+	private final FixedWidthType type;	// Type of every value in the column
+	private ByteBuffer[] values;		// Value buffer for each chunk
+	private ByteBuffer[] present;		// Bitmap of non-null rows for each chunk
+	private int depth;
+
+
+	/**
+	 * Construct a new off-heap column store
+	 *
+	 * @param type The fixed-width type stored in this column
+	 * @param depth Initial number of rows
+	 */
+	public OffHeapColumnStore(FixedWidthType type, int depth) {
+		this.type = type;
+		this.values = new ByteBuffer[0];
+		this.present = new ByteBuffer[0];
+		this.depth = 0;
+		resize(depth);
+	}
+
+
+	/**
+	 * Get the fixed-width type stored in this column
+	 * @return Fixed Width Type
+	 */
+	public FixedWidthType getType() {
+		return this.type;
+	}
+
+
+	/**
+	 * Get the value stored at a given row
+	 * @param row The row to retrieve
+	 * @return The value stored at the row (can be null)
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int row) {
+		if (isNull(row)) {return null;}
+		return (T) this.type.read(this.values[row >>> CHUNK_BITS], (row & CHUNK_MASK) * this.type.getWidth());
+	}
+
+
+	/**
+	 * Store a value at a given row
+	 * @param row The row to store
+	 * @param val The value to store (can be null)
+	 */
+	public void set(int row, T val) {
+		ByteBuffer bits = this.present[row >>> CHUNK_BITS];
+		int idx = row & CHUNK_MASK;
+		byte b = bits.get(idx >>> 3);
+
+		if (val == null) {
+			bits.put(idx >>> 3, (byte) (b & ~(1 << (idx & 7))));
+			return;
+		}
+
+		this.type.write(this.values[row >>> CHUNK_BITS], idx * this.type.getWidth(), val);
+		bits.put(idx >>> 3, (byte) (b | (1 << (idx & 7))));
+	}
+
+
+	/**
+	 * Test if the value at a given row is null
+	 * @param row The row to test
+	 * @return True if the row holds no value
+	 */
+	public boolean isNull(int row) {
+		int idx = row & CHUNK_MASK;
+		return (this.present[row >>> CHUNK_BITS].get(idx >>> 3) & (1 << (idx & 7))) == 0;
+	}
+
+
+	/**
+	 * Get the value at a given row as a long, without boxing it
+	 * @param row The row to retrieve (must not be null)
+	 * @return The value
+	 */
+	public long getLong(int row) {
+		return this.type.readLong(this.values[row >>> CHUNK_BITS], (row & CHUNK_MASK) * this.type.getWidth());
+	}
+
+
+	/**
+	 * Get the value at a given row as a double, without boxing it
+	 * @param row The row to retrieve (must not be null)
+	 * @return The value
+	 */
+	public double getDouble(int row) {
+		return this.type.readDouble(this.values[row >>> CHUNK_BITS], (row & CHUNK_MASK) * this.type.getWidth());
+	}
+
+
+	/**
+	 * Copy the non-null values in a block of rows into an array as longs.
+	 *  Reads each chunk directly, so aggregates can run over primitive arrays without boxing.
+	 *
+	 * @param from First row to read
+	 * @param to Row after the last row to read
+	 * @param out Destination for the values (must hold to - from values)
+	 * @return Number of non-null values copied
+	 */
+	public int getLongs(int from, int to, long[] out) {
+		int n = 0;
+		while (from < to) {
+			ByteBuffer vals = this.values[from >>> CHUNK_BITS];
+			ByteBuffer bits = this.present[from >>> CHUNK_BITS];
+			int end = Math.min(to,(from | CHUNK_MASK) + 1);
+
+			for (int row = from; row < end; ++row) {
+				int idx = row & CHUNK_MASK;
+				if ((bits.get(idx >>> 3) & (1 << (idx & 7))) == 0) {continue;}
+				if (this.type == FixedWidthType.LONG) {out[n++] = vals.getLong(idx << 3);}
+				else if (this.type == FixedWidthType.INTEGER) {out[n++] = vals.getInt(idx << 2);}
+				else {out[n++] = this.type.readLong(vals,idx * this.type.getWidth());}
+			}
+			from = end;
+		}
+		return n;
+	}
+
+
+	/**
+	 * Copy the non-null values in a block of rows into an array as doubles
+	 *
+	 * @param from First row to read
+	 * @param to Row after the last row to read
+	 * @param out Destination for the values (must hold to - from values)
+	 * @return Number of non-null values copied
+	 */
+	public int getDoubles(int from, int to, double[] out) {
+		int n = 0;
+		while (from < to) {
+			ByteBuffer vals = this.values[from >>> CHUNK_BITS];
+			ByteBuffer bits = this.present[from >>> CHUNK_BITS];
+			int end = Math.min(to,(from | CHUNK_MASK) + 1);
+
+			for (int row = from; row < end; ++row) {
+				int idx = row & CHUNK_MASK;
+				if ((bits.get(idx >>> 3) & (1 << (idx & 7))) == 0) {continue;}
+				if (this.type == FixedWidthType.DOUBLE) {out[n++] = vals.getDouble(idx << 3);}
+				else {out[n++] = this.type.readDouble(vals,idx * this.type.getWidth());}
+			}
+			from = end;
+		}
+		return n;
+	}
+
+
+	/**
+	 * Get the number of rows in this store
+	 * @return Size
+	 */
+	public int size() {
+		return this.depth;
+	}
+
+
+	/**
+	 * Grow the store to hold a new number of rows
+	 * @param depth The new number of rows
+	 */
+	public void resize(int depth) {
+		int chunks = (depth + CHUNK_ROWS - 1) >>> CHUNK_BITS;
+		int oldChunks = this.values.length;
+		if (chunks > oldChunks) {
+			this.values = Arrays.copyOf(this.values,chunks);
+			this.present = Arrays.copyOf(this.present,chunks);
+			for (int i = oldChunks; i < chunks; ++i) {
+				this.values[i] = ByteBuffer.allocateDirect(CHUNK_ROWS * this.type.getWidth()).order(ByteOrder.nativeOrder());
+				this.present[i] = ByteBuffer.allocateDirect(CHUNK_ROWS / 8);
+			}
+		}
+		this.depth = Math.max(this.depth,depth);
+	}
+
+
+	/**
+	 * Get the number of bytes allocated outside of the heap
+	 * @return Size in bytes
+	 */
+	public long offHeapSize() {
+		return (long) this.values.length * (CHUNK_ROWS * this.type.getWidth() + CHUNK_ROWS / 8);
+	}
+
+
+	/**
+	 * Free every buffer held by this store
+	 */
+	public void close() {
+		for (ByteBuffer buf : this.values) {free(buf);}
+		for (ByteBuffer buf : this.present) {free(buf);}
+		release();
+	}
+
+
+	/**
+	 * Drop every buffer held by this store, without freeing them right away
+	 */
+	@Override
+	public void release() {
+		this.values = new ByteBuffer[0];
+		this.present = new ByteBuffer[0];
+		this.depth = 0;
+	}
+
+
+	//========== Freeing Direct Buffers ==========
+
+	private static final Object UNSAFE;				// sun.misc.Unsafe (if available)
+	private static final Method INVOKE_CLEANER;		// Unsafe.invokeCleaner(ByteBuffer)
+
+	static {
+		Object unsafe = null;
+		Method cleaner = null;
+		try {
+			Class<?> cls = Class.forName("sun.misc.Unsafe");
+			Field f = cls.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+			cleaner = cls.getMethod("invokeCleaner",ByteBuffer.class);
+		} catch (Exception ex) {
+			unsafe = null;		// Fall back to the garbage collector
+			cleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = cleaner;
+	}
+
+
+	/**
+	 * Free the native memory behind a direct buffer right away.
+	 *  If the JVM doesn't allow this, the memory is freed by the garbage collector instead.
+	 *
+	 * @param buf The buffer to free
+	 */
+	private static void free(ByteBuffer buf) {
+		if (INVOKE_CLEANER == null) {return;}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE,buf);
+		} catch (Exception ex) {
+			/* Left for the garbage collector */
+		}
+	}
+}
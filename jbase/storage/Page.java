@@ -0,0 +1,33 @@
+package jbase.storage;
+
+
+/**
+ * A single page (column rows or index node), as cached by the buffer pool
+ * @author Bryan McClain
+ */
+class Page {
+
+	final PageOwner owner;		// Column or index that owns this page
+	final int pageNo;			// Page number inside the owner
+	final Object data;			// Data stored in the page
+	boolean dirty;				// Page has changed since it was loaded
+	boolean referenced;			// Used recently (CLOCK reference bit)
+	int pins;					// Number of users that need the page to stay in memory
+
+
+	/**
+	 * Construct a new page
+	 *
+	 * @param owner The column or index that owns this page
+	 * @param pageNo The page number inside the owner
+	 * @param data Data stored in the page
+	 */
+	Page(PageOwner owner, int pageNo, Object data) {
+		this.owner = owner;
+		this.pageNo = pageNo;
+		this.data = data;
+		this.dirty = false;
+		this.referenced = true;
+		this.pins = 0;
+	}
+}
@@ -0,0 +1,142 @@
+package jbase.storage;
+
+import jbase.exception.JBaseIOException;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * File holding variable sized pages.
+ *  Pages are rewritten in place when they still fit in their slot,
+ *   otherwise they are moved to the end of the file.
+ *
+ * @author Bryan McClain
+ */
+public class PageFile {
+
+	private final File file;
+	private RandomAccessFile raf;
+	private long[] offsets;			// Offset of each page in the file (-1 = never written)
+	private int[] lengths;			// Length of each page
+	private int[] capacities;		// Space reserved for each page
+	private long end;				// End of the file
+
+
+	/**
+	 * Create a new temporary page file
+	 *
+	 * @param directory Directory to create the file in
+	 * @param prefix Prefix for the file name
+	 * @throws JBaseIOException Unable to create the file
+	 */
+	public PageFile(File directory, String prefix) throws JBaseIOException {
+		try {
+			this.file = File.createTempFile(prefix + "-", ".pages", directory);
+			this.file.deleteOnExit();
+			this.raf = new RandomAccessFile(this.file,"rw");
+		} catch (IOException ex) {
+			throw new JBaseIOException(String.valueOf(directory),ex);
+		}
+
+		this.offsets = new long[0];
+		this.lengths = new int[0];
+		this.capacities = new int[0];
+		this.end = 0;
+	}
+
+
+	/**
+	 * Get the file on disk
+	 * @return File
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+
+	/**
+	 * Get the number of bytes used by the file on disk
+	 * @return Size in bytes
+	 */
+	public long length() {
+		return this.end;
+	}
+
+
+	/**
+	 * Read a page from the file
+	 * @param page The page number
+	 * @return The page data, or null if the page was never written
+	 * @throws JBaseIOException Problem reading the file
+	 */
+	public byte[] read(int page) throws JBaseIOException {
+		if (page >= this.offsets.length || this.offsets[page] < 0) {return null;}
+
+		byte[] data = new byte[this.lengths[page]];
+		try {
+			this.raf.seek(this.offsets[page]);
+			this.raf.readFully(data);
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getPath(),ex);
+		}
+		return data;
+	}
+
+
+	/**
+	 * Write a page to the file
+	 * @param page The page number
+	 * @param data The page data
+	 * @throws JBaseIOException Problem writing the file
+	 */
+	public void write(int page, byte[] data) throws JBaseIOException {
+		ensurePages(page+1);
+
+		//Move the page to the end if it doesn't fit
+		if (this.offsets[page] < 0 || this.capacities[page] < data.length) {
+			this.offsets[page] = this.end;
+			this.capacities[page] = data.length + (data.length >>> 2);
+			this.end += this.capacities[page];
+		}
+
+		try {
+			this.raf.seek(this.offsets[page]);
+			this.raf.write(data);
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getPath(),ex);
+		}
+		this.lengths[page] = data.length;
+	}
+
+
+	/**
+	 * Close and delete the file
+	 */
+	public void close() {
+		try {
+			this.raf.close();
+		} catch (IOException ex) {
+			/* Nothing else to do */
+		}
+		this.file.delete();
+	}
+
+
+	/**
+	 * Make sure the page table can hold a given number of pages
+	 * @param count Number of pages
+	 */
+	private void ensurePages(int count) {
+		if (count <= this.offsets.length) {return;}
+
+		int oldCount = this.offsets.length;
+		int newCount = Math.max(count, oldCount * 2);
+		this.offsets = Arrays.copyOf(this.offsets,newCount);
+		this.lengths = Arrays.copyOf(this.lengths,newCount);
+		this.capacities = Arrays.copyOf(this.capacities,newCount);
+		Arrays.fill(this.offsets,oldCount,newCount,-1);
+	}
+}
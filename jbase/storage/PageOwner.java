@@ -0,0 +1,45 @@
+package jbase.storage;
+
+
+/**
+ * Base class for anything that keeps its pages in the buffer pool
+ * @author Bryan McClain
+ */
+abstract class PageOwner {
+
+	/**
+	 * Get a page if it is held by the buffer pool
+	 * @param pageNo The page number
+	 * @return The page, or null if it is only on disk
+	 */
+	abstract Page resident(int pageNo);
+
+
+	/**
+	 * Record that a page was loaded into (or evicted from) the buffer pool
+	 * @param pageNo The page number
+	 * @param page The page, or null if it was evicted
+	 */
+	abstract void setResident(int pageNo, Page page);
+
+
+	/**
+	 * Load the data for a page from disk
+	 * @param pageNo The page to load
+	 * @return The data stored in the page
+	 */
+	abstract Object loadPage(int pageNo);
+
+
+	/**
+	 * Write a changed page back to disk
+	 * @param page The page to write
+	 */
+	abstract void storePage(Page page);
+
+
+	/**
+	 * Remove every page from the buffer pool, and delete the page file
+	 */
+	abstract void close();
+}
@@ -0,0 +1,180 @@
+package jbase.storage;
+
+import jbase.exception.JBaseIOException;
+
+import java.io.*;
+import java.util.Arrays;
+
+
+/**
+ * Column store that keeps its rows in pages inside a file on disk.
+ *  Only the pages held by the buffer pool live on the Java heap,
+ *   so a column can be much larger than the heap.
+ *
+ * @author Bryan McClain
+ */
+public class PagedColumnStore<T> extends PageOwner implements ColumnStore<T> {
+
+	public static final int ROWS_PER_PAGE = 1024;
+
+	private final BufferPool pool;		// Pool caching the pages
+	private final PageFile file;		// File holding the pages
+	private Page[] resident;			// Pages currently in the pool (null = on disk)
+	private int depth;
+	private boolean closed;
+
+
+	/**
+	 * Construct a new paged column store
+	 *
+	 * @param pool The buffer pool caching the pages
+	 * @param directory Directory to hold the page file
+	 * @param name Name of the column (used to name the page file)
+	 * @param depth Initial number of rows
+	 * @throws JBaseIOException Unable to create the page file
+	 */
+	public PagedColumnStore(BufferPool pool, File directory, String name, int depth) throws JBaseIOException {
+		this.pool = pool;
+		this.file = new PageFile(directory,"jbase-"+name.replaceAll("[^A-Za-z0-9]","_"));
+		this.resident = new Page[0];
+		this.depth = 0;
+		this.closed = false;
+		pool.register(this);
+		resize(depth);
+	}
+
+
+	/**
+	 * Get the value stored at a given row
+	 * @param row The row to retrieve
+	 * @return The value stored at the row (can be null)
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int row) {
+		Page page = this.pool.fetch(this, row / ROWS_PER_PAGE);
+		return (T) ((Object[]) page.data)[row % ROWS_PER_PAGE];
+	}
+
+
+	/**
+	 * Store a value at a given row
+	 * @param row The row to store
+	 * @param val The value to store (can be null)
+	 */
+	public void set(int row, T val) {
+		Page page = this.pool.fetch(this, row / ROWS_PER_PAGE);
+		((Object[]) page.data)[row % ROWS_PER_PAGE] = val;
+		page.dirty = true;
+	}
+
+
+	/**
+	 * Get the number of rows in this store
+	 * @return Size
+	 */
+	public int size() {
+		return this.depth;
+	}
+
+
+	/**
+	 * Test if the rows are read from pages (always true)
+	 * @return True
+	 */
+	public boolean isPaged() {
+		return true;
+	}
+
+
+	/**
+	 * Grow the store to hold a new number of rows.
+	 *  Pages that have never been written take no space on disk.
+	 *
+	 * @param depth The new number of rows
+	 */
+	public void resize(int depth) {
+		int pages = (depth + ROWS_PER_PAGE - 1) / ROWS_PER_PAGE;
+		if (pages > this.resident.length) {
+			this.resident = Arrays.copyOf(this.resident,pages);
+		}
+		this.depth = Math.max(this.depth,depth);
+	}
+
+
+	/**
+	 * Get the number of bytes used on disk by this column
+	 * @return Size in bytes
+	 */
+	public long diskSize() {
+		return this.file.length();
+	}
+
+
+	/**
+	 * Remove all pages from the buffer pool, and delete the page file
+	 */
+	public void close() {
+		if (this.closed) {return;}
+		this.closed = true;
+
+		this.pool.release(this);
+		this.resident = new Page[0];
+		this.file.close();
+	}
+
+
+	//========== Called by the Buffer Pool ==========
+
+	/**
+	 * Get a page if it is held by the buffer pool
+	 */
+	Page resident(int pageNo) {
+		return this.resident[pageNo];
+	}
+
+
+	/**
+	 * Record that a page was loaded into (or evicted from) the buffer pool
+	 */
+	void setResident(int pageNo, Page page) {
+		this.resident[pageNo] = page;
+	}
+
+
+	/**
+	 * Load the rows for a page from the page file
+	 * @param pageNo The page to load
+	 * @return The rows in the page
+	 */
+	Object loadPage(int pageNo) {
+		byte[] data = this.file.read(pageNo);
+		if (data == null) {return new Object[ROWS_PER_PAGE]; /* Never written */}
+
+		try {
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+			return (Object[]) in.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),new InvalidClassException(ex.getMessage()));
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),ex);
+		}
+	}
+
+
+	/**
+	 * Write a changed page back to the page file
+	 * @param page The page to write
+	 */
+	void storePage(Page page) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(page.data);
+			out.close();
+			this.file.write(page.pageNo,bytes.toByteArray());
+		} catch (IOException ex) {
+			throw new JBaseIOException(this.file.getFile().getPath(),ex);
+		}
+		page.dirty = false;
+	}
+}
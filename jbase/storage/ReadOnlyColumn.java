@@ -0,0 +1,57 @@
+package jbase.storage;
+
+
+/**
+ * Read-only view of a column store, handed out by Field.reader().
+ *  Every method reads straight through to the wrapped column.
+ * @author Bryan McClain
+ */
+final class ReadOnlyColumn<T> implements ColumnReader<T> {
+
+	private final ColumnReader<T> column;
+
+
+	/**
+	 * Construct a new read-only view
+	 * @param column The column to wrap
+	 */
+	ReadOnlyColumn(ColumnReader<T> column) {
+		this.column = column;
+	}
+
+	public T get(int row) {
+		return this.column.get(row);
+	}
+
+	public int size() {
+		return this.column.size();
+	}
+
+	public boolean isPaged() {
+		return this.column.isPaged();
+	}
+
+	public FixedWidthType getType() {
+		return this.column.getType();
+	}
+
+	public boolean isNull(int row) {
+		return this.column.isNull(row);
+	}
+
+	public long getLong(int row) {
+		return this.column.getLong(row);
+	}
+
+	public double getDouble(int row) {
+		return this.column.getDouble(row);
+	}
+
+	public int getLongs(int from, int to, long[] out) {
+		return this.column.getLongs(from,to,out);
+	}
+
+	public int getDoubles(int from, int to, double[] out) {
+		return this.column.getDoubles(from,to,out);
+	}
+}
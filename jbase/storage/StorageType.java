@@ -0,0 +1,60 @@
+package jbase.storage;
+
+import jbase.JBaseAction;
+
+import java.io.File;
+
+
+/**
+ * Storage engine used to hold the rows of a field
+ * @author Bryan McClain
+ */
+public enum StorageType {
+	HEAP,		/* Every row is kept on the Java heap */
+	PAGED,		/* Rows are kept in file-backed pages, cached by the buffer pool */
+	OFF_HEAP;	/* Fixed-width rows are kept in direct buffers outside of the heap */
+
+
+	/**
+	 * Test if this storage engine can hold values of a given type
+	 * @param type The type of data stored in the field (null = unknown)
+	 * @return True if the type is supported
+	 */
+	public boolean supports(Class<?> type) {
+		if (this == OFF_HEAP) {return (type != null && FixedWidthType.forClass(type) != null);}
+		return true;
+	}
+
+
+	/**
+	 * Construct a new column store using this storage engine
+	 *
+	 * @param pool The buffer pool used by paged stores
+	 * @param directory Directory holding the page file for paged stores
+	 * @param name The name of the column
+	 * @param type The type of data stored in the column (must be supported)
+	 * @param depth Initial number of rows
+	 * @return The new column store
+	 */
+	public <T> ColumnStore<T> newStore(BufferPool pool, File directory, String name, Class<?> type, int depth) {
+		if (this == PAGED) {
+			return new PagedColumnStore<T>(pool,directory,name,depth);
+		}
+		if (this == OFF_HEAP) {
+			return new OffHeapColumnStore<T>(FixedWidthType.forClass(type),depth);
+		}
+		return new HeapColumnStore<T>(depth);
+	}
+
+
+	/**
+	 * Convert this enum constant to a camel-case string.
+	 *  Underscores _ are replaced with spaces
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return JBaseAction.enumToString(this);
+	}
+}
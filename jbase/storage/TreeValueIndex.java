@@ -0,0 +1,165 @@
+package jbase.storage;
+
+import java.util.TreeMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+
+/**
+ * Value index that keeps every value in a red-black tree on the Java heap
+ * @author Bryan McClain
+ */
+public class TreeValueIndex<T extends Comparable<T>> implements ValueIndex<T> {
+
+	private TreeMap<T,Integer> map;
+
+
+	/**
+	 * Construct a new, empty tree index
+	 */
+	public TreeValueIndex() {
+		this.map = new TreeMap<T,Integer>();
+	}
+
+
+	/**
+	 * Find the row for a value
+	 * @param val The value to find
+	 * @return The row, or -1 if the value isn't in the index
+	 */
+	public int find(T val) {
+		Integer row = this.map.get(val);
+		return (row == null) ? -1 : row;
+	}
+
+
+	/**
+	 * Add a value to the index
+	 * @param val The value to add
+	 * @param row The row holding the value
+	 */
+	public void put(T val, int row) {
+		this.map.put(val,row);
+	}
+
+
+	/**
+	 * Remove a value from the index
+	 * @param val The value to remove
+	 * @return True if the value was removed
+	 */
+	public boolean remove(T val) {
+		return (this.map.remove(val) != null);
+	}
+
+
+	/**
+	 * Get the number of values in the index
+	 * @return Size
+	 */
+	public int size() {
+		return this.map.size();
+	}
+
+
+	/**
+	 * Get the row holding the smallest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int firstRow() {
+		return rowOf(this.map.firstEntry());
+	}
+
+
+	/**
+	 * Get the row holding the largest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int lastRow() {
+		return rowOf(this.map.lastEntry());
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int higherRow(T val) {
+		return rowOf(this.map.higherEntry(val));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int lowerRow(T val) {
+		return rowOf(this.map.lowerEntry(val));
+	}
+
+
+	/**
+	 * Get the row holding the smallest value greater than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int ceilingRow(T val) {
+		return rowOf(this.map.ceilingEntry(val));
+	}
+
+
+	/**
+	 * Get the row holding the largest value less than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int floorRow(T val) {
+		return rowOf(this.map.floorEntry(val));
+	}
+
+
+	/**
+	 * Iterate over every value in ascending order
+	 * @return Iterator of values to rows
+	 */
+	public Iterator<Map.Entry<T,Integer>> iterator() {
+		return this.map.entrySet().iterator();
+	}
+
+
+	/**
+	 * Append a value while bulk loading
+	 * @param val The value to append
+	 * @param row The row holding the value
+	 */
+	public void bulkAppend(T val, int row) {
+		this.map.put(val,row);
+	}
+
+
+	/**
+	 * Finish bulk loading the index
+	 */
+	public void finishBulkLoad() {
+		/* Nothing to do */
+	}
+
+
+	/**
+	 * Release the values held by this index
+	 */
+	public void close() {
+		this.map = new TreeMap<T,Integer>();
+	}
+
+
+	/**
+	 * Get the row from a map entry
+	 */
+	private static int rowOf(Entry<?,Integer> entry) {
+		return (entry == null) ? -1 : entry.getValue();
+	}
+}
@@ -0,0 +1,117 @@
+package jbase.storage;
+
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Interface for the index that maps each unique value in a key field to its row
+ * @author Bryan McClain
+ */
+public interface ValueIndex<T> {
+
+	/**
+	 * Find the row for a value
+	 * @param val The value to find
+	 * @return The row, or -1 if the value isn't in the index
+	 */
+	public int find(T val);
+
+
+	/**
+	 * Add a value to the index (replacing the row if it already exists)
+	 * @param val The value to add
+	 * @param row The row holding the value
+	 */
+	public void put(T val, int row);
+
+
+	/**
+	 * Remove a value from the index
+	 * @param val The value to remove
+	 * @return True if the value was removed, false if it wasn't in the index
+	 */
+	public boolean remove(T val);
+
+
+	/**
+	 * Get the number of values in the index
+	 * @return Size
+	 */
+	public int size();
+
+
+	/**
+	 * Get the row holding the smallest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int firstRow();
+
+
+	/**
+	 * Get the row holding the largest value
+	 * @return The row, or -1 if the index is empty
+	 */
+	public int lastRow();
+
+
+	/**
+	 * Get the row holding the smallest value strictly greater than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int higherRow(T val);
+
+
+	/**
+	 * Get the row holding the largest value strictly less than the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int lowerRow(T val);
+
+
+	/**
+	 * Get the row holding the smallest value greater than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int ceilingRow(T val);
+
+
+	/**
+	 * Get the row holding the largest value less than or equal to the given value
+	 * @param val The value to search from
+	 * @return The row, or -1 if no such value exists
+	 */
+	public int floorRow(T val);
+
+
+	/**
+	 * Iterate over every value (and its row) in ascending order
+	 * @return Iterator of values to rows
+	 */
+	public Iterator<Map.Entry<T,Integer>> iterator();
+
+
+	/**
+	 * Append a value while bulk loading an empty index.
+	 *  Values must be appended in strictly ascending order.
+	 *
+	 * @param val The value to append
+	 * @param row The row holding the value
+	 */
+	public void bulkAppend(T val, int row);
+
+
+	/**
+	 * Finish bulk loading the index
+	 */
+	public void finishBulkLoad();
+
+
+	/**
+	 * Release any resources (files, pages) held by this index
+	 */
+	public void close();
+}
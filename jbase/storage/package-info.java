@@ -0,0 +1,5 @@
+/**
+ * Storage engines used to hold the rows of a field, either on the Java heap
+ *  or in file-backed pages cached by a bounded buffer pool.
+ */
+package jbase.storage;
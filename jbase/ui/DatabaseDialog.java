@@ -38,6 +38,7 @@ public class DatabaseDialog implements JBaseDialog {
 		System.out.println("\n=== "+this.db.getDBName()+" (User: "+this.db.currentUser()+") ===");
 		System.out.println(" F - Fields Menu");
 		System.out.println(" U - Users Menu");
+		System.out.println(" M - View Metrics");
 		System.out.println(" S - Save Database");
 		System.out.println(" R - Restore Database");
 		System.out.println(" D - Drop Database");
@@ -52,6 +53,7 @@ public class DatabaseDialog implements JBaseDialog {
 				case "Q": return false;
 				case "F": (new SelectKeyDialog(this.db)).showDialog(); break;
 				case "U": (new UserDialog(this.db)).showDialog(); break;
+				case "M": viewMetrics(); continue;
 				case "S": saveDatabase(); continue;
 				case "R": if (restoreDatabase()) {return false;} else {continue;}
 				case "D": if (dropDatabase()) {return false;} else {continue;}
@@ -68,6 +70,18 @@ public class DatabaseDialog implements JBaseDialog {
 
 
 
+	/**
+	 * Print the call counts, errors and latencies for every field
+	 */
+	private void viewMetrics() {
+		try {
+			System.out.println(this.db.metrics());
+		} catch (JBaseException ex) {
+			System.out.println("*** "+ex.getMessage()+" ***");
+		}
+	}
+
+
 	/**
 	 * Save the database to a file
 	 */
@@ -5,6 +5,7 @@ import jbase.database.Database;
 import jbase.field.*;
 import jbase.exception.*;
 
+import java.io.Serializable;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -16,6 +17,8 @@ import java.util.HashSet;
 public class KeyDialog implements JBaseDialog {
 
 
+	private static final int PAGE_SIZE = 50;		// Records printed at a time
+
 	private final Database db;
 	private final KeyField key;
 
@@ -369,11 +372,49 @@ public class KeyDialog implements JBaseDialog {
 
 
 	/**
-	 * Dump all records in the database. Prints them in a nicely formatted table.
+	 * Dump all records in the database. Prints them in a nicely formatted table,
+	 *  one page at a time so large keys don't have to be loaded all at once.
 	 */
 	private void viewRecords() {
-		ChildField children[] = this.key.allChildren();
-		String table[][] = new String[this.key.inUse()+1][children.length+2];
+		KeyField<?> key = this.key;
+		viewRecords(key);
+	}
+
+
+	/**
+	 * Print the records of a key one page at a time
+	 * @param key The key field (typed, so values from the key can be passed back to page())
+	 */
+	private <T extends Comparable<T> & Serializable> void viewRecords(KeyField<T> key) {
+		ChildField children[] = key.allChildren();
+		T after = null;
+
+		try {
+			while(true) {
+
+				//Fetch one extra row to see if there is another page
+				int rows[] = key.page(after,PAGE_SIZE+1);
+				int shown = Math.min(rows.length,PAGE_SIZE);
+				printRecords(rows,shown,children);
+
+				if (rows.length <= PAGE_SIZE) {break;}
+				if (!JBaseDialog.readYesNo("Show the next "+PAGE_SIZE+" records?")) {break;}
+				after = key.get(rows[shown-1]);
+			}
+		} catch (JBaseException ex) {
+			System.out.println(ex.getMessage()+"\n");
+		}
+	}
+
+
+	/**
+	 * Print a page of records as a nicely formatted table
+	 * @param rows Rows of the key to print
+	 * @param count Number of rows to print
+	 * @param children Children of the key
+	 */
+	private void printRecords(int rows[], int count, ChildField children[]) {
+		String table[][] = new String[count+1][children.length+2];
 
 		//Get the header
 		table[0][0] = "Row: ";
@@ -382,31 +423,21 @@ public class KeyDialog implements JBaseDialog {
 			table[0][i+2] = children[i].toField().getName();
 		}
 
-		//Keep going until the end of the list
-		try {
-			int row = -1;
-			int tableRow = 1;
-			while(true) {
-
-				row = this.key.next(row);
+		for (int tableRow = 1; tableRow <= count; ++tableRow) {
+			int row = rows[tableRow-1];
 
-				//Get the key value
-				table[tableRow][0] = Integer.toString(row);
-				table[tableRow][1] = this.key.get(row).toString();
+			//Get the key value
+			table[tableRow][0] = Integer.toString(row);
+			table[tableRow][1] = this.key.get(row).toString();
 
-				//Get all of the children values
-				for (int i = 0; i < children.length; ++i) {
-					String str = "(Null)";
-					try {
-						str = String.valueOf(children[i].toField().get(row));
-					} catch (JBaseException ex) {}
-					table[tableRow][i+2] = str;
-				}
-				tableRow+=1;
+			//Get all of the children values
+			for (int i = 0; i < children.length; ++i) {
+				String str = "(Null)";
+				try {
+					str = String.valueOf(children[i].toField().get(row));
+				} catch (JBaseException ex) {}
+				table[tableRow][i+2] = str;
 			}
-		} catch (JBaseEndOfList eol) {/* Don't throw an error */
-		} catch (JBaseException ex) {
-			System.out.println(ex.getMessage()+"\n");
 		}
 
 		//Figure out the biggest entry in each column
@@ -1,8 +1,13 @@
 package jbase.ui;
 
 import jbase.database.Database;
+import jbase.database.RecoveryReport;
+import jbase.io.SnapshotFile;
 import jbase.exception.*;
+import java.util.Arrays;
 import java.util.Set;
+import java.util.Map;
+import java.io.File;
 
 
 /**
@@ -84,13 +89,25 @@ public class MainDialog implements JBaseDialog {
 
 
 	/**
-	 * Load the database from an existing file
+	 * Load the database from an existing file (or recover it from a directory of generations)
 	 */
 	private void loadDatabase() {
 		String filename = JBaseDialog.readNotNull("Filename: ", true);
 
 		try {
-			Database.loadDatabase(filename);
+			if (new File(filename).isDirectory()) {
+				String[] names = SnapshotFile.allNames(new File(filename));
+				String dbname = (names.length > 1)
+							  ? JBaseDialog.readExisting("Database: ",Arrays.asList(names),"No snapshots of that database!",true) : null;
+				RecoveryReport report = (dbname == null) ? Database.recoverDatabase(filename)
+													   : Database.recoverDatabase(filename,dbname);
+				for (Map.Entry<String,String> entry : report.getDiscarded().entrySet()) {
+					System.out.println("Discarded "+entry.getKey()+" ("+entry.getValue()+")");
+				}
+				System.out.println("Recovered from "+report.getLoaded());
+			} else {
+				Database.loadDatabase(filename);
+			}
 		} catch (JBaseException ex) {
 			System.out.println("*** "+ex.getMessage()+" ***");
 			return;